@@ -38,12 +38,18 @@ import org.terrier.indexing.CollectionFactory;
 import org.terrier.structures.Index;
 import org.terrier.structures.IndexOnDisk;
 import org.terrier.structures.IndexUtil;
+import org.terrier.structures.indexing.singlepass.ThreadedSinglePassIndexer;
 import org.terrier.structures.merging.BlockStructureMerger;
 import org.terrier.structures.merging.StructureMerger;
 import org.terrier.utility.ApplicationSetup;
 import org.terrier.utility.TagSet;
 /** An implementation of BatchIndexing that uses Java 8 parallel streams to
  * increase indexing speed on multi-core machines.
+ * <p>The collection is partitioned, and each partition is indexed by a thread. 
+ * By default, single-pass indexing (without blocks) uses one {@link ThreadedSinglePassIndexer}, 
+ * whose threads share one memory budget and whose runs are merged at once. Otherwise, or
+ * if the property <tt>indexing.singlepass.threaded.shared</tt> is false, an index is built 
+ * for each partition, and these indices are then merged in pairs.
  * @author Craig Macdonald
  * @since 4.2
  */
@@ -53,6 +59,8 @@ public class ThreadedBatchIndexing extends BatchIndexing {
 	protected static Logger logger = LoggerFactory.getLogger(ThreadedBatchIndexing.class);
 	
 	final boolean singlePass;
+	/** whether single-pass indexing uses one ThreadedSinglePassIndexer, rather than merging an index for each partition */
+	protected boolean sharedSinglePass = Boolean.parseBoolean(ApplicationSetup.getProperty("indexing.singlepass.threaded.shared", "true"));
 	int maxThreads = -1;
 	
 	public ThreadedBatchIndexing(String _path, String _prefix, boolean _singlePass) {
@@ -82,7 +90,8 @@ public class ThreadedBatchIndexing extends BatchIndexing {
 			
 			final int threadCount = this.maxThreads == -1 ? ForkJoinPool.commonPool().getParallelism() : this.maxThreads;
 			logger.info("Started " + this.getClass().getSimpleName() + " with parallelism " + threadCount);
-			if (singlePass)
+			final boolean shared = singlePass && sharedSinglePass && ! blocks;
+			if (singlePass && ! shared)
 			{
 				int reservationFactor = Math.min(threadCount, 10);
 				logger.warn("Multi-threaded singlepass indexing is experimental - caution advised due to threads competing for available memory! YMMV.");
@@ -95,6 +104,15 @@ public class ThreadedBatchIndexing extends BatchIndexing {
 				? CollectionFactory.splitList(super.collectionFiles, threadCount)
 				: CollectionFactory.splitCollectionSpecFileList(super.collectionSpec, threadCount);
 			logger.info("Partitioned collection.spec into "+ partitioned.size() + " partitions");
+			if (shared && partitioned.size() > 1)
+			{
+				indexShared(partitioned, threadCount);
+				logger.info("Parallel indexing completed after " 
+					+ (System.currentTimeMillis() - starttime)/1000 + " seconds, using " 
+					+ threadCount + " threads");
+				logger.info("Final index is at "+path+" " + prefix);
+				return;
+			}
 			if (partitioned.size() == 1)
 			{
 				Collection c = loadCollection(partitioned.get(0));
@@ -194,5 +212,26 @@ public class ThreadedBatchIndexing extends BatchIndexing {
 			logger.error("Problem occurred during parallel indexing", e);
 		}
 	}
+	
+	/** Indexes all partitions using one ThreadedSinglePassIndexer, such that the runs of all 
+	 * threads are merged at once, rather than merging an index for each partition.
+	 * @param partitioned the files of each partition
+	 * @param threadCount the number of partitions indexed at once
+	 */
+	protected void indexShared(List<List<String>> partitioned, int threadCount)
+	{
+		final Collection[] collections = new Collection[partitioned.size()];
+		for(int i=0;i<collections.length;i++)
+			collections[i] = loadCollection(partitioned.get(i));
+		new ThreadedSinglePassIndexer(path, prefix, threadCount).index(collections);
+		for(Collection c : collections)
+		{
+			try{
+				c.close();
+			} catch (Exception e) {
+				logger.warn("problem closing collection", e);
+			}
+		}
+	}
 
 }
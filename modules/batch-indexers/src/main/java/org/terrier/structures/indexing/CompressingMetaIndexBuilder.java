@@ -31,7 +31,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.Flushable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.zip.Deflater;
 
@@ -39,6 +41,8 @@ import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.terrier.compression.LZCodec;
+import org.terrier.structures.CompressingMetaIndex;
 import org.terrier.structures.IndexOnDisk;
 import org.terrier.structures.collections.FSOrderedMapFile;
 import org.terrier.structures.collections.FSOrderedMapFile.MapFileWriter;
@@ -51,14 +55,22 @@ import org.terrier.utility.ArrayUtils;
 import org.terrier.utility.Files;
 import org.terrier.utility.MemoryChecker;
 import org.terrier.utility.RuntimeMemoryChecker;
-/** Creates a metaindex structure that compresses all values using Deflator. 
+/** Creates a metaindex structure that compresses all values using Deflator, or using {@link LZCodec}, 
+ * which is much faster to decompress. 
  * <b>Properties:</b>
  * <ul>
+ * <li><tt>metaindex.compressed.codec</tt> - how each document's values are compressed: <tt>zlib</tt> (default) or <tt>lz</tt>.</li>
+ * <li><tt>metaindex.compressed.lz.dictionary.size</tt> - maximum size in bytes of the dictionary of the lz codec, 
+ * which is trained on the first documents. 0 means no dictionary. Defaults to 16384.</li>
+ * <li><tt>metaindex.compressed.lz.dictionary.samples</tt> - number of documents that the dictionary of the lz codec 
+ * is trained on. Defaults to 1000.</li>
  * <li><tt>metaindex.compressed.max.data.in-mem.mb</tt> - maximum size that a meta index .zdata file will be kept in memory. Defaults to 400(mb). </li>
  * <li><tt>metaindex.compressed.max.index.in-mem.mb</tt> - maximum size that a meta index .zdata file will be kept in memory. Defaults to 100(mb).</li>
  * <li><tt>metaindex.compressed.reverse.allow.duplicates</tt> - set this property to true to suppress errors when a reverse meta value is not unique. Default false.</li>
  * <li><tt>metaindex.compressed.crop.long</tt> - set this property to suppress errors with overlong Document metadata, while will instead be cropped.</li>
  * </ul>
+ * <p>The <tt>meta</tt> structure also builds the doc values of the keys of the <tt>indexer.docvalues.keys</tt>
+ * property, using a {@link DocValuesBuilder}.
  * @since 3.0
  * @author Craig Macdonald &amp; Vassilis Plachouras 
  */
@@ -76,6 +88,12 @@ public class CompressingMetaIndexBuilder extends MetaIndexBuilder implements Flu
 	protected final int REVERSE_KEY_LOOKUP_WRITING_BUFFER_SIZE = 20000;
 	protected final int DOCS_PER_CHECK = ApplicationSetup.DOCS_CHECK_SINGLEPASS;
 	protected final int ZIP_COMPRESSION_LEVEL = 5;//TODO (auto)configure? 
+	protected final boolean USE_LZ = 
+			ApplicationSetup.getProperty("metaindex.compressed.codec", CompressingMetaIndex.CODEC_ZLIB).equals(CompressingMetaIndex.CODEC_LZ);
+	protected final int LZ_DICTIONARY_SIZE = 
+			Integer.parseInt(ApplicationSetup.getProperty("metaindex.compressed.lz.dictionary.size", "16384"));
+	protected final int LZ_DICTIONARY_SAMPLES = 
+			Integer.parseInt(ApplicationSetup.getProperty("metaindex.compressed.lz.dictionary.samples", "1000"));
 		
 	protected final TObjectIntHashMap<String> key2Index;
 	protected DataOutputStream dataOutput = null;
@@ -85,6 +103,10 @@ public class CompressingMetaIndexBuilder extends MetaIndexBuilder implements Flu
 	protected ByteArrayOutputStream baos = new ByteArrayOutputStream();
 	protected DataOutputStream indexOutput = null;
 	protected byte[] compressedBuffer = new byte[1024];
+	/** compresses records if the lz codec is used, once its dictionary has been trained */
+	protected LZCodec.Compressor lz = null;
+	/** records held until the dictionary of the lz codec is trained */
+	protected List<byte[]> lzSamples = new ArrayList<>();
 	protected IndexOnDisk index;
 	protected int[] valueLensChars;
 	protected int[] valueLensBytes;
@@ -104,6 +126,10 @@ public class CompressingMetaIndexBuilder extends MetaIndexBuilder implements Flu
 	protected MemoryChecker memCheck = new RuntimeMemoryChecker();
 	protected FixedSizeWriteableFactory<Text>[] keyFactories;
 	protected String structureName;
+	/** builds the doc values of the documents, or null if there are none */
+	protected DocValuesBuilder docValues;
+	/** the index in keyNames of the key of each doc values column */
+	protected int[] docValuesKeys;
 	
 	/**
 	 * constructor
@@ -185,6 +211,32 @@ public class CompressingMetaIndexBuilder extends MetaIndexBuilder implements Flu
 			this.entryLengthBytes += this.valueLensBytes[i];
 		}
 		this.spaces = new byte[entryLengthBytes];//for padding
+		if (USE_LZ)
+			this.compressedBuffer = new byte[LZCodec.maxCompressedLength(entryLengthBytes)];
+		
+		final DocValuesBuilder configured;
+		if (structureName.equals("meta") && (configured = DocValuesBuilder.fromProperties(_index)) != null)
+			setDocValues(configured);
+	}
+	
+	/** Returns the builder of the doc values of this meta index, or null if there is none */
+	public DocValuesBuilder getDocValues() {
+		return docValues;
+	}
+	
+	/** Sets the builder of the doc values of this meta index, whose keys must all be forward meta index keys.
+	 * It must be set before any document is written. */
+	public void setDocValues(DocValuesBuilder _docValues) {
+		final String[] docValuesKeyNames = _docValues.getKeys();
+		final int[] _docValuesKeys = new int[docValuesKeyNames.length];
+		for(int i=0;i<docValuesKeyNames.length;i++)
+		{
+			if (! key2Index.contains(docValuesKeyNames[i]))
+				throw new IllegalArgumentException("Doc values key " + docValuesKeyNames[i] + " must also be a forward meta index key. Add it to indexer.meta.forward.keys");
+			_docValuesKeys[i] = key2Index.get(docValuesKeyNames[i]);
+		}
+		docValuesKeys = _docValuesKeys;
+		docValues = _docValues;
 	}
 	
 	/** {@inheritDoc} */
@@ -203,6 +255,13 @@ public class CompressingMetaIndexBuilder extends MetaIndexBuilder implements Flu
 	@Override
 	public void writeDocumentEntry(String[] data) throws IOException
 	{
+		if (docValues != null)
+		{
+			final String[] docValuesData = new String[docValuesKeys.length];
+			for(int c=0;c<docValuesKeys.length;c++)
+				docValuesData[c] = data[docValuesKeys[c]];
+			docValues.addDocument(docValuesData);
+		}
 		int i=0;
 		for(String value : data)
 		{
@@ -248,20 +307,8 @@ public class CompressingMetaIndexBuilder extends MetaIndexBuilder implements Flu
 			lastValues[i] = value;
 			i++;
 		}
-		zip.reset();
-		zip.setInput(baos.toByteArray());
-		zip.finish();
+		writeRecord(baos.toByteArray());
 		baos.reset();
-		indexOutput.writeLong(currentOffset);
-		currentIndexOffset += 8;
-		int compressedEntrySize = 0;
-		while(! zip.finished())
-		{
-			final int numOfCompressedBytes = zip.deflate(compressedBuffer);
-			dataOutput.write(compressedBuffer, 0, numOfCompressedBytes);
-			compressedEntrySize += numOfCompressedBytes;
-		}
-		currentOffset += compressedEntrySize;
 		for(i=0;i<reverseKeys.length;i++)
 		{
 			Text key = keyFactories[i].newInstance();
@@ -279,6 +326,57 @@ public class CompressingMetaIndexBuilder extends MetaIndexBuilder implements Flu
 			memCheck.reset();
 		}
 	}
+	/** Compresses and writes the values of the next document. If the lz codec is used, the
+	 * first records are held until its dictionary has been trained on them. */
+	protected void writeRecord(byte[] record) throws IOException
+	{
+		if (USE_LZ && lz == null)
+		{
+			lzSamples.add(record);
+			if (lzSamples.size() >= LZ_DICTIONARY_SAMPLES)
+				trainDictionary();
+			return;
+		}
+		indexOutput.writeLong(currentOffset);
+		currentIndexOffset += 8;
+		if (USE_LZ)
+		{
+			final int numOfCompressedBytes = lz.compress(record, record.length, compressedBuffer);
+			dataOutput.write(compressedBuffer, 0, numOfCompressedBytes);
+			currentOffset += numOfCompressedBytes;
+			return;
+		}
+		zip.reset();
+		zip.setInput(record);
+		zip.finish();
+		int compressedEntrySize = 0;
+		while(! zip.finished())
+		{
+			final int numOfCompressedBytes = zip.deflate(compressedBuffer);
+			dataOutput.write(compressedBuffer, 0, numOfCompressedBytes);
+			compressedEntrySize += numOfCompressedBytes;
+		}
+		currentOffset += compressedEntrySize;
+	}
+
+	/** Trains and writes the dictionary of the lz codec on the held records, then writes those records */
+	protected void trainDictionary() throws IOException
+	{
+		final byte[] dictionary = LZ_DICTIONARY_SIZE > 0
+			? LZCodec.trainDictionary(lzSamples, LZ_DICTIONARY_SIZE)
+			: new byte[0];
+		logger.debug("Trained meta index dictionary of " + dictionary.length + " bytes on " + lzSamples.size() + " documents");
+		try(DataOutputStream dictionaryOutput = new DataOutputStream(Files.writeFileStream(
+			index.getPath() + "/" + index.getPrefix() + "."+structureName+CompressingMetaIndex.DICTIONARY_SUFFIX)))
+		{
+			dictionaryOutput.write(dictionary);
+		}
+		lz = new LZCodec.Compressor(dictionary);
+		for(byte[] record : lzSamples)
+			writeRecord(record);
+		lzSamples = null;
+	}
+
 	/** 
 	 * {@inheritDoc} 
 	 */
@@ -293,12 +391,15 @@ public class CompressingMetaIndexBuilder extends MetaIndexBuilder implements Flu
 	 */
 	public void close() throws IOException
 	{
+		if (USE_LZ && lz == null)
+			trainDictionary();
 		dataOutput.close();
 		indexOutput.close();
 		index.addIndexStructure(structureName, "org.terrier.structures.CompressingMetaIndex", "org.terrier.structures.IndexOnDisk,java.lang.String", "index,structureName");
 		index.addIndexStructureInputStream(structureName, "org.terrier.structures.CompressingMetaIndex$InputStream", "org.terrier.structures.IndexOnDisk,java.lang.String", "index,structureName");
 		index.setIndexProperty("index."+structureName+".entries", ""+entryCount);
 		index.setIndexProperty("index."+structureName+".compression-level", ""+ZIP_COMPRESSION_LEVEL);
+		index.setIndexProperty("index."+structureName+".codec", USE_LZ ? CompressingMetaIndex.CODEC_LZ : CompressingMetaIndex.CODEC_ZLIB);
 		index.setIndexProperty("index."+structureName+".key-names", ArrayUtils.join(keyNames, ","));
 		index.setIndexProperty("index."+structureName+".value-lengths", ArrayUtils.join(valueLensChars, ","));
 		index.setIndexProperty("index."+structureName+".entry-length", ""+entryLengthBytes);
@@ -306,10 +407,10 @@ public class CompressingMetaIndexBuilder extends MetaIndexBuilder implements Flu
 		index.setIndexProperty("index."+structureName+".value-sorted", ArrayUtils.join(valuesSorted, ","));
 		index.setIndexProperty("index."+structureName+".data-source",
 			currentOffset > MAX_MB_IN_MEM_RETRIEVAL * (long)1024 * (long)1024 
-			? "file"
+			? "mmap"
 			: "fileinmem");
 		index.setIndexProperty("index."+structureName+".index-source", currentIndexOffset > MAX_INDEX_MB_IN_MEM_RETRIEVAL* (long)1024 * (long)1024 
-			? "file"
+			? "mmap"
 			: "fileinmem");
 		//TODO emit warnings
 		index.flush();
@@ -320,6 +421,8 @@ public class CompressingMetaIndexBuilder extends MetaIndexBuilder implements Flu
 		}		
 		index.setIndexProperty("index."+structureName+".reverse-key-names", ArrayUtils.join(reverseKeyNames, ","));
 		index.flush();
+		if (docValues != null)
+			docValues.close();
 		
 	}
 
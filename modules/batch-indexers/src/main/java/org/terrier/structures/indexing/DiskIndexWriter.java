@@ -4,6 +4,7 @@ import java.util.*;
 import java.util.Map.Entry;
 import org.terrier.utility.*;
 import org.terrier.structures.*;
+import org.terrier.structures.bit.BitPostingIndexSkips;
 import org.terrier.structures.seralization.FixedSizeWriteableFactory;
 import org.terrier.structures.seralization.FixedSizeTextFactory;
 import org.terrier.structures.postings.IterablePosting;
@@ -161,6 +162,8 @@ public class DiskIndexWriter {
         target.flush();
         collectProperties(source,target, compressionInvertedConfig, compressionDirectConfig);
         LexiconBuilder.optimise(target, "lexicon");
+        BitPostingIndexSkips.createIfEnabled(target, "inverted", 0);
+        TermMaxScores.createIfEnabled(target, new String[0]);
         target.flush();
 
         return target;
@@ -0,0 +1,251 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is DocValuesBuilder.java
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk>
+ */
+package org.terrier.structures.indexing;
+
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongArrayList;
+import gnu.trove.TObjectIntHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.terrier.structures.ColumnarDocValues;
+import org.terrier.structures.DocValues;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.NumericRangeIndex;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.ArrayUtils;
+import org.terrier.utility.Files;
+
+/** Creates the {@link DocValues} structure of an index, read by {@link ColumnarDocValues}, 
+ * from the metadata of each document. Values are held in memory until the builder is closed.
+ * If there are number columns, the {@link NumericRangeIndex} over them is also created.
+ * <b>Properties:</b>
+ * <ul>
+ * <li><tt>indexer.docvalues.keys</tt> - comma-delimited metadata keys to build doc values for. 
+ * Each must also be a forward meta index key. Defaults to empty.</li>
+ * <li><tt>indexer.docvalues.<i>key</i>.type</tt> - the type of the column of a key: <tt>string</tt> (default), 
+ * <tt>host</tt> for the hostname of a URL, or <tt>long</tt> for numbers such as dates.</li>
+ * </ul>
+ * @since 5.4
+ */
+public class DocValuesBuilder
+{
+	protected final IndexOnDisk index;
+	protected final String[] keys;
+	protected final byte[] types;
+	/** the provisional ordinal of each distinct value of a string or host column */
+	protected final List<TObjectIntHashMap<String>> dictionaries = new ArrayList<>();
+	/** the provisional ordinal of each document for a string or host column, or its value for a number column */
+	protected final Object[] values;
+	protected int numberOfDocuments = 0;
+
+	/**
+	 * Creates a builder for the specified columns.
+	 * @param _index the index to build doc values for
+	 * @param _keys the key of each column
+	 * @param _types the type of each column, as a DocValues.TYPE_ constant
+	 */
+	public DocValuesBuilder(IndexOnDisk _index, String[] _keys, byte[] _types)
+	{
+		if (_keys.length != _types.length)
+			throw new IllegalArgumentException("DocValuesBuilder configuration incorrect: number of keys and number of types are unequal");
+		this.index = _index;
+		this.keys = _keys;
+		this.types = _types;
+		this.values = new Object[keys.length];
+		for(int c=0;c<keys.length;c++)
+		{
+			dictionaries.add(types[c] == DocValues.TYPE_LONG ? null : new TObjectIntHashMap<String>());
+			values[c] = types[c] == DocValues.TYPE_LONG ? new TLongArrayList() : new TIntArrayList();
+		}
+	}
+
+	/** Returns a builder for the keys of the <tt>indexer.docvalues.keys</tt> property, 
+	 * or null if the property is empty. */
+	public static DocValuesBuilder fromProperties(IndexOnDisk index)
+	{
+		final String[] keys = ArrayUtils.parseCommaDelimitedString(ApplicationSetup.getProperty("indexer.docvalues.keys", ""));
+		if (keys.length == 0)
+			return null;
+		final byte[] types = new byte[keys.length];
+		for(int c=0;c<keys.length;c++)
+		{
+			final String type = ApplicationSetup.getProperty("indexer.docvalues." + keys[c] + ".type", "string");
+			switch (type) {
+				case "string": types[c] = DocValues.TYPE_STRING; break;
+				case "host": types[c] = DocValues.TYPE_HOST; break;
+				case "long": types[c] = DocValues.TYPE_LONG; break;
+				default: throw new IllegalArgumentException("Unknown doc values type " + type + " for key " + keys[c]);
+			}
+		}
+		return new DocValuesBuilder(index, keys, types);
+	}
+
+	/** Returns a builder for the same columns as the specified doc values, e.g. of an index being merged */
+	public static DocValuesBuilder fromDocValues(IndexOnDisk index, DocValues docValues)
+	{
+		final String[] keys = docValues.getKeys();
+		final byte[] types = new byte[keys.length];
+		for(int c=0;c<keys.length;c++)
+			types[c] = docValues.getType(docValues.getColumn(keys[c]));
+		return new DocValuesBuilder(index, keys, types);
+	}
+
+	/** Returns the keys of the columns */
+	public String[] getKeys()
+	{
+		return keys;
+	}
+
+	/** Adds the values of the next document, in the order of the keys. A null or empty value
+	 * denotes that the document has no value, as does a number that cannot be parsed. */
+	public void addDocument(String[] data)
+	{
+		for(int c=0;c<keys.length;c++)
+		{
+			String value = data[c];
+			if (types[c] == DocValues.TYPE_LONG)
+			{
+				long v = DocValues.MISSING_LONG;
+				if (value != null && value.length() > 0)
+				{
+					try{
+						v = Long.parseLong(value.trim());
+					} catch (NumberFormatException nfe) {}
+				}
+				((TLongArrayList) values[c]).add(v);
+				continue;
+			}
+			if (types[c] == DocValues.TYPE_HOST)
+				value = ColumnarDocValues.host(value);
+			int ordinal = -1;
+			if (value != null && value.length() > 0)
+			{
+				final TObjectIntHashMap<String> dictionary = dictionaries.get(c);
+				if (dictionary.containsKey(value))
+					ordinal = dictionary.get(value);
+				else
+					dictionary.put(value, ordinal = dictionary.size());
+			}
+			((TIntArrayList) values[c]).add(ordinal);
+		}
+		numberOfDocuments++;
+	}
+
+	/** Writes the doc values alongside the index, and records the <tt>docvalues</tt> structure of the index. */
+	public void close() throws IOException
+	{
+		try(DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.writeFileStream(ColumnarDocValues.filename(index)))))
+		{
+			dos.writeInt(numberOfDocuments);
+			dos.writeInt(keys.length);
+			for(int c=0;c<keys.length;c++)
+			{
+				dos.writeUTF(keys[c]);
+				dos.writeByte(types[c]);
+				if (types[c] == DocValues.TYPE_LONG)
+				{
+					final TLongArrayList v = (TLongArrayList) values[c];
+					for(int i=0;i<numberOfDocuments;i++)
+						dos.writeLong(v.get(i));
+					continue;
+				}
+				
+				//sort the dictionary, and map the provisional ordinals to sorted ordinals
+				final TObjectIntHashMap<String> dictionary = dictionaries.get(c);
+				final String[] sorted = dictionary.keys(new String[dictionary.size()]);
+				Arrays.sort(sorted);
+				final int[] map = new int[sorted.length];
+				for(int i=0;i<sorted.length;i++)
+					map[dictionary.get(sorted[i])] = i;
+				dos.writeInt(sorted.length);
+				for(String s : sorted)
+					dos.writeUTF(s);
+				
+				//the narrowest width that holds each ordinal+1, where 0 denotes no value
+				final int width = sorted.length < 0xFF ? 1 : sorted.length < 0xFFFF ? 2 : 4;
+				dos.writeByte(width);
+				final TIntArrayList v = (TIntArrayList) values[c];
+				for(int i=0;i<numberOfDocuments;i++)
+				{
+					final int ordinal = v.get(i);
+					final int stored = ordinal == -1 ? 0 : map[ordinal] + 1;
+					switch (width) {
+						case 1: dos.writeByte(stored); break;
+						case 2: dos.writeShort(stored); break;
+						default: dos.writeInt(stored);
+					}
+				}
+			}
+		}
+		index.addIndexStructure(DocValues.STRUCTURE_NAME, ColumnarDocValues.class.getName(),
+				"org.terrier.structures.IndexOnDisk", "index");
+		index.setIndexProperty("index." + DocValues.STRUCTURE_NAME + ".key-names", ArrayUtils.join(keys, ","));
+		writeNumericRanges();
+		index.flush();
+	}
+
+	/** Writes the documents having a value in each number column, sorted by value */
+	protected void writeNumericRanges() throws IOException
+	{
+		final List<Integer> columns = new ArrayList<>();
+		for(int c=0;c<keys.length;c++)
+			if (types[c] == DocValues.TYPE_LONG)
+				columns.add(c);
+		if (columns.size() == 0)
+			return;
+		try(DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.writeFileStream(NumericRangeIndex.filename(index)))))
+		{
+			dos.writeInt(numberOfDocuments);
+			dos.writeInt(columns.size());
+			for(int c : columns)
+			{
+				final TLongArrayList v = (TLongArrayList) values[c];
+				final TIntArrayList having = new TIntArrayList();
+				for(int i=0;i<numberOfDocuments;i++)
+					if (v.get(i) != DocValues.MISSING_LONG)
+						having.add(i);
+				//a stable sort, so that documents with equal values remain in docid order
+				final int[] order = having.toNativeArray();
+				IntArrays.mergeSort(order, (a,b) -> Long.compare(v.get(a), v.get(b)));
+				dos.writeUTF(keys[c]);
+				dos.writeInt(order.length);
+				for(int docid : order)
+					dos.writeLong(v.get(docid));
+				for(int docid : order)
+					dos.writeInt(docid);
+			}
+		}
+		index.addIndexStructure(NumericRangeIndex.STRUCTURE_NAME, NumericRangeIndex.class.getName(),
+				"org.terrier.structures.IndexOnDisk", "index");
+	}
+}
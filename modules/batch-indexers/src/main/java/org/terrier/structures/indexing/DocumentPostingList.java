@@ -67,11 +67,21 @@ public class DocumentPostingList implements Writable,Serializable{
 	protected int documentLength = 0;
 
 	/** mapping term to tf mapping */	
-	protected final TObjectIntHashMap<String> occurrences = new TObjectIntHashMap<String>(AVG_DOCUMENT_UNIQUE_TERMS);
+	protected final TObjectIntHashMap<String> occurrences;
 	
 	/** Create a new DocumentPostingList object */
 	public DocumentPostingList()
-	{}
+	{
+		this(AVG_DOCUMENT_UNIQUE_TERMS);
+	}
+	
+	/** Create a new DocumentPostingList object, whose map of terms has the specified initial capacity.
+	 * For subclasses that do not record terms in the map.
+	 * @since 5.4 */
+	protected DocumentPostingList(int initialCapacity)
+	{
+		occurrences = new TObjectIntHashMap<String>(initialCapacity);
+	}
 	
 	/** Returns all terms in this posting list */
 	public String[] termSet()
@@ -295,13 +295,26 @@ public abstract class Indexer
 	 */
 	//@SuppressWarnings("unchecked")
 	protected void load_pipeline()
+	{
+		pipeline_first = createPipeline(getEndOfPipeline());
+	}
+
+	/** 
+	 * Creates a term pipeline as specified by the property <tt>termpipelines</tt>,
+	 * which ends with the specified stage, and returns its first stage. Each
+	 * call creates new stages, such that each thread processing documents can 
+	 * have its own term pipeline.
+	 * @param last the end of the term pipeline
+	 * @return the first stage of the term pipeline
+	 * @since 5.4
+	 */
+	protected TermPipeline createPipeline(final TermPipeline last)
 	{
 		String[] pipes = ApplicationSetup.getProperty(
 				"termpipelines", "Stopwords,PorterStemmer").trim()
 				.split("\\s*,\\s*");
 		
-		TermPipeline next = getEndOfPipeline();
-		final TermPipeline last = next;
+		TermPipeline next = last;
 		TermPipeline tmp;
 		for(int i=pipes.length-1; i>=0; i--)
 		{
@@ -322,9 +335,8 @@ public abstract class Indexer
 		String skipTerms = null;
 		//add SkipTermPipeline as the first pipeline step to allow for special terms to skip the pipeline processing sequence
 		if ((skipTerms = ApplicationSetup.getProperty("termpipelines.skip", null)) != null && skipTerms.trim().length() > 0)
-			pipeline_first = new SkipTermPipeline(next, last);
-		else
-			pipeline_first = next;
+			return new SkipTermPipeline(next, last);
+		return next;
 	}
 
 
@@ -0,0 +1,285 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is IndexingPipeline.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ */
+package org.terrier.structures.indexing;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.indexing.Collection;
+import org.terrier.indexing.Document;
+
+/**
+ * Obtains the documents of a collection for an indexer in stages that run at once:
+ * <ol>
+ * <li>a reader thread moves through the collection, and reads the terms and fields of each document. As the documents
+ * of a collection are usually read from the same stream, each must be read completely before the next;</li>
+ * <li>a pool of threads processes the terms of the documents, each using a {@link DocumentProcessor} of its own,
+ * e.g. applying the term pipeline (stopwords removal, stemming), and recording the postings of each document;</li>
+ * <li>the indexer takes the processed documents using {@link #next()}, in the order of the collection, such that docids are
+ * the same as if the collection were indexed by one thread.</li>
+ * </ol>
+ * At most <tt>capacity</tt> documents are read but not yet taken by the indexer, so that memory use is bounded.
+ * The reader stops after <tt>maxDocuments</tt> documents, or after a document whose docno is in <tt>boundaryDocnos</tt>,
+ * leaving the rest of the collection for the next index builder.
+ * @since 5.4
+ */
+public class IndexingPipeline implements Closeable
+{
+	static final Logger logger = LoggerFactory.getLogger(IndexingPipeline.class);
+
+	/** A document read from the collection, whose terms have not been processed */
+	public static class RawDocument
+	{
+		/** the properties of the document, e.g. docno */
+		public final Map<String,String> properties;
+		/** the terms of the document, in order */
+		public final String[] terms;
+		/** the fields of each term, or null if fields are not recorded */
+		public final Set<String>[] fields;
+
+		public RawDocument(Map<String,String> _properties, String[] _terms, Set<String>[] _fields)
+		{
+			this.properties = _properties;
+			this.terms = _terms;
+			this.fields = _fields;
+		}
+	}
+
+	/** A document whose terms have been processed, ready to be indexed */
+	public static class ProcessedDocument
+	{
+		/** the properties of the document, e.g. docno */
+		public final Map<String,String> properties;
+		/** the postings of the document */
+		public final DocumentPostingList postings;
+		/** the number of tokens that were indexed */
+		public final int numberOfTokens;
+
+		public ProcessedDocument(Map<String,String> _properties, DocumentPostingList _postings, int _numberOfTokens)
+		{
+			this.properties = _properties;
+			this.postings = _postings;
+			this.numberOfTokens = _numberOfTokens;
+		}
+	}
+
+	/** Processes the terms of documents. Not used by more than one thread at once. */
+	public interface DocumentProcessor
+	{
+		/** Processes the terms of the specified document */
+		ProcessedDocument process(RawDocument doc);
+	}
+
+	/** marks that the reader has finished */
+	static final Future<ProcessedDocument> END = CompletableFuture.completedFuture(null);
+
+	final Collection collection;
+	final boolean recordFields;
+	final int maxDocuments;
+	final Set<String> boundaryDocnos;
+	final ThreadLocal<DocumentProcessor> processors;
+	final ExecutorService pool;
+	/** the documents being processed, in the order of the collection */
+	final BlockingQueue<Future<ProcessedDocument>> queue;
+	final Thread reader;
+	volatile boolean stopped = false;
+	volatile boolean endOfCollection = false;
+	volatile Throwable readerError = null;
+	boolean finished = false;
+	/** the number of documents returned by next() */
+	int numberOfDocuments = 0;
+
+	/**
+	 * Starts reading and processing the documents of a collection.
+	 * @param _collection the collection to read
+	 * @param _processors creates the processor of each thread of the pool
+	 * @param threads number of threads processing documents
+	 * @param capacity maximum number of documents that are read but not yet taken
+	 * @param _recordFields whether the fields of each term are recorded
+	 * @param _maxDocuments number of documents after which reading stops, or 0 for no limit
+	 * @param _boundaryDocnos docnos of documents after which reading stops
+	 */
+	public IndexingPipeline(Collection _collection, Supplier<DocumentProcessor> _processors, int threads, int capacity,
+			boolean _recordFields, int _maxDocuments, Set<String> _boundaryDocnos)
+	{
+		this.collection = _collection;
+		this.recordFields = _recordFields;
+		this.maxDocuments = _maxDocuments;
+		this.boundaryDocnos = _boundaryDocnos;
+		this.processors = ThreadLocal.withInitial(_processors);
+		this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+		final AtomicInteger threadCount = new AtomicInteger();
+		this.pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+			Thread t = new Thread(r, "IndexingPipeline-processor-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		this.reader = new Thread(this::read, "IndexingPipeline-reader");
+		this.reader.setDaemon(true);
+		this.reader.start();
+	}
+
+	/**
+	 * Reads the terms of a document until its end, and their fields if recordFields is set.
+	 * @param doc the document to read
+	 * @param recordFields whether the fields of each term are recorded
+	 * @return the terms and properties of the document
+	 */
+	@SuppressWarnings("unchecked")
+	public static RawDocument readDocument(Document doc, boolean recordFields)
+	{
+		final List<String> terms = new ArrayList<>();
+		final List<Set<String>> fields = recordFields ? new ArrayList<>() : null;
+		Set<String> lastFields = null;
+		String term;
+		while (! doc.endOfDocument())
+		{
+			if ((term = doc.getNextTerm()) != null && ! term.equals(""))
+			{
+				terms.add(term);
+				if (recordFields)
+				{
+					//documents may change their set of fields, so copy it when it changes
+					final Set<String> docFields = doc.getFields();
+					if (lastFields == null || ! lastFields.equals(docFields))
+						lastFields = new HashSet<>(docFields);
+					fields.add(lastFields);
+				}
+			}
+		}
+		return new RawDocument(
+			new HashMap<>(doc.getAllProperties()),
+			terms.toArray(new String[terms.size()]),
+			recordFields ? fields.toArray(new Set[fields.size()]) : null);
+	}
+
+	void read()
+	{
+		int numberOfDocuments = 0;
+		try{
+			while(! stopped)
+			{
+				if (! collection.nextDocument())
+				{
+					endOfCollection = true;
+					break;
+				}
+				final Document doc = collection.getDocument();
+				if (doc == null)
+					continue;
+				final RawDocument raw = readDocument(doc, recordFields);
+				queue.put(pool.submit(() -> processors.get().process(raw)));
+				numberOfDocuments++;
+				if (maxDocuments > 0 && numberOfDocuments >= maxDocuments)
+					break;
+				if (boundaryDocnos.size() > 0 && boundaryDocnos.contains(raw.properties.get("docno")))
+				{
+					logger.warn("Document "+raw.properties.get("docno")+" is a builder boundary document. Boundary forced.");
+					break;
+				}
+			}
+		} catch (Throwable t) {
+			readerError = t;
+		} finally {
+			try{
+				queue.put(END);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/** Returns the next document of the collection, once its terms have been processed, or null if no
+	 * more documents will be read. */
+	public ProcessedDocument next()
+	{
+		if (finished)
+			return null;
+		try{
+			final Future<ProcessedDocument> doc = queue.take();
+			if (doc == END)
+			{
+				finished = true;
+				if (readerError != null)
+					throw new RuntimeException("Problem reading collection", readerError);
+				return null;
+			}
+			final ProcessedDocument processed = doc.get();
+			numberOfDocuments++;
+			return processed;
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ie);
+		} catch (ExecutionException ee) {
+			throw new RuntimeException("Problem processing document", ee.getCause());
+		}
+	}
+
+	/** Returns true if the reader found that the collection has no more documents. Only meaningful once
+	 * {@link #next()} has returned null. */
+	public boolean endOfCollection()
+	{
+		return endOfCollection;
+	}
+
+	/** Returns the number of documents returned by {@link #next()} so far. */
+	public int getNumberOfDocuments()
+	{
+		return numberOfDocuments;
+	}
+
+	/** Stops the reader and the pool. Documents not yet taken are discarded. */
+	@Override
+	public void close()
+	{
+		stopped = true;
+		//unblock the reader if it is waiting for space in the queue
+		try{
+			while(reader.isAlive())
+				queue.poll(10, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		pool.shutdownNow();
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TermIdDocumentPostingList.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ */
+package org.terrier.structures.indexing;
+
+import gnu.trove.TIntIntHashMap;
+import gnu.trove.TIntIntProcedure;
+import gnu.trove.TObjectIntProcedure;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.terrier.structures.postings.BasicPostingImpl;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.IterablePostingImpl;
+import org.terrier.structures.postings.WritablePosting;
+import org.terrier.utility.ConcurrentTermDictionary;
+import org.terrier.utility.TermCodes;
+
+/** Represents the postings of one document, keyed by the ids of the terms in a {@link ConcurrentTermDictionary}
+ * rather than by their Strings, such that terms are recorded without hashing Strings, and postings for the
+ * direct index need not be re-mapped to term ids. The ids of the dictionary are used as the term ids of the
+ * postings, and the TermCodes passed to {@link #getPostings(TermCodes)} and {@link #getPostings2(TermCodes)}
+ * are not used.
+ * <p>The methods taking Strings are supported, by looking up terms in the dictionary.
+ * @since 5.4
+ */
+public class TermIdDocumentPostingList extends DocumentPostingList {
+
+	private static final long serialVersionUID = 1L;
+
+	/** the dictionary that assigns the ids of terms */
+	protected final transient ConcurrentTermDictionary dictionary;
+	
+	/** mapping term id to tf */
+	protected final TIntIntHashMap termIdOccurrences = new TIntIntHashMap(AVG_DOCUMENT_UNIQUE_TERMS);
+	
+	/** Create a new TermIdDocumentPostingList object, using the ids of terms in the specified dictionary */
+	public TermIdDocumentPostingList(ConcurrentTermDictionary _dictionary)
+	{
+		super(0);
+		this.dictionary = _dictionary;
+	}
+	
+	/** Returns the dictionary that assigns the ids of terms */
+	public ConcurrentTermDictionary getDictionary()
+	{
+		return dictionary;
+	}
+	
+	/** Insert a term into the posting list of this document
+	  * @param termId the id of the term being inserted */
+	public void insertTermId(final int termId)
+	{
+		termIdOccurrences.adjustOrPutValue(termId, 1, 1);
+		documentLength++;
+	}
+	
+	/** Insert a term into the posting list of this document
+	  * @param tf frequency
+	  * @param termId the id of the term being inserted */
+	public void insertTermId(final int tf, final int termId)
+	{
+		termIdOccurrences.adjustOrPutValue(termId, tf, tf);
+		documentLength++;
+	}
+	
+	/** Returns the ids of all terms in this posting list, in ascending order */
+	public int[] getTermIds()
+	{
+		final int[] termIds = termIdOccurrences.keys();
+		Arrays.sort(termIds);
+		return termIds;
+	}
+	
+	/** Return the frequency of the term with the specified id in this document */
+	public int getFrequency(int termId)
+	{
+		return termIdOccurrences.get(termId);
+	}
+	
+	/** Execute the specifed method for the id and frequency of each term. */
+	public void forEachTermId(TIntIntProcedure proc)
+	{
+		termIdOccurrences.forEachEntry(proc);
+	}
+	
+	@Override
+	public void insert(final String term)
+	{
+		insertTermId(dictionary.getId(term));
+	}
+	
+	@Override
+	public void insert(final int tf, final String term)
+	{
+		insertTermId(tf, dictionary.getId(term));
+	}
+	
+	@Override
+	public String[] termSet()
+	{
+		final int[] termIds = termIdOccurrences.keys();
+		final String[] terms = new String[termIds.length];
+		for(int i=0;i<termIds.length;i++)
+			terms[i] = dictionary.getTerm(termIds[i]);
+		return terms;
+	}
+	
+	@Override
+	public int getFrequency(String term)
+	{
+		final int termId = dictionary.getIdIfPresent(term);
+		return termId < 0 ? 0 : termIdOccurrences.get(termId);
+	}
+	
+	@Override
+	public void clear()
+	{
+		termIdOccurrences.clear();
+		documentLength = 0;
+	}
+	
+	@Override
+	public int getNumberOfPointers()
+	{
+		return termIdOccurrences.size();
+	}
+	
+	@Override
+	public void forEachTerm(final TObjectIntProcedure<String> proc)
+	{
+		termIdOccurrences.forEachEntry(new TIntIntProcedure() {
+			public boolean execute(final int termId, final int tf) {
+				return proc.execute(dictionary.getTerm(termId), tf);
+			}
+		});
+	}
+	
+	/** Returns the postings suitable to be written into the direct index. The term ids are those of the dictionary. */
+	@Override
+	public int[][] getPostings(final TermCodes termCodes)
+	{
+		final int[] termIds = getTermIds();
+		final int[] tfs = new int[termIds.length];
+		for(int i=0;i<termIds.length;i++)
+			tfs[i] = termIdOccurrences.get(termIds[i]);
+		return new int[][]{termIds, tfs};
+	}
+	
+	/** Returns a posting iterator suitable to be written into the direct index. The term ids are those of the dictionary. */
+	@Override
+	public IterablePosting getPostings2(final TermCodes termCodes)
+	{
+		return makeTermIdPostingIterator(getTermIds());
+	}
+	
+	protected IterablePosting makeTermIdPostingIterator(int[] termIds)
+	{
+		return new termIdPostingIterator(termIds);
+	}
+	
+	protected class termIdPostingIterator extends IterablePostingImpl
+	{
+		int[] termIds;
+		int i = -1;
+		
+		public termIdPostingIterator(int[] _termIds)
+		{
+			termIds = _termIds;
+		}
+		
+		public WritablePosting asWritablePosting() {
+			return new BasicPostingImpl(termIds[i], getFrequency());
+		}
+
+		public int getDocumentLength() {
+			return documentLength;
+		}
+
+		public int getFrequency() {
+			return termIdOccurrences.get(termIds[i]);
+		}
+
+		public int getId() {
+			return termIds[i];
+		}
+
+		public int next() throws IOException {
+			if (i >= termIds.length -1)
+				return EOL;
+			i++;
+			return termIds[i];
+		}
+		
+		/** {@inheritDoc} */
+		public boolean endOfPostings() {
+			return (i >= termIds.length -1);
+		}
+
+		public void close() throws IOException {
+			termIds = null;
+		}
+	}
+}
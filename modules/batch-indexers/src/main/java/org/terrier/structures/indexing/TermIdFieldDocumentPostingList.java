@@ -0,0 +1,261 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TermIdFieldDocumentPostingList.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ */
+package org.terrier.structures.indexing;
+
+import gnu.trove.TIntIntHashMap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.terrier.structures.DocumentIndexEntry;
+import org.terrier.structures.FieldDocumentIndexEntry;
+import org.terrier.structures.postings.FieldPosting;
+import org.terrier.structures.postings.FieldPostingImpl;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.WritablePosting;
+import org.terrier.utility.ConcurrentTermDictionary;
+import org.terrier.utility.TermCodes;
+
+/** The postings of one document with fields, keyed by the ids of the terms in a {@link ConcurrentTermDictionary},
+ * as {@link TermIdDocumentPostingList}.
+ * @since 5.4
+ */
+public class TermIdFieldDocumentPostingList extends TermIdDocumentPostingList {
+
+	private static final long serialVersionUID = 1L;
+
+	/** number of fields */
+	protected final int fieldCount;	
+	/** length of each field */
+	protected final int[] fieldLengths;
+	/** occurrences of term ids in fields */
+	protected final TIntIntHashMap[] fieldOccurrences;
+	
+	/** 
+	 * constructor
+	 * @param _dictionary the dictionary that assigns the ids of terms
+	 * @param NUM_FIELDS number of fields
+	 */
+	public TermIdFieldDocumentPostingList(ConcurrentTermDictionary _dictionary, final int NUM_FIELDS)
+	{
+		super(_dictionary);
+		this.fieldCount = NUM_FIELDS;
+		fieldLengths = new int[fieldCount];
+		fieldOccurrences = new TIntIntHashMap[fieldCount];
+		for(int i=0;i<fieldCount;i++)
+		{
+			fieldOccurrences[i] = new TIntIntHashMap(AVG_DOCUMENT_UNIQUE_TERMS);
+		}
+	}
+	
+	/**  Insert a term into the posting list of this document, in the given fields
+	  * @param termId the id of the term being inserted
+	  * @param fieldNums the ids of the fields that the term was found in, starting from 0 */
+	public void insertTermId(final int termId, final int[] fieldNums)
+	{
+		termIdOccurrences.adjustOrPutValue(termId, 1, 1);
+		for(int fieldId : fieldNums)
+		{
+			if (fieldId == -1)
+				continue;
+			fieldOccurrences[fieldId].adjustOrPutValue(termId, 1, 1);
+			fieldLengths[fieldId]++;
+		}
+		documentLength++;
+	}
+	
+	/**  Insert a term into the posting list of this document, in the given fields
+	  * @param tf the frequency of the term
+	  * @param termId the id of the term being inserted
+	  * @param fieldNums the ids of the fields that the term was found in */
+	public void insertTermId(final int tf, final int termId, final int[] fieldNums)
+	{
+		termIdOccurrences.adjustOrPutValue(termId, tf, tf);
+		for(int fieldId : fieldNums)
+		{
+			fieldOccurrences[fieldId].adjustOrPutValue(termId, tf, tf);
+			fieldLengths[fieldId]+=tf;
+		}
+		documentLength+=tf;
+	}
+	
+	/**  Insert a term into the posting list of this document, in the given fields
+	  * @param term the Term being inserted
+	  * @param fieldNums the ids of the fields that the term was found in, starting from 0 */
+	public void insert(final String term, final int[] fieldNums)
+	{
+		insertTermId(dictionary.getId(term), fieldNums);
+	}
+	
+	/**  Insert a term into the posting list of this document, in the given fields
+	  * @param tf the frequency of the term
+	  * @param term the Term being inserted
+	  * @param fieldNums the ids of the fields that the term was found in */
+	public void insert(final int tf, final String term, final int[] fieldNums)
+	{
+		insertTermId(tf, dictionary.getId(term), fieldNums);
+	}
+	
+	/** Return the frequencies of the term with the specified id in all of the fields */
+	public int[] getFieldFrequencies(final int termId)
+	{
+		final int[] rtr = new int[fieldCount];
+		for(int i=0;i<fieldCount;i++)
+			rtr[i] = fieldOccurrences[i].get(termId);
+		return rtr;
+	}
+	
+	/** Return the frequencies of the specified term in all of the fields */
+	public int[] getFieldFrequencies(final String term)
+	{
+		final int termId = dictionary.getIdIfPresent(term);
+		return termId < 0 ? new int[fieldCount] : getFieldFrequencies(termId);
+	}
+	
+	/** 
+	 * {@inheritDoc} 
+	 */
+	@Override
+	public DocumentIndexEntry getDocumentStatistics()
+	{
+		FieldDocumentIndexEntry fdie = new FieldDocumentIndexEntry(this.fieldCount);
+		fdie.setDocumentLength(documentLength);
+		fdie.setNumberOfEntries(termIdOccurrences.size());
+		fdie.setFieldLengths(fieldLengths);
+		return fdie;
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		for(int i=0;i<fieldCount;i++)
+			fieldOccurrences[i].clear();
+		Arrays.fill(fieldLengths, 0);
+	}
+
+	@Override
+	public int[][] getPostings(final TermCodes termCodes) {
+		final int[] termIds = getTermIds();
+		final int[][] postings = new int[fieldCount + 2][];
+		postings[0] = termIds;
+		for(int j=1;j<fieldCount + 2;j++)
+			postings[j] = new int[termIds.length];
+		for(int i=0;i<termIds.length;i++)
+		{
+			postings[1][i] = termIdOccurrences.get(termIds[i]);
+			for(int fi=0;fi<fieldCount;fi++)
+				postings[2+fi][i] = fieldOccurrences[fi].get(termIds[i]);
+		}
+		return postings;
+	}
+
+	class termIdFieldPostingIterator 
+		extends termIdPostingIterator
+		implements FieldPosting
+	{
+		int[] fieldFrequencies = new int[fieldCount];
+		
+		public termIdFieldPostingIterator(int[] ids) {
+			super(ids);
+		}
+		
+		/** {@inheritDoc} */
+		public int[] getFieldFrequencies()
+		{
+			for(int fi=0;fi<fieldCount;fi++)
+			{
+				fieldFrequencies[fi] = fieldOccurrences[fi].get(termIds[i]);
+			}
+			return fieldFrequencies;
+		}
+
+		/** {@inheritDoc}. Not implemented yet. */
+		public int[] getFieldLengths() {
+			return null;
+		}
+		
+		@Override
+		public WritablePosting asWritablePosting() {
+			FieldPostingImpl fbp = new FieldPostingImpl(termIds[i],getFrequency(), fieldCount);
+			System.arraycopy(getFieldFrequencies(), 0, fbp.getFieldFrequencies(), 0, fieldCount);
+			return fbp;
+		}
+
+		@Override
+		public void setFieldLengths(int[] newLengths) {
+			throw new UnsupportedOperationException();
+		}
+	}
+	
+	@Override 
+	protected IterablePosting makeTermIdPostingIterator(int[] termIds)
+	{
+		return new termIdFieldPostingIterator(termIds);
+	}
+	
+	/** Reads the postings written by {@link #write(DataOutput)}, assigning the ids of the terms 
+	 * in the dictionary of this posting list. */
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		clear();
+		final int termCount = WritableUtils.readVInt(in);
+		for(int i=0;i<termCount;i++)
+		{
+			final int termId = dictionary.getId(Text.readString(in));
+			final int tf = WritableUtils.readVInt(in);
+			termIdOccurrences.put(termId, tf);
+			documentLength += tf;
+			for(int fi=0;fi<fieldCount;fi++)
+			{
+				final int fieldTf = WritableUtils.readVInt(in);
+				if (fieldTf > 0)
+				{
+					fieldOccurrences[fi].put(termId, fieldTf);
+					fieldLengths[fi] += fieldTf;
+				}
+			}
+		}
+	}
+	
+	/** Writes the postings keyed by the Strings of the terms, such that they can be read
+	 * using a different dictionary. */
+	@Override
+	public void write(final DataOutput out) throws IOException {
+		final int[] termIds = getTermIds();
+		WritableUtils.writeVInt(out, termIds.length);
+		for(int termId : termIds)
+		{
+			Text.writeString(out, dictionary.getTerm(termId));
+			WritableUtils.writeVInt(out, termIdOccurrences.get(termId));
+			for(int fi=0;fi<fieldCount;fi++)
+				WritableUtils.writeVInt(out, fieldOccurrences[fi].get(termId));
+		}
+	}
+}
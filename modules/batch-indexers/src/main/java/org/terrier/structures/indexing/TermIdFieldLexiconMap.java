@@ -0,0 +1,125 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TermIdFieldLexiconMap.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ */
+package org.terrier.structures.indexing;
+
+import gnu.trove.TIntIntHashMap;
+import gnu.trove.TIntIntProcedure;
+
+import java.io.IOException;
+
+import org.terrier.structures.FieldLexiconEntry;
+import org.terrier.structures.LexiconOutputStream;
+import org.terrier.utility.ConcurrentTermDictionary;
+import org.terrier.utility.TermCodes;
+
+/** Keeps track of the total counts of terms, including in each field, within a bundle of documents being indexed,
+ * as {@link FieldLexiconMap}, but keyed by the ids of the terms in a {@link ConcurrentTermDictionary}.
+ * @since 5.4
+ */
+public class TermIdFieldLexiconMap extends TermIdLexiconMap {
+
+	protected final int fieldCount;
+	protected final TIntIntHashMap[] fieldTfs;
+	
+	/**
+	 * constructor
+	 * @param _dictionary the dictionary that assigns the ids of terms
+	 * @param _fieldCount number of fields
+	 */
+	public TermIdFieldLexiconMap(ConcurrentTermDictionary _dictionary, int _fieldCount)
+	{
+		super(_dictionary);
+		fieldCount = _fieldCount;
+		fieldTfs = new TIntIntHashMap[fieldCount];
+		for(int fi=0;fi<fieldCount;fi++)
+			fieldTfs[fi] = new TIntIntHashMap(BUNDLE_AVG_UNIQUE_TERMS);
+	}
+	
+	/** Inserts all the terms from a document posting
+	  * into the lexicon map
+	  * @param _doc The postinglist for that document. Assumed to be a TermIdFieldDocumentPostingList, or a FieldDocumentPostingList.
+	  */
+	@Override
+	public void insert(DocumentPostingList _doc)
+	{
+		super.insert(_doc);
+		if (_doc instanceof TermIdFieldDocumentPostingList && ((TermIdFieldDocumentPostingList)_doc).getDictionary() == dictionary)
+		{
+			final TermIdFieldDocumentPostingList doc = (TermIdFieldDocumentPostingList)_doc;
+			for(int fi=0;fi<fieldCount;fi++)
+			{
+				final TIntIntHashMap thisField = fieldTfs[fi];
+				doc.fieldOccurrences[fi].forEachEntry(new TIntIntProcedure() {
+					public boolean execute(int termId, int freq) {
+						thisField.adjustOrPutValue(termId, freq, freq);
+						return true;
+					}
+				});
+			}
+		}
+		else
+		{
+			final FieldDocumentPostingList doc = (FieldDocumentPostingList)_doc;
+			for(String term : doc.termSet())
+			{
+				final int termId = dictionary.getId(term);
+				final int[] freqs = doc.getFieldFrequencies(term);
+				for(int fi=0;fi<fieldCount;fi++)
+					fieldTfs[fi].adjustOrPutValue(termId, freqs[fi], freqs[fi]);
+			}
+		}
+	}
+	
+	/** Stores the lexicon map to a lexicon stream as a sequence of entries, in the order of the terms.
+	  * The term ids are those of the dictionary, and termCodes is not used.
+	  * @param lexiconStream The lexicon output stream to store to. */
+	@Override
+	public void storeToStream(LexiconOutputStream<String> lexiconStream, TermCodes termCodes) throws IOException
+	{
+		final String[][] terms = new String[1][];
+		final int[] termIds = sortedTermIds(terms);
+		for (int i=0;i<termIds.length;i++)
+		{
+			final int termId = termIds[i];
+			final int[] TFf = new int[fieldCount];
+			for(int fi=0;fi< fieldCount;fi++)
+				TFf[fi] = fieldTfs[fi].get(termId);
+			final FieldLexiconEntry fle = new FieldLexiconEntry(TFf);
+			fle.setTermId(termId);
+			fle.setStatistics(termIdNts.get(termId), termIdTfs.get(termId));
+			fle.setMaxFrequencyInDocuments(termIdMaxtfs.get(termId));
+			fle.setFieldFrequencies(TFf);
+			lexiconStream.writeNextEntry(terms[0][i], fle);
+		}
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		for(int fi=0;fi<fieldCount;fi++)
+			fieldTfs[fi].clear();
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TermIdLexiconMap.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ */
+package org.terrier.structures.indexing;
+
+import gnu.trove.TIntIntHashMap;
+import gnu.trove.TIntIntProcedure;
+import gnu.trove.TObjectIntProcedure;
+
+import java.io.IOException;
+
+import org.terrier.sorting.MultiSort;
+import org.terrier.structures.BasicLexiconEntry;
+import org.terrier.structures.LexiconOutputStream;
+import org.terrier.utility.ConcurrentTermDictionary;
+import org.terrier.utility.TermCodes;
+
+/** Keeps track of the total counts of terms within a bundle of documents being indexed, as {@link LexiconMap},
+ * but keyed by the ids of the terms in a {@link ConcurrentTermDictionary}. The ids of the dictionary are written
+ * as the term ids of the lexicon entries, such that they match the postings of a {@link TermIdDocumentPostingList}.
+ * @since 5.4
+ */
+public class TermIdLexiconMap extends LexiconMap {
+	
+	/** the dictionary that assigns the ids of terms */
+	protected final ConcurrentTermDictionary dictionary;
+	/** mapping: term id to term frequency in the collection */
+	protected final TIntIntHashMap termIdTfs = new TIntIntHashMap(BUNDLE_AVG_UNIQUE_TERMS);
+	/** mapping: term id to document frequency */
+	protected final TIntIntHashMap termIdNts = new TIntIntHashMap(BUNDLE_AVG_UNIQUE_TERMS);
+	/** mapping: term id to max tf */
+	protected final TIntIntHashMap termIdMaxtfs = new TIntIntHashMap(BUNDLE_AVG_UNIQUE_TERMS);
+	
+	/** constructor
+	 * @param _dictionary the dictionary that assigns the ids of terms */
+	public TermIdLexiconMap(ConcurrentTermDictionary _dictionary)
+	{
+		this.dictionary = _dictionary;
+	}
+	
+	@Override
+	public void clear()
+	{
+		super.clear();
+		termIdTfs.clear(); termIdTfs.compact();
+		termIdNts.clear(); termIdNts.compact();
+		termIdMaxtfs.clear(); termIdMaxtfs.compact();
+	}
+	
+	/** Adds the occurrences of a term in a document */
+	protected void insertTermId(final int termId, final int tf)
+	{
+		termIdTfs.adjustOrPutValue(termId, tf, tf);
+		termIdNts.adjustOrPutValue(termId, 1, 1);
+		if (tf > termIdMaxtfs.get(termId))
+			termIdMaxtfs.put(termId, tf);
+	}
+	
+	@Override
+	public void insert(final String term, final int tf)
+	{
+		if (term.length()==0) throw new IllegalArgumentException("Attempted to add a term with length 0 to the lexicon, empty terms may not be added to the lexicon.");
+		insertTermId(dictionary.getId(term), tf);
+		numberOfPointers++;
+	}
+	
+	/** Inserts all the terms from a document posting into the lexicon map. Postings of
+	 * a {@link TermIdDocumentPostingList} are inserted by id, while others are looked up in
+	 * the dictionary.
+	 * @param doc The postinglist for that document
+	 */
+	@Override
+	public void insert(DocumentPostingList doc)
+	{
+		if (doc instanceof TermIdDocumentPostingList && ((TermIdDocumentPostingList)doc).getDictionary() == dictionary)
+		{
+			((TermIdDocumentPostingList)doc).forEachTermId(new TIntIntProcedure() {
+				public boolean execute(final int termId, final int tf)
+				{
+					insertTermId(termId, tf);
+					return true;
+				}
+			});
+		}
+		else
+		{
+			doc.forEachTerm(new TObjectIntProcedure<String>() {
+				public boolean execute(final String t, final int tf)
+				{
+					insertTermId(dictionary.getId(t), tf);
+					return true;
+				}
+			});
+		}
+	}
+	
+	/** Returns the ids of the terms in this map, paired with their Strings, sorted by String.
+	 * @return the ids of the terms, in the order of their Strings, which are written to terms[0] */
+	protected int[] sortedTermIds(String[][] terms)
+	{
+		final int[] termIds = termIdTfs.keys();
+		final String[] strings = new String[termIds.length];
+		for(int i=0;i<termIds.length;i++)
+			strings[i] = dictionary.getTerm(termIds[i]);
+		MultiSort.ascendingHeapSort(strings, termIds);
+		terms[0] = strings;
+		return termIds;
+	}
+	
+	/** Stores the lexicon map to a lexicon stream as a sequence of entries, in the order of the terms.
+	  * The term ids are those of the dictionary, and termCodes is not used.
+	  * @param lexiconStream The lexicon output stream to store to. */
+	@Override
+	public void storeToStream(LexiconOutputStream<String> lexiconStream, TermCodes termCodes) throws IOException
+	{
+		final String[][] terms = new String[1][];
+		final int[] termIds = sortedTermIds(terms);
+		BasicLexiconEntry le = new BasicLexiconEntry();
+		for (int i=0;i<termIds.length;i++)
+		{
+			final int termId = termIds[i];
+			le.setTermId(termId);
+			le.setStatistics(termIdNts.get(termId), termIdTfs.get(termId));
+			le.setMaxFrequencyInDocuments(termIdMaxtfs.get(termId));
+			lexiconStream.writeNextEntry(terms[0][i], le);
+		}
+	}
+	
+	@Override
+	public int getNumberOfNodes() {
+		return termIdTfs.size();
+	}
+}
@@ -41,19 +41,30 @@ import org.terrier.structures.FieldDocumentIndexEntry;
 import org.terrier.structures.FieldLexiconEntry;
 import org.terrier.structures.IndexOnDisk;
 import org.terrier.structures.Index;
+import org.terrier.structures.IndexUtil;
+import org.terrier.structures.TermMaxScores;
+import org.terrier.structures.bit.BitPostingIndexSkips;
 import org.terrier.structures.indexing.CompressionFactory;
 import org.terrier.structures.indexing.DocumentIndexBuilder;
 import org.terrier.structures.indexing.DocumentPostingList;
 import org.terrier.structures.indexing.FieldDocumentPostingList;
 import org.terrier.structures.indexing.FieldLexiconMap;
 import org.terrier.structures.indexing.Indexer;
+import org.terrier.structures.indexing.IndexingPipeline;
 import org.terrier.structures.indexing.LexiconBuilder;
 import org.terrier.structures.indexing.LexiconMap;
+import org.terrier.structures.indexing.TermIdDocumentPostingList;
+import org.terrier.structures.indexing.TermIdFieldDocumentPostingList;
+import org.terrier.structures.indexing.TermIdFieldLexiconMap;
+import org.terrier.structures.indexing.TermIdLexiconMap;
 import org.terrier.structures.indexing.CompressionFactory.CompressionConfiguration;
+import org.terrier.terms.TermBuffer;
 import org.terrier.terms.TermPipeline;
 import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.ConcurrentTermDictionary;
 import org.terrier.utility.FieldScore;
 import org.terrier.utility.TermCodes;
+import org.terrier.utility.TermDictionary;
 /** 
  * BasicIndexer is the default indexer for Terrier. It takes 
  * terms from each Document object provided by the collection, and 
@@ -65,6 +76,18 @@ import org.terrier.utility.TermCodes;
  * <b>Properties:</b>
  * <ul>
  * <li><tt>indexing.max.encoded.documentindex.docs</tt> - how many docs before the DocumentIndexEncoded is dropped in favour of the DocumentIndex (on disk implementation).
+ * <li><tt>indexer.pipeline.threads</tt> - if greater than 0, documents are indexed using an {@link IndexingPipeline}: 
+ * one thread reads the collection, this many threads apply the term pipeline, and the postings are written in the 
+ * order of the collection. Default is 0, where one thread does all of these.</li>
+ * <li><tt>indexer.pipeline.capacity</tt> - maximum number of documents read but not yet written when using 
+ * the <tt>indexer.pipeline.threads</tt> property. Default is 1000.</li>
+ * <li><tt>indexer.char.terms</tt> - if true, terms are read from documents into a reusable {@link TermBuffer} and passed 
+ * through the term pipeline as such, so that tokenisers and term pipeline objects supporting buffers (e.g. 
+ * {@link org.terrier.indexing.tokenisation.EnglishTokeniser}, {@link org.terrier.terms.Stopwords}, 
+ * {@link org.terrier.terms.PorterStemmer}) do not create a String for each token. Default is false.</li>
+ * <li><tt>indexer.termids</tt> - if true, the terms of documents are recorded by their ids in a {@link ConcurrentTermDictionary} 
+ * shared by all threads of the indexer, using {@link TermIdDocumentPostingList} and {@link TermIdLexiconMap}, rather than 
+ * by String. Default is false.</li>
  * <li><i>See Also: Properties in </i><a href="Indexer.html">org.terrier.indexing.Indexer</a> <i>and</i> <a href="BlockIndexer.html">org.terrier.indexing.BlockIndexer</a></li>
  * </ul>
  * @author Craig Macdonald &amp; Vassilis Plachouras
@@ -93,6 +116,12 @@ public class BasicIndexer extends Indexer
 			}
 		}
 		
+		@Override
+		public void processTerm(TermBuffer term)
+		{
+			processTerm(internTerm(termDictionary, term));
+		}
+		
 		public boolean reset() {
 			return true;
 		}
@@ -112,22 +141,192 @@ public class BasicIndexer extends Indexer
 			if (term != null)
 			{
 				/* add term to Document tree */
-				for (String fieldName: termFields)
+				((FieldDocumentPostingList)termsInDocument).insert(term,getFieldIds(termFields));
+				numOfTokensInDocument++;
+			}
+		}
+		
+		/** Returns the ids of the specified fields of a term, or the id of the ELSE field 
+		 * if the term is in none of the indexed fields. 
+		 * @since 5.4
+		 */
+		protected int[] getFieldIds(Set<String> termFields)
+		{
+			for (String fieldName: termFields)
+			{
+				int tmp = fieldNames.get(fieldName);
+				if (tmp > 0)
 				{
-					int tmp = fieldNames.get(fieldName);
-					if (tmp > 0)
-					{
-						fields.add(tmp -1);
-					}
+					fields.add(tmp -1);
 				}
-				if (ELSE_ENABLED && fields.size() == 0)
+			}
+			if (ELSE_ENABLED && fields.size() == 0)
+			{
+				fields.add(ELSE_FIELD_ID);
+			}
+			final int[] ids = fields.toArray();
+			fields.clear();
+			return ids;
+		}
+		
+		@Override
+		public void processTerm(TermBuffer term)
+		{
+			processTerm(internTerm(termDictionary, term));
+		}
+		
+		public boolean reset() {
+			return true;
+		}
+	}
+	
+	/** This class implements an end of a TermPipeline that adds the
+	 * id of the term to a {@link TermIdDocumentPostingList}. This TermProcessor does NOT have field
+	 * support.
+	 * @since 5.4
+	 */
+	protected class TermIdTermProcessor implements TermPipeline
+	{
+		public void processTerm(String term)
+		{
+			/* null means the term has been filtered out (eg stopwords) */
+			if (term != null)
+			{
+				((TermIdDocumentPostingList)termsInDocument).insertTermId(termIdCache.getId(term));
+				numOfTokensInDocument++;
+			}
+		}
+		
+		@Override
+		public void processTerm(TermBuffer term)
+		{
+			if (term != null)
+			{
+				((TermIdDocumentPostingList)termsInDocument).insertTermId(termIdCache.getId(term));
+				numOfTokensInDocument++;
+			}
+		}
+		
+		public boolean reset() {
+			return true;
+		}
+	}
+	
+	/** This class implements an end of a TermPipeline that adds the
+	 * id of the term to a {@link TermIdFieldDocumentPostingList}. This TermProcessor does have field
+	 * support.
+	 * @since 5.4
+	 */
+	protected class TermIdFieldTermProcessor extends FieldTermProcessor
+	{
+		@Override
+		public void processTerm(String term)
+		{
+			/* null means the term has been filtered out (eg stopwords) */
+			if (term != null)
+			{
+				((TermIdFieldDocumentPostingList)termsInDocument).insertTermId(termIdCache.getId(term),getFieldIds(termFields));
+				numOfTokensInDocument++;
+			}
+		}
+		
+		@Override
+		public void processTerm(TermBuffer term)
+		{
+			if (term != null)
+			{
+				((TermIdFieldDocumentPostingList)termsInDocument).insertTermId(termIdCache.getId(term),getFieldIds(termFields));
+				numOfTokensInDocument++;
+			}
+		}
+	}
+	
+	/** Processes the terms of documents for an {@link IndexingPipeline}. Each has its own term pipeline,
+	 * ending with itself, such that many threads can process documents at once. As for 
+	 * BasicTermProcessor and FieldTermProcessor, terms are added to the postings of the document,
+	 * using the field ids of {@link FieldTermProcessor#getFieldIds(Set)}.
+	 * @since 5.4
+	 */
+	protected class PipelineDocumentProcessor implements TermPipeline, IndexingPipeline.DocumentProcessor
+	{
+		final TermPipeline first = createPipeline(this);
+		final boolean FIELDS = FieldScore.FIELDS_COUNT > 0;
+		/* maps the fields of each term to their ids, as for the end of the term pipeline of the indexer */
+		final FieldTermProcessor fieldIds = FIELDS ? new FieldTermProcessor() : null;
+		final TermBuffer buffer = CHAR_TERMS ? new TermBuffer() : null;
+		final TermDictionary dictionary = CHAR_TERMS ? new TermDictionary() : null;
+		final ConcurrentTermDictionary.Cache termIds = TERMIDS ? termIdDictionary.newCache() : null;
+		DocumentPostingList postings;
+		Set<String> currentFields;
+		int numOfTokens;
+		
+		public IndexingPipeline.ProcessedDocument process(IndexingPipeline.RawDocument doc)
+		{
+			if (TERMIDS)
+				postings = FIELDS
+					? new TermIdFieldDocumentPostingList(termIdDictionary, FieldScore.FIELDS_COUNT)
+					: new TermIdDocumentPostingList(termIdDictionary);
+			else
+				postings = FIELDS
+					? new FieldDocumentPostingList(FieldScore.FIELDS_COUNT)
+					: new DocumentPostingList();
+			numOfTokens = 0;
+			final String[] terms = doc.terms;
+			for(int i=0;i<terms.length;i++)
+			{
+				if (doc.fields != null)
+					currentFields = doc.fields[i];
+				if (CHAR_TERMS)
 				{
-					fields.add(ELSE_FIELD_ID);
+					buffer.set(terms[i]);
+					first.processTerm(buffer);
 				}
-				((FieldDocumentPostingList)termsInDocument).insert(term,fields.toArray());
-				numOfTokensInDocument++;
-				fields.clear();
+				else
+					first.processTerm(terms[i]);
+				if (MAX_TOKENS_IN_DOCUMENT > 0 && 
+						numOfTokens > MAX_TOKENS_IN_DOCUMENT)
+						break;
 			}
+			first.reset();
+			return new IndexingPipeline.ProcessedDocument(doc.properties, postings, numOfTokens);
+		}
+		
+		public void processTerm(String term)
+		{
+			/* null means the term has been filtered out (eg stopwords) */
+			if (term == null)
+				return;
+			if (TERMIDS)
+			{
+				insertTermId(termIds.getId(term));
+				return;
+			}
+			if (FIELDS)
+				((FieldDocumentPostingList)postings).insert(term,fieldIds.getFieldIds(currentFields));
+			else
+				postings.insert(term);
+			numOfTokens++;
+		}
+		
+		@Override
+		public void processTerm(TermBuffer term)
+		{
+			if (TERMIDS)
+			{
+				if (term != null)
+					insertTermId(termIds.getId(term));
+				return;
+			}
+			processTerm(internTerm(dictionary, term));
+		}
+		
+		void insertTermId(int termId)
+		{
+			if (FIELDS)
+				((TermIdFieldDocumentPostingList)postings).insertTermId(termId,fieldIds.getFieldIds(currentFields));
+			else
+				((TermIdDocumentPostingList)postings).insertTermId(termId);
+			numOfTokens++;
 		}
 		
 		public boolean reset() {
@@ -161,6 +360,33 @@ public class BasicIndexer extends Indexer
 	/** The compression configuration for the inverted index */
 	protected CompressionConfiguration compressionInvertedConfig;
 	
+	/** number of threads applying the term pipeline, or 0 if documents are indexed without an {@link IndexingPipeline} */
+	protected int PIPELINE_THREADS = Integer.parseInt(ApplicationSetup.getProperty("indexer.pipeline.threads", "0"));
+	
+	/** maximum number of documents read but not yet written by an {@link IndexingPipeline} */
+	protected int PIPELINE_CAPACITY = Integer.parseInt(ApplicationSetup.getProperty("indexer.pipeline.capacity", "1000"));
+	
+	/** whether terms are passed through the term pipeline in a {@link TermBuffer}, rather than as Strings */
+	protected boolean CHAR_TERMS = Boolean.parseBoolean(ApplicationSetup.getProperty("indexer.char.terms", "false"));
+	
+	/** maximum number of terms interned by a {@link TermDictionary} before it is cleared */
+	protected static final int MAX_INTERNED_TERMS = 1 << 20;
+	
+	/** the buffer that terms are read into when <tt>indexer.char.terms</tt> is set */
+	protected final TermBuffer termBuffer = new TermBuffer();
+	
+	/** the Strings of the terms that reach the end of the term pipeline in {@link #termBuffer} */
+	protected final TermDictionary termDictionary = new TermDictionary();
+	
+	/** whether the terms of documents are recorded by their ids in {@link #termIdDictionary}, rather than as Strings */
+	protected boolean TERMIDS = Boolean.parseBoolean(ApplicationSetup.getProperty("indexer.termids", "false"));
+	
+	/** assigns the ids of terms when <tt>indexer.termids</tt> is set. Shared by all threads of this indexer. */
+	protected final ConcurrentTermDictionary termIdDictionary = new ConcurrentTermDictionary();
+	
+	/** the ids of the terms seen by the thread that calls the end of {@link #pipeline_first} */
+	protected final ConcurrentTermDictionary.Cache termIdCache = termIdDictionary.newCache();
+	
 	/** Protected do-nothing constructor for use by child classes. Classes which
 	  * use this method must call init() */
 	protected BasicIndexer(long a, long b, long c) {
@@ -186,19 +412,134 @@ public class BasicIndexer extends Indexer
 
 	
 
+	/**
+	 * Returns the String of a term in a buffer, which is created only the first time the
+	 * term is seen. The dictionary is cleared once it holds too many terms, to bound its memory.
+	 * @since 5.4
+	 */
+	protected static String internTerm(TermDictionary dictionary, TermBuffer term)
+	{
+		if (dictionary.size() >= MAX_INTERNED_TERMS)
+			dictionary.clear();
+		return dictionary.intern(term);
+	}
+	
+	/**
+	 * Reads the next term of a document and passes it into the term pipeline, recording its fields
+	 * in {@link #termFields}. Terms are read into {@link #termBuffer} if <tt>indexer.char.terms</tt> is set.
+	 * @param doc the document being indexed
+	 * @since 5.4
+	 */
+	protected void processNextTerm(Document doc)
+	{
+		if (CHAR_TERMS)
+		{
+			if (doc.getNextTerm(termBuffer))
+			{
+				termFields = doc.getFields();
+				pipeline_first.processTerm(termBuffer);
+			}
+			return;
+		}
+		final String term = doc.getNextTerm();
+		if (term != null && !term.equals(""))
+		{
+			termFields = doc.getFields();
+			/* pass term into TermPipeline (stop, stem etc) */
+			pipeline_first.processTerm(term);
+			/* the term pipeline will eventually add the term to this object. */
+		}
+	}
+	
 	/** 
 	 * Returns the end of the term pipeline, which corresponds to 
 	 * an instance of either BasicIndexer.BasicTermProcessor, or 
 	 * BasicIndexer.FieldTermProcessor, depending on whether 
-	 * field information is stored.
+	 * field information is stored, or of their TermId counterparts 
+	 * if <tt>indexer.termids</tt> is set.
 	 * @return TermPipeline the end of the term pipeline.
 	 */
 	protected TermPipeline getEndOfPipeline()
 	{
+		if (TERMIDS)
+			return FieldScore.USE_FIELD_INFORMATION
+				? new TermIdFieldTermProcessor()
+				: new TermIdTermProcessor();
 		if(FieldScore.USE_FIELD_INFORMATION)
 			return new FieldTermProcessor();
 		return new BasicTermProcessor();
 	}
+	
+	/** 
+	 * Returns true if documents should be indexed using an {@link IndexingPipeline}, 
+	 * i.e. if the <tt>indexer.pipeline.threads</tt> property is set. Indexers whose 
+	 * end of the term pipeline records more than {@link PipelineDocumentProcessor} 
+	 * should return false.
+	 * @since 5.4
+	 */
+	protected boolean usePipelinedIngestion()
+	{
+		return PIPELINE_THREADS > 0;
+	}
+	
+	/**
+	 * Creates an object that processes the terms of documents using a term pipeline of its own.
+	 * Each thread indexing documents at once should use a different one.
+	 * @since 5.4
+	 */
+	protected IndexingPipeline.DocumentProcessor createDocumentProcessor()
+	{
+		return new PipelineDocumentProcessor();
+	}
+	
+	/**
+	 * Starts reading and processing the documents of a collection using an {@link IndexingPipeline}.
+	 * @param collection the collection to index
+	 * @param indexedDocuments the number of documents already in the current index, 
+	 * which counts towards <tt>indexing.max.docs.per.builder</tt>
+	 * @since 5.4
+	 */
+	protected IndexingPipeline createIndexingPipeline(Collection collection, int indexedDocuments)
+	{
+		return new IndexingPipeline(collection, this::createDocumentProcessor, PIPELINE_THREADS, PIPELINE_CAPACITY,
+			FieldScore.FIELDS_COUNT > 0, 
+			MAX_DOCS_PER_BUILDER > 0 ? Math.max(1, MAX_DOCS_PER_BUILDER - indexedDocuments) : 0, 
+			BUILDER_BOUNDARY_DOCUMENTS);
+	}
+	
+	/**
+	 * Indexes the documents of an {@link IndexingPipeline} as they are processed, until the
+	 * pipeline reaches a builder boundary or the end of its collection.
+	 * @param pipeline the pipeline processing the documents
+	 * @return the number of tokens indexed
+	 * @since 5.4
+	 */
+	protected long indexPipelined(IndexingPipeline pipeline)
+	{
+		long tokens = 0;
+		IndexingPipeline.ProcessedDocument processed;
+		while ((processed = pipeline.next()) != null)
+		{
+			try
+			{
+				if (processed.postings.getDocumentLength() == 0)
+				{	/* this document is empty, add the minimum to the document index */
+					indexEmpty(processed.properties);
+				}
+				else
+				{	/* index this document */
+					tokens += processed.numberOfTokens;
+					indexDocument(processed.properties, processed.postings);
+				}
+			}
+			catch (Exception ioe)
+			{
+				logger.error("Failed to index "+processed.properties.get("docno"),ioe);
+				throw new RuntimeException(ioe);
+			}
+		}
+		return tokens;
+	}
 		
 	/** 
 	 * Creates the direct index, the document index and the lexicon.
@@ -214,10 +555,12 @@ public class BasicIndexer extends Indexer
 		final boolean FIELDS = FieldScore.FIELDS_COUNT > 0;
 		lexiconBuilder = FIELDS
 			? new LexiconBuilder(currentIndex, "lexicon", 
-					new FieldLexiconMap(FieldScore.FIELDS_COUNT), 
+					TERMIDS ? new TermIdFieldLexiconMap(termIdDictionary, FieldScore.FIELDS_COUNT) : new FieldLexiconMap(FieldScore.FIELDS_COUNT), 
 					FieldLexiconEntry.class.getName(), "java.lang.String", "\""+ FieldScore.FIELDS_COUNT + "\"",
 					termCodes)
-			: new LexiconBuilder(currentIndex, "lexicon", new LexiconMap(), BasicLexiconEntry.class.getName(), termCodes);
+			: new LexiconBuilder(currentIndex, "lexicon", 
+					TERMIDS ? new TermIdLexiconMap(termIdDictionary) : new LexiconMap(), 
+					BasicLexiconEntry.class.getName(), termCodes);
 		
 		try{
 			directIndexBuilder = compressionDirectConfig.getPostingOutputStream(
@@ -241,8 +584,19 @@ public class BasicIndexer extends Indexer
 			final Collection collection = collections[collectionNo];
 			long startCollection = System.currentTimeMillis();
 			boolean notLastDoc = false;
+			final boolean pipelined = usePipelinedIngestion();
+			if (pipelined)
+			{
+				try(IndexingPipeline pipeline = createIndexingPipeline(collection, numberOfDocuments))
+				{
+					numberOfTokens += indexPipelined(pipeline);
+					numberOfDocuments += pipeline.getNumberOfDocuments();
+					//the pipeline stops at builder boundaries, leaving the rest of the collection
+					notLastDoc = stopIndexing = ! pipeline.endOfCollection();
+				}
+			}
 			//while(notLastDoc = collection.hasNext()) {
-			while ((notLastDoc = collection.nextDocument())) {
+			while (! pipelined && (notLastDoc = collection.nextDocument())) {
 				//get the next document from the collection
 
 				Document doc = collection.getDocument();
@@ -253,17 +607,11 @@ public class BasicIndexer extends Indexer
 				numberOfDocuments++; 
 				/* setup for parsing */
 				createDocumentPostings();
-				String term; //term we're currently processing
 				numOfTokensInDocument = 0;
 	
 				//get each term in the document
 				while (!doc.endOfDocument()) {
-					if ((term = doc.getNextTerm())!=null && !term.equals("")) {
-						termFields = doc.getFields();
-						/* pass term into TermPipeline (stop, stem etc) */
-						pipeline_first.processTerm(term);
-						/* the term pipeline will eventually add the term to this object. */
-					}
+					processNextTerm(doc);
 					if (MAX_TOKENS_IN_DOCUMENT > 0 && 
 							numOfTokensInDocument > MAX_TOKENS_IN_DOCUMENT)
 							break;
@@ -358,6 +706,7 @@ public class BasicIndexer extends Indexer
 		}
 		/* reset the in-memory mapping of terms to term codes.*/
 		termCodes.reset();
+		termIdDictionary.clear();
 		/* and clear them out of memory */
 		System.gc();
 		/* record the fact that these data structures are complete */
@@ -444,7 +793,11 @@ public class BasicIndexer extends Indexer
 	 * Hook method that creates the right type of DocumentTree class.
 	 */
 	protected void createDocumentPostings(){
-		if (FieldScore.FIELDS_COUNT > 0)
+		if (TERMIDS)
+			termsInDocument = FieldScore.FIELDS_COUNT > 0
+				? new TermIdFieldDocumentPostingList(termIdDictionary, FieldScore.FIELDS_COUNT)
+				: new TermIdDocumentPostingList(termIdDictionary);
+		else if (FieldScore.FIELDS_COUNT > 0)
 			termsInDocument = new FieldDocumentPostingList(FieldScore.FIELDS_COUNT);
 		else
 			termsInDocument = new DocumentPostingList();		
@@ -459,6 +812,22 @@ public class BasicIndexer extends Indexer
 			} catch (IOException ioe) {
 				logger.warn("Problem closing inverted index builder", ioe);
 			}
-		LexiconBuilder.optimise(currentIndex, "lexicon");		
+		LexiconBuilder.optimise(currentIndex, "lexicon");
+		try{
+			if (BitPostingIndexSkips.createIfEnabled(currentIndex, "inverted", 0))
+				currentIndex.flush();
+		} catch (IOException ioe) {
+			logger.warn("Problem creating skips for inverted index", ioe);
+		}
+		final String[] maxScoreModels = TermMaxScores.getModels(new String[0]);
+		if (maxScoreModels.length > 0)
+		try{
+			//the inverted index builder has closed the index, reopen it to obtain its statistics
+			currentIndex = IndexUtil.reOpenIndex(currentIndex);
+			TermMaxScores.create(currentIndex, TermMaxScores.STRUCTURE_NAME, maxScoreModels);
+			currentIndex.flush();
+		} catch (IOException ioe) {
+			logger.warn("Problem recording maximum scores for inverted index", ioe);
+		}
 	}
 }
@@ -43,6 +43,9 @@ import org.terrier.structures.FieldDocumentIndexEntry;
 import org.terrier.structures.FieldLexiconEntry;
 import org.terrier.structures.Index;
 import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.IndexUtil;
+import org.terrier.structures.TermMaxScores;
+import org.terrier.structures.bit.BitPostingIndexSkips;
 import org.terrier.structures.indexing.BlockDocumentPostingList;
 import org.terrier.structures.indexing.BlockFieldDocumentPostingList;
 import org.terrier.structures.indexing.CompressionFactory;
@@ -566,6 +569,22 @@ public class BlockIndexer extends Indexer {
 				logger.warn("Problem closing inverted index builder", ioe);
 			}
 		LexiconBuilder.optimise(currentIndex, "lexicon");
+		try{
+			if (BitPostingIndexSkips.createIfEnabled(currentIndex, "inverted", 0))
+				currentIndex.flush();
+		} catch (IOException ioe) {
+			logger.warn("Problem creating skips for inverted index", ioe);
+		}
+		final String[] maxScoreModels = TermMaxScores.getModels(new String[0]);
+		if (maxScoreModels.length > 0)
+		try{
+			//the inverted index builder has closed the index, reopen it to obtain its statistics
+			currentIndex = IndexUtil.reOpenIndex(currentIndex);
+			TermMaxScores.create(currentIndex, TermMaxScores.STRUCTURE_NAME, maxScoreModels);
+			currentIndex.flush();
+		} catch (IOException ioe) {
+			logger.warn("Problem recording maximum scores for inverted index", ioe);
+		}
 	}
 
 	
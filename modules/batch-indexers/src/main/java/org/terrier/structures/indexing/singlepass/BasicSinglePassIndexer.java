@@ -47,6 +47,7 @@ import org.terrier.structures.SimpleDocumentIndexEntry;
 import org.terrier.structures.indexing.CompressionFactory.BitCompressionConfiguration;
 import org.terrier.structures.indexing.DocumentIndexBuilder;
 import org.terrier.structures.indexing.DocumentPostingList;
+import org.terrier.structures.indexing.IndexingPipeline;
 import org.terrier.structures.indexing.classical.BasicIndexer;
 import org.terrier.structures.postings.bit.BasicIterablePosting;
 import org.terrier.structures.postings.bit.FieldIterablePosting;
@@ -79,6 +80,8 @@ import org.terrier.utility.UnitUtils;
  * <li><tt>indexing.singlepass.max.postings.memory</tt> - maximum amount of memory that the postings can consume before a run is committed. Default is 0, which is no limit.</li>
  * <li><tt>indexing.singlepass.max.documents.flush</tt> - maximum number of documents before a run is committed. Default is 0, which is no limit.</li>
  * <li><tt>docs.check</tt> - interval of how many documents indexed should the amount of free memory be checked. Default is 20 - check memory consumption every 20 documents.</li>
+ * <li><tt>indexing.singlepass.merge.threads</tt> - number of threads merging the runs, each merging a range of the terms. Default is 1, which merges the runs in one pass.</li>
+ * <li><tt>indexing.singlepass.merge.buffer.memory</tt> - total size of the buffers for reading runs when merging with more than one thread. Default is 256M.</li>
  * </ul> 
  * @author Roi Blanco
  */
@@ -115,6 +118,8 @@ public class BasicSinglePassIndexer extends BasicIndexer{
 	protected MemoryPostings mp;
 	/** Structure for merging the run */
 	protected RunsMerger merger;
+	/** Number of threads merging the runs */
+	protected int mergeThreads = 1;
 
 	/** Number of documents indexed */
 	protected int numberOfDocuments = 0;
@@ -198,7 +203,17 @@ public class BasicSinglePassIndexer extends BasicIndexer{
 		{
 			Collection collection = collections[collectionNo];
 			startCollection = System.currentTimeMillis();
-			while(collection.nextDocument())
+			final boolean pipelined = usePipelinedIngestion();
+			if (pipelined)
+			{
+				try(IndexingPipeline pipeline = createIndexingPipeline(collection, numberOfDocuments))
+				{
+					numberOfTokens += indexPipelined(pipeline);
+					//the pipeline stops at builder boundaries, leaving the rest of the collection
+					stopIndexing = ! pipeline.endOfCollection();
+				}
+			}
+			while(! pipelined && collection.nextDocument())
 			//while(collection.hasNext())
 			{
 				/* get the next document from the collection */
@@ -210,17 +225,10 @@ public class BasicSinglePassIndexer extends BasicIndexer{
 				/* setup for parsing */
 				createDocumentPostings();
 
-				String term; //term we're currently processing
 				numOfTokensInDocument = 0;
 				//get each term in the document
 				while (!doc.endOfDocument()) {
-
-					if ((term = doc.getNextTerm())!=null && !term.equals("")) {
-						termFields = doc.getFields();
-						/* pass term into TermPipeline (stop, stem etc) */
-						pipeline_first.processTerm(term);
-						/* the term pipeline will eventually add the term to this object. */
-					}
+					processNextTerm(doc);
 					if (MAX_TOKENS_IN_DOCUMENT > 0 &&
 							numOfTokensInDocument > MAX_TOKENS_IN_DOCUMENT)
 						break;
@@ -308,6 +316,8 @@ public class BasicSinglePassIndexer extends BasicIndexer{
 				logger.error("Problem finishing index", e);
 			}
 		}
+		/* the runs record terms as Strings, so the ids of terms are no longer needed */
+		termIdDictionary.clear();
 		finishedInvertedIndexBuild();
 	}
 
@@ -471,7 +481,7 @@ public class BasicSinglePassIndexer extends BasicIndexer{
 	 * @throws IOException if an I/O error occurs.
 	 */
 	protected void createFieldRunMerger(String[][] files) throws Exception{
-		merger = new RunsMerger(new FileRunIteratorFactory(files, FieldPostingInRun.class, super.numFields));
+		merger = createMerger(new FileRunIteratorFactory(files, FieldPostingInRun.class, super.numFields));
 	}
 
 
@@ -480,15 +490,66 @@ public class BasicSinglePassIndexer extends BasicIndexer{
 	 * @throws IOException if an I/O error occurs.
 	 */
 	protected void createRunMerger(String[][] files) throws Exception{
-		merger = new RunsMerger(new FileRunIteratorFactory(files, 
+		merger = createMerger(new FileRunIteratorFactory(files, 
 				useFieldInformation ? FieldPostingInRun.class : SimplePostingInRun.class, 0));
 	}
 
+	/**
+	 * {@inheritDoc}. Empty documents are counted unless <tt>ignore.empty.documents</tt> is set.
+	 */
+	@Override
+	protected long indexPipelined(IndexingPipeline pipeline)
+	{
+		long tokens = 0;
+		IndexingPipeline.ProcessedDocument processed;
+		while ((processed = pipeline.next()) != null)
+		{
+			try
+			{
+				if (processed.postings.getDocumentLength() == 0)
+				{	/* this document is empty, add the minimum to the document index */
+					indexEmpty(processed.properties);
+					if (IndexEmptyDocuments)
+					{
+						currentId++;
+						numberOfDocuments++;
+					}
+				}
+				else
+				{	/* index this document */
+					tokens += processed.numberOfTokens;
+					indexDocument(processed.properties, processed.postings);
+				}
+			}
+			catch (Exception ioe)
+			{
+				logger.error("Failed to index "+processed.properties.get("docno"),ioe);
+				throw new RuntimeException(ioe);
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Creates the merger of the runs of the specified factory, which merges ranges of
+	 * the terms in parallel if <tt>indexing.singlepass.merge.threads</tt> is more than 1.
+	 */
+	protected RunsMerger createMerger(FileRunIteratorFactory runs)
+	{
+		return mergeThreads > 1
+			? new ParallelRunsMerger(runs, mergeThreads)
+			: new RunsMerger(runs);
+	}
+
 	/**
 	 * Hook method that creates the right type of MemoryPostings class.
 	 */
 	protected void createMemoryPostings(){
-		if (useFieldInformation)
+		if (TERMIDS)
+			mp = useFieldInformation
+				? new TermIdFieldsMemoryPostings(termIdDictionary)
+				: new TermIdMemoryPostings(termIdDictionary);
+		else if (useFieldInformation)
 			mp = new FieldsMemoryPostings();
 		else
 			mp = new MemoryPostings();
@@ -499,6 +560,7 @@ public class BasicSinglePassIndexer extends BasicIndexer{
 		super.load_indexer_properties();
 		docsPerCheck = ApplicationSetup.DOCS_CHECK_SINGLEPASS;
 		maxDocsPerFlush = Integer.parseInt(ApplicationSetup.getProperty("indexing.singlepass.max.documents.flush", "0"));
+		mergeThreads = Integer.parseInt(ApplicationSetup.getProperty("indexing.singlepass.merge.threads", "1"));
 		memoryCheck = new RuntimeMemoryChecker();
 		logger.info("Checking memory usage every " + docsPerCheck + " maxDocPerFlush=" + maxDocsPerFlush);
 	}
@@ -273,11 +273,11 @@ public class BlockSinglePassIndexer extends BasicSinglePassIndexer{
 	}
 	
 	protected void createFieldRunMerger(String[][] files) throws IOException{
-		merger = new RunsMerger(new FileRunIteratorFactory(files, BlockFieldPostingInRun.class, super.numFields));
+		merger = createMerger(new FileRunIteratorFactory(files, BlockFieldPostingInRun.class, super.numFields));
 	}
 	
 	protected void createRunMerger(String[][] files) throws Exception{
-		merger = new RunsMerger(new FileRunIteratorFactory(files, BlockPostingInRun.class, 0));
+		merger = createMerger(new FileRunIteratorFactory(files, BlockPostingInRun.class, 0));
 	}
 	
 	protected void createMemoryPostings(){
@@ -296,6 +296,15 @@ public class BlockSinglePassIndexer extends BasicSinglePassIndexer{
 		blockId = 0;
 		numOfTokensInBlock = 0;
 	}
+	
+	/** Blocks are recorded by the end of the term pipeline of this indexer, so documents are
+	 * not indexed using an IndexingPipeline.
+	 * @since 5.4
+	 */
+	@Override
+	protected boolean usePipelinedIngestion() {
+		return false;
+	}
 
 	public void performMultiWayMerge() throws IOException {
 		super.performMultiWayMerge();
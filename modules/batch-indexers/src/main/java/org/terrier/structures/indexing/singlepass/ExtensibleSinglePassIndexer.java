@@ -76,7 +76,7 @@ public abstract class ExtensibleSinglePassIndexer extends BasicSinglePassIndexer
 	@Override
 	protected void createRunMerger(String[][] files) throws Exception{
 		//modified to use getPostingInRunClass()
-		merger = new RunsMerger(new FileRunIteratorFactory(files, getPostingInRunClass(), 0));
+		merger = createMerger(new FileRunIteratorFactory(files, getPostingInRunClass(), 0));
 	}
 
 	/** {@inheritDoc} */
@@ -26,8 +26,11 @@
  */
 package org.terrier.structures.indexing.singlepass;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.terrier.compression.bit.BitIn;
 import org.terrier.compression.bit.BitInputStream;
@@ -70,6 +73,57 @@ class FileRunIterator<K extends PostingInRun> extends RunIterator {
 		currentPosting = 0;
 	}
 
+	/** Load the range of terms [startTerm, endTerm) of a run from files, reading the files in large blocks.
+	  * @param filename the filename of the file containing the posting lists
+	  * @param termsFile the filename of the file containing the term names
+	  * @param runNo the number of this run
+	  * @param _postingInRunClass the class that all postings in this class have
+	  * @param fieldCount the number of fields
+	  * @param startTerm the index of the first term to read
+	  * @param endTerm the index after the last term to read
+	  * @param termsOffset the offset of startTerm in termsFile
+	  * @param runOffset the offset of the postings of startTerm in filename, as recorded by the {@link RunWriter}
+	  * @param bufferSize the size of the buffer used to read each file
+	  */
+	public FileRunIterator(String filename, String termsFile, int runNo, Class<? extends PostingInRun> _postingInRunClass, int fieldCount,
+			int startTerm, int endTerm, long termsOffset, long runOffset, int bufferSize) throws Exception{
+		super(_postingInRunClass, runNo, fieldCount);
+		final InputStream runStream = new BufferedInputStream(Files.openFileStream(filename), bufferSize);
+		if (startTerm > 0)
+		{
+			if (runOffset < 0)
+				throw new IOException("Run " + filename + " does not record the offsets of its terms");
+			skipFully(runStream, runOffset);
+		}
+		mbis = new BitInputStream(runStream);
+		if (startTerm == 0)
+		{
+			maxSize = mbis.readGamma();
+			mbis.readGamma();
+		}
+		stringDIS = new DataInputStream(new BufferedInputStream(Files.openFileStream(termsFile), bufferSize));
+		skipFully(stringDIS, termsOffset);
+		size = endTerm;
+		createPosting();
+		currentPosting = startTerm;
+	}
+
+	static void skipFully(InputStream in, long n) throws IOException
+	{
+		while (n > 0)
+		{
+			final long skipped = in.skip(n);
+			if (skipped <= 0)
+			{
+				if (in.read() == -1)
+					throw new EOFException();
+				n--;
+			}
+			else
+				n -= skipped;
+		}
+	}
+
 	/** Closes the run files being processed */	
 	@Override
 	public void close() throws IOException
@@ -120,7 +174,10 @@ class FileRunIterator<K extends PostingInRun> extends RunIterator {
 	 * @throws IOException if an I/O error occurs.
 	 */
 	public String readString() throws IOException{
-		return stringDIS.readUTF();
+		final String term = stringDIS.readUTF();
+		//the offset of the postings of the term in the run
+		stringDIS.readLong();
+		return term;
 	}
 
 }
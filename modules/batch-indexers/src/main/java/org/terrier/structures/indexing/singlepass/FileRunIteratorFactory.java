@@ -32,6 +32,8 @@ class FileRunIteratorFactory extends RunIteratorFactory {
 	Class <? extends PostingInRun> postingClass;
 	/** all the run filesnames */
 	String[][] files;
+	/** amount added to the docids of each run, or null */
+	int[] docidShifts;
 	/**
 	 * constructor
 	 * @param _files
@@ -45,10 +47,26 @@ class FileRunIteratorFactory extends RunIteratorFactory {
 		postingClass = _postingClass;
 	}
 	
+	/**
+	 * constructor, for runs whose docids are shifted when merged
+	 * @param _files
+	 * @param _postingClass
+	 * @param numFields
+	 * @param _docidShifts amount added to the docids of each run
+	 */
+	public FileRunIteratorFactory(String[][] _files, Class <? extends PostingInRun> _postingClass, int numFields, int[] _docidShifts)
+	{
+		this(_files, _postingClass, numFields);
+		docidShifts = _docidShifts;
+	}
+	
 	/** Return a RunIterator for the specified runNumber */
 	public RunIterator createRunIterator(int runNumber) throws Exception
 	{
-		return new FileRunIterator<PostingInRun>(files[runNumber][0], files[runNumber][1], runNumber, postingClass, super.numberOfFields);
+		RunIterator run = new FileRunIterator<PostingInRun>(files[runNumber][0], files[runNumber][1], runNumber, postingClass, super.numberOfFields);
+		if (docidShifts != null)
+			run.setDocidShift(docidShifts[runNumber]);
+		return run;
 	}
 
 }
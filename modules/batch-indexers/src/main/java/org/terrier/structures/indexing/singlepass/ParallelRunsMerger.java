@@ -0,0 +1,463 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is ParallelRunsMerger.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald (craigm{at}dcs.gla.ac.uk)
+ */
+package org.terrier.structures.indexing.singlepass;
+
+import gnu.trove.TLongArrayList;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.compression.bit.BitInputStream;
+import org.terrier.structures.BasicLexiconEntry;
+import org.terrier.structures.FieldLexiconEntry;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.LexiconOutputStream;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.Files;
+import org.terrier.utility.UnitUtils;
+
+import com.google.common.io.CountingInputStream;
+
+/**
+ * Merges a set of runs using several threads. The terms are divided into ranges that hold similar amounts of postings,
+ * by sampling the terms of each run at regular offsets. Each range is merged by a {@link RunsMerger} of its own,
+ * which reads only the terms of the range from each run, using the offsets recorded in the terms files by
+ * {@link RunWriter}, and writes a segment of the inverted file and the lexicon entries of the range. The segments are
+ * then concatenated into the inverted file, and {@link #mergeOne(LexiconOutputStream)} writes the lexicon entries of each
+ * range in turn, with their termids and offsets moved to their place in the whole index.
+ * <p>
+ * As many runs are read at once, each run is read with a large buffer, whose size is the total of
+ * <tt>indexing.singlepass.merge.buffer.memory</tt> (default 256M) divided among the runs being read.
+ * If the budget cannot give each run a buffer of 64K, fewer ranges are merged at once. If it cannot even
+ * when one range is merged at a time, smaller buffers are used, down to 4K, below which the budget is
+ * exceeded and a warning is logged.
+ * @since 5.4
+ */
+class ParallelRunsMerger extends RunsMerger {
+
+	static final Logger logger = LoggerFactory.getLogger(ParallelRunsMerger.class);
+	/** number of terms sampled from the runs for each range */
+	static final int SAMPLES_PER_RANGE = 32;
+	/** bounds of the size of the buffer for reading each run */
+	static final int MIN_BUFFER = 64 * 1024;
+	static final int MAX_BUFFER = 8 * 1024 * 1024;
+	/** size of the buffer for reading each run when the budget is too small for MIN_BUFFER */
+	static final int SMALLEST_BUFFER = 4 * 1024;
+
+	/** The position in a run of the first term of a range */
+	static class RunPosition
+	{
+		/** index of the term in the run */
+		final int term;
+		/** offset of the term in the terms file */
+		final long termsOffset;
+		/** offset of the postings of the term in the run file */
+		final long runOffset;
+
+		RunPosition(int _term, long _termsOffset, long _runOffset)
+		{
+			term = _term;
+			termsOffset = _termsOffset;
+			runOffset = _runOffset;
+		}
+	}
+
+	/** Writes the lexicon entries of a range to a temporary file */
+	static class RangeLexiconOutputStream extends LexiconOutputStream<String>
+	{
+		RangeLexiconOutputStream(String filename) throws IOException
+		{
+			lexiconStream = new DataOutputStream(Files.writeFileStream(filename));
+		}
+
+		@Override
+		public int writeNextEntry(String term, LexiconEntry entry) throws IOException
+		{
+			lexiconStream.writeUTF(term);
+			entry.write(lexiconStream);
+			incrementCounters(entry);
+			return 0;
+		}
+	}
+
+	final FileRunIteratorFactory runs;
+	final int threads;
+	final long bufferMemory;
+	/** the temporary lexicon file of each range */
+	String[] lexiconFiles;
+	/** the number of terms of each range */
+	int[] rangeTerms;
+	/** the offset of the segment of each range in the inverted file */
+	long[] segmentOffsets;
+	/** the range whose lexicon entries are being written */
+	int currentRange = -1;
+	/** the number of entries of the current range not yet written */
+	int remainingInRange = 0;
+	DataInputStream currentLexicon;
+	/** the lexicon entry being written */
+	final LexiconEntry entry;
+
+	/**
+	 * constructor
+	 * @param _runs the runs to merge
+	 * @param _threads the number of threads merging ranges of terms
+	 */
+	ParallelRunsMerger(FileRunIteratorFactory _runs, int _threads)
+	{
+		super(_runs);
+		runs = _runs;
+		threads = Math.max(1, _threads);
+		bufferMemory = UnitUtils.parseLong(ApplicationSetup.getProperty("indexing.singlepass.merge.buffer.memory", "256M"));
+		entry = runs.numberOfFields > 0
+			? new FieldLexiconEntry(runs.numberOfFields)
+			: new BasicLexiconEntry();
+	}
+
+	/** Returns the number of terms in the specified run file, as recorded in its header */
+	static int numberOfTerms(String runFile) throws IOException
+	{
+		if (Files.length(runFile) == 0)
+			return 0;
+		try(BitInputStream in = new BitInputStream(runFile))
+		{
+			in.readGamma();
+			return in.readGamma();
+		}
+	}
+
+	/**
+	 * Chooses the terms that divide the runs into ranges of similar sizes. Terms are sampled at regular offsets
+	 * of each run, and each sample is weighted by the number of bytes of postings until the next sample.
+	 * Fewer ranges are returned if there are too few distinct samples.
+	 * @return the first term of each range after the first, in order
+	 */
+	static String[] chooseSplits(String[][] files, int ranges) throws IOException
+	{
+		if (ranges <= 1)
+			return new String[0];
+		final List<String> samples = new ArrayList<>();
+		final TLongArrayList weights = new TLongArrayList();
+		for(String[] run : files)
+		{
+			final int numTerms = numberOfTerms(run[0]);
+			final long length = Files.length(run[0]);
+			final long step = Math.max(1, length / (ranges * SAMPLES_PER_RANGE));
+			long nextSample = 0;
+			long lastOffset = -1;
+			try(DataInputStream terms = new DataInputStream(Files.openFileStream(run[1])))
+			{
+				for(int i=0;i<numTerms;i++)
+				{
+					final String term = terms.readUTF();
+					final long offset = terms.readLong();
+					if (offset < 0)
+						throw new IOException("Run " + run[0] + " does not record the offsets of its terms");
+					if (offset < nextSample)
+						continue;
+					if (lastOffset >= 0)
+						weights.add(offset - lastOffset);
+					samples.add(term);
+					lastOffset = offset;
+					nextSample = offset + step;
+				}
+			}
+			if (lastOffset >= 0)
+				weights.add(length - lastOffset);
+		}
+		final Integer[] order = new Integer[samples.size()];
+		long total = 0;
+		for(int i=0;i<order.length;i++)
+		{
+			order[i] = i;
+			total += weights.get(i);
+		}
+		Arrays.sort(order, (a,b) -> samples.get(a).compareTo(samples.get(b)));
+		final List<String> splits = new ArrayList<>();
+		long cumulative = 0;
+		int nextRange = 1;
+		for(int i=0;i<order.length && nextRange < ranges;i++)
+		{
+			final String term = samples.get(order[i]);
+			if (cumulative >= total * nextRange / ranges)
+			{
+				if (splits.size() == 0 || term.compareTo(splits.get(splits.size()-1)) > 0)
+					splits.add(term);
+				while (nextRange < ranges && cumulative >= total * nextRange / ranges)
+					nextRange++;
+			}
+			cumulative += weights.get(order[i]);
+		}
+		return splits.toArray(new String[splits.size()]);
+	}
+
+	/**
+	 * Finds the first term of each range in a run.
+	 * @return the position of the first term of each range, followed by that of the end of the run
+	 */
+	static RunPosition[] locate(String[] run, String[] splits) throws IOException
+	{
+		final int numTerms = numberOfTerms(run[0]);
+		final RunPosition[] positions = new RunPosition[splits.length + 2];
+		positions[0] = new RunPosition(0, 0, 0);
+		int split = 0;
+		try(CountingInputStream counter = new CountingInputStream(Files.openFileStream(run[1]));
+			DataInputStream terms = new DataInputStream(counter))
+		{
+			for(int i=0;i<numTerms && split < splits.length;i++)
+			{
+				final long termsOffset = counter.getCount();
+				final String term = terms.readUTF();
+				final long runOffset = terms.readLong();
+				while (split < splits.length && term.compareTo(splits[split]) >= 0)
+					positions[++split] = new RunPosition(i, termsOffset, runOffset);
+			}
+		}
+		while (split <= splits.length)
+			positions[++split] = new RunPosition(numTerms, -1, -1);
+		return positions;
+	}
+
+	/**
+	 * Merges the runs, writing the inverted file. The lexicon entries are written by subsequent calls
+	 * to {@link #mergeOne(LexiconOutputStream)}.
+	 * @param size number of runs to be merged.
+	 * @param fileName output filename.
+	 */
+	@Override
+	public void beginMerge(int size, String fileName) throws Exception
+	{
+		final String[][] files = runs.files;
+		final String[] splits = chooseSplits(files, threads);
+		final int ranges = splits.length + 1;
+		final RunPosition[][] positions = new RunPosition[size][];
+		for(int r=0;r<size;r++)
+			positions[r] = locate(files[r], splits);
+		final int concurrent = concurrentRanges(size, ranges);
+		final int bufferSize = bufferSize(size, concurrent);
+		logger.info("Merging " + size + " runs in " + ranges + " ranges of terms using " + concurrent + " threads, with buffers of " + bufferSize + " bytes");
+
+		lexiconFiles = new String[ranges];
+		rangeTerms = new int[ranges];
+		segmentOffsets = new long[ranges];
+		final String[] segments = new String[ranges];
+		final int[] pointers = new int[ranges];
+		final ExecutorService pool = Executors.newFixedThreadPool(concurrent);
+		try{
+			final List<Future<?>> merges = new ArrayList<>();
+			for(int p=0;p<ranges;p++)
+			{
+				final int range = p;
+				segments[range] = ranges == 1 ? fileName : fileName + ".range" + range;
+				lexiconFiles[range] = fileName + ".range" + range + ".lex";
+				merges.add(pool.submit(() -> {
+					mergeRange(range, positions, segments[range], bufferSize, pointers);
+					return null;
+				}));
+			}
+			for(Future<?> merge : merges)
+				merge.get();
+		} catch (ExecutionException ee) {
+			final Throwable cause = ee.getCause();
+			throw cause instanceof Exception ? (Exception) cause : ee;
+		} finally {
+			pool.shutdownNow();
+		}
+
+		if (ranges > 1)
+		{
+			final byte[] buffer = new byte[MAX_BUFFER];
+			try(OutputStream out = Files.writeFileStream(fileName))
+			{
+				long offset = 0;
+				for(int p=0;p<ranges;p++)
+				{
+					segmentOffsets[p] = offset;
+					if (! Files.exists(segments[p]))
+						continue;
+					try(InputStream in = Files.openFileStream(segments[p]))
+					{
+						int read;
+						while ((read = in.read(buffer)) != -1)
+						{
+							out.write(buffer, 0, read);
+							offset += read;
+						}
+					}
+					Files.delete(segments[p]);
+				}
+			}
+		}
+		numberOfPointers = 0;
+		for(int p : pointers)
+			numberOfPointers += p;
+	}
+
+	/**
+	 * Returns how many ranges can be merged at once within <tt>indexing.singlepass.merge.buffer.memory</tt>,
+	 * such that each run is read with a buffer of at least MIN_BUFFER.
+	 * @param size number of runs being merged
+	 * @param ranges number of ranges of terms
+	 */
+	int concurrentRanges(int size, int ranges)
+	{
+		//each run is read by at most one thread at once, using two buffers
+		final long perThread = 2l * Math.max(1, size) * MIN_BUFFER;
+		final int affordable = (int) Math.max(1, Math.min(Integer.MAX_VALUE, bufferMemory / perThread));
+		final int concurrent = Math.min(Math.min(threads, ranges), affordable);
+		if (concurrent < Math.min(threads, ranges))
+			logger.info("Merging " + concurrent + " of " + ranges + " ranges at once, to read " + size 
+				+ " runs within indexing.singlepass.merge.buffer.memory=" + bufferMemory);
+		return concurrent;
+	}
+
+	/**
+	 * Returns the size of the buffer for reading each run, dividing <tt>indexing.singlepass.merge.buffer.memory</tt>
+	 * among the runs read by the threads merging at once.
+	 * @param size number of runs being merged
+	 * @param concurrent number of ranges merged at once
+	 */
+	int bufferSize(int size, int concurrent)
+	{
+		final long runsOpen = 2l * Math.max(1, size) * concurrent;
+		final long bufferSize = Math.min(MAX_BUFFER, bufferMemory / runsOpen);
+		if (bufferSize < SMALLEST_BUFFER)
+		{
+			logger.warn("indexing.singlepass.merge.buffer.memory=" + bufferMemory + " is too small to read " + size 
+				+ " runs; using " + (runsOpen * SMALLEST_BUFFER) + " bytes of buffers instead");
+			return SMALLEST_BUFFER;
+		}
+		return (int) bufferSize;
+	}
+
+	/** Merges the terms of one range from all runs that have any, writing a segment and a temporary lexicon file */
+	void mergeRange(int range, RunPosition[][] positions, String segment, int bufferSize, int[] pointers) throws Exception
+	{
+		final String[][] files = runs.files;
+		final List<Integer> runsInRange = new ArrayList<>();
+		for(int r=0;r<positions.length;r++)
+			if (positions[r][range].term < positions[r][range+1].term)
+				runsInRange.add(r);
+		final RangeLexiconOutputStream lexStream = new RangeLexiconOutputStream(lexiconFiles[range]);
+		try{
+			if (runsInRange.size() == 0)
+				return;
+			final RunsMerger merger = new RunsMerger(new RunIteratorFactory(runs.numberOfFields) {
+				@Override
+				public RunIterator createRunIterator(int i) throws Exception {
+					final int r = runsInRange.get(i);
+					final RunPosition start = positions[r][range];
+					final RunIterator run = new FileRunIterator<PostingInRun>(files[r][0], files[r][1], r, runs.postingClass, numberOfFields,
+						start.term, positions[r][range+1].term, start.termsOffset, start.runOffset, bufferSize);
+					if (runs.docidShifts != null)
+						run.setDocidShift(runs.docidShifts[r]);
+					return run;
+				}
+			});
+			merger.beginMerge(runsInRange.size(), segment);
+			while(! merger.isDone())
+				merger.mergeOne(lexStream);
+			merger.endMerge(lexStream);
+			rangeTerms[range] = merger.getNumberOfTerms();
+			pointers[range] = merger.getNumberOfPointers();
+		} finally {
+			lexStream.close();
+		}
+	}
+
+	/** Opens the lexicon file of the next range that has terms, once those of the current range are written */
+	void nextRange() throws IOException
+	{
+		while (remainingInRange == 0)
+		{
+			if (currentLexicon != null)
+			{
+				currentLexicon.close();
+				currentLexicon = null;
+			}
+			if (currentRange + 1 >= lexiconFiles.length)
+				return;
+			currentRange++;
+			remainingInRange = rangeTerms[currentRange];
+			if (remainingInRange > 0)
+				currentLexicon = new DataInputStream(Files.openFileStream(lexiconFiles[currentRange]));
+		}
+	}
+
+	@Override
+	public boolean isDone()
+	{
+		try{
+			nextRange();
+		} catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+		return currentLexicon == null;
+	}
+
+	/**
+	 * Writes the lexicon entry of the next term, with its termid and offset moved to its place in the whole index.
+	 * @param lexStream LexiconOutputStream used to write the lexicon.
+	 */
+	@Override
+	public void mergeOne(LexiconOutputStream<String> lexStream) throws Exception
+	{
+		nextRange();
+		final String term = currentLexicon.readUTF();
+		entry.readFields(currentLexicon);
+		final BasicLexiconEntry le = (BasicLexiconEntry) entry;
+		le.setTermId(currentTerm++);
+		le.setOffset(le.getOffset() + segmentOffsets[currentRange], le.getOffsetBits());
+		lexStream.writeNextEntry(term, entry);
+		lastTermWritten = term;
+		remainingInRange--;
+	}
+
+	/**
+	 * Closes the lexicon files of the ranges, and deletes them.
+	 * @param lexStream LexiconOutputStream used to write the lexicon.
+	 */
+	@Override
+	public void endMerge(LexiconOutputStream<String> lexStream) throws IOException
+	{
+		if (currentLexicon != null)
+			currentLexicon.close();
+		for(String lexiconFile : lexiconFiles)
+			Files.delete(lexiconFile);
+	}
+}
@@ -45,6 +45,9 @@ abstract class RunIterator implements Iterator<PostingInRun>, Closeable {
 	protected int flushNo;
 	
 	protected int numberOfFields;
+	
+	/** amount added to the docids of the postings in this run */
+	protected int docidShift = 0;
 
 	/** create a new instance of this class.
 	  * @param _postingClass Class of the PostingInRun type that postings in this run have
@@ -70,6 +73,20 @@ abstract class RunIterator implements Iterator<PostingInRun>, Closeable {
 		return flushNo;
 	}
 
+	/** Get the amount that is added to the docids of the postings in this run */
+	public int getDocidShift()
+	{
+		return docidShift;
+	}
+	
+	/** Set the amount that is added to the docids of the postings in this run,
+	 * for runs whose docids start from 0 rather than from their first document.
+	 * @since 5.4 */
+	public void setDocidShift(int shift)
+	{
+		docidShift = shift;
+	}
+
 	/** iterator implementation */	
 	public abstract boolean hasNext();
 
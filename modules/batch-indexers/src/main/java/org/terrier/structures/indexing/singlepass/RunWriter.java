@@ -33,10 +33,14 @@ import java.io.IOException;
 import org.terrier.compression.bit.BitOutputStream;
 import org.terrier.compression.bit.MemorySBOS;
 import org.terrier.utility.Files;
+
+import com.google.common.io.CountingOutputStream;
 /**
  * This class writes a run to disk. The data written depends on the specific subclass.
  * This one, writes the Nt, TF and the &lt;docid, tf&gt; sequence.
  * It also writes the max frequency of a term in the run (useful for allocating memory during the merging phase).
+ * Each term is followed in the terms file by the byte offset of its postings in the run, or -1 if
+ * unknown, such that a range of the terms can be read without reading the run from its start.
  * @author Roi Blanco
  */
 class RunWriter {
@@ -46,12 +50,15 @@ class RunWriter {
 	protected final DataOutputStream stringDos;
 	/** Debug String representation of this RunWriter */
 	protected String info;
+	/** counts the bytes written to the run, or null if the offsets of terms are unknown */
+	protected final CountingOutputStream counter;
 	
 	protected RunWriter()
 	{
 		bos = null;
 		stringDos = null;
 		info = null;
+		counter = null;
 	}
 	
 	/** other constructor for use by subclasses */
@@ -60,6 +67,7 @@ class RunWriter {
 		this.bos = _bos;
 		this.stringDos = _stringDos;
 		this.info = "RunWriter(Streams)";
+		this.counter = null;
 	}
 	
 	/**
@@ -69,7 +77,8 @@ class RunWriter {
 	 * @throws IOException if an I/O error occurs.
 	 */
 	public RunWriter(String fileName, String termsFile) throws IOException{
-		bos = new BitOutputStream(fileName);
+		counter = new CountingOutputStream(Files.writeFileStream(fileName));
+		bos = new BitOutputStream(counter);
 		stringDos = new DataOutputStream( Files.writeFileStream(termsFile));
 		this.info = "RunWriter("+fileName+")";
 	}
@@ -99,6 +108,9 @@ class RunWriter {
 	 */
 	public void writeTerm(final String term, final Posting post) throws IOException{		
 		stringDos.writeUTF(term);
+		//the previous term ended with an append, which flushed the bits of the run, so that the
+		//count is exact; the first term is at the start of the run, before the headers
+		stringDos.writeLong(counter == null ? -1 : counter.getCount());
 		bos.writeGamma(post.getDocF());
 		bos.writeGamma(post.getMaxtf());
 		bos.writeGamma(post.getTF());		
@@ -203,7 +203,7 @@ class RunsMerger {
 		init(size, fileName);
 		myRun = queue.poll();
 		while(myRun.current().getTerm().equals(" ")) myRun = queue.poll();		
-		lastDocument = myRun.current().append(bos,-1);
+		lastDocument = myRun.current().append(bos, -1, myRun.getDocidShift());
 		termStatistics = myRun.current().getLexiconEntry();
 		lastFreq = myRun.current().getTF();
 		lastDocFreq = myRun.current().getDf();	
@@ -225,7 +225,7 @@ class RunsMerger {
 		myRun = queue.poll();
 		if(myRun.current().getTerm().equals(lastTermWritten)){
 			// append the term --> keep the data in memory
-			lastDocument = myRun.current().append(bos, lastDocument);
+			lastDocument = myRun.current().append(bos, lastDocument, myRun.getDocidShift());
 			myRun.current().addToLexiconEntry(termStatistics);
 			lastFreq += myRun.current().getTF();
 			lastDocFreq += myRun.current().getDf();
@@ -239,7 +239,7 @@ class RunsMerger {
 			startOffset.setOffset(this.getByteOffset(), this.getBitOffset());
 			//get the information of the next term from the Run
 			numberOfPointers += lastDocFreq;
-			lastDocument = myRun.current().append(bos,-1);
+			lastDocument = myRun.current().append(bos, -1, myRun.getDocidShift());
 			termStatistics = myRun.current().getLexiconEntry();
 			lastFreq = myRun.current().getTF();
 			lastDocFreq = myRun.current().getDf();
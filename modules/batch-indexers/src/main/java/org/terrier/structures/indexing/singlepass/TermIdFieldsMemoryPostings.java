@@ -0,0 +1,101 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TermIdFieldsMemoryPostings.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ */
+package org.terrier.structures.indexing.singlepass;
+
+import gnu.trove.TIntIntProcedure;
+
+import java.io.IOException;
+
+import org.terrier.structures.indexing.DocumentPostingList;
+import org.terrier.structures.indexing.FieldDocumentPostingList;
+import org.terrier.structures.indexing.TermIdFieldDocumentPostingList;
+import org.terrier.utility.ConcurrentTermDictionary;
+
+/**
+ * Class for handling posting lists containing field information in memory while indexing, keyed
+ * by the ids of the terms in a {@link ConcurrentTermDictionary}.
+ * @since 5.4
+ */
+class TermIdFieldsMemoryPostings extends TermIdMemoryPostings {
+	
+	TermIdFieldsMemoryPostings(ConcurrentTermDictionary _dictionary)
+	{
+		super(_dictionary);
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public void addTerms(DocumentPostingList docPostings, final int docid) throws IOException {
+		if (docPostings instanceof TermIdFieldDocumentPostingList && ((TermIdFieldDocumentPostingList)docPostings).getDictionary() == dictionary)
+		{
+			final TermIdFieldDocumentPostingList fieldPostings = (TermIdFieldDocumentPostingList)docPostings;
+			final IOException[] error = new IOException[1];
+			fieldPostings.forEachTermId(new TIntIntProcedure() {
+				public boolean execute(final int termId, final int tf) {
+					try{
+						addTermId(termId, docid, tf, fieldPostings.getFieldFrequencies(termId));
+					} catch (IOException ioe) {
+						error[0] = ioe;
+						return false;
+					}
+					return true;
+				}
+			});
+			if (error[0] != null)
+				throw error[0];
+		}
+		else
+		{
+			for (String term : docPostings.termSet())
+				addTermId(dictionary.getId(term), docid, docPostings.getFrequency(term), ((FieldDocumentPostingList)docPostings).getFieldFrequencies(term));
+		}
+	}
+	
+	/**
+	 * Adds an occurrence of a term in a document to the posting in memory.
+	 * @param termId the id of the term in the dictionary.
+	 * @param doc int containing the document identifier.
+	 * @param frequency int containing the frequency of the term in the document.
+	 * @param fieldFrequencies int[] contains the frequencies of the term in each field
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void addTermId(int termId, int doc, int frequency, int[] fieldFrequencies) throws IOException {
+		FieldPosting post;
+		if((post = (FieldPosting) termIdPostings.get(termId)) != null) {						
+			valueBytes += post.insert(doc, frequency, fieldFrequencies);
+			int tf = post.getTF();
+			// Update the max size
+			if(maxSize < tf) maxSize = tf; 
+		}
+		else{
+			post = new FieldPosting();
+			valueBytes += post.writeFirstDoc(doc, frequency, fieldFrequencies);			
+			termIdPostings.put(termId, post);
+			keyBytes += (long)(12 + 2*dictionary.getTerm(termId).length());
+		}
+		numPointers++;
+	}
+}
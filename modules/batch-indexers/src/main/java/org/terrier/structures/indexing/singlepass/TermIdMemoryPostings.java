@@ -0,0 +1,137 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TermIdMemoryPostings.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ */
+package org.terrier.structures.indexing.singlepass;
+
+import gnu.trove.TIntIntProcedure;
+import gnu.trove.TIntObjectHashMap;
+
+import java.io.IOException;
+
+import org.terrier.sorting.MultiSort;
+import org.terrier.structures.indexing.DocumentPostingList;
+import org.terrier.structures.indexing.TermIdDocumentPostingList;
+import org.terrier.utility.ConcurrentTermDictionary;
+
+/**
+ * Class for handling Simple posting lists in memory while indexing, as {@link MemoryPostings}, but keyed
+ * by the ids of the terms in a {@link ConcurrentTermDictionary}. The Strings of the terms are only
+ * obtained from the dictionary when the run is written.
+ * @since 5.4
+ */
+class TermIdMemoryPostings extends MemoryPostings {
+	
+	/** the dictionary that assigns the ids of terms */
+	protected final ConcurrentTermDictionary dictionary;
+	/** Hashmap indexed by the term id, containing the posting lists */
+	protected final TIntObjectHashMap<Posting> termIdPostings = new TIntObjectHashMap<Posting>();
+	
+	TermIdMemoryPostings(ConcurrentTermDictionary _dictionary)
+	{
+		this.dictionary = _dictionary;
+	}
+	
+	/** {@inheritDoc} Postings of a {@link TermIdDocumentPostingList} are added by id, while
+	 * others are looked up in the dictionary. */
+	@Override
+	public void addTerms(DocumentPostingList docPostings, final int docid) throws IOException {
+		if (docPostings instanceof TermIdDocumentPostingList && ((TermIdDocumentPostingList)docPostings).getDictionary() == dictionary)
+		{
+			final IOException[] error = new IOException[1];
+			((TermIdDocumentPostingList)docPostings).forEachTermId(new TIntIntProcedure() {
+				public boolean execute(final int termId, final int tf) {
+					try{
+						addTermId(termId, docid, tf);
+					} catch (IOException ioe) {
+						error[0] = ioe;
+						return false;
+					}
+					return true;
+				}
+			});
+			if (error[0] != null)
+				throw error[0];
+		}
+		else
+		{
+			for (String term : docPostings.termSet())
+				add(term, docid, docPostings.getFrequency(term));
+		}
+	}
+	
+	@Override
+	public void add(String term, int doc, int frequency) throws IOException {
+		addTermId(dictionary.getId(term), doc, frequency);
+	}
+	
+	/**
+	 * Adds an occurrence of a term in a document to the posting in memory.
+	 * @param termId the id of the term in the dictionary.
+	 * @param doc int containing the document identifier.
+	 * @param frequency int containing the frequency of the term in the document.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void addTermId(int termId, int doc, int frequency) throws IOException {
+		Posting post;
+		numPointers++;
+		if((post = termIdPostings.get(termId)) != null) {	
+			valueBytes += post.insert(doc, frequency);
+			
+			final int df = post.getDocF();
+			if(df > maxSize) maxSize = df; 
+		}
+		else{
+			post = new Posting();
+			valueBytes += post.writeFirstDoc(doc, frequency);			
+			termIdPostings.put(termId, post);
+			keyBytes += (long)(12 + 2*dictionary.getTerm(termId).length());
+		}
+	}
+	
+	/** {@inheritDoc} The term ids are only sorted by their Strings if required by the RunWriter. */
+	@Override
+	public void finish(RunWriter runWriter) throws IOException {
+		logger.debug("Writing run "+runWriter.toString());
+		final int[] termIds = termIdPostings.keys();
+		final String[] terms = new String[termIds.length];
+		for(int i=0;i<termIds.length;i++)
+			terms[i] = dictionary.getTerm(termIds[i]);
+		if (runWriter.writeSorted())
+			MultiSort.ascendingHeapSort(terms, termIds);
+		if (termIds.length != 0)
+		{
+			runWriter.beginWrite(maxSize, termIds.length);
+			for(int i=0;i<termIds.length;i++)
+				runWriter.writeTerm(terms[i], termIdPostings.get(termIds[i]));
+		}
+		runWriter.finishWrite();
+		logger.debug(" done");
+	}
+	
+	@Override
+	public int getSize(){
+		return termIdPostings.size();
+	}
+}
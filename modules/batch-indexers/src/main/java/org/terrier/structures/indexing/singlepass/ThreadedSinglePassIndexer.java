@@ -0,0 +1,323 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is ThreadedSinglePassIndexer.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ */
+package org.terrier.structures.indexing.singlepass;
+
+import gnu.trove.TIntArrayList;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.terrier.indexing.Collection;
+import org.terrier.indexing.Document;
+import org.terrier.structures.DocumentIndexEntry;
+import org.terrier.structures.FieldDocumentIndexEntry;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.SimpleDocumentIndexEntry;
+import org.terrier.structures.indexing.DocumentIndexBuilder;
+import org.terrier.structures.indexing.DocumentPostingList;
+import org.terrier.structures.indexing.IndexingPipeline;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.FieldScore;
+import org.terrier.utility.UnitUtils;
+
+/**
+ * A single-pass indexer that indexes several collections at once, using a thread for each, to form
+ * one index. Instead of building an index for each collection and merging these, the threads share one
+ * memory budget, and all of their runs are merged at once. Unless <tt>indexing.singlepass.merge.threads</tt>
+ * is set, the merge uses as many threads as indexing, each merging a range of the terms.
+ * <p>
+ * Each thread keeps the postings of the documents it has read in memory of its own, numbering the documents
+ * from 0. When a thread flushes its postings, it takes the next range of docids, adds the entries of its documents
+ * to the document and meta indices, and writes a run, which records the first docid of the range. The merger adds
+ * this to the docids of the postings of the run. Hence, docids follow the order in which the threads flushed,
+ * rather than the order of the collections.
+ * <p>
+ * The properties of {@link BasicSinglePassIndexer} are supported, where <tt>memory.reserved</tt>,
+ * <tt>memory.heap.usage</tt> and <tt>indexing.singlepass.max.postings.memory</tt> apply to all threads together,
+ * while <tt>indexing.singlepass.max.documents.flush</tt> applies to each thread. Block indexing,
+ * <tt>indexing.max.docs.per.builder</tt> and <tt>indexing.builder.boundary.docnos</tt> are not supported.
+ * @since 5.4
+ */
+public class ThreadedSinglePassIndexer extends BasicSinglePassIndexer {
+
+	/** number of collections indexed at once */
+	protected final int threads;
+	/** docid of the first document of each run, in the order of the runs */
+	protected final TIntArrayList runDocidShifts = new TIntArrayList();
+	/** memory consumed by the postings of all threads */
+	protected final AtomicLong postingsMemory = new AtomicLong();
+	/** the docid of the first document of the next run. Guarded by this object. */
+	protected int nextDocid = 0;
+
+	/**
+	 * Constructs an instance of a ThreadedSinglePassIndexer, which uses as many threads
+	 * as the common fork-join pool.
+	 * @param pathname the path where the datastructures will be created.
+	 * @param prefix the prefix of the index, usually "data".
+	 */
+	public ThreadedSinglePassIndexer(String pathname, String prefix) {
+		this(pathname, prefix, ForkJoinPool.commonPool().getParallelism());
+	}
+
+	/**
+	 * Constructs an instance of a ThreadedSinglePassIndexer.
+	 * @param pathname the path where the datastructures will be created.
+	 * @param prefix the prefix of the index, usually "data".
+	 * @param _threads the maximum number of collections indexed at once.
+	 */
+	public ThreadedSinglePassIndexer(String pathname, String prefix, int _threads) {
+		super(pathname, prefix);
+		threads = Math.max(1, _threads);
+		//delay the execution of init() if we are a parent class
+		if (this.getClass() == ThreadedSinglePassIndexer.class)
+			init();
+	}
+
+	/**
+	 * Indexes the documents of one collection, flushing its postings to runs.
+	 * Each instance is used by one thread.
+	 */
+	protected class CollectionIndexer
+	{
+		final IndexingPipeline.DocumentProcessor processor = createDocumentProcessor();
+		/** the entries of the documents not yet flushed, in order */
+		final List<DocumentIndexEntry> entries = new ArrayList<>();
+		/** the properties of the documents not yet flushed, in order */
+		final List<Map<String,String>> properties = new ArrayList<>();
+		MemoryPostings postings = newMemoryPostings();
+		/** memory consumed by postings, as last added to postingsMemory */
+		long postingsBytes = 0;
+		long tokens = 0;
+		int empty = 0;
+		int docsSinceCheck = 0;
+
+		/** Indexes all documents of the collection */
+		public void index(Collection collection) throws Exception
+		{
+			final boolean FIELDS = FieldScore.FIELDS_COUNT > 0;
+			while(collection.nextDocument())
+			{
+				final Document doc = collection.getDocument();
+				if (doc == null)
+					continue;
+				final IndexingPipeline.ProcessedDocument processed = processor.process(IndexingPipeline.readDocument(doc, FIELDS));
+				final DocumentPostingList termsInDocument = processed.postings;
+				if (termsInDocument.getDocumentLength() == 0)
+				{
+					if (! IndexEmptyDocuments)
+						continue;
+					entries.add(emptyDocIndexEntry);
+					empty++;
+				}
+				else
+				{
+					postings.addTerms(termsInDocument, entries.size());
+					final DocumentIndexEntry die = termsInDocument.getDocumentStatistics();
+					entries.add(FIELDS ? die : new SimpleDocumentIndexEntry(die));
+					tokens += processed.numberOfTokens;
+					final long consumed = postings.getMemoryConsumption();
+					postingsMemory.addAndGet(consumed - postingsBytes);
+					postingsBytes = consumed;
+				}
+				properties.add(processed.properties);
+				if (++docsSinceCheck >= docsPerCheck)
+				{
+					docsSinceCheck = 0;
+					checkFlush();
+				}
+			}
+			flush();
+		}
+
+		/** flushes the postings of this thread if memory is low for all threads */
+		@edu.umd.cs.findbugs.annotations.SuppressWarnings(
+				value="DM_GC",
+				justification="Forcing GC is an essential part of releasing" +
+						"memory for further indexing")
+		void checkFlush() throws IOException
+		{
+			final boolean memCheck;
+			synchronized (memoryCheck) {
+				memCheck = memoryCheck.checkMemory();
+				memoryCheck.reset();
+			}
+			String msg = null;
+			if (memCheck)
+				msg = "memory check threshold hit: " + memoryCheck.toString();
+			else if (maxMemory > 0 && postingsMemory.get() > maxMemory)
+				msg = "posting memory threshold hit";
+			else if (maxDocsPerFlush > 0 && entries.size() >= maxDocsPerFlush)
+				msg = "doc threshold hit";
+			if (msg == null)
+				return;
+			logger.info("Flush forced by " + Thread.currentThread().getName() + " (" + msg + ")");
+			flush();
+			if (memCheck)
+				System.gc();
+		}
+
+		/** Assigns docids to the documents not yet flushed, and writes their postings as a run */
+		void flush() throws IOException
+		{
+			final int count = entries.size();
+			if (count == 0)
+				return;
+			String[] names = null;
+			synchronized (ThreadedSinglePassIndexer.this) {
+				final int shift = nextDocid;
+				nextDocid += count;
+				for(int i=0;i<count;i++)
+				{
+					docIndexBuilder.addEntryToBuffer(entries.get(i));
+					metaBuilder.writeDocumentEntry(properties.get(i));
+				}
+				numberOfTokens += tokens;
+				emptyDocCount += empty;
+				//a run of only empty documents has no postings
+				if (postings.getSize() > 0)
+				{
+					names = finishMemoryPosting();
+					runDocidShifts.add(shift);
+				}
+			}
+			//runs are only read once all threads have finished, so can be written concurrently
+			if (names != null)
+				postings.finish(names);
+			postingsMemory.addAndGet(-postingsBytes);
+			postingsBytes = 0;
+			postings = newMemoryPostings();
+			entries.clear();
+			properties.clear();
+			tokens = 0;
+			empty = 0;
+		}
+	}
+
+	/** Creates the postings in memory of one thread */
+	protected MemoryPostings newMemoryPostings()
+	{
+		if (TERMIDS)
+			return useFieldInformation ? new TermIdFieldsMemoryPostings(termIdDictionary) : new TermIdMemoryPostings(termIdDictionary);
+		return useFieldInformation ? new FieldsMemoryPostings() : new MemoryPostings();
+	}
+
+	/**
+	 * Builds the inverted file and lexicon file for the given collections, indexing as many
+	 * collections at once as there are threads.
+	 * @param collections the collections to be indexed.
+	 */
+	@Override
+	public void createInvertedIndex(Collection[] collections) {
+		logger.info("Creating IF (no direct file) using " + Math.min(threads, collections.length) + " threads..");
+		final boolean FIELDS = (FieldScore.FIELDS_COUNT > 0);
+		final long startCollection = System.currentTimeMillis();
+		fileNames = new LinkedList<String[]>();
+		runDocidShifts.clear();
+		postingsMemory.set(0);
+		numberOfDocuments = currentId = nextDocid = numberOfUniqueTerms = 0;
+		numberOfTokens = numberOfPointers = 0;
+		currentIndex = IndexOnDisk.createNewIndex(path, prefix);
+		docIndexBuilder = new DocumentIndexBuilder(currentIndex, "document", FIELDS);
+		metaBuilder = createMetaIndexBuilder();
+		emptyDocIndexEntry = FIELDS ? new FieldDocumentIndexEntry(FieldScore.FIELDS_COUNT) : new SimpleDocumentIndexEntry();
+		maxMemory = UnitUtils.parseLong(ApplicationSetup.getProperty("indexing.singlepass.max.postings.memory", "0"));
+		if (BUILDER_BOUNDARY_DOCUMENTS.size() > 0)
+			logger.warn("indexing.builder.boundary.docnos is ignored by " + this.getClass().getSimpleName());
+
+		final ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, collections.length));
+		try{
+			final List<Future<?>> indexing = new ArrayList<>();
+			for(final Collection collection : collections)
+				indexing.add(pool.submit(() -> { new CollectionIndexer().index(collection); return null; }));
+			for(Future<?> f : indexing)
+				f.get();
+		} catch (Exception e) {
+			throw new RuntimeException("Problem indexing collections", e);
+		} finally {
+			pool.shutdownNow();
+		}
+		numberOfDocuments = currentId = nextDocid;
+		/* the runs record terms as Strings, so the ids of terms are no longer needed */
+		termIdDictionary.clear();
+
+		try{
+			long endCollection = System.currentTimeMillis();
+			final long partialTime = (endCollection-startCollection)/1000;
+			logger.info("Collections took "+partialTime+ " seconds to build the "+fileNames.size()+" runs for "+numberOfDocuments+" documents");
+			docIndexBuilder.finishedCollections();
+			if (FIELDS)
+			{
+				currentIndex.addIndexStructure("document-factory", FieldDocumentIndexEntry.Factory.class.getName(), "java.lang.String", "${index.inverted.fields.count}");
+			}
+			else
+			{
+				currentIndex.addIndexStructure("document-factory", SimpleDocumentIndexEntry.Factory.class.getName(), "", "");
+			}
+			currentIndex.setIndexProperty("termpipelines", ApplicationSetup.getProperty("termpipelines", "Stopwords,PorterStemmer"));
+			metaBuilder.close();
+			currentIndex.flush();
+
+			logger.info("Merging "+fileNames.size()+" runs...");
+			final long startMerge = System.currentTimeMillis();
+			performMultiWayMerge();
+			currentIndex.flush();
+			endCollection = System.currentTimeMillis();
+			logger.info("Collections took "+((endCollection-startMerge)/1000)+" seconds to merge");
+			logger.info("Collections total time "+((endCollection-startCollection)/1000));
+			if (emptyDocCount > 0)
+				logger.warn("Indexed " + emptyDocCount + " empty documents");
+		} catch (Exception e) {
+			logger.error("Problem finishing index", e);
+		}
+		finishedInvertedIndexBuild();
+	}
+
+	@Override
+	protected void load_indexer_properties() {
+		super.load_indexer_properties();
+		if (ApplicationSetup.getProperty("indexing.singlepass.merge.threads", null) == null)
+			mergeThreads = threads;
+	}
+
+	@Override
+	protected void createFieldRunMerger(String[][] files) throws Exception{
+		merger = createMerger(new FileRunIteratorFactory(files, FieldPostingInRun.class, super.numFields, runDocidShifts.toNativeArray()));
+	}
+
+	@Override
+	protected void createRunMerger(String[][] files) throws Exception{
+		merger = createMerger(new FileRunIteratorFactory(files,
+				useFieldInformation ? FieldPostingInRun.class : SimplePostingInRun.class, 0, runDocidShifts.toNativeArray()));
+	}
+}
@@ -30,11 +30,14 @@ import gnu.trove.TIntIntHashMap;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +45,9 @@ import org.terrier.applications.CLITool;
 import org.terrier.structures.AbstractPostingOutputStream;
 import org.terrier.structures.BasicDocumentIndexEntry;
 import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.BitmapDeletedDocuments;
+import org.terrier.structures.DeletedDocuments;
+import org.terrier.structures.DocValues;
 import org.terrier.structures.DocumentIndex;
 import org.terrier.structures.DocumentIndexEntry;
 import org.terrier.structures.FSOMapFileLexiconOutputStream;
@@ -58,14 +64,18 @@ import org.terrier.structures.PostingIndex;
 import org.terrier.structures.PostingIndexInputStream;
 import org.terrier.structures.SimpleBitIndexPointer;
 import org.terrier.structures.SimpleDocumentIndexEntry;
+import org.terrier.structures.TermMaxScores;
+import org.terrier.structures.bit.BitPostingIndexSkips;
 import org.terrier.structures.bit.DirectInvertedOutputStream;
 import org.terrier.structures.bit.FieldDirectInvertedOutputStream;
 import org.terrier.structures.indexing.CompressingMetaIndexBuilder;
 import org.terrier.structures.indexing.CompressionFactory;
+import org.terrier.structures.indexing.DocValuesBuilder;
 import org.terrier.structures.indexing.DocumentIndexBuilder;
 import org.terrier.structures.indexing.LexiconBuilder;
 import org.terrier.structures.indexing.MetaIndexBuilder;
 import org.terrier.structures.indexing.CompressionFactory.CompressionConfiguration;
+import org.terrier.structures.postings.FieldPosting;
 import org.terrier.structures.postings.IterablePosting;
 import org.terrier.structures.postings.Posting;
 import org.terrier.structures.postings.PostingIdComparator;
@@ -83,6 +93,9 @@ import org.terrier.utility.ArrayUtils;
  * <ul><li><tt>lexicon.use.hash</tt> - build a lexicon hash file for new index. Set to <tt>true</tt> by default.</li>
  * <li><tt>merge.direct</tt> - merge the direct indices if both indices have them. Set to <tt>true</tt> by default.</li>
  * </ul>
+ * <p>If either source index has a {@link DeletedDocuments} structure, the deleted documents are purged: they 
+ * are omitted from the merged index, the remaining documents are renumbered, and the statistics of each term 
+ * are recomputed from the postings that remain.
  * @author Vassilis Plachouras and Craig Macdonald
   */
 public class StructureMerger {
@@ -122,6 +135,21 @@ public class StructureMerger {
 	 */
 	protected TIntIntHashMap termcodeHashmap = null;
 	protected boolean keepTermCodeMap = false;
+	/** 
+	 * A hashmap for converting the codes of terms of the first set of 
+	 * data structures, when deleted documents are purged.
+	 */
+	protected TIntIntHashMap termcodeHashmap1 = null;
+	
+	/** The documents deleted from each source index, or null if there are none. */
+	protected DeletedDocuments deleted1;
+	protected DeletedDocuments deleted2;
+	/** The docid in the merged structures of each document of each source index, or -1 if it was deleted. 
+	 * These are null until deleted documents are to be purged. */
+	protected int[] docidMap1;
+	protected int[] docidMap2;
+	/** The number of deleted documents that are purged. */
+	protected int numberOfDeletedDocuments;
 	
 	/** The number of documents in the merged structures. */
 	protected int numberOfDocuments;
@@ -182,6 +210,72 @@ public class StructureMerger {
 		fieldCount = srcFieldCount1;
 		compressionDirectConfig = CompressionFactory.getCompressionConfiguration("direct", fieldNames, 0,0);
 		compressionInvertedConfig = CompressionFactory.getCompressionConfiguration("inverted", fieldNames, 0,0);
+		deleted1 = getDeletedDocuments(srcIndex1);
+		deleted2 = getDeletedDocuments(srcIndex2);
+	}
+	
+	/** Returns the documents deleted from the specified index, or null if there are none */
+	protected static DeletedDocuments getDeletedDocuments(IndexOnDisk index)
+	{
+		if (! index.hasIndexStructure(DeletedDocuments.STRUCTURE_NAME))
+			return null;
+		final DeletedDocuments deleted = (DeletedDocuments) index.getIndexStructure(DeletedDocuments.STRUCTURE_NAME);
+		return deleted != null && deleted.getNumberOfDeletedDocuments() > 0 ? deleted : null;
+	}
+	
+	/**
+	 * Returns true if deleted documents are to be purged while merging, in which case the
+	 * docid maps are initialised.
+	 */
+	protected boolean purgeDeleted()
+	{
+		if (deleted1 == null && deleted2 == null)
+			return false;
+		if (docidMap1 == null)
+		{
+			docidMap1 = BitmapDeletedDocuments.docidMap(deleted1, srcIndex1.getCollectionStatistics().getNumberOfDocuments(), 0);
+			int remaining1 = 0;
+			for(int newId : docidMap1)
+				if (newId != -1)
+					remaining1++;
+			docidMap2 = BitmapDeletedDocuments.docidMap(deleted2, srcIndex2.getCollectionStatistics().getNumberOfDocuments(), remaining1);
+			numberOfDeletedDocuments = docidMap1.length - remaining1;
+			for(int newId : docidMap2)
+				if (newId == -1)
+					numberOfDeletedDocuments++;
+			logger.info("Purging " + numberOfDeletedDocuments + " deleted documents");
+		}
+		return true;
+	}
+	
+	/**
+	 * Builds doc values for the merged index, with the same columns as the doc values of the source 
+	 * indices, unless the meta index builder already builds doc values configured by properties.
+	 * The values are taken from the meta index of each document as it is merged.
+	 */
+	protected void mergeDocValues(MetaIndexBuilder metaBuilder)
+	{
+		if (! (metaBuilder instanceof CompressingMetaIndexBuilder) || ((CompressingMetaIndexBuilder) metaBuilder).getDocValues() != null)
+			return;
+		final IndexOnDisk src = srcIndex1.hasIndexStructure(DocValues.STRUCTURE_NAME) ? srcIndex1 
+			: srcIndex2.hasIndexStructure(DocValues.STRUCTURE_NAME) ? srcIndex2 
+			: null;
+		if (src == null)
+			return;
+		final DocValues docValues = (DocValues) src.getIndexStructure(DocValues.STRUCTURE_NAME);
+		((CompressingMetaIndexBuilder) metaBuilder).setDocValues(DocValuesBuilder.fromDocValues(destIndex, docValues));
+	}
+	
+	/**
+	 * Returns the docid in the merged structures of the specified document of the first 
+	 * (<tt>sourceIndex</tt> 1) or second (<tt>sourceIndex</tt> 2) source index, or -1 if 
+	 * the document was deleted and purged.
+	 */
+	public int getMergedDocid(int sourceIndex, int docid)
+	{
+		if (purgeDeleted())
+			return sourceIndex == 1 ? docidMap1[docid] : docidMap2[docid];
+		return sourceIndex == 1 ? docid : docid + srcIndex1.getCollectionStatistics().getNumberOfDocuments();
 	}
 	
 
@@ -213,6 +307,9 @@ public class StructureMerger {
 			int numberOfDocs2 = srcIndex2.getCollectionStatistics().getNumberOfDocuments();
 						
 			numberOfDocuments = numberOfDocs1 + numberOfDocs2;
+			final boolean purge = purgeDeleted();
+			if (purge)
+				numberOfDocuments -= numberOfDeletedDocuments;
 			
 			
 			final int srcFieldCount1 = srcIndex1.getCollectionStatistics().getNumberOfFields();
@@ -272,6 +369,9 @@ public class StructureMerger {
 				return;
 			}
 			logger.debug("Starting pass through inv & lexicon files");
+			//purging consumes both lexicons, leaving no terms for the loops below to merge
+			if (purge)
+				mergePurgedPostings(lexInStream1, lexInStream2, inverted1, inverted2, invOS, lexOutStream);
 
 			boolean hasMore1 = false;
 			boolean hasMore2 = false;
@@ -429,6 +529,115 @@ public class StructureMerger {
 	}
 
 
+	/**
+	 * Merges the posting lists of the two lexicons, omitting the postings of deleted documents and
+	 * renumbering the remaining documents. The statistics of each term are recomputed from the postings
+	 * that remain, and terms that only occurred in deleted documents are omitted. All terms are given 
+	 * new term codes. 
+	 */
+	protected void mergePurgedPostings(
+			Iterator<Map.Entry<String,LexiconEntry>> lexInStream1, Iterator<Map.Entry<String,LexiconEntry>> lexInStream2, 
+			PostingIndex<Pointer> inverted1, PostingIndex<Pointer> inverted2,
+			AbstractPostingOutputStream invOS, LexiconOutputStream<String> lexOutStream) throws IOException
+	{
+		if (keepTermCodeMap)
+			termcodeHashmap1 = new TIntIntHashMap();
+		int newCodes = 0;
+		final List<Posting> postings = new ArrayList<Posting>();
+		Map.Entry<String,LexiconEntry> lee1 = lexInStream1.hasNext() ? lexInStream1.next() : null;
+		Map.Entry<String,LexiconEntry> lee2 = lexInStream2.hasNext() ? lexInStream2.next() : null;
+		while (lee1 != null || lee2 != null)
+		{
+			final int lexicographicalCompare = lee1 == null ? 1 
+				: lee2 == null ? -1 
+				: lee1.getKey().compareTo(lee2.getKey());
+			final Map.Entry<String,LexiconEntry> lee = lexicographicalCompare <= 0 ? lee1 : lee2;
+			postings.clear();
+			if (lexicographicalCompare <= 0)
+				addPurgedPostings(inverted1.getPostings(lee1.getValue()), docidMap1, postings);
+			if (lexicographicalCompare >= 0)
+				addPurgedPostings(inverted2.getPostings(lee2.getValue()), docidMap2, postings);
+			
+			if (postings.size() > 0)
+			{
+				final int newCode = newCodes++;
+				if (keepTermCodeMap)
+				{
+					if (lexicographicalCompare <= 0)
+						termcodeHashmap1.put(lee1.getValue().getTermId(), newCode);
+					if (lexicographicalCompare >= 0)
+						termcodeHashmap.put(lee2.getValue().getTermId(), newCode);
+				}
+				final LexiconEntry le = lee.getValue();
+				setStatistics(le, postings);
+				BitIndexPointer newPointer = invOS.writePostings(postings.iterator());
+				le.setPointer(newPointer);
+				le.setTermId(newCode);
+				numberOfPointers += newPointer.getNumberOfEntries();
+				lexOutStream.writeNextEntry(lee.getKey(), le);
+			}
+			
+			if (lexicographicalCompare <= 0)
+				lee1 = lexInStream1.hasNext() ? lexInStream1.next() : null;
+			if (lexicographicalCompare >= 0)
+				lee2 = lexInStream2.hasNext() ? lexInStream2.next() : null;
+		}
+	}
+	
+	/** Adds the postings of documents that have not been deleted, with their new docids */
+	protected static void addPurgedPostings(IterablePosting ip, int[] docidMap, List<Posting> postings) throws IOException
+	{
+		while(ip.next() != IterablePosting.EOL)
+		{
+			final int newId = docidMap[ip.getId()];
+			if (newId == -1)
+				continue;
+			final Posting p = ip.asWritablePosting();
+			p.setId(newId);
+			postings.add(p);
+		}
+		ip.close();
+	}
+	
+	/** Sets the statistics of a lexicon entry from its postings */
+	protected static void setStatistics(LexiconEntry le, List<Posting> postings)
+	{
+		int TF = 0;
+		int maxtf = 0;
+		final int[] fieldTFs = le instanceof FieldLexiconEntry 
+			? new int[((FieldLexiconEntry) le).getFieldFrequencies().length]
+			: null;
+		for(Posting p : postings)
+		{
+			TF += p.getFrequency();
+			maxtf = Math.max(maxtf, p.getFrequency());
+			if (fieldTFs != null && p instanceof FieldPosting)
+			{
+				final int[] tff = ((FieldPosting) p).getFieldFrequencies();
+				for(int f=0;f<fieldTFs.length;f++)
+					fieldTFs[f] += tff[f];
+			}
+		}
+		le.setStatistics(postings.size(), TF);
+		le.setMaxFrequencyInDocuments(maxtf);
+		if (fieldTFs != null)
+			((FieldLexiconEntry) le).setFieldFrequencies(fieldTFs);
+	}
+	
+	/** Returns the postings of a direct index posting list, with their term codes changed according to the specified map */
+	protected static Iterator<Posting> renumberTerms(IterablePosting postings, TIntIntHashMap termcodes) throws IOException
+	{
+		List<Posting> postingList = new ArrayList<Posting>();
+		while(postings.next() != IterablePosting.EOL)
+		{
+			final Posting p = postings.asWritablePosting();
+			p.setId(termcodes.get(postings.getId()));
+			postingList.add(p);
+		}
+		Collections.sort(postingList, new PostingIdComparator());
+		return postingList.iterator();
+	}
+
 	/**
 	 * Merges the two direct files and the corresponding document id files.
 	 */
@@ -443,6 +652,7 @@ public class StructureMerger {
 				? ArrayUtils.parseCommaDelimitedString(srcIndex1.getIndexProperty("index.meta.reverse-key-names", ""))
 				: new String[0];
 			final MetaIndexBuilder metaBuilder = new CompressingMetaIndexBuilder(destIndex, metaTags, metaTagLengths, metaReverseTags);
+			mergeDocValues(metaBuilder);
 		
 			if (! srcIndex1.getIndexProperty("index.meta.key-names", "docno").equals(srcIndex2.getIndexProperty("index.meta.key-names", "docno")))
 			{
@@ -482,19 +692,28 @@ public class StructureMerger {
 			final PostingIndexInputStream dfInput1 = (PostingIndexInputStream)srcIndex1.getIndexStructureInputStream("direct");
 			final MetaIndex metaInput1 = srcIndex1.getMetaIndex();
 			
+			purgeDeleted();
 			int sourceDocid = 0;
-			//traversing the direct index, without any change
+			//traversing the direct index, without any change unless deleted documents are purged
 			while(docidInput1.hasNext())
 			{
 				BitIndexPointer pointerDF = emptyPointer;
 				DocumentIndexEntry die = docidInput1.next();
+				final boolean deleted = docidMap1 != null && docidMap1[sourceDocid] == -1;
 				if (die.getDocumentLength() > 0)
 				{
-					pointerDF = dfOutput.writePostings(dfInput1.next());
+					final IterablePosting postings = dfInput1.next();
+					if (! deleted)
+						pointerDF = termcodeHashmap1 != null
+							? dfOutput.writePostings(renumberTerms(postings, termcodeHashmap1))
+							: dfOutput.writePostings(postings);
+				}
+				if (! deleted)
+				{
+					die.setBitIndexPointer(pointerDF);
+					docidOutput.addEntryToBuffer(die);
+					metaBuilder.writeDocumentEntry(metaInput1.getAllItems(sourceDocid));
 				}
-				die.setBitIndexPointer(pointerDF);
-				docidOutput.addEntryToBuffer(die);
-				metaBuilder.writeDocumentEntry(metaInput1.getAllItems(sourceDocid));
 				sourceDocid++;
 			}
 			dfInput1.close();
@@ -508,25 +727,21 @@ public class StructureMerger {
 			while (docidInput2.hasNext())
 			{
 				DocumentIndexEntry die = docidInput2.next();
+				final boolean deleted = docidMap2 != null && docidMap2[sourceDocid] == -1;
 			
 				BitIndexPointer pointerDF = emptyPointer;
 				if (die.getDocumentLength() > 0)
 				{
 					final IterablePosting postings = dfInput2.next();
-					
-					List<Posting> postingList = new ArrayList<Posting>();
-					while(postings.next() != IterablePosting.EOL)
-					{
-						final Posting p = postings.asWritablePosting();
-						p.setId(termcodeHashmap.get(postings.getId()));
-						postingList.add(p);
-					}
-					Collections.sort(postingList, new PostingIdComparator());
-					pointerDF = dfOutput.writePostings(postingList.iterator());
+					if (! deleted)
+						pointerDF = dfOutput.writePostings(renumberTerms(postings, termcodeHashmap));
+				}
+				if (! deleted)
+				{
+					die.setBitIndexPointer(pointerDF);
+					docidOutput.addEntryToBuffer(die);
+					metaBuilder.writeDocumentEntry(metaInput2.getAllItems(sourceDocid));
 				}
-				die.setBitIndexPointer(pointerDF);
-				docidOutput.addEntryToBuffer(die);
-				metaBuilder.writeDocumentEntry(metaInput2.getAllItems(sourceDocid));
 				sourceDocid++;
 			}
 			dfInput2.close();
@@ -585,6 +800,7 @@ public class StructureMerger {
 				? ArrayUtils.parseCommaDelimitedString(srcIndex1.getIndexProperty("index.meta.reverse-key-names", ""))
 				: new String[0];
 			final MetaIndexBuilder metaBuilder = new CompressingMetaIndexBuilder(destIndex, metaTags, metaTagLengths, metaReverseTags);
+			mergeDocValues(metaBuilder);
 		
 			if (! srcIndex1.getIndexProperty("index.meta.key-names", "docno").equals(srcIndex2.getIndexProperty("index.meta.key-names", "docno")))
 			{
@@ -611,26 +827,35 @@ public class StructureMerger {
 			}
 			final int fieldCount = srcFieldCount1;
 			
-			//traversing the first set of files, without any change
+			purgeDeleted();
+			//traversing the first set of files, without any change except omitting deleted documents
+			int sourceDocid = 0;
 			while(docidInput1.hasNext())
 			{
 				metaInput1.hasNext();
 				DocumentIndexEntry die = docidInput1.next();
+				String[] meta = metaInput1.next();
+				if (docidMap1 != null && docidMap1[sourceDocid++] == -1)
+					continue;
 				DocumentIndexEntry dieNew = (fieldCount > 0) ? die : new SimpleDocumentIndexEntry(die);
 				docidOutput.addEntryToBuffer(dieNew);
-				metaBuilder.writeDocumentEntry(metaInput1.next());
+				metaBuilder.writeDocumentEntry(meta);
 			}
 			
 			final Iterator<DocumentIndexEntry> docidInput2 = (Iterator<DocumentIndexEntry>)srcIndex2.getIndexStructureInputStream("document");
 			final Iterator<String[]> metaInput2 = (Iterator<String[]>)srcIndex2.getIndexStructureInputStream("meta");
-			//traversing the 2nd set of files, without any change
+			//traversing the 2nd set of files, without any change except omitting deleted documents
+			sourceDocid = 0;
 			while(docidInput2.hasNext())
 			{
 				metaInput2.hasNext();
 				DocumentIndexEntry die = docidInput2.next();
+				String[] meta = metaInput2.next();
+				if (docidMap2 != null && docidMap2[sourceDocid++] == -1)
+					continue;
 				DocumentIndexEntry dieNew = (fieldCount > 0) ? die : new SimpleDocumentIndexEntry(die);
 				docidOutput.addEntryToBuffer(dieNew);
-				metaBuilder.writeDocumentEntry(metaInput2.next());
+				metaBuilder.writeDocumentEntry(meta);
 			}
 			
 			docidOutput.finishedCollections();
@@ -731,6 +956,36 @@ public class StructureMerger {
 			//save up some memory
 			termcodeHashmap.clear();
 			termcodeHashmap = null;
+			termcodeHashmap1 = null;
+		}
+		
+		if (bothInverted)
+		{
+			//retain skips if both source indices had them
+			final int skipBlockSize = Math.min(
+					srcIndex1.getIntIndexProperty("index.inverted.skip.block.size", 0),
+					srcIndex2.getIntIndexProperty("index.inverted.skip.block.size", 0));
+			try{
+				if (BitPostingIndexSkips.createIfEnabled(destIndex, "inverted", skipBlockSize))
+					destIndex.flush();
+			} catch (IOException ioe) {
+				logger.warn("Problem creating skips for inverted index", ioe);
+			}
+			//record maximum scores for the models recorded in either source index
+			final Set<String> maxScoreModels = new LinkedHashSet<>();
+			for(IndexOnDisk srcIndex : new IndexOnDisk[]{srcIndex1, srcIndex2})
+			{
+				if (! srcIndex.hasIndexStructure(TermMaxScores.STRUCTURE_NAME))
+					continue;
+				maxScoreModels.addAll(Arrays.asList(srcIndex.getIndexProperty("index.maxscore.models", "").split(",")));
+			}
+			maxScoreModels.remove("");
+			try{
+				if (TermMaxScores.createIfEnabled(destIndex, maxScoreModels.toArray(new String[0])))
+					destIndex.flush();
+			} catch (IOException ioe) {
+				logger.warn("Problem recording maximum scores for inverted index", ioe);
+			}
 		}
 	}
 	
@@ -166,7 +166,7 @@ import com.google.common.collect.Sets;
  * MetaIndex key to use as the docno. Defaults to "docno".
  * 
  * <li><tt>trec.querying.resultscache</tt> - controls cache to use for query caching. 
- * Defaults to {@link NullQueryResultCache}</li> 
+ * Defaults to {@link NullQueryResultCache}. Alternatives include {@link org.terrier.structures.cache.BoundedQueryResultCache}.</li> 
  * 
  * </ul>
  * 
@@ -590,7 +590,17 @@ public class TRECQuerying extends AbstractQuerying {
 			return;
 		}
 		SearchRequest srq = processQuery(queryId, query);
+		writeResults(srq);
+	}
 
+	/**
+	 * Writes the results of the specified query to the result file, opening
+	 * the result file if necessary.
+	 * 
+	 * @param srq
+	 *            the query whose results should be written.
+	 */
+	protected void writeResults(SearchRequest srq) {
 		synchronized (this) {
 			if (resultFile == null) {
 				method = ApplicationSetup.getProperty("trec.runtag", srq.getControl("wmodel", srq.getControl("runtag", "unknown")));
@@ -656,7 +666,12 @@ public class TRECQuerying extends AbstractQuerying {
 		preQueryingSearchRequestModification(queryId, srq);
 		ResultSet rs = resultsCache.checkCache(srq);
 		if (rs != null)
-			((Request)rs).setResultSet(rs);
+		{
+			((Request)srq).setResultSet(rs);
+			if (logger.isInfoEnabled())
+				logger.info("Query " + queryId + ": '" + query + "' obtained from results cache");
+			return srq;
+		}
 		
 		
 		if (logger.isInfoEnabled())
@@ -0,0 +1,412 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is BoundedQueryResultCache.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original contributor)
+ */
+
+package org.terrier.structures.cache;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.matching.BaseMatching;
+import org.terrier.matching.ResultSet;
+import org.terrier.querying.Request;
+import org.terrier.querying.SearchRequest;
+import org.terrier.utility.ApplicationSetup;
+
+/** A results cache that is bounded in both the number of queries and the total number
+ * of retrieved documents that it holds, and which can be used by many threads at once,
+ * e.g. by {@link org.terrier.querying.LocalManager} behind the REST server or parallel
+ * batch retrieval.
+ * <p>
+ * Queries are identified by their normalised query text (leading, trailing and repeated
+ * whitespace removed) together with all of their controls, except those that record the
+ * progress of the query (<tt>runname</tt> and <tt>previousprocess</tt>). The key is computed
+ * once, when the cache is checked, and retained in the request, as processes may alter
+ * controls during retrieval.
+ * <p>
+ * Entries are evicted in least recently used order. However, to avoid caches being flushed
+ * by queries that are never repeated, new queries are only admitted when the cache is full
+ * if they have been seen more often than the entry that would be evicted (TinyLFU admission).
+ * The frequencies of queries are estimated using a small count-min sketch, which is periodically
+ * aged. Entries can optionally expire after a fixed time. The cache is split into segments, each
+ * with its own lock.
+ * <p>
+ * Cached result sets are shared by all requests that obtain them, and should not be modified. Approximate
+ * results, for which matching was stopped early (see {@link BaseMatching#STATUS_TIMEOUT}), are not cached.
+ * <p><b>Properties:</b>
+ * <ul>
+ * <li><tt>querying.resultscache.size</tt> - maximum number of queries to cache. Default 1000.</li>
+ * <li><tt>querying.resultscache.weight</tt> - maximum total number of retrieved documents to cache. Default 10000000.</li>
+ * <li><tt>querying.resultscache.ttl</tt> - time in milliseconds after which an entry expires, or 0 for never. Default 0.</li>
+ * </ul>
+ * @since 5.4
+ */
+public class BoundedQueryResultCache implements QueryResultCache
+{
+	protected static final Logger logger = LoggerFactory.getLogger(BoundedQueryResultCache.class);
+
+	/** name of the context object in which the cache key of a request is retained */
+	public static final String CACHE_KEY_CONTEXT = "resultscache.key";
+
+	/** controls that record the progress of a query, rather than affect its results */
+	static final Set<String> IGNORED_CONTROLS = new HashSet<>(Arrays.asList("runname", "previousprocess"));
+
+	static final class CacheEntry
+	{
+		final ResultSet results;
+		final int weight;
+		final long created;
+
+		CacheEntry(ResultSet _results, int _weight, long _created)
+		{
+			results = _results;
+			weight = _weight;
+			created = _created;
+		}
+	}
+
+	/** an access-ordered map, guarded by its own monitor */
+	@SuppressWarnings("serial")
+	static final class Segment extends LinkedHashMap<String, CacheEntry>
+	{
+		long weight = 0;
+
+		Segment()
+		{
+			super(16, 0.75f, true);
+		}
+	}
+
+	/** Estimates the frequency of keys using a count-min sketch of 4-bit counters, which
+	 * are halved once the number of increments reaches the sample size */
+	static final class FrequencySketch
+	{
+		static final int DEPTH = 4;
+		static final int MAX_COUNT = 15;
+		static final int MIN_WIDTH = 1024;
+		static final int[] SEEDS = new int[]{0x97cb3127, 0x9e3779b9, 0x85ebca6b, 0xc2b2ae35};
+
+		final byte[][] counts;
+		final int mask;
+		final int sampleSize;
+		int additions = 0;
+
+		FrequencySketch(int maxEntries)
+		{
+			//a minimum width keeps the estimates of small caches from being swamped by collisions
+			final int width = Integer.highestOneBit(Math.max(MIN_WIDTH, maxEntries) -1) << 1;
+			counts = new byte[DEPTH][width];
+			mask = width -1;
+			sampleSize = 10 * width;
+		}
+
+		static int index(int hash, int row, int mask)
+		{
+			int h = (hash ^ SEEDS[row]) * 0x9e3779b1;
+			h ^= h >>> 16;
+			return h & mask;
+		}
+
+		synchronized void increment(int hash)
+		{
+			boolean added = false;
+			for(int row=0;row<DEPTH;row++)
+			{
+				final int i = index(hash, row, mask);
+				if (counts[row][i] < MAX_COUNT)
+				{
+					counts[row][i]++;
+					added = true;
+				}
+			}
+			if (added && ++additions >= sampleSize)
+			{
+				for(byte[] row : counts)
+					for(int i=0;i<row.length;i++)
+						row[i] >>>= 1;
+				additions /= 2;
+			}
+		}
+
+		synchronized int frequency(int hash)
+		{
+			int min = MAX_COUNT;
+			for(int row=0;row<DEPTH;row++)
+				min = Math.min(min, counts[row][index(hash, row, mask)]);
+			return min;
+		}
+
+		synchronized void clear()
+		{
+			for(byte[] row : counts)
+				Arrays.fill(row, (byte)0);
+			additions = 0;
+		}
+	}
+
+	protected final Segment[] segments;
+	protected final int maxEntriesPerSegment;
+	protected final long maxWeightPerSegment;
+	protected final long ttl;
+	protected final FrequencySketch sketch;
+
+	protected final LongAdder hits = new LongAdder();
+	protected final LongAdder misses = new LongAdder();
+	protected final LongAdder evictions = new LongAdder();
+	protected final LongAdder rejections = new LongAdder();
+	protected final LongAdder expirations = new LongAdder();
+
+	/** Constructs a cache configured using the <tt>querying.resultscache.*</tt> properties */
+	public BoundedQueryResultCache()
+	{
+		this(
+			Integer.parseInt(ApplicationSetup.getProperty("querying.resultscache.size", "1000")),
+			Long.parseLong(ApplicationSetup.getProperty("querying.resultscache.weight", "10000000")),
+			Long.parseLong(ApplicationSetup.getProperty("querying.resultscache.ttl", "0")));
+	}
+
+	/** Constructs a cache with the specified bounds
+	 * @param maxEntries maximum number of queries to cache
+	 * @param maxWeight maximum total number of retrieved documents to cache
+	 * @param ttlMillis time after which entries expire, or 0 for never
+	 */
+	public BoundedQueryResultCache(int maxEntries, long maxWeight, long ttlMillis)
+	{
+		if (maxEntries <= 0 || maxWeight <= 0)
+			throw new IllegalArgumentException("Cache bounds must be positive");
+		//small caches are not segmented, to avoid very small segments
+		final int numSegments = maxEntries >= 256 ? 16 : 1;
+		this.segments = new Segment[numSegments];
+		for(int i=0;i<numSegments;i++)
+			segments[i] = new Segment();
+		this.maxEntriesPerSegment = Math.max(1, maxEntries / numSegments);
+		this.maxWeightPerSegment = Math.max(1, maxWeight / numSegments);
+		this.ttl = ttlMillis;
+		this.sketch = new FrequencySketch(maxEntries);
+	}
+
+	/** Returns the key used to identify the results of the specified request */
+	public static String getKey(SearchRequest q)
+	{
+		final String query = q.getOriginalQuery();
+		final StringBuilder key = new StringBuilder(query == null ? "" : query.trim().replaceAll("\\s+", " "));
+		for(Map.Entry<String,String> control : new TreeMap<>(q.getControls()).entrySet())
+		{
+			if (IGNORED_CONTROLS.contains(control.getKey()))
+				continue;
+			key.append('\u0000');
+			key.append(control.getKey());
+			key.append('=');
+			key.append(control.getValue());
+		}
+		return key.toString();
+	}
+
+	/** Returns the weight of the specified results */
+	protected int weigh(ResultSet results)
+	{
+		return Math.max(1, results.getResultSize());
+	}
+
+	/** Returns the current time in milliseconds */
+	protected long now()
+	{
+		return System.currentTimeMillis();
+	}
+
+	protected final boolean isExpired(CacheEntry entry, long time)
+	{
+		return ttl > 0 && time - entry.created >= ttl;
+	}
+
+	protected final Segment segmentFor(String key)
+	{
+		final int h = key.hashCode();
+		return segments[((h ^ (h >>> 16)) & 0x7fffffff) % segments.length];
+	}
+
+	@Override
+	public ResultSet checkCache(SearchRequest q)
+	{
+		final String key = getKey(q);
+		q.setContextObject(CACHE_KEY_CONTEXT, key);
+		sketch.increment(key.hashCode());
+		final Segment segment = segmentFor(key);
+		CacheEntry entry;
+		synchronized (segment) {
+			entry = segment.get(key);
+			if (entry != null && isExpired(entry, now()))
+			{
+				segment.remove(key);
+				segment.weight -= entry.weight;
+				expirations.increment();
+				entry = null;
+			}
+		}
+		if (entry == null)
+		{
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return entry.results;
+	}
+
+	@Override
+	public void add(SearchRequest q)
+	{
+		final ResultSet results = ((Request) q).getResultSet();
+		//approximate results, from matching that was stopped early, are not retained
+		if (results == null || results.getStatusCode() == BaseMatching.STATUS_TIMEOUT)
+			return;
+		String key = (String) q.getContextObject(CACHE_KEY_CONTEXT);
+		if (key == null)
+			key = getKey(q);
+		final int weight = weigh(results);
+		if (weight > maxWeightPerSegment)
+		{
+			rejections.increment();
+			return;
+		}
+		final long time = now();
+		final Segment segment = segmentFor(key);
+		synchronized (segment) {
+			final CacheEntry old = segment.remove(key);
+			if (old != null)
+				segment.weight -= old.weight;
+
+			boolean admitted = old != null;
+			final Iterator<Map.Entry<String,CacheEntry>> victims = segment.entrySet().iterator();
+			while(segment.size() >= maxEntriesPerSegment || segment.weight + weight > maxWeightPerSegment)
+			{
+				final Map.Entry<String,CacheEntry> victim = victims.next();
+				final boolean expired = isExpired(victim.getValue(), time);
+				if (! admitted && ! expired)
+				{
+					//TinyLFU: only displace the least recently used entry if the new query is more frequent
+					if (sketch.frequency(key.hashCode()) <= sketch.frequency(victim.getKey().hashCode()))
+					{
+						rejections.increment();
+						return;
+					}
+					admitted = true;
+				}
+				victims.remove();
+				segment.weight -= victim.getValue().weight;
+				if (expired)
+					expirations.increment();
+				else
+					evictions.increment();
+			}
+			segment.put(key, new CacheEntry(results, weight, time));
+			segment.weight += weight;
+		}
+	}
+
+	@Override
+	public void reset()
+	{
+		for(Segment segment : segments)
+		{
+			synchronized (segment) {
+				segment.clear();
+				segment.weight = 0;
+			}
+		}
+		sketch.clear();
+	}
+
+	/** Returns the number of queries currently cached */
+	public int size()
+	{
+		int size = 0;
+		for(Segment segment : segments)
+		{
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/** Returns the total weight of the queries currently cached */
+	public long getWeight()
+	{
+		long weight = 0;
+		for(Segment segment : segments)
+		{
+			synchronized (segment) {
+				weight += segment.weight;
+			}
+		}
+		return weight;
+	}
+
+	/** Returns the number of lookups that found cached results */
+	public long getHitCount()
+	{
+		return hits.sum();
+	}
+
+	/** Returns the number of lookups that did not find cached results */
+	public long getMissCount()
+	{
+		return misses.sum();
+	}
+
+	/** Returns the number of entries evicted to make space for others */
+	public long getEvictionCount()
+	{
+		return evictions.sum();
+	}
+
+	/** Returns the number of results not admitted to the cache */
+	public long getRejectionCount()
+	{
+		return rejections.sum();
+	}
+
+	/** Returns the number of entries removed as they had expired */
+	public long getExpirationCount()
+	{
+		return expirations.sum();
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.getClass().getSimpleName() + "{size=" + size() + ", weight=" + getWeight()
+			+ ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount()
+			+ ", rejections=" + getRejectionCount() + ", expirations=" + getExpirationCount() + "}";
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is BitInBenchmark.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ *
+ */
+package org.terrier.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terrier.compression.bit.BitFileInMemoryLarge;
+import org.terrier.compression.bit.BitIn;
+import org.terrier.compression.bit.BitOutputStream;
+import org.terrier.utility.io.RandomDataInputMemory;
+
+/** Benchmarks the decoding of gamma and unary codes by {@link org.terrier.compression.bit.BitInBase},
+ * as used for the docid gaps and frequencies of posting lists. The codes are read from memory. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BitInBenchmark {
+
+	static final int COUNT = 100000;
+
+	BitFileInMemoryLarge gammas;
+	BitFileInMemoryLarge unaries;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		final Random random = new Random(42);
+		ByteArrayOutputStream gammaBytes = new ByteArrayOutputStream();
+		ByteArrayOutputStream unaryBytes = new ByteArrayOutputStream();
+		BitOutputStream gammaOut = new BitOutputStream(gammaBytes);
+		BitOutputStream unaryOut = new BitOutputStream(unaryBytes);
+		for(int i=0;i<COUNT;i++)
+		{
+			//geometrically distributed, as for docid gaps
+			gammaOut.writeGamma(1 + (int)(-Math.log(1 - random.nextDouble()) * 20));
+			//small values, as for frequencies
+			unaryOut.writeUnary(1 + (int)(-Math.log(1 - random.nextDouble()) * 2));
+		}
+		gammaOut.close();
+		unaryOut.close();
+		gammas = new BitFileInMemoryLarge(new RandomDataInputMemory(gammaBytes.toByteArray()));
+		unaries = new BitFileInMemoryLarge(new RandomDataInputMemory(unaryBytes.toByteArray()));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public long readGamma() throws IOException
+	{
+		final BitIn in = gammas.readReset(0, (byte)0);
+		long sum = 0;
+		for(int i=0;i<COUNT;i++)
+			sum += in.readGamma();
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public long readUnary() throws IOException
+	{
+		final BitIn in = unaries.readReset(0, (byte)0);
+		long sum = 0;
+		for(int i=0;i<COUNT;i++)
+			sum += in.readUnary();
+		return sum;
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is IndexingBenchmark.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ *
+ */
+package org.terrier.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terrier.structures.IndexUtil;
+import org.terrier.structures.indexing.Indexer;
+import org.terrier.structures.indexing.classical.BasicIndexer;
+import org.terrier.structures.indexing.singlepass.BasicSinglePassIndexer;
+
+/** Benchmarks indexing the synthetic corpus, by default using the single-pass indexer. 
+ * Each invocation builds a complete index, which is then deleted. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IndexingBenchmark {
+
+	@Param("5000")
+	public int numDocs;
+
+	@Param({"singlepass", "classical"})
+	public String indexer;
+
+	SyntheticIndex corpus;
+	int count = 0;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		corpus = new SyntheticIndex(numDocs, 50000, 100, 42);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException
+	{
+		corpus.close();
+	}
+
+	@TearDown(Level.Invocation)
+	public void deleteIndex() throws IOException
+	{
+		IndexUtil.deleteIndex(corpus.getPath(), "bench" + count);
+	}
+
+	@Benchmark
+	public void index() throws Exception
+	{
+		final String prefix = "bench" + (++count);
+		final Indexer i = indexer.equals("classical")
+			? new BasicIndexer(corpus.getPath(), prefix)
+			: new BasicSinglePassIndexer(corpus.getPath(), prefix);
+		corpus.index(i);
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is LexiconBenchmark.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ *
+ */
+package org.terrier.benchmarks;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terrier.structures.Lexicon;
+
+/** Benchmarks the lookup of terms in the lexicon, i.e. <tt>FSOrderedMapFile.get()</tt> or the
+ * structure used by the configured data source. One in ten of the terms looked up are not in the lexicon. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LexiconBenchmark {
+
+	static final int LOOKUPS = 1024;
+
+	@Param("20000")
+	public int numDocs;
+
+	@Param({"file", "fileinmem", "mmap"})
+	public String dataSource;
+
+	SyntheticIndex corpus;
+	Lexicon<String> lexicon;
+	String[] terms;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		corpus = new SyntheticIndex(numDocs, 50000, 100, 42);
+		lexicon = corpus.getIndex(Collections.singletonMap("index.lexicon.data-source", dataSource)).getLexicon();
+		final int numTerms = lexicon.numberOfEntries();
+		final Random random = new Random(42);
+		terms = new String[LOOKUPS];
+		for(int i=0;i<LOOKUPS;i++)
+			terms[i] = i % 10 == 0
+				? "missing" + SyntheticIndex.term(i)
+				: lexicon.getIthLexiconEntry(random.nextInt(numTerms)).getKey();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException
+	{
+		corpus.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public int getLexiconEntry()
+	{
+		int found = 0;
+		for(String t : terms)
+			if (lexicon.getLexiconEntry(t) != null)
+				found++;
+		return found;
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is MatchingBenchmark.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ *
+ */
+package org.terrier.benchmarks;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terrier.matching.Matching;
+import org.terrier.matching.MatchingQueryTerms;
+import org.terrier.matching.models.BM25;
+import org.terrier.structures.Index;
+
+/** Benchmarks matching queries of two to four terms using BM25, by default using 
+ * {@link org.terrier.matching.daat.Full}. The queries mix frequent and less frequent terms.*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatchingBenchmark {
+
+	static final int QUERIES = 64;
+
+	@Param("20000")
+	public int numDocs;
+
+	@Param({"org.terrier.matching.daat.Full", "org.terrier.matching.daat.WAND"})
+	public String matching;
+
+	SyntheticIndex corpus;
+	Matching matcher;
+	String[][] queries;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		corpus = new SyntheticIndex(numDocs, 50000, 100, 42);
+		Index index = corpus.getIndex(Collections.emptyMap());
+		matcher = Class.forName(matching).asSubclass(Matching.class).getConstructor(Index.class).newInstance(index);
+		final Random random = new Random(42);
+		queries = new String[QUERIES][];
+		for(int q=0;q<QUERIES;q++)
+		{
+			queries[q] = new String[2 + random.nextInt(3)];
+			for(int t=0;t<queries[q].length;t++)
+				//ranks are skewed towards the frequent terms
+				queries[q][t] = SyntheticIndex.term((int) Math.pow(random.nextInt(100), 2));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException
+	{
+		corpus.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public int match() throws IOException
+	{
+		int retrieved = 0;
+		for(int q=0;q<QUERIES;q++)
+		{
+			MatchingQueryTerms mqt = new MatchingQueryTerms(String.valueOf(q));
+			for(String t : queries[q])
+				mqt.setTermProperty(t, 1.0d);
+			mqt.setDefaultTermWeightingModel(new BM25());
+			retrieved += matcher.match(String.valueOf(q), mqt).getResultSize();
+		}
+		return retrieved;
+	}
+}
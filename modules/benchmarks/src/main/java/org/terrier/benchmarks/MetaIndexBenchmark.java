@@ -0,0 +1,113 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is MetaIndexBenchmark.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ *
+ */
+package org.terrier.benchmarks;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terrier.structures.MetaIndex;
+
+/** Benchmarks obtaining the docnos of random documents from the {@link org.terrier.structures.CompressingMetaIndex}, 
+ * as done when results are output, as well as the reverse lookup of docids from docnos. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetaIndexBenchmark {
+
+	static final int LOOKUPS = 1024;
+
+	@Param("20000")
+	public int numDocs;
+
+	@Param({"fileinmem", "mmap", "file"})
+	public String dataSource;
+
+	SyntheticIndex corpus;
+	MetaIndex meta;
+	int[] docids;
+	String[] docnos;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		corpus = new SyntheticIndex(numDocs, 50000, 100, 42);
+		meta = corpus.getIndex(Collections.singletonMap("index.meta.data-source", dataSource)).getMetaIndex();
+		final Random random = new Random(42);
+		docids = new int[LOOKUPS];
+		docnos = new String[LOOKUPS];
+		for(int i=0;i<LOOKUPS;i++)
+		{
+			docids[i] = random.nextInt(numDocs);
+			docnos[i] = meta.getItem("docno", docids[i]);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException
+	{
+		corpus.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public int getItem() throws IOException
+	{
+		int length = 0;
+		for(int docid : docids)
+			length += meta.getItem("docno", docid).length();
+		return length;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public long getDocument() throws IOException
+	{
+		long sum = 0;
+		for(String docno : docnos)
+			sum += meta.getDocument("docno", docno);
+		return sum;
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is PostingsBenchmark.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ *
+ */
+package org.terrier.benchmarks;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terrier.structures.Index;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.PostingIndex;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.utility.ApplicationSetup;
+
+/** Benchmarks iterating over posting lists of a {@link org.terrier.structures.bit.BitPostingIndex}, 
+ * both in full using <tt>next()</tt>, as for exhaustive DAAT matching, and by skipping to target 
+ * docids using <tt>next(int)</tt>, as for dynamic pruning. Each invocation reads the posting lists 
+ * of the most frequent terms of the synthetic index. The index is built with and without skip pointers
+ * (<tt>indexing.inverted.skip.block.size</tt>), so that <tt>next(int)</tt> is measured both when it can
+ * skip over blocks of postings and when it must decode each posting. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PostingsBenchmark {
+
+	/** number of the most frequent terms read by each invocation */
+	static final int TERMS = 8;
+
+	@Param("20000")
+	public int numDocs;
+
+	@Param({"file", "fileinmem"})
+	public String dataSource;
+
+	/** number of docids between the targets of next(int) */
+	@Param("100")
+	public int skip;
+
+	/** number of postings in each skip block of the inverted index, or 0 for no skip pointers */
+	@Param({"0", "64"})
+	public int skipBlockSize;
+
+	SyntheticIndex corpus;
+	PostingIndex<?> inverted;
+	LexiconEntry[] entries;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		corpus = new SyntheticIndex(numDocs, 50000, 100, 42);
+		ApplicationSetup.setProperty("indexing.inverted.skip.block.size", String.valueOf(skipBlockSize));
+		Index index = corpus.getIndex(Collections.singletonMap("index.inverted.data-source", dataSource));
+		inverted = index.getInvertedIndex();
+		entries = new LexiconEntry[TERMS];
+		for(int i=0;i<TERMS;i++)
+			entries[i] = index.getLexicon().getLexiconEntry(SyntheticIndex.term(i));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException
+	{
+		corpus.close();
+	}
+
+	@Benchmark
+	public long next() throws IOException
+	{
+		long sum = 0;
+		for(LexiconEntry le : entries)
+		{
+			final IterablePosting ip = inverted.getPostings(le);
+			while(ip.next() != IterablePosting.EOL)
+				sum += ip.getFrequency();
+			ip.close();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long nextTarget() throws IOException
+	{
+		long sum = 0;
+		for(LexiconEntry le : entries)
+		{
+			final IterablePosting ip = inverted.getPostings(le);
+			int target = 0;
+			int id;
+			while((id = ip.next(target)) != IterablePosting.EOL)
+			{
+				sum += ip.getFrequency();
+				target = id + skip;
+			}
+			ip.close();
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is SyntheticIndex.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ *
+ */
+package org.terrier.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import org.terrier.indexing.Collection;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.indexing.Indexer;
+import org.terrier.structures.indexing.classical.BasicIndexer;
+import org.terrier.utility.ApplicationSetup;
+
+/** A synthetic corpus, and an index of it, against which the benchmarks are run, such that no
+ * corpus need be downloaded. Terms are drawn from a Zipfian distribution, as for natural language,
+ * such that the most frequent terms have long posting lists, while most terms are rare. The corpus
+ * is generated from a fixed seed, so that results are comparable between runs.
+ * <p>
+ * Constructing a SyntheticIndex configures ApplicationSetup to use a new temporary directory, and
+ * to apply no term pipeline, so that the generated terms are indexed verbatim.
+ */
+public class SyntheticIndex implements java.io.Closeable {
+
+	/** exponent of the Zipfian distribution of terms */
+	static final double ZIPF_EXPONENT = 1.0d;
+	static final String PREFIX = "data";
+
+	final File dir;
+	final String[] docnos;
+	final String[] documents;
+	final int vocabularySize;
+	IndexOnDisk index;
+
+	/** Generates a corpus
+	 * @param numDocs number of documents
+	 * @param _vocabularySize number of distinct terms that may occur
+	 * @param meanLength average number of tokens of each document
+	 * @param seed seed for the random number generator
+	 */
+	public SyntheticIndex(int numDocs, int _vocabularySize, int meanLength, long seed) throws IOException
+	{
+		this.vocabularySize = _vocabularySize;
+		this.dir = Files.createTempDirectory("terrier-benchmark").toFile();
+		configure(dir);
+
+		//cumulative distribution of the terms
+		final double[] cdf = new double[vocabularySize];
+		double sum = 0;
+		for(int r=0;r<vocabularySize;r++)
+			cdf[r] = sum += 1.0d / Math.pow(r+1, ZIPF_EXPONENT);
+		for(int r=0;r<vocabularySize;r++)
+			cdf[r] /= sum;
+
+		final Random random = new Random(seed);
+		docnos = new String[numDocs];
+		documents = new String[numDocs];
+		final StringBuilder s = new StringBuilder();
+		for(int d=0;d<numDocs;d++)
+		{
+			docnos[d] = "doc" + d;
+			s.setLength(0);
+			final int length = 1 + random.nextInt(2 * meanLength);
+			for(int t=0;t<length;t++)
+			{
+				int rank = Arrays.binarySearch(cdf, random.nextDouble());
+				if (rank < 0)
+					rank = -rank -1;
+				s.append(term(Math.min(rank, vocabularySize-1))).append(' ');
+			}
+			documents[d] = s.toString();
+		}
+	}
+
+	static void configure(File dir)
+	{
+		Properties p = new Properties();
+		p.setProperty("terrier.home", dir.toString());
+		p.setProperty("terrier.etc", dir.toString());
+		p.setProperty("terrier.index.path", dir.toString());
+		p.setProperty("terrier.index.prefix", PREFIX);
+		p.setProperty("termpipelines", "");
+		p.setProperty("indexer.meta.forward.keys", "docno");
+		p.setProperty("indexer.meta.forward.keylens", "20");
+		p.setProperty("indexer.meta.reverse.keys", "docno");
+		ApplicationSetup.bootstrapInitialisation(p);
+	}
+
+	/** Returns the term with the specified rank in the frequency distribution, where rank 0 is the most frequent.
+	 * Terms consist only of letters, such that they are not altered by tokenisation. */
+	public static String term(int rank)
+	{
+		final StringBuilder s = new StringBuilder("t");
+		do {
+			s.append((char)('a' + rank % 26));
+			rank /= 26;
+		} while (rank > 0);
+		return s.toString();
+	}
+
+	public int getNumberOfDocuments()
+	{
+		return docnos.length;
+	}
+
+	public int getVocabularySize()
+	{
+		return vocabularySize;
+	}
+
+	/** Returns a new Collection of the documents of this corpus */
+	public Collection getCollection() throws Exception
+	{
+		return IndexTestUtils.makeCollection(docnos, documents);
+	}
+
+	/** Returns the path of the directory in which indices are written */
+	public String getPath()
+	{
+		return dir.toString();
+	}
+
+	/** Indexes this corpus using the specified indexer. */
+	public void index(Indexer indexer) throws Exception
+	{
+		indexer.index(new Collection[]{getCollection()});
+	}
+
+	/** Returns the index of this corpus, which is built using the classical indexer when this method is
+	 * first called.
+	 * @param indexProperties properties to set on the index before any of its structures are loaded, e.g.
+	 * <tt>index.lexicon.data-source</tt>
+	 */
+	public Index getIndex(Map<String,String> indexProperties) throws Exception
+	{
+		if (index == null)
+		{
+			index(new BasicIndexer(getPath(), PREFIX));
+			IndexOnDisk built = IndexOnDisk.createIndex(getPath(), PREFIX);
+			indexProperties.forEach(built::setIndexProperty);
+			built.flush();
+			built.close();
+			index = IndexOnDisk.createIndex(getPath(), PREFIX);
+			if (index == null)
+				throw new IOException("Could not load synthetic index: " + IndexOnDisk.getLastIndexLoadError());
+		}
+		return index;
+	}
+
+	/** Closes the index, and deletes all indices of this corpus */
+	@Override
+	public void close() throws IOException
+	{
+		if (index != null)
+			index.close();
+		index = null;
+		if (dir.exists())
+			Files.walk(dir.toPath())
+				.sorted(Comparator.reverseOrder())
+				.map(java.nio.file.Path::toFile)
+				.forEach(File::delete);
+	}
+}
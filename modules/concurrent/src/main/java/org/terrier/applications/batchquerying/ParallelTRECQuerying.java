@@ -25,17 +25,15 @@
  */
 package org.terrier.applications.batchquerying;
 
+import gnu.trove.TLongArrayList;
+
 import java.io.Closeable;
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.CommandLine;
@@ -48,10 +46,22 @@ import org.terrier.querying.ThreadSafeManager;
 import org.terrier.structures.Index;
 import org.terrier.structures.IndexFactory;
 import org.terrier.structures.concurrent.ConcurrentIndexUtils;
-import org.terrier.structures.outputformat.NullOutputFormat;
-import org.terrier.structures.outputformat.OutputFormat;
+import org.terrier.utility.ApplicationSetup;
 
-/** An instance of TRECQuerying that will invoke multiple threads concurrently */
+/** An instance of TRECQuerying that will invoke multiple threads concurrently. Queries are executed
+ * by a work-stealing pool of threads, while the results are written to the results file in the
+ * same order as the topics, using a bounded reorder buffer. Once the buffer is full, reading of
+ * further topics waits for the earliest outstanding query to be written, such that memory does
+ * not grow with the number of topics. At the end of each batch, percentiles of the time taken
+ * to execute each query are logged.
+ * <p><b>Properties</b>:
+ * <ul>
+ * <li><tt>trec.querying.parallel.threads</tt> - number of queries to execute at once. Defaults to the
+ * number of processors. Can also be set using the <tt>-p</tt> option.</li>
+ * <li><tt>trec.querying.parallel.pending</tt> - maximum number of queries executing or awaiting writing,
+ * for each thread. Defaults to 4.</li>
+ * </ul>
+ */
 public class ParallelTRECQuerying extends TRECQuerying implements Closeable {
 
 	public static class Command extends TRECQuerying.Command
@@ -86,7 +96,7 @@ public class ParallelTRECQuerying extends TRECQuerying implements Closeable {
 			if (line.hasOption("parallelism"))
 			{
 				int threads = Integer.parseInt(line.getOptionValue("parallelism"));
-				((ParallelTRECQuerying)q).pool = Executors.newFixedThreadPool(threads);
+				((ParallelTRECQuerying)q).setParallelism(threads);
 			}			
 			return super.run(line, q);
 		}
@@ -104,37 +114,60 @@ public class ParallelTRECQuerying extends TRECQuerying implements Closeable {
 			
 	}
 	
+	/** number of queries executing or awaiting writing for each thread */
+	final static int PENDING_PER_THREAD = Integer.parseInt(ApplicationSetup.getProperty("trec.querying.parallel.pending", "4"));
 	
 	ExecutorService pool;
+	int parallelism = Integer.parseInt(ApplicationSetup.getProperty("trec.querying.parallel.threads", 
+			String.valueOf(Runtime.getRuntime().availableProcessors())));
 	
-	//First line is valid for multiple processors machine. If the machine has only one, it only launches one thread
-	//final static int NUM_PROC = Runtime.getRuntime().availableProcessors();
-	final static int NUM_PROC = 20;
-	List<Future<?>> runningQueries = Collections.synchronizedList(new ArrayList<Future<?>>());
+	/** permits for each query that can be read before earlier queries are written */
+	Semaphore pending;
+	/** results awaiting writing, indexed by the position of the query in the batch, modulo the buffer length. 
+	 * Guarded by the monitor of this array. */
+	SearchRequest[] reorderBuffer;
+	/** whether each slot of the reorder buffer has completed, even if unsuccessfully */
+	boolean[] completed;
+	/** position of the next query to be read */
+	long nextQuery;
+	/** position of the next query to be written */
+	long nextWrite;
+	/** first failure of a query in this batch */
+	Throwable failure;
+	/** time in nanoseconds taken to execute each query of the batch */
+	final TLongArrayList latencies = new TLongArrayList();
 
 	@SuppressWarnings("deprecation")
 	public ParallelTRECQuerying() {
 		super();
-		pool = Executors.newFixedThreadPool(NUM_PROC);
-		if (! (super.printer instanceof NullOutputFormat))
-			super.printer = new SynchronizedOutputFormat(super.printer);
 	}
 
 	public ParallelTRECQuerying(IndexRef i) {
 		super(i);
-		pool = Executors.newFixedThreadPool(NUM_PROC);
-		if (! (super.printer instanceof NullOutputFormat))
-			super.printer = new SynchronizedOutputFormat(super.printer);
 	}
 
 	@Deprecated
 	public ParallelTRECQuerying(boolean _queryexpansion) {
 		super();
-		pool = Executors.newFixedThreadPool(NUM_PROC);
 		if (_queryexpansion)
 			controls.put("qe", "on");
-		if (! (super.printer instanceof NullOutputFormat))
-			super.printer = new SynchronizedOutputFormat(super.printer);
+	}
+	
+	/** Sets the number of queries to execute at once */
+	public void setParallelism(int threads) {
+		if (threads <= 0)
+			throw new IllegalArgumentException("Parallelism must be positive");
+		parallelism = threads;
+		if (pool != null)
+		{
+			close();
+			pool = null;
+		}
+	}
+	
+	/** Returns the number of queries to execute at once */
+	public int getParallelism() {
+		return parallelism;
 	}
 	
 	@Override
@@ -147,77 +180,138 @@ public class ParallelTRECQuerying extends TRECQuerying implements Closeable {
 		this.queryingManager = new ThreadSafeManager(index);
 	}
 
-	final void _processQueryAndWrite(final String queryId, final String query) 
-	{
-		super.processQueryAndWrite(queryId, query);
+	@Override
+	protected void startingBatchOfQueries() {
+		super.startingBatchOfQueries();
+		if (pool == null)
+			pool = Executors.newWorkStealingPool(parallelism);
+		final int maxPending = parallelism * Math.max(1, PENDING_PER_THREAD);
+		pending = new Semaphore(maxPending);
+		reorderBuffer = new SearchRequest[maxPending];
+		completed = new boolean[maxPending];
+		nextQuery = 0;
+		nextWrite = 0;
+		failure = null;
+		synchronized (latencies) {
+			latencies.clear();
+		}
 	}
 
 	@Override
 	protected void processQueryAndWrite(final String queryId, final String query) 
 	{
-		@SuppressWarnings("resource")
-		final ParallelTRECQuerying me = this;
-		runningQueries.add(pool.submit(new Runnable() {
-			
-			public void run() {
-				me._processQueryAndWrite(queryId, query);
+		if (query == null || query.trim().length() == 0)
+		{
+			logger.warn("Ignoring empty query " + queryId);
+			return;
+		}
+		try{
+			//wait for space in the reorder buffer
+			pending.acquire();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting to process query " + queryId, ie);
+		}
+		final long position = nextQuery++;
+		pool.execute(() -> {
+			SearchRequest srq = null;
+			try{
+				final long start = System.nanoTime();
+				srq = processQuery(queryId, query);
+				final long latency = System.nanoTime() - start;
+				synchronized (latencies) {
+					latencies.add(latency);
+				}
+			} catch (Throwable t) {
+				logger.error("Problem processing query " + queryId, t);
+				synchronized (reorderBuffer) {
+					if (failure == null)
+						failure = t;
+				}
+			}
+			completed(position, srq);
+		});
+	}
+	
+	/** records the results of the query at the specified position in the batch, and writes all results 
+	 * that are now in order. srq is null if the query failed. */
+	void completed(long position, SearchRequest srq)
+	{
+		synchronized (reorderBuffer) {
+			final int slot = (int) (position % reorderBuffer.length);
+			reorderBuffer[slot] = srq;
+			completed[slot] = true;
+			int nextSlot;
+			while(completed[nextSlot = (int) (nextWrite % reorderBuffer.length)])
+			{
+				final SearchRequest next = reorderBuffer[nextSlot];
+				reorderBuffer[nextSlot] = null;
+				completed[nextSlot] = false;
+				nextWrite++;
+				pending.release();
+				if (next != null)
+					writeResults(next);
 			}
-		}));
+			reorderBuffer.notifyAll();
+		}
 	}
 	
 	@Override
 	protected void finishedQueries() {
-		
 		//block here awaiting all threads to write results before closing the file
-		for (Future<?> f : runningQueries)
-			try {
-				f.get();
-			} catch (Exception e) {
-				throw new RuntimeException(e);
+		synchronized (reorderBuffer) {
+			while(nextWrite < nextQuery)
+			{
+				try{
+					reorderBuffer.wait();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Interrupted while waiting for queries to finish", ie);
+				}
 			}
-		runningQueries.clear();
+		}
+		logLatencies();
 		super.finishedQueries();
+		if (failure != null)
+			throw new RuntimeException(failure);
 	}
-
-	//CompletionService<Object> completionService = null;//= new ExecutorCompletionService<Object>(pool);
 	
-	@Override
-	public PrintWriter getResultFile(String predefinedName) {
-		synchronized (this) {
-			return super.getResultFile(predefinedName);
-		}		
+	/** Returns the specified percentile of the time in milliseconds taken to execute each query of the last batch, 
+	 * or 0 if no queries were executed
+	 * @param percentile percentile between 0 and 100
+	 */
+	public double getLatencyPercentile(double percentile) {
+		final long[] sorted;
+		synchronized (latencies) {
+			sorted = latencies.toNativeArray();
+		}
+		if (sorted.length == 0)
+			return 0d;
+		Arrays.sort(sorted);
+		final int rank = (int) Math.ceil(percentile / 100d * sorted.length);
+		return sorted[Math.min(sorted.length, Math.max(1, rank)) -1] / 1e6d;
 	}
-
-	@Override
-	public String processQueries() {
-		//completionService = new ExecutorCompletionService<Object>(pool);
-		return super.processQueries();		
+	
+	protected void logLatencies() {
+		final int count;
+		synchronized (latencies) {
+			count = latencies.size();
+		}
+		if (count == 0 || ! logger.isInfoEnabled())
+			return;
+		logger.info(String.format("Executed %d queries using %d threads; query latency in ms: p50=%.1f p90=%.1f p99=%.1f max=%.1f", 
+			count, parallelism, getLatencyPercentile(50), getLatencyPercentile(90), getLatencyPercentile(99), getLatencyPercentile(100)));
 	}
 	
 	@Override
 	public void close() {
+		if (pool == null)
+			return;
 		pool.shutdown();
 		try { 
 			pool.awaitTermination(1, TimeUnit.MINUTES);
 		} catch (InterruptedException ie){}
 	}
-
-
-
-	static class SynchronizedOutputFormat implements OutputFormat
-	{
-		OutputFormat parent;
-		public SynchronizedOutputFormat(OutputFormat _parent)
-		{
-			parent = _parent;
-		}
-		
-		public synchronized void printResults(PrintWriter pw, SearchRequest q,
-				String method, String iteration, int numberOfResults)
-				throws IOException {
-			parent.printResults(pw, q, method, iteration, numberOfResults);
-		}
-	}
 	
 	public static void main(String[] args)
 	{
@@ -26,6 +26,7 @@
 package org.terrier.querying;
 
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -80,20 +81,35 @@ public class ThreadSafeManager extends LocalManager
 		}
 
 		@SuppressWarnings("unchecked")
+		K threadSafe(K clz) {
+			if ((clz instanceof ApplyLocalMatching) && !( clz instanceof TSApplyLocalMatching) )
+				return (K) tslm;
+			if ((clz instanceof PostFilterProcess) && !( clz instanceof TSPostFilterProcess) )
+				return (K) tspfp;
+			return clz;
+		}
+
 		@Override
 		List<K> getActive(Map<String, String> controls) {
 			List<K> rtr = super.getActive(controls);
-			rtr.replaceAll(clz -> 
-			{	
-				if ((clz instanceof ApplyLocalMatching) && !( clz instanceof TSApplyLocalMatching) )
-					return (K) tslm;
-				if ((clz instanceof PostFilterProcess) && !( clz instanceof TSPostFilterProcess) )
-					return (K) tspfp;
-				return clz;
-			});
+			rtr.replaceAll(this::threadSafe);
 			return rtr;
 		}
 		
+		@Override
+		Iterator<K> getActiveIterator(Map<String, String> controls) {
+			//runSearchRequest() obtains the processes using this iterator
+			final Iterator<K> parent = super.getActiveIterator(controls);
+			return new Iterator<K>() {
+				public boolean hasNext() {
+					return parent.hasNext();
+				}
+				public K next() {
+					return threadSafe(parent.next());
+				}
+			};
+		}
+		
 	}
 
 	TSApplyLocalMatching tslm = new TSApplyLocalMatching();
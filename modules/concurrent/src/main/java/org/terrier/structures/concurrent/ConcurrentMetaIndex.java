@@ -76,7 +76,7 @@ class ConcurrentMetaIndex implements MetaIndex {
 
 	public int getDocument(String key, String value) throws IOException {
 		synchronized (parent) {
-			return getDocument(key, value);
+			return parent.getDocument(key, value);
 		}
 	}
 
@@ -86,7 +86,7 @@ class ConcurrentMetaIndex implements MetaIndex {
 
 	@Override
 	public String[] getReverseKeys() {
-		return parent.getKeys();
+		return parent.getReverseKeys();
 	}
 
 	@Override
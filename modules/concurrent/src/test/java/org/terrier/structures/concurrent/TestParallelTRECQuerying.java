@@ -0,0 +1,99 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org 
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestParallelTRECQuerying.java.
+ *
+ * The Original Code is Copyright (C) 2017-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *  Craig Macdonald
+ */
+package org.terrier.structures.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.terrier.applications.batchquerying.ParallelTRECQuerying;
+import org.terrier.applications.batchquerying.TRECQuerying;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.structures.Index;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+
+public class TestParallelTRECQuerying extends ApplicationSetupBasedTest {
+
+	static final String[] WORDS = {"quick", "brown", "fox", "jumps", "over", "lazy", "dog", "terrier", "cat", "mouse"};
+	
+	@Test public void testSameAsSequential() throws Exception
+	{
+		final int numDocs = 200;
+		String[] docnos = new String[numDocs];
+		String[] docs = new String[numDocs];
+		for(int i=0;i<numDocs;i++)
+		{
+			docnos[i] = "doc" + i;
+			StringBuilder s = new StringBuilder();
+			for(int j=0;j<=i % 7;j++)
+				s.append(WORDS[(i * 31 + j * 7) % WORDS.length]).append(' ');
+			docs[i] = s.toString();
+		}
+		Index index = IndexTestUtils.makeIndex(docnos, docs);
+		
+		List<String> topics = new ArrayList<>();
+		for(int q=0;q<100;q++)
+			topics.add("q" + q + " " + WORDS[q % WORDS.length] + " " + WORDS[(q * 3 + 1) % WORDS.length]);
+		topics.add("q100 ");
+		ApplicationSetup.setProperty("trec.topics.parser", "SingleLineTRECQuery");
+		ApplicationSetup.setProperty("trec.topics", writeTemporaryFile("topics.txt", topics.toArray(new String[0])));
+		ApplicationSetup.setProperty("trec.querying.dump.settings", "false");
+		
+		String sequentialFile = terrier_etc + "/sequential.res";
+		ApplicationSetup.setProperty("trec.results.file", sequentialFile);
+		TRECQuerying sequential = new TRECQuerying(index.getIndexRef());
+		sequential.intialise();
+		sequential.processQueries();
+		sequential.close();
+		
+		String parallelFile = terrier_etc + "/parallel.res";
+		ApplicationSetup.setProperty("trec.results.file", parallelFile);
+		ParallelTRECQuerying parallel = new ParallelTRECQuerying(index.getIndexRef());
+		parallel.setParallelism(4);
+		parallel.intialise();
+		parallel.processQueries();
+		//results are written in the order of the topics
+		List<String> expected = Files.readAllLines(Paths.get(sequentialFile));
+		assertTrue(expected.size() > 100);
+		assertEquals(expected, Files.readAllLines(Paths.get(parallelFile)));
+		assertTrue(parallel.getLatencyPercentile(50) > 0);
+		assertTrue(parallel.getLatencyPercentile(100) >= parallel.getLatencyPercentile(50));
+		
+		//a second batch with the same instance
+		parallelFile = terrier_etc + "/parallel2.res";
+		ApplicationSetup.setProperty("trec.results.file", parallelFile);
+		parallel.processQueries();
+		assertEquals(expected, Files.readAllLines(Paths.get(parallelFile)));
+		parallel.close();
+		index.close();
+	}
+}
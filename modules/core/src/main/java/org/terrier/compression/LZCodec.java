@@ -0,0 +1,291 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is LZCodec.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *  Craig Macdonald
+ */
+package org.terrier.compression;
+
+import gnu.trove.TLongIntHashMap;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A byte-oriented LZ77 codec in the style of LZ4, for compressing many small records,
+ * such as those of a meta index. Decompression consists only of copying literals and
+ * earlier bytes, and so is much cheaper than inflating a zlib stream.
+ * <p>Records may be compressed against a shared dictionary, which is treated as if it preceded
+ * each record, such that content common to many records (e.g. URL prefixes, or padding) is encoded
+ * as matches into the dictionary. A dictionary can be trained on sample records using
+ * {@link #trainDictionary(List, int)}.
+ * <p>A compressed record is a sequence of the following, where the last has no match:
+ * <pre>
+ * byte token - literal length (high 4 bits) and match length - 4 (low 4 bits)
+ * [bytes of 255, then a byte less than 255 - extra literal length, if the literal length is 15]
+ * literals
+ * short offset of the match (little-endian), counting back from the current position
+ * [as for literals - extra match length, if the match length - 4 is 15]
+ * </pre>
+ * @since 5.4
+ */
+public class LZCodec
+{
+	static final int MIN_MATCH = 4;
+	static final int MAX_OFFSET = 0xFFFF;
+	static final int HASH_BITS = 12;
+	/** length of the grams counted when training a dictionary */
+	static final int GRAM = 8;
+	/** length of the segments of samples that a dictionary is built from */
+	static final int SEGMENT = 32;
+
+	/** Returns the maximum length of a compressed record of the specified length */
+	public static int maxCompressedLength(int length)
+	{
+		return length + length / 255 + 16;
+	}
+
+	static int hash(int v)
+	{
+		return (v * -1640531535) >>> (32 - HASH_BITS);
+	}
+
+	static int readInt(byte[] b, int i)
+	{
+		return (b[i] & 0xFF) | (b[i+1] & 0xFF) << 8 | (b[i+2] & 0xFF) << 16 | (b[i+3] & 0xFF) << 24;
+	}
+
+	/** Compresses records against a dictionary. Not thread-safe. */
+	public static class Compressor
+	{
+		final int dictionaryLength;
+		/** the position+1 of the last occurrence of each hash in the dictionary, or 0 */
+		final int[] dictionaryTable = new int[1 << HASH_BITS];
+		final int[] table = new int[1 << HASH_BITS];
+		/** the dictionary, followed by the record being compressed */
+		byte[] window;
+
+		/** Creates a compressor using the specified dictionary, which may be empty */
+		public Compressor(byte[] dictionary)
+		{
+			dictionaryLength = dictionary.length;
+			window = new byte[dictionaryLength + 1024];
+			System.arraycopy(dictionary, 0, window, 0, dictionaryLength);
+			for(int i=0;i+MIN_MATCH<=dictionaryLength;i++)
+				dictionaryTable[hash(readInt(window, i))] = i+1;
+		}
+
+		/**
+		 * Compresses a record.
+		 * @param src array containing the record
+		 * @param length length of the record
+		 * @param dest array to write to, of at least {@link LZCodec#maxCompressedLength(int)} bytes
+		 * @return the number of bytes written to dest
+		 */
+		public int compress(byte[] src, int length, byte[] dest)
+		{
+			final int base = dictionaryLength;
+			final int end = base + length;
+			if (window.length < end)
+			{
+				final byte[] newWindow = new byte[end];
+				System.arraycopy(window, 0, newWindow, 0, base);
+				window = newWindow;
+			}
+			final byte[] w = window;
+			System.arraycopy(src, 0, w, base, length);
+			System.arraycopy(dictionaryTable, 0, table, 0, table.length);
+
+			int anchor = base;
+			int ip = base;
+			int op = 0;
+			while (ip + MIN_MATCH <= end)
+			{
+				final int v = readInt(w, ip);
+				final int h = hash(v);
+				final int ref = table[h] - 1;
+				table[h] = ip + 1;
+				if (ref < 0 || ip - ref > MAX_OFFSET || readInt(w, ref) != v)
+				{
+					ip++;
+					continue;
+				}
+				int matchLength = MIN_MATCH;
+				while (ip + matchLength < end && w[ref + matchLength] == w[ip + matchLength])
+					matchLength++;
+				op = writeSequence(dest, op, w, anchor, ip - anchor, ip - ref, matchLength);
+				ip += matchLength;
+				anchor = ip;
+			}
+			return writeSequence(dest, op, w, anchor, end - anchor, 0, 0);
+		}
+	}
+
+	/** Writes literals followed by a match, or by nothing if matchLength is 0 */
+	static int writeSequence(byte[] dest, int op, byte[] src, int literalStart, int literalLength, int offset, int matchLength)
+	{
+		final int tokenPos = op++;
+		int token = Math.min(literalLength, 15) << 4;
+		if (literalLength >= 15)
+			op = writeLength(dest, op, literalLength - 15);
+		System.arraycopy(src, literalStart, dest, op, literalLength);
+		op += literalLength;
+		if (matchLength > 0)
+		{
+			dest[op++] = (byte) offset;
+			dest[op++] = (byte) (offset >>> 8);
+			final int m = matchLength - MIN_MATCH;
+			token |= Math.min(m, 15);
+			if (m >= 15)
+				op = writeLength(dest, op, m - 15);
+		}
+		dest[tokenPos] = (byte) token;
+		return op;
+	}
+
+	static int writeLength(byte[] dest, int op, int length)
+	{
+		while (length >= 255)
+		{
+			dest[op++] = (byte) 255;
+			length -= 255;
+		}
+		dest[op++] = (byte) length;
+		return op;
+	}
+
+	static int readLength(ByteBuffer src)
+	{
+		int length = 0;
+		int b;
+		do {
+			b = src.get() & 0xFF;
+			length += b;
+		} while (b == 255);
+		return length;
+	}
+
+	/**
+	 * Decompresses a record, which is the remaining bytes of src.
+	 * @param src buffer whose remaining bytes are the compressed record. Its position is advanced.
+	 * @param dest array to decompress into, whose first destOffset bytes are the dictionary
+	 * the record was compressed against
+	 * @param destOffset the length of the dictionary
+	 * @return the offset in dest after the end of the record
+	 */
+	public static int decompress(ByteBuffer src, byte[] dest, int destOffset)
+	{
+		int op = destOffset;
+		while (src.hasRemaining())
+		{
+			final int token = src.get() & 0xFF;
+			int literalLength = token >>> 4;
+			if (literalLength == 15)
+				literalLength += readLength(src);
+			src.get(dest, op, literalLength);
+			op += literalLength;
+			if (! src.hasRemaining())
+				break;
+			final int offset = (src.get() & 0xFF) | (src.get() & 0xFF) << 8;
+			int matchLength = token & 15;
+			if (matchLength == 15)
+				matchLength += readLength(src);
+			matchLength += MIN_MATCH;
+			//byte-wise, as the match may overlap the bytes being written
+			int ref = op - offset;
+			final int matchEnd = op + matchLength;
+			while (op < matchEnd)
+				dest[op++] = dest[ref++];
+		}
+		return op;
+	}
+
+	/**
+	 * Builds a dictionary from the content that is most common in the sample records. Each
+	 * sample is divided into segments, which are scored by how often their grams occur in all
+	 * of the samples, and the best segments are chosen greedily, discounting the grams of
+	 * those already chosen. Segments with grams that occur only once are never chosen.
+	 * @param samples the sample records
+	 * @param maxLength maximum length of the dictionary, at most 65535
+	 * @return the dictionary, which may be empty
+	 */
+	public static byte[] trainDictionary(List<byte[]> samples, int maxLength)
+	{
+		maxLength = Math.min(maxLength, MAX_OFFSET);
+		final TLongIntHashMap counts = new TLongIntHashMap();
+		for(byte[] s : samples)
+			for(int i=0;i+GRAM<=s.length;i++)
+				counts.adjustOrPutValue(gram(s, i), 1, 1);
+
+		//lazy greedy selection: a candidate whose score has fallen since it was queued is requeued
+		final PriorityQueue<long[]> queue = new PriorityQueue<>((a,b) -> Long.compare(b[0], a[0]));
+		for(int s=0;s<samples.size();s++)
+		{
+			final byte[] sample = samples.get(s);
+			for(int i=0;i<sample.length;i+=SEGMENT/2)
+				queue.add(new long[]{score(counts, sample, i), s, i});
+		}
+		final byte[] dictionary = new byte[maxLength];
+		int length = 0;
+		long[] candidate;
+		while (length < maxLength && (candidate = queue.poll()) != null)
+		{
+			final byte[] sample = samples.get((int) candidate[1]);
+			final int start = (int) candidate[2];
+			final long score = score(counts, sample, start);
+			if (score < candidate[0])
+			{
+				candidate[0] = score;
+				queue.add(candidate);
+				continue;
+			}
+			final int segmentLength = Math.min(Math.min(SEGMENT, sample.length - start), maxLength - length);
+			if (score <= Math.max(0, segmentLength - GRAM + 1))
+				break;
+			System.arraycopy(sample, start, dictionary, length, segmentLength);
+			length += segmentLength;
+			for(int i=start;i+GRAM<=start+segmentLength;i++)
+				counts.put(gram(sample, i), 0);
+		}
+		final byte[] rtr = new byte[length];
+		System.arraycopy(dictionary, 0, rtr, 0, length);
+		return rtr;
+	}
+
+	static long score(TLongIntHashMap counts, byte[] sample, int start)
+	{
+		long score = 0;
+		final int end = Math.min(start + SEGMENT, sample.length);
+		for(int i=start;i+GRAM<=end;i++)
+			score += counts.get(gram(sample, i));
+		return score;
+	}
+
+	static long gram(byte[] b, int i)
+	{
+		long g = 0;
+		for(int j=0;j<GRAM;j++)
+			g = g << 8 | (b[i+j] & 0xFF);
+		return g;
+	}
+}
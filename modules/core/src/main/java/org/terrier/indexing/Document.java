@@ -28,6 +28,8 @@ package org.terrier.indexing;
 import java.util.Set;
 import java.io.Reader;
 import java.util.Map;
+
+import org.terrier.terms.TermBuffer;
 /** 
  * This interface encapsulates the concept of a document during indexing.
  * Implementors of this interface as responsible for parsing and tokenising
@@ -46,6 +48,19 @@ public interface Document
 	 */
 	String getNextTerm();
 
+	/**
+	 * Reads the next term of the document into a reusable buffer. As for getNextTerm(),
+	 * a false return means the term was discarded, not the lack of any more terms.
+	 * By default, the term is obtained from getNextTerm(); documents whose tokeniser
+	 * can read into the buffer override this to avoid creating a String for each term.
+	 * @param term the buffer to read the term into
+	 * @return true if a term was read into the buffer
+	 * @since 5.4
+	 */
+	default boolean getNextTerm(TermBuffer term) {
+		return term.set(getNextTerm());
+	}
+
 	/** 
 	 * Returns a list of the fields the current term appears in.
 	 * @return HashSet a set of the terms that the current term appears in. 
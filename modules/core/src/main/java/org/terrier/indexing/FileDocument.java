@@ -39,6 +39,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terrier.indexing.tokenisation.TokenStream;
 import org.terrier.indexing.tokenisation.Tokeniser;
+import org.terrier.terms.TermBuffer;
 import org.terrier.utility.ApplicationSetup;
 /** 
  * Models a document which corresponds to one file. The first FileDocument.abstract.length characters
@@ -221,6 +222,13 @@ public class FileDocument implements Document {
 	{
 		return tokenStream.next();
 	}
+
+	/** Reads the next term from the Document into the buffer */
+	@Override
+	public boolean getNextTerm(TermBuffer term)
+	{
+		return tokenStream.nextTerm(term);
+	}
 	/**
 	 * Returns null because there is no support for fields with
 	 * file documents.
@@ -45,6 +45,7 @@ import org.slf4j.LoggerFactory;
 import org.terrier.indexing.tokenisation.EnglishTokeniser;
 import org.terrier.indexing.tokenisation.TokenStream;
 import org.terrier.indexing.tokenisation.Tokeniser;
+import org.terrier.terms.TermBuffer;
 import org.terrier.utility.ApplicationSetup;
 import org.terrier.utility.ArrayUtils;
 import org.terrier.utility.StringTools;
@@ -492,6 +493,18 @@ public class TaggedDocument implements Document {
 		return rtr;
 	}
 	
+	/**
+	 * Reads the next token of the current token stream into the buffer, or
+	 * moves to the next chunk of text as getNextTerm() does when the current
+	 * token stream is exhausted.
+	 */
+	@Override
+	public boolean getNextTerm(TermBuffer term) {
+		if (currentTokenStream.hasNext())
+			return currentTokenStream.nextTerm(term);
+		return term.set(getNextTerm());
+	}
+	
 	protected void processEndOfDocument()
 	{
 		EOD = true;
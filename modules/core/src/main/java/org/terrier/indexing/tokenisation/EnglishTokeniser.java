@@ -32,6 +32,7 @@ package org.terrier.indexing.tokenisation;
 import java.io.IOException;
 import java.io.Reader;
 
+import org.terrier.terms.TermBuffer;
 import org.terrier.utility.ApplicationSetup;
 import org.terrier.utility.StringTools;
 
@@ -81,6 +82,8 @@ public class EnglishTokeniser extends Tokeniser {
 		boolean eos = false;
 		int counter = 0;
 		Reader br;
+		/** the buffer that next() reads tokens into */
+		final TermBuffer buffer = new TermBuffer(MAX_TERM_LENGTH + 1);
 
 		public EnglishTokenStream(Reader _br)
 		{
@@ -98,8 +101,17 @@ public class EnglishTokeniser extends Tokeniser {
 		
 		@Override
 		public String next() 
+		{
+			return nextTerm(buffer) ? buffer.toString() : null;
+		}
+		
+		/** Reads the next token into the buffer, without creating a String */
+		@Override
+		public boolean nextTerm(TermBuffer term) 
 		{
 			try{
+				//room for one character more than the maximum, to detect long tokens
+				final char[] chars = term.ensureCapacity(MAX_TERM_LENGTH + 1);
 				ch = this.br.read();
 				while(ch != -1)
 				{			
@@ -112,7 +124,7 @@ public class EnglishTokeniser extends Tokeniser {
 						ch = br.read();
 						counter++;
 					}
-					final StringBuilder sw = new StringBuilder(MAX_TERM_LENGTH);
+					int length = 0;
 					//now accept all alphanumeric charaters
 					while (ch != -1 && (
 						((ch >= 'A') && (ch <= 'Z'))
@@ -120,21 +132,27 @@ public class EnglishTokeniser extends Tokeniser {
 						|| ((ch >= '0') && (ch <= '9'))))
 					{
 						/* add character to word so far */
-						sw.append((char)ch);
+						if (length < chars.length)
+							chars[length] = (char)ch;
+						length++;
 						ch = br.read();
 						counter++;
 					}
-					if (sw.length() > MAX_TERM_LENGTH)
+					if (length > MAX_TERM_LENGTH)
 						if (DROP_LONG_TOKENS)
-							return null;
+						{
+							term.length = 0;
+							return false;
+						}
 						else
-							sw.setLength(MAX_TERM_LENGTH);
-					String s = check(sw.toString());
-					if (s.length() > 0)
-						return s;
+							length = MAX_TERM_LENGTH;
+					term.length = length;
+					if (check(term))
+						return true;
 				}
 				eos = true;
-				return null;
+				term.length = 0;
+				return false;
 			} catch (IOException ioe) {
 				throw new RuntimeException(ioe);
 			}
@@ -182,4 +200,36 @@ public class EnglishTokeniser extends Tokeniser {
 		return LOWERCASE ? StringTools.toLowerCase(s) : s;
 	}
 
+	/**
+	 * Checks a term held in a buffer as {@link #check(String)}, lowercasing it in place.
+	 * The term only has alphanumeric characters, and so needs no trimming.
+	 * @param term the term to check
+	 * @return true if the term is valid and not empty
+	 */
+	static boolean check(TermBuffer term) {
+		final char[] chars = term.chars;
+		final int length = term.length;
+		int counter = 0;
+		int counterdigit = 0;
+		int ch = -1;
+		int chNew = -1;
+		for(int i=0;i<length;i++)
+		{
+			chNew = chars[i];
+			if (chNew >= 48 && chNew <= 57)//0 to 9
+				counterdigit++;
+			if (ch == chNew)
+				counter++;
+			else
+				counter = 1;
+			ch = chNew;
+			if (counter > maxNumOfSameConseqLettersPerTerm
+				|| counterdigit > maxNumOfDigitsPerTerm)
+				return false;
+		}
+		if (LOWERCASE)
+			StringTools.toLowerCase(chars, length);
+		return length > 0;
+	}
+
 }
@@ -27,6 +27,8 @@ package org.terrier.indexing.tokenisation;
 
 import java.util.Iterator;
 
+import org.terrier.terms.TermBuffer;
+
 /** Represents a stream of tokens found by a tokeniser.
  * It is of note that a TokenStream may return null
  * for a next() method, even if hasNext() previously returned
@@ -41,4 +43,14 @@ public abstract class TokenStream implements Iterator<String> {
 		throw new UnsupportedOperationException();
 	}
 
+	/** Reads the next token into a reusable buffer, as an alternative to {@link #next()} that
+	 * need not create a String for each token. By default, the token is obtained from next().
+	 * @param term the buffer to read the token into
+	 * @return false if the token was discarded, as for a null from next()
+	 * @since 5.4
+	 */
+	public boolean nextTerm(TermBuffer term) {
+		return term.set(next());
+	}
+
 }
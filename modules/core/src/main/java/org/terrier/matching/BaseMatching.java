@@ -35,6 +35,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terrier.matching.dsms.DocumentScoreModifier;
 import org.terrier.structures.CollectionStatistics;
+import org.terrier.structures.DeletedDocuments;
 import org.terrier.structures.Index;
 import org.terrier.structures.Lexicon;
 import org.terrier.structures.Pointer;
@@ -56,7 +57,15 @@ import org.terrier.utility.ApplicationSetup;
  * low IDF.</li>
  * <li><tt>match.empty.query</tt> - whether an empty query should return all documents. 
  * Defaults to false.</li>
+ * <li><tt>matching.timeout.ms</tt> - the time in milliseconds allowed for matching each query, or 0 for no limit.
+ * Defaults to 0. This can be overridden for a query using the control of the same name. When the time is exceeded, 
+ * matching stops, and the documents matched so far are returned, with the status code of the ResultSet 
+ * set to {@link #STATUS_TIMEOUT}, to denote that the results are approximate. Matching also stops early 
+ * if the matching thread is interrupted.</li>
  * </ul>
+ * <p>If the index has a {@link DeletedDocuments} structure, documents that have been deleted are not retrieved.
+ * If the index has a {@link org.terrier.structures.DocValues} structure, documents that do not satisfy the 
+ * {@link DocValuesFilter} of the query are not retrieved either.
  * @since 3.0
  * @author Vassilis Plachouras, Craig Macdonald, Nicola Tonellotto
  */
@@ -64,6 +73,12 @@ public abstract class BaseMatching implements Matching
 {
 	public static final String BASE_MATCHING_TAG = "firstmatchscore";
 	public static final String NONMATCHING_TAG = "firstkeep";
+	/** name of the property and control setting the time allowed for matching a query */
+	public static final String TIMEOUT_CONTROL = "matching.timeout.ms";
+	/** status code of a ResultSet for which matching was stopped early, as the time allowed was exceeded */
+	public static final int STATUS_TIMEOUT = 3;
+	/** number of calls to {@link #deadlineExceeded()} between checks of the clock */
+	protected static final int DEADLINE_CHECK_INTERVAL = 1024;
 	
 	protected long totalTime = 0;
      /** the logger for this class */
@@ -108,6 +123,19 @@ public abstract class BaseMatching implements Matching
 	
 	/** Contains the document score modifiers to be applied for a query. */
 	protected List<DocumentScoreModifier> documentModifiers;
+	
+	/** value of System.nanoTime() after which matching of the current query should stop */
+	protected long deadline;
+	/** whether the current query has a deadline */
+	protected boolean hasDeadline;
+	/** number of calls to {@link #deadlineExceeded()} for the current query */
+	protected int deadlineChecks;
+	/** whether matching of the current query was stopped early */
+	protected boolean timedOut;
+	/** the documents deleted from the index, or null if there are none */
+	protected DeletedDocuments deletedDocuments;
+	/** the filter of the documents of the current query, or null if there is none */
+	protected DocValuesFilter docValuesFilter;
 
 //	protected WeightingModel[][] wm = null;
 //	protected List<Map.Entry<String,LexiconEntry>> queryTermsToMatchList = null;
@@ -243,6 +271,69 @@ public abstract class BaseMatching implements Matching
 		MATCH_EMPTY_QUERY    = Boolean.parseBoolean(ApplicationSetup.getProperty("match.empty.query","false"));
 		
 		this.numberOfRetrievedDocuments = 0;
+		initialiseDeadline(queryTerms);
+		initialiseDeletedDocuments();
+		this.docValuesFilter = DocValuesFilter.get(index, queryTerms != null ? queryTerms.getRequest() : null);
+	}
+	
+	/** obtains the documents deleted from the index, which may have changed since the previous query */
+	protected void initialiseDeletedDocuments()
+	{
+		this.deletedDocuments = null;
+		if (! index.hasIndexStructure(DeletedDocuments.STRUCTURE_NAME))
+			return;
+		final DeletedDocuments deleted = (DeletedDocuments) index.getIndexStructure(DeletedDocuments.STRUCTURE_NAME);
+		if (deleted != null && deleted.getNumberOfDeletedDocuments() > 0)
+			this.deletedDocuments = deleted;
+	}
+	
+	/** Returns true if the specified document has been deleted from the index, and hence should not be retrieved */
+	protected final boolean isDeleted(int docid)
+	{
+		return deletedDocuments != null && deletedDocuments.isDeleted(docid);
+	}
+	
+	/** Returns true if the specified document should not be retrieved, as it has been deleted, or
+	 * is removed by the filter of the current query */
+	protected final boolean isExcluded(int docid)
+	{
+		return isDeleted(docid) || (docValuesFilter != null && ! docValuesFilter.accept(docid));
+	}
+	
+	/** sets the deadline for matching the current query, from the control or property <tt>matching.timeout.ms</tt> */
+	protected void initialiseDeadline(MatchingQueryTerms queryTerms)
+	{
+		String timeout = ApplicationSetup.getProperty(TIMEOUT_CONTROL, "0");
+		if (queryTerms != null && queryTerms.getRequest() != null)
+		{
+			final String control = queryTerms.getRequest().getControl(TIMEOUT_CONTROL);
+			if (control.length() > 0)
+				timeout = control;
+		}
+		long timeoutMs = 0;
+		try{
+			timeoutMs = Long.parseLong(timeout.trim());
+		} catch (NumberFormatException nfe) {
+			logger.warn("Invalid " + TIMEOUT_CONTROL + " of '" + timeout + "', matching without a deadline");
+		}
+		this.hasDeadline = timeoutMs > 0;
+		this.deadline = System.nanoTime() + timeoutMs * 1000000l;
+		this.deadlineChecks = 0;
+		this.timedOut = false;
+	}
+	
+	/** Returns true if matching of the current query should stop, as the time allowed has been exceeded, 
+	 * or the thread has been interrupted. This is cheap enough to be called for each document matched, 
+	 * as the clock is only checked every {@link #DEADLINE_CHECK_INTERVAL} calls. */
+	protected final boolean deadlineExceeded()
+	{
+		if (timedOut)
+			return true;
+		if ((++deadlineChecks & (DEADLINE_CHECK_INTERVAL -1)) != 0)
+			return false;
+		if ((hasDeadline && System.nanoTime() - deadline > 0) || Thread.currentThread().isInterrupted())
+			timedOut = true;
+		return timedOut;
 	}
 	
 	protected void finalise(MatchingQueryTerms queryTerms)
@@ -262,6 +353,17 @@ public abstract class BaseMatching implements Matching
 		//sets the effective size of the result set.
 		resultSet.setExactResultSize(numberOfRetrievedDocuments);
 		
+		if (timedOut)
+		{
+			logger.warn("Matching of query " + queryTerms.getQueryId() + " was stopped early, as the time allowed was exceeded. Results are approximate");
+			resultSet.setStatusCode(STATUS_TIMEOUT);
+		}
+		else if (resultSet.getStatusCode() == STATUS_TIMEOUT)
+		{
+			//the result set may have been reused from a previous query
+			resultSet.setStatusCode(0);
+		}
+		
 		//sets the actual size of the result set.
 		resultSet.setResultSize(set_size);
 		
@@ -302,6 +302,7 @@ public class CollectionResultSet implements ResultSet, Serializable{
 		length = length < docids.length ? length : docids.length;
 		QueryResultSet resultSet = new QueryResultSet(length);
 		resultSet.setExactResultSize(this.exactResultSize);
+		resultSet.setStatusCode(this.statusCode);
 		System.arraycopy(docids, start, resultSet.getDocids(), 0, length);
 		System.arraycopy(scores, start, resultSet.getScores(), 0, length);
 		System.arraycopy(occurrences, start, resultSet.getOccurrences(), 0, length);
@@ -322,6 +323,7 @@ public class CollectionResultSet implements ResultSet, Serializable{
 		//	logger.debug("New results size is "+NewSize);
 		QueryResultSet resultSet = new QueryResultSet(NewSize);
 		resultSet.setExactResultSize(this.exactResultSize);
+		resultSet.setStatusCode(this.statusCode);
 		int newDocids[] = resultSet.getDocids();
 		double newScores[] = resultSet.getScores();
 		short newOccurs[] = resultSet.getOccurrences();
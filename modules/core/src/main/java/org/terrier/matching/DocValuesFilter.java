@@ -0,0 +1,281 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is DocValuesFilter.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *  Craig Macdonald
+ */
+package org.terrier.matching;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.querying.Request;
+import org.terrier.structures.DocValues;
+import org.terrier.structures.Index;
+import org.terrier.structures.MetaIndex;
+import org.terrier.utility.ApplicationSetup;
+
+/**
+ * Filters the documents of a query using the {@link DocValues} of the index, such that matching 
+ * does not score documents that would otherwise be removed after matching, e.g. by {@link org.terrier.querying.SiteFilter}. 
+ * The filter is specified by the following controls:
+ * <ul>
+ * <li><tt>docvalues.filter</tt> - whitespace-delimited clauses of the form <tt>key:value</tt>, all of which a
+ * document must satisfy. For a string column, the value is a comma-delimited list of the values accepted. For a 
+ * host column, it is a comma-delimited list of suffixes of the hostnames accepted. For a number column, it is either
+ * a number, or an inclusive range <tt>min..max</tt>, where either bound can be omitted.</li>
+ * <li><tt>site</tt> - a suffix of the hostnames accepted, applied to the host column named by the property 
+ * <tt>docvalues.site.key</tt> (default <tt>url</tt>), if the index has one.</li>
+ * </ul>
+ * For a string or host column, the ordinals accepted are found once per query, such that 
+ * checking a document needs only an array lookup. A clause on a key that the index has no doc 
+ * values for, e.g. for a MultiIndex or MemoryIndex, is instead applied to the values of the forward 
+ * meta index, which is much slower: the value is either a range of numbers, or a comma-delimited list 
+ * of the values accepted. A clause on a key that is in neither is an error, rather than being ignored.
+ * @since 5.4
+ */
+public class DocValuesFilter
+{
+	protected static final Logger logger = LoggerFactory.getLogger(DocValuesFilter.class);
+	/** name of the control specifying the filter */
+	public static final String CONTROL = "docvalues.filter";
+	/** name of the control specifying the site of the documents to retrieve */
+	public static final String SITE_CONTROL = "site";
+
+	protected final DocValues docValues;
+	/** the meta index, for clauses on keys without doc values */
+	protected final MetaIndex meta;
+	/** the column of each clause, or -1 if it is applied to the meta index */
+	protected final int[] columns;
+	/** for each clause applied to the meta index, its key, otherwise null */
+	protected final String[] metaKeys;
+	/** for each clause applied to the meta index that is not a range, the sorted values accepted, otherwise null */
+	protected final String[][] metaValues;
+	/** for each clause on a string or host column, whether each ordinal is accepted, otherwise null */
+	protected final boolean[][] accepted;
+	/** for each clause on a number column or a range of meta index values, the range of values accepted */
+	protected final long[] min;
+	protected final long[] max;
+
+	protected DocValuesFilter(DocValues docValues, int[] columns, boolean[][] accepted, long[] min, long[] max)
+	{
+		this(docValues, null, columns, new String[columns.length], new String[columns.length][], accepted, min, max);
+	}
+
+	protected DocValuesFilter(DocValues docValues, MetaIndex meta, int[] columns, String[] metaKeys, String[][] metaValues, 
+			boolean[][] accepted, long[] min, long[] max)
+	{
+		this.docValues = docValues;
+		this.meta = meta;
+		this.columns = columns;
+		this.metaKeys = metaKeys;
+		this.metaValues = metaValues;
+		this.accepted = accepted;
+		this.min = min;
+		this.max = max;
+	}
+
+	/** Returns true if the specified document satisfies all clauses of the filter */
+	public boolean accept(int docid)
+	{
+		for(int i=0;i<columns.length;i++)
+		{
+			if (metaKeys[i] != null)
+			{
+				if (! acceptMeta(i, docid))
+					return false;
+			}
+			else if (accepted[i] != null)
+			{
+				final int ordinal = docValues.getOrdinal(columns[i], docid);
+				if (ordinal == -1 || ! accepted[i][ordinal])
+					return false;
+			}
+			else
+			{
+				final long value = docValues.getLong(columns[i], docid);
+				if (value == DocValues.MISSING_LONG || value < min[i] || value > max[i])
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/** Returns true if the meta index value of the specified document satisfies the specified clause */
+	protected boolean acceptMeta(int i, int docid)
+	{
+		final String value;
+		try{
+			value = meta.getItem(metaKeys[i], docid);
+		} catch (IOException ioe) {
+			throw new UncheckedIOException("Could not read " + metaKeys[i] + " of document " + docid, ioe);
+		}
+		if (value == null || value.length() == 0)
+			return false;
+		if (metaValues[i] != null)
+			return Arrays.binarySearch(metaValues[i], value) >= 0;
+		try{
+			final long v = Long.parseLong(value.trim());
+			return v >= min[i] && v <= max[i];
+		} catch (NumberFormatException nfe) {
+			return false;
+		}
+	}
+
+	/** Parses the value of a clause on a number column, which is either a number or a range <tt>min..max</tt> */
+	static void parseRange(String value, long[] min, long[] max, int i)
+	{
+		final int range = value.indexOf("..");
+		if (range == -1)
+		{
+			min[i] = max[i] = Long.parseLong(value);
+		}
+		else
+		{
+			final String lower = value.substring(0, range);
+			final String upper = value.substring(range + 2);
+			min[i] = lower.length() > 0 ? Long.parseLong(lower) : Long.MIN_VALUE + 1;
+			max[i] = upper.length() > 0 ? Long.parseLong(upper) : Long.MAX_VALUE;
+		}
+	}
+
+	/** Returns the doc values of the specified index, or null if it has none */
+	public static DocValues getDocValues(Index index)
+	{
+		if (index == null || ! index.hasIndexStructure(DocValues.STRUCTURE_NAME))
+			return null;
+		return (DocValues) index.getIndexStructure(DocValues.STRUCTURE_NAME);
+	}
+
+	/** Returns true if the <tt>site</tt> control is applied by matching on the specified index, 
+	 * i.e. the index has a host column for the key of the <tt>docvalues.site.key</tt> property */
+	public static boolean filtersSite(Index index)
+	{
+		final DocValues docValues = getDocValues(index);
+		if (docValues == null)
+			return false;
+		final int column = docValues.getColumn(ApplicationSetup.getProperty("docvalues.site.key", "url"));
+		return column != -1 && docValues.getType(column) == DocValues.TYPE_HOST;
+	}
+
+	/**
+	 * Returns the filter specified by the controls of the request, or null if there is none.
+	 * @throws IllegalArgumentException if a clause is invalid, or its key has neither doc values nor a forward meta index key
+	 */
+	public static DocValuesFilter get(Index index, Request rq)
+	{
+		if (rq == null)
+			return null;
+		final String control = rq.getControl(CONTROL).trim();
+		final String site = rq.getControl(SITE_CONTROL).trim();
+		if (control.length() == 0 && site.length() == 0)
+			return null;
+		final DocValues docValues = getDocValues(index);
+
+		List<String[]> clauses = new ArrayList<>();
+		if (control.length() > 0)
+		{
+			for(String clause : control.split("\\s+"))
+			{
+				final int colon = clause.indexOf(':');
+				if (colon <= 0)
+					throw new IllegalArgumentException("Invalid " + CONTROL + " clause " + clause + ": expected key:value");
+				clauses.add(new String[]{clause.substring(0, colon), clause.substring(colon+1)});
+			}
+		}
+		if (site.length() > 0 && filtersSite(index))
+			clauses.add(new String[]{ApplicationSetup.getProperty("docvalues.site.key", "url"), site});
+
+		final int n = clauses.size();
+		final int[] columns = new int[n];
+		final String[] metaKeys = new String[n];
+		final String[][] metaValues = new String[n][];
+		final boolean[][] accepted = new boolean[n][];
+		final long[] min = new long[n];
+		final long[] max = new long[n];
+		MetaIndex meta = null;
+		int count = 0;
+		for(String[] clause : clauses)
+		{
+			final int column = docValues != null ? docValues.getColumn(clause[0]) : -1;
+			columns[count] = column;
+			if (column == -1)
+			{
+				if (meta == null)
+					meta = index.getMetaIndex();
+				if (meta == null || ! Arrays.asList(meta.getKeys()).contains(clause[0]))
+					throw new IllegalArgumentException("Cannot apply " + CONTROL + " clause " + clause[0] + ":" + clause[1] 
+						+ ": index has neither doc values nor meta index values for " + clause[0]);
+				logger.debug("Index has no doc values for " + clause[0] + ", filtering on meta index values, which is slower");
+				metaKeys[count] = clause[0];
+				if (clause[1].contains(".."))
+				{
+					parseRange(clause[1], min, max, count);
+				}
+				else
+				{
+					metaValues[count] = clause[1].split(",");
+					Arrays.sort(metaValues[count]);
+				}
+				count++;
+				continue;
+			}
+			final byte type = docValues.getType(column);
+			if (type == DocValues.TYPE_LONG)
+			{
+				parseRange(clause[1], min, max, count);
+			}
+			else
+			{
+				final String[] dictionary = docValues.getDictionary(column);
+				final boolean[] ok = new boolean[dictionary.length];
+				for(String value : clause[1].split(","))
+				{
+					if (type == DocValues.TYPE_HOST)
+					{
+						value = value.toLowerCase();
+						for(int o=0;o<dictionary.length;o++)
+							if (dictionary[o].endsWith(value))
+								ok[o] = true;
+					}
+					else
+					{
+						final int o = Arrays.binarySearch(dictionary, value);
+						if (o >= 0)
+							ok[o] = true;
+					}
+				}
+				accepted[count] = ok;
+			}
+			count++;
+		}
+		if (count == 0)
+			return null;
+		return new DocValuesFilter(docValues, meta, Arrays.copyOf(columns, count), Arrays.copyOf(metaKeys, count), 
+				Arrays.copyOf(metaValues, count), Arrays.copyOf(accepted, count), Arrays.copyOf(min, count), Arrays.copyOf(max, count));
+	}
+}
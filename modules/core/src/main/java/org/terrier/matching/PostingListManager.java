@@ -41,6 +41,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terrier.matching.matchops.MatchingEntry;
 import org.terrier.matching.matchops.Operator;
+import org.terrier.matching.matchops.SingleTermOp;
 import org.terrier.matching.models.WeightingModel;
 import org.terrier.querying.Request;
 import org.terrier.structures.CollectionStatistics;
@@ -50,6 +51,7 @@ import org.terrier.structures.Lexicon;
 import org.terrier.structures.LexiconEntry;
 import org.terrier.structures.Pointer;
 import org.terrier.structures.PostingIndex;
+import org.terrier.structures.TermMaxScores;
 import org.terrier.structures.postings.IterablePosting;
 import org.terrier.structures.postings.Posting;
 import org.terrier.utility.ApplicationSetup;
@@ -192,6 +194,26 @@ public class PostingListManager implements Closeable
 			}
 			return score;
 		}
+		
+		@Override
+		public double getMaxScore() {
+			double score = 0;
+			for(WeightingModel w : parents)
+			{
+				score += w.getMaxScore();
+			}
+			return score;
+		}
+		
+		@Override
+		public double getMaxScore(double maxTf) {
+			double score = 0;
+			for(WeightingModel w : parents)
+			{
+				score += w.getMaxScore(maxTf);
+			}
+			return score;
+		}
 	}
 	
 	protected static final Logger logger = LoggerFactory.getLogger(PostingListManager.class);
@@ -245,6 +267,12 @@ public class PostingListManager implements Closeable
 	/** key (query) frequencies for each term */
 	protected final TDoubleArrayList termKeyFreqs = new TDoubleArrayList();
 	
+	/** upper bounds on the score of any posting for each term */
+	protected final TDoubleArrayList termMaxScores = new TDoubleArrayList();
+	
+	/** recorded maximum scores of each term, if available */
+	protected TermMaxScores maxScores = null;
+	
 	/** number of terms */
 	protected int numTerms = 0;
 	/** underlying index */
@@ -268,6 +296,8 @@ public class PostingListManager implements Closeable
 		lexicon = index.getLexicon();
 		invertedIndex = (PostingIndex<Pointer>) index.getInvertedIndex();
 		collectionStatistics = cs;
+		if (index.hasIndexStructure(TermMaxScores.STRUCTURE_NAME))
+			maxScores = (TermMaxScores) index.getIndexStructure(TermMaxScores.STRUCTURE_NAME);
 	}
 	
 	
@@ -301,6 +331,8 @@ public class PostingListManager implements Closeable
 			Operator term = entry.getKey();
 			if (splitSynonyms)
 			{
+				//statistics may have been provided from elsewhere, e.g. for a distributed index
+				final boolean indexStatistics = entry.getValue().stats == null;
 				MatchingEntry me = term.getMatcher(
 					entry.getValue(), 
 					index, 
@@ -315,6 +347,11 @@ public class PostingListManager implements Closeable
 				termStatistics.add(me.getEntryStats());
 				termModels.add(WeightingModelMultiProxy.getModel(me.getWmodels()));
 				termTags.add(me.getTags());
+				//the maximum frequency of the statistics of other operators need not bound
+				//the frequencies of their postings
+				termMaxScores.add(term instanceof SingleTermOp 
+					? getMaxScore((SingleTermOp) term, indexStatistics, me)
+					: Double.POSITIVE_INFINITY);
 				if (me.isRequired())
 				{
 					requiredBitMask |= 1 << termIndex;
@@ -355,6 +392,7 @@ public class PostingListManager implements Closeable
 				termStrings.add(term.toString());
 				termTags.add(entry.getValue().getTags());
 				termModels.add(WeightingModelMultiProxy.getModel(new WeightingModel[0]));
+				termMaxScores.add(Double.POSITIVE_INFINITY);
 				if (scoringTag == null || entry.getValue().getTags().size() == 0 || entry.getValue().getTags().contains(scoringTag))
 				{
 					matchOnTerms.add(termPostings.size() -1);
@@ -378,6 +416,22 @@ public class PostingListManager implements Closeable
 		assert termPostings.size() == termStatistics.size();
 	}
 	
+	/** Obtains an upper bound on the score of any posting of a single term, using the exact maximum
+	 * scores recorded in the <tt>maxscore</tt> index structure where available */
+	protected double getMaxScore(SingleTermOp term, boolean indexStatistics, MatchingEntry me)
+	{
+		final WeightingModel[] wmodels = me.getWmodels();
+		//recorded maximum scores are only valid for the statistics and postings of the whole term
+		if (maxScores == null || term.getField() != null || ! indexStatistics 
+				|| me.getKeyFreq() <= 0 || wmodels.length == 0)
+			return WeightingModelMultiProxy.getModel(wmodels).getMaxScore();
+		final int termid = me.getEntryStats().getTermId();
+		double maxScore = 0;
+		for(WeightingModel wmodel : wmodels)
+			maxScore += Math.min(wmodel.getMaxScore(), maxScores.getMaxScore(wmodel, termid));
+		return maxScore;
+	}
+	
 	/** Knows how to merge several EntryStatistics for a single effective term */
 	public static EntryStatistics mergeStatistics(EntryStatistics[] entryStats)
 	{
@@ -464,6 +518,34 @@ public class PostingListManager implements Closeable
 	}
 	
 	
+	/** Returns an upper bound on the score that {@link #score(int)} can return for any posting
+	 * of the specified term. Bounds are only known for single terms whose weighting models 
+	 * support {@link WeightingModel#getMaxScore()}.
+	 * @param i Which term
+	 * @return upper bound on the score for that term, or Double.POSITIVE_INFINITY if not known
+	 */
+	public double getMaxScore(int i)
+	{
+		//plugins may have added further posting lists
+		if (i >= termMaxScores.size())
+			return Double.POSITIVE_INFINITY;
+		return termMaxScores.get(i);
+	}
+	
+	/** Returns an upper bound on the score that {@link #score(int)} can return for any posting
+	 * of the specified term with a frequency no greater than maxTf.
+	 * @param i Which term
+	 * @param maxTf the largest frequency of any posting being considered
+	 * @return upper bound on the score for that term, or Double.POSITIVE_INFINITY if not known
+	 */
+	public double getMaxScore(int i, double maxTf)
+	{
+		final double maxScore = getMaxScore(i);
+		if (maxScore == Double.POSITIVE_INFINITY)
+			return maxScore;
+		return Math.min(maxScore, termModels.get(i).getMaxScore(maxTf));
+	}
+	
 	@Override
 	/** Closes all postings that are open */
 	public void close() throws IOException
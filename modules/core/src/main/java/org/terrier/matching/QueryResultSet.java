@@ -183,6 +183,7 @@ public class QueryResultSet extends CollectionResultSet {
 		int length1 = length < docids.length ? length : docids.length;
 		QueryResultSet resultSet = makeNewResultSet(length);
 		resultSet.setExactResultSize(this.exactResultSize);
+		resultSet.setStatusCode(this.statusCode);
 		System.arraycopy(docids, startPosition, resultSet.getDocids(), 0, length1);
 		System.arraycopy(scores, startPosition, resultSet.getScores(), 0, length1);
 		System.arraycopy(occurrences, startPosition, resultSet.getOccurrences(), 0, length1);
@@ -210,6 +211,7 @@ public class QueryResultSet extends CollectionResultSet {
 		//}
 		QueryResultSet resultSet = makeNewResultSet(NewSize);
 		resultSet.setExactResultSize(this.exactResultSize);
+		resultSet.setStatusCode(this.statusCode);
 		int newDocids[] = resultSet.getDocids();
 		double newScores[] = resultSet.getScores();
 		short newOccurs[] = resultSet.getOccurrences();
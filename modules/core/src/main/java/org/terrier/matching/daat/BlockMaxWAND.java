@@ -0,0 +1,104 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org 
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is BlockMaxWAND.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ *   
+ */
+package org.terrier.matching.daat;
+
+import java.io.IOException;
+
+import org.terrier.structures.Index;
+import org.terrier.structures.postings.BlockMaxIterablePosting;
+import org.terrier.structures.postings.IterablePosting;
+
+/**
+ * Performs document-at-a-time matching using the BlockMax-WAND dynamic pruning strategy of 
+ * Ding and Suel. This extends {@link WAND}: once a pivot document has been selected, the upper bounds 
+ * of the blocks of postings that contain the pivot document are summed. If these cannot exceed the
+ * threshold, no document before the end of the first of those blocks can be retrieved, and the posting
+ * lists are moved forward without scoring the pivot document.
+ * <p>
+ * Block upper bounds are obtained from posting lists implementing {@link BlockMaxIterablePosting}, 
+ * i.e. BitPostingIndex structures that have skips (see {@link org.terrier.structures.bit.BitPostingIndexSkips}).
+ * For other posting lists, the upper bound of the whole posting list is used. 
+ * As for WAND, the results are identical to those of {@link Full}.
+ * <p>
+ * S. Ding and T. Suel. Faster top-k document retrieval using block-max indexes. In Proceedings of SIGIR 2011.
+ * 
+ * @since 5.4
+ */
+public class BlockMaxWAND extends WAND
+{
+	/** Create a new Matching instance based on the specified index */
+	public BlockMaxWAND(Index index) 
+	{
+		super(index);
+	}
+	
+	@Override
+	protected boolean skipPivot(int pivotDocid, int last, double threshold) throws IOException
+	{
+		double sum = 0.0d;
+		//no documents from the pivot docid up to (but not including) nextDocid can be retrieved
+		int nextDocid = last + 1 < numCursors ? docid(last + 1) : IterablePosting.EOL;
+		for(int k=0;k<=last;k++)
+		{
+			final int i = cursors[k];
+			final IterablePosting ip = plm.getPosting(i);
+			if (ip instanceof BlockMaxIterablePosting)
+			{
+				final BlockMaxIterablePosting bmip = (BlockMaxIterablePosting) ip;
+				final int blockMaxId = bmip.nextShallow(pivotDocid);
+				sum += Math.max(0.0d, plm.getMaxScore(i, bmip.getBlockMaxFrequency()));
+				if (blockMaxId != IterablePosting.EOL && blockMaxId + 1 < nextDocid)
+					nextDocid = blockMaxId + 1;
+			}
+			else
+			{
+				sum += maxScores[i];
+			}
+			if (sum > threshold)
+				return false;
+		}
+		if (nextDocid == IterablePosting.EOL)
+		{
+			//no further documents can be retrieved
+			numCursors = 0;
+			return true;
+		}
+		for(int k=0;k<=last;k++)
+		{
+			final IterablePosting ip = plm.getPosting(cursors[k]);
+			if (ip.getId() < nextDocid)
+				ip.next(nextDocid);
+		}
+		return true;
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public String getInfo() {
+		return "daat.BlockMaxWAND";
+	}
+}
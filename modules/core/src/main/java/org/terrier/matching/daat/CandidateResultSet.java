@@ -140,6 +140,7 @@ public class CandidateResultSet implements ResultSet, Serializable
 	{
 		length = length < docids.length ? length : docids.length;
 		QueryResultSet resultSet = new QueryResultSet(length);
+		resultSet.setStatusCode(this.statusCode);
 		System.arraycopy(docids, start, resultSet.getDocids(), 0, length);
 		System.arraycopy(scores, start, resultSet.getScores(), 0, length);
 		System.arraycopy(occurrences, start, resultSet.getOccurrences(), 0, length);
@@ -122,6 +122,15 @@ public class Full extends BaseMatching
         //int scored = 0;
         
         while (currentDocId != -1)  {
+            //stop early if the time allowed is exceeded, retaining the documents matched so far
+            if (deadlineExceeded())
+            	break;
+            //deleted and filtered documents are passed over without being scored
+            if (isExcluded(currentDocId)) {
+            	skipDocument(postingHeap, currentDocId);
+            	currentDocId = selectMinimumDocId(postingHeap);
+            	continue;
+            }
             // We create a new candidate for the doc id considered
             CandidateResult currentCandidate = makeCandidateResult(currentDocId);
             
@@ -184,6 +193,16 @@ public class Full extends BaseMatching
 		return resultSet;
 	}
 
+	/** advances all posting lists positioned at the specified docid */
+	protected void skipDocument(LongPriorityQueue postingHeap, int docid) throws IOException {
+		while (! postingHeap.isEmpty() && (int) (postingHeap.firstLong() >>> 32) == docid) {
+			final int i = (int) (postingHeap.dequeueLong() & 0xFFFF);
+			final long newDocid = plm.getPosting(i).next();
+			if (newDocid != IterablePosting.EOL)
+				postingHeap.enqueue((newDocid << 32) + i);
+		}
+	}
+
 	protected CandidateResultSet makeResultSet(
 			Queue<CandidateResult> candidateResultList) {
 		return new CandidateResultSet(candidateResultList);
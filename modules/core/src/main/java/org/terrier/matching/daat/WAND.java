@@ -0,0 +1,271 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org 
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is WAND.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ *   
+ */
+package org.terrier.matching.daat;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+import org.terrier.matching.MatchingQueryTerms;
+import org.terrier.matching.PostingListManager;
+import org.terrier.matching.ResultSet;
+import org.terrier.structures.Index;
+import org.terrier.structures.postings.IterablePosting;
+
+/**
+ * Performs document-at-a-time matching using the WAND dynamic pruning strategy of Broder et al.
+ * Each matching term has an upper bound on the score of its postings, as obtained from 
+ * {@link PostingListManager#getMaxScore(int)}. Once the number of retrieved documents has
+ * reached the target retrieved set size, the posting lists are sorted by their current docid, and
+ * the first docid (the pivot) for which the sum of the upper bounds of the preceding posting lists
+ * exceeds the score of the lowest-scored retrieved document is selected. Documents before the pivot
+ * cannot be retrieved, and are skipped using {@link IterablePosting#next(int)} without being scored.
+ * <p>
+ * Only documents that {@link Full} would not have retrieved are skipped, and the remaining documents 
+ * are scored identically, hence the results are identical to those of {@link Full}. Terms without a
+ * known upper bound (e.g. those scored by weighting models that do not implement 
+ * {@link org.terrier.matching.models.WeightingModel#getMaxScore(double)}) are safely handled, but 
+ * reduce the number of documents that can be skipped. Skipping is most effective when the 
+ * posting lists have skip pointers, see {@link org.terrier.structures.bit.BitPostingIndexSkips}.
+ * <p>
+ * A.Z. Broder, D. Carmel, M. Herscovici, A. Soffer and J. Zien. Efficient query evaluation using
+ * a two-level retrieval process. In Proceedings of CIKM 2003.
+ * 
+ * @see org.terrier.matching.PostingListManager
+ * @since 5.4
+ */
+public class WAND extends Full
+{
+	/** the posting list indices of the matching terms not yet at EOL, sorted by their current docid */
+	protected int[] cursors;
+	/** number of valid entries in cursors */
+	protected int numCursors;
+	/** upper bound of the score of each posting list, no less than zero */
+	protected double[] maxScores;
+	
+	/** Create a new Matching instance based on the specified index */
+	public WAND(Index index) 
+	{
+		super(index);
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public ResultSet match(String queryNumber, MatchingQueryTerms queryTerms) throws IOException 
+	{
+		initialise(queryTerms);
+		plm = new PostingListManager(index, super.collectionStatistics, queryTerms);
+		plm.prepare(true);
+		
+		// Check whether we need to match an empty query. If so, then return the existing result set.
+		if (MATCH_EMPTY_QUERY && plm.size() == 0) {
+			resultSet.setExactResultSize(collectionStatistics.getNumberOfDocuments());
+			resultSet.setResultSize(collectionStatistics.getNumberOfDocuments());
+			return resultSet;
+		}
+		
+		//a hook for subclasses
+		initialisePostings(plm);
+		
+		numberOfRetrievedDocuments = 0;
+		
+		final int[] matchingTerms = plm.getMatchingTerms();
+		cursors = new int[matchingTerms.length];
+		numCursors = 0;
+		maxScores = new double[plm.size()];
+		for(int i : matchingTerms) {
+			//a document need not contain all terms, so negative bounds cannot lower the bound of a document
+			maxScores[i] = Math.max(0.0d, plm.getMaxScore(i));
+			//some ephemeral posting lists may not match any documents; skip these.
+			if (plm.getPosting(i).getId() != IterablePosting.EOL)
+				cursors[numCursors++] = i;
+		}
+		sortCursors();
+		
+		final int[] nonMatchingTerms = plm.getNonMatchingTerms();
+		final int[] scoringTerms = new int[cursors.length];
+		boolean targetResultSetSizeReached = false;
+		final Queue<CandidateResult> candidateResultList = new PriorityQueue<CandidateResult>();
+		double threshold = 0.0d;
+		final long requiredBitPattern = plm.getRequiredBitMask();
+		final long negRequiredBitPattern = plm.getNegRequiredBitMask();
+		
+		while (numCursors > 0)
+		{
+			//stop early if the time allowed is exceeded, retaining the documents matched so far
+			if (deadlineExceeded())
+				break;
+			//until the target size is reached, every document is scored
+			int pivot = 0;
+			if (targetResultSetSizeReached)
+			{
+				pivot = findPivot(threshold);
+				//no remaining document can be retrieved
+				if (pivot == -1)
+					break;
+			}
+			final int pivotDocid = docid(pivot);
+			//all posting lists at the pivot docid contribute to its score
+			int last = pivot;
+			while(last + 1 < numCursors && docid(last + 1) == pivotDocid)
+				last++;
+			
+			if (targetResultSetSizeReached && skipPivot(pivotDocid, last, threshold))
+			{
+				sortCursors();
+				continue;
+			}
+			
+			if (docid(0) != pivotDocid)
+			{
+				//the documents before the pivot cannot be retrieved
+				for(int k=0;k<pivot;k++)
+				{
+					final IterablePosting ip = plm.getPosting(cursors[k]);
+					if (ip.getId() < pivotDocid)
+						ip.next(pivotDocid);
+				}
+				sortCursors();
+				continue;
+			}
+			
+			//deleted and filtered documents are passed over without being scored
+			if (isExcluded(pivotDocid))
+			{
+				for(int k=0;k<=last;k++)
+					plm.getPosting(cursors[k]).next();
+				sortCursors();
+				continue;
+			}
+			
+			//score the pivot document in the same order as Full, such that scores are identical
+			final int scoringCount = last + 1;
+			System.arraycopy(cursors, 0, scoringTerms, 0, scoringCount);
+			Arrays.sort(scoringTerms, 0, scoringCount);
+			final CandidateResult currentCandidate = makeCandidateResult(pivotDocid);
+			for(int k=0;k<scoringCount;k++)
+			{
+				assignScore(scoringTerms[k], currentCandidate);
+				plm.getPosting(scoringTerms[k]).next();
+			}
+			sortCursors();
+			
+			if ((! targetResultSetSizeReached) || currentCandidate.getScore() > threshold) {
+				if ( (currentCandidate.getOccurrence() & requiredBitPattern) == requiredBitPattern
+						&&
+					((negRequiredBitPattern == 0) || (negRequiredBitPattern > 0 && (currentCandidate.getOccurrence() & negRequiredBitPattern) == 0)))
+				{
+					for(int i : nonMatchingTerms) { 
+						//these are postings that we need to keep/score, but which wont change the threshold
+						if (plm.getPosting(i).next(pivotDocid) == pivotDocid)
+							assignNotScore(i, currentCandidate);
+					}
+					candidateResultList.add(currentCandidate);
+					if (RETRIEVED_SET_SIZE != 0 && candidateResultList.size() == RETRIEVED_SET_SIZE + 1)
+					{
+						targetResultSetSizeReached = true;
+						candidateResultList.poll();
+					}
+					threshold = candidateResultList.peek().getScore();
+				}
+			}
+		}
+		
+		plm.close();
+		
+		resultSet = makeResultSet(candidateResultList);
+		numberOfRetrievedDocuments = resultSet.getScores().length;
+		finalise(queryTerms);
+		return resultSet;
+	}
+	
+	/** Returns the position in cursors of the first posting list for which the sum of the upper bounds of 
+	 * it and the posting lists before it exceeds threshold, or -1 if there is no such posting list. */
+	protected int findPivot(double threshold)
+	{
+		double sum = 0.0d;
+		for(int k=0;k<numCursors;k++)
+		{
+			sum += maxScores[cursors[k]];
+			if (sum > threshold)
+				return k;
+		}
+		return -1;
+	}
+	
+	/** A hook for subclasses to skip the pivot document using a tighter bound. 
+	 * The posting lists at positions 0 to last (inclusive) in cursors may contain the pivot document, and 
+	 * those after do not. If no document can be retrieved until some docid, then implementations should move 
+	 * the posting lists forward and return true; cursors will be re-sorted.
+	 * @param pivotDocid docid of the pivot document
+	 * @param last position in cursors of the last posting list at the pivot document
+	 * @param threshold score that a document must exceed to be retrieved
+	 * @return true if posting lists were moved, and the pivot document should not be scored
+	 */
+	protected boolean skipPivot(int pivotDocid, int last, double threshold) throws IOException
+	{
+		return false;
+	}
+	
+	/** Returns the current docid of the posting list at the specified position in cursors */
+	protected final int docid(int k)
+	{
+		return plm.getPosting(cursors[k]).getId();
+	}
+	
+	/** Removes posting lists at EOL from cursors, and sorts the remaining by their current docid */
+	protected final void sortCursors()
+	{
+		int valid = 0;
+		for(int k=0;k<numCursors;k++)
+		{
+			if (plm.getPosting(cursors[k]).getId() != IterablePosting.EOL)
+				cursors[valid++] = cursors[k];
+		}
+		numCursors = valid;
+		//insertion sort, as cursors are usually nearly sorted
+		for(int k=1;k<numCursors;k++)
+		{
+			final int term = cursors[k];
+			final int id = plm.getPosting(term).getId();
+			int j = k - 1;
+			while(j >= 0 && plm.getPosting(cursors[j]).getId() > id)
+			{
+				cursors[j+1] = cursors[j];
+				j--;
+			}
+			cursors[j+1] = term;
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getInfo() {
+		return "daat.WAND";
+	}
+}
@@ -26,6 +26,7 @@
 package org.terrier.matching.matchops;
 
 import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
@@ -33,48 +34,66 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang3.tuple.Pair;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.terrier.matching.MatchingQueryTerms.QueryTermProperties;
-import org.terrier.matching.models.WeightingModel;
 import org.terrier.structures.BitIndexPointer;
-import org.terrier.structures.CollectionStatistics;
 import org.terrier.structures.EntryStatistics;
 import org.terrier.structures.Index;
-import org.terrier.structures.IndexUtil;
 import org.terrier.structures.Lexicon;
 import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.NumericRangeIndex;
 import org.terrier.structures.Pointer;
 import org.terrier.structures.PostingIndex;
 import org.terrier.structures.postings.IterablePosting;
 import org.terrier.structures.postings.ORIterablePosting;
+import org.terrier.utility.ApplicationSetup;
 
-public class DateRangeOp extends Operator {
+/** Matches the documents dated within a range. Dates are matched using the {@link NumericRangeIndex} 
+ * of the index, as a {@link NumericRangeOp} over the doc values column of the key given by the 
+ * <tt>daterange.key</tt> property (default <tt>date</tt>). Each date is converted to a number using 
+ * the <tt>daterange.format</tt> property (default <tt>yyyyMMdd</tt>), which must order numbers as 
+ * their dates, e.g. 20200131. Indices without such a column are matched using their 
+ * <tt>datelexicon</tt> and <tt>dateinverted</tt> structures.
+ */
+public class DateRangeOp extends NumericRangeOp {
 
 	public static final String STRING_PREFIX = "#datebetween";
 	
-	protected static final Logger logger = LoggerFactory.getLogger(MultiTermOp.class);
 	private static final long serialVersionUID = 1L;
 	Date lowRange;
 	Date hiRange;
 	
 	public DateRangeOp(Date _lo, Date _hi)
 	{
+		super(ApplicationSetup.getProperty("daterange.key", "date"), toNumber(_lo), toNumber(_hi));
 		this.lowRange = _lo;
 		this.hiRange = _hi;
 		assert (_lo != null) && (_hi != null);//currently we need both
 	}
 
+	/** Returns the number that the specified date is stored as in a doc values column */
+	static long toNumber(Date date)
+	{
+		return Long.parseLong(new SimpleDateFormat(ApplicationSetup.getProperty("daterange.format", "yyyyMMdd")).format(date));
+	}
+
 	@Override
 	public String toString() {
 		return STRING_PREFIX + "("+lowRange + " " + hiRange+ ")";
 	}
 	
-	
-	@SuppressWarnings("unchecked")
 	@Override
 	public Pair<EntryStatistics, IterablePosting> getPostingIterator(Index index)
 			throws IOException {
+		if (index.hasIndexStructure(NumericRangeIndex.STRUCTURE_NAME)
+			&& ((NumericRangeIndex) index.getIndexStructure(NumericRangeIndex.STRUCTURE_NAME)).getColumn(key) != -1)
+			return super.getPostingIterator(index);
+		return getLexiconPostingIterator(index);
+	}
+
+	/** Obtains the postings from the <tt>datelexicon</tt> and <tt>dateinverted</tt> structures of 
+	 * indices without a numeric range structure, by merging the posting list of each date in the range */
+	@SuppressWarnings("unchecked")
+	protected Pair<EntryStatistics, IterablePosting> getLexiconPostingIterator(Index index)
+			throws IOException {
 		Lexicon<Date> lexDate = (Lexicon<Date>) index.getIndexStructure("datelexicon");
 		PostingIndex<Pointer> invDate = (PostingIndex<Pointer>) index.getIndexStructure("dateinverted");
 		List<LexiconEntry> _le = new ArrayList<LexiconEntry>();
@@ -103,41 +122,4 @@ public class DateRangeOp extends Operator {
 		return Pair.of(entryStats, (IterablePosting) ORIterablePosting.mergePostings(_joinedPostings.toArray(new IterablePosting[_joinedPostings.size()])));
 	}
 
-	
-	@Override
-	public MatchingEntry getMatcher(QueryTermProperties qtp, Index index,
-			Lexicon<String> lexTerm, PostingIndex<Pointer> invTerm,
-			CollectionStatistics collectionStats) throws IOException
-	{
-		
-		WeightingModel[] wmodels = qtp.termModels.toArray(new WeightingModel[0]);
-		if (wmodels.length == 0) {
-			logger.warn("No weighting models for multi-term query group "+toString()+" , skipping scoring");
-			return null;
-		}
-		EntryStatistics entryStats = qtp.stats;
-		
-		Pair<EntryStatistics,IterablePosting> pair = this.getPostingIterator(index);
-		
-		if (entryStats == null)
-			qtp.stats = entryStats = pair.getKey();
-		if (logger.isDebugEnabled())
-			logger.debug("Date range term "+this.toString()+ " stats" + entryStats.toString());
-		for (WeightingModel w : wmodels)
-		{
-			w.setEntryStatistics(entryStats);
-			w.setKeyFrequency(qtp.weight);
-			w.setCollectionStatistics(collectionStats);
-			IndexUtil.configure(index, w);
-			w.prepare();			
-		}
-		
-		MatchingEntry.Requirement required = MatchingEntry.Requirement.UNKNOWN;
-		if (qtp.required != null && qtp.required)
-			required = MatchingEntry.Requirement.REQUIRED;
-		if (qtp.required != null && ! qtp.required)
-			required = MatchingEntry.Requirement.NEG_REQUIRED;
-		return new MatchingEntry(pair.getRight(), entryStats, qtp.weight, wmodels, required, qtp.tags);
-	}
-
 }
@@ -0,0 +1,146 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is NumericRangeOp.java.
+ *
+ * The Original Code is Copyright (C) 2017-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *  Craig Macdonald
+ */
+package org.terrier.matching.matchops;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.matching.MatchingQueryTerms.QueryTermProperties;
+import org.terrier.matching.models.WeightingModel;
+import org.terrier.structures.BasicLexiconEntry;
+import org.terrier.structures.CollectionStatistics;
+import org.terrier.structures.DocumentIndex;
+import org.terrier.structures.EntryStatistics;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexUtil;
+import org.terrier.structures.Lexicon;
+import org.terrier.structures.NumericRangeIndex;
+import org.terrier.structures.Pointer;
+import org.terrier.structures.PostingIndex;
+import org.terrier.structures.postings.ArrayOfBasicIterablePosting;
+import org.terrier.structures.postings.IterablePosting;
+
+/** Matches the documents whose value for a number doc values column, such as a date,
+ * is within a range, inclusive of both ends. Each matching document has a frequency of 1.
+ * The documents are obtained from the {@link NumericRangeIndex} of the index, which must
+ * have been built for the column. In the matchop query language, this is written as
+ * <tt>#range(key lo hi)</tt>.
+ * @since 5.4
+ */
+public class NumericRangeOp extends Operator {
+
+	public static final String STRING_PREFIX = "#range";
+
+	protected static final Logger logger = LoggerFactory.getLogger(NumericRangeOp.class);
+	private static final long serialVersionUID = 1L;
+	String key;
+	long lowValue;
+	long highValue;
+
+	public NumericRangeOp(String _key, long _lo, long _hi)
+	{
+		this.key = _key;
+		this.lowValue = _lo;
+		this.highValue = _hi;
+	}
+
+	@Override
+	public String toString() {
+		return STRING_PREFIX + "(" + key + " " + lowValue + " " + highValue + ")";
+	}
+
+	/** get posting iterator for this query op from the numeric range structure of the index.
+	 * @return Pair, or null if the index has no numeric range structure for the key, or no documents are in the range */
+	@Override
+	public Pair<EntryStatistics, IterablePosting> getPostingIterator(Index index)
+			throws IOException {
+		NumericRangeIndex ranges = index.hasIndexStructure(NumericRangeIndex.STRUCTURE_NAME)
+			? (NumericRangeIndex) index.getIndexStructure(NumericRangeIndex.STRUCTURE_NAME)
+			: null;
+		int column = ranges != null ? ranges.getColumn(key) : -1;
+		if (column == -1)
+		{
+			logger.warn("No numeric range structure for key " + key + " in index, cannot match " + this.toString());
+			return null;
+		}
+		int[] docids = ranges.getDocids(column, lowValue, highValue);
+		if (docids.length == 0)
+		{
+			logger.warn("No documents matched in " + this.toString());
+			return null;
+		}
+		int[] freqs = new int[docids.length];
+		Arrays.fill(freqs, 1);
+		int[] doclens = new int[docids.length];
+		DocumentIndex doi = index.getDocumentIndex();
+		for(int i=0;i<docids.length;i++)
+			doclens[i] = doi.getDocumentLength(docids[i]);
+		EntryStatistics entryStats = new BasicLexiconEntry(-1, docids.length, docids.length);
+		entryStats.setMaxFrequencyInDocuments(1);
+		return Pair.of(entryStats, (IterablePosting) new ArrayOfBasicIterablePosting(docids, freqs, doclens));
+	}
+
+	@Override
+	public MatchingEntry getMatcher(QueryTermProperties qtp, Index index,
+			Lexicon<String> lexTerm, PostingIndex<Pointer> invTerm,
+			CollectionStatistics collectionStats) throws IOException
+	{
+		WeightingModel[] wmodels = qtp.termModels.toArray(new WeightingModel[0]);
+		if (wmodels.length == 0) {
+			logger.warn("No weighting models for range query term "+toString()+" , skipping scoring");
+			return null;
+		}
+		EntryStatistics entryStats = qtp.stats;
+
+		Pair<EntryStatistics,IterablePosting> pair = this.getPostingIterator(index);
+		if (pair == null)
+			return null;
+
+		if (entryStats == null)
+			qtp.stats = entryStats = pair.getKey();
+		if (logger.isDebugEnabled())
+			logger.debug("Range term "+this.toString()+ " stats" + entryStats.toString());
+		for (WeightingModel w : wmodels)
+		{
+			w.setEntryStatistics(entryStats);
+			w.setKeyFrequency(qtp.weight);
+			w.setCollectionStatistics(collectionStats);
+			IndexUtil.configure(index, w);
+			w.prepare();
+		}
+
+		MatchingEntry.Requirement required = MatchingEntry.Requirement.UNKNOWN;
+		if (qtp.required != null && qtp.required)
+			required = MatchingEntry.Requirement.REQUIRED;
+		if (qtp.required != null && ! qtp.required)
+			required = MatchingEntry.Requirement.NEG_REQUIRED;
+		return new MatchingEntry(pair.getRight(), entryStats, qtp.weight, wmodels, required, qtp.tags);
+	}
+
+}
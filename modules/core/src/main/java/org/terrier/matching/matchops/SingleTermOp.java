@@ -43,6 +43,7 @@ import org.terrier.structures.Lexicon;
 import org.terrier.structures.LexiconEntry;
 import org.terrier.structures.Pointer;
 import org.terrier.structures.PostingIndex;
+import org.terrier.structures.TermMaxScores;
 import org.terrier.structures.postings.FieldOnlyIterablePosting;
 import org.terrier.structures.postings.IterablePosting;
 
@@ -132,6 +133,14 @@ public class SingleTermOp extends Operator {
 				t.setMaxFrequencyInDocuments(maxTFStructure.get(t.getTermId()));
 			}
 		}
+		else if (t.getMaxFrequencyInDocuments() == Integer.MAX_VALUE && index.hasIndexStructure(TermMaxScores.STRUCTURE_NAME))
+		{
+			TermMaxScores maxScores = (TermMaxScores) index.getIndexStructure(TermMaxScores.STRUCTURE_NAME);
+			if (maxScores != null)
+			{
+				t.setMaxFrequencyInDocuments(maxScores.getMaxFrequency(t.getTermId()));
+			}
+		}
 		return Pair.of((EntryStatistics) t, postingList);
 	}
 	
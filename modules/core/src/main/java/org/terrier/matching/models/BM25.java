@@ -74,6 +74,21 @@ public class BM25 extends WeightingModel {
 				((k_3+1)*keyFrequency/(k_3+keyFrequency));
 	}
 
+	/**
+	 * BM25 increases with tf and decreases with document length, and a document cannot
+	 * be shorter than the frequency of the term in it. Hence, the score for a posting with
+	 * tf and document length both equal to maxTf is an upper bound.
+	 */
+	@Override
+	public double getMaxScore(double maxTf) {
+		if (keyFrequency < 0)
+			return Double.POSITIVE_INFINITY;
+		//negative idf, scores are all negative
+		if (documentFrequency + 0.5d >= numberOfDocuments - documentFrequency + 0.5d)
+			return 0d;
+		return score(maxTf, maxTf);
+	}
+
 	@Override 
 	public void prepare() {
 		if (rq != null) {
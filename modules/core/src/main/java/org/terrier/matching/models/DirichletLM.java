@@ -56,6 +56,15 @@ public class DirichletLM extends WeightingModel {
 		return WeightingModelLibrary.log(1 + (tf/(c * (super.termFrequency / numberOfTokens))) ) + WeightingModelLibrary.log(c/(docLength+c));
 	}
 
+	/**
+	 * Both logarithms are maximised by a posting with tf and document length of maxTf,
+	 * as a document cannot be shorter than the frequency of the term in it.
+	 */
+	@Override
+	public double getMaxScore(double maxTf) {
+		return score(maxTf, maxTf);
+	}
+
 	@Override
 	public String getInfo() {
 		return "DirichletLM";
@@ -65,4 +65,15 @@ public class LemurTF_IDF extends WeightingModel {
 		return keyFrequency*Robertson_tf * 
 				Math.pow(WeightingModelLibrary.log(numberOfDocuments/documentFrequency), 2);
 	}
+
+	/**
+	 * The score increases with tf and decreases with document length, which cannot be
+	 * smaller than tf, so the score for tf and document length of maxTf is an upper bound.
+	 */
+	@Override
+	public double getMaxScore(double maxTf) {
+		if (keyFrequency < 0)
+			return Double.POSITIVE_INFINITY;
+		return score(maxTf, maxTf);
+	}
 }
@@ -13,4 +13,9 @@ public class Null extends WeightingModel {
 		return keyFrequency * 0d;
 	}
 
+	@Override
+	public double getMaxScore(double maxTf) {
+		return 0d;
+	}
+
 }
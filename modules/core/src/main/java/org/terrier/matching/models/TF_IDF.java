@@ -82,6 +82,17 @@ public class TF_IDF extends WeightingModel {
 		return keyFrequency * Robertson_tf * idf;
 	}
 
+	/**
+	 * The score increases with tf and decreases with document length, which cannot be
+	 * smaller than tf, so the score for tf and document length of maxTf is an upper bound.
+	 */
+	@Override
+	public double getMaxScore(double maxTf) {
+		if (keyFrequency < 0)
+			return Double.POSITIVE_INFINITY;
+		return score(maxTf, maxTf);
+	}
+
 	/**
 	 * Sets the b parameter to ranking formula
 	 * @param _b the b parameter value to use.
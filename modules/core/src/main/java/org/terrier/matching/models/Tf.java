@@ -53,6 +53,13 @@ public class Tf extends WeightingModel {
 		return keyFrequency * tf;
 	}
 
+	@Override
+	public double getMaxScore(double maxTf) {
+		if (keyFrequency < 0)
+			return Double.POSITIVE_INFINITY;
+		return score(maxTf, maxTf);
+	}
+
 	/**
 	 * Sets the b parameter to ranking formula
 	 * @param b the b parameter value to use.
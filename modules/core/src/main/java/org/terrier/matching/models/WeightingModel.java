@@ -161,6 +161,39 @@ public abstract class WeightingModel implements Model, Serializable, Cloneable {
 	public abstract double score(double tf, double docLength);
 
 
+	/**
+	 * Returns an upper bound on the score that this model can assign to any posting of the
+	 * current term, using the maximum frequency of the term in any document, as recorded in the
+	 * entry statistics. Should only be called after prepare().
+	 * @return upper bound on the score, or Double.POSITIVE_INFINITY if no bound is known
+	 */
+	public double getMaxScore() {
+		return getMaxScore(getMaxFrequency());
+	}
+	
+	/**
+	 * Returns an upper bound on the score that this model can assign to any posting of the
+	 * current term that has a frequency no greater than maxTf. Models for which such a bound
+	 * can be obtained should override this method; by default, no bound is known.
+	 * @param maxTf the largest frequency of any posting being considered
+	 * @return upper bound on the score, or Double.POSITIVE_INFINITY if no bound is known
+	 */
+	public double getMaxScore(double maxTf) {
+		return Double.POSITIVE_INFINITY;
+	}
+	
+	/**
+	 * Returns the maximum frequency of the current term in any document. This is obtained from the
+	 * entry statistics if known, and otherwise bounded by the frequency of the term in the collection.
+	 * @return maximum frequency of the term in any document
+	 */
+	protected double getMaxFrequency() {
+		final int maxtf = es.getMaxFrequencyInDocuments();
+		if (maxtf <= 0 || maxtf == Integer.MAX_VALUE)
+			return termFrequency;
+		return Math.min(maxtf, termFrequency);
+	}
+
 	/**
 	 * Sets the c value
 	 * @param _c the term frequency normalisation parameter value.
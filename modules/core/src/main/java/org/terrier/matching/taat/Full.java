@@ -93,7 +93,7 @@ public class Full extends BaseMatching
 		//DO NOT prepare the posting lists for TAAT retrieval
 		plm.prepare(false);
 				
-		for(int i=0; i< plm.size(); i++)
+		for(int i=0; i< plm.size() && ! timedOut; i++)
 		{			
 			assignScores(i, (AccumulatorResultSet) resultSet, plm.getPosting(i));
 		}
@@ -142,8 +142,14 @@ public class Full extends BaseMatching
 		
 		while (postings.next() != IterablePosting.EOL)
 		{
-			score = plm.score(i);
+			//stop early if the time allowed is exceeded, retaining the scores accumulated so far
+			if (deadlineExceeded())
+				break;
 			docid = postings.getId();
+			//deleted and filtered documents are not scored
+			if (isExcluded(docid))
+				continue;
+			score = plm.score(i);
 			//logger.info("Docid=" + docid + " score=" + score);
 			if ((!rs.scoresMap.contains(docid)) && (score != Double.NEGATIVE_INFINITY))
 				numberOfRetrievedDocuments++;
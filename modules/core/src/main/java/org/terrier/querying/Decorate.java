@@ -27,6 +27,7 @@
  */
 package org.terrier.querying;
 
+import gnu.trove.TIntArrayList;
 import gnu.trove.TObjectIntHashMap;
 
 import java.io.IOException;
@@ -44,7 +45,7 @@ import org.terrier.querying.summarisation.Summariser;
 import org.terrier.structures.Index;
 import org.terrier.structures.IndexFactory;
 import org.terrier.structures.MetaIndex;
-import org.terrier.structures.collections.LRUMap;
+import org.terrier.structures.collections.ConcurrentLRUMap;
 import org.terrier.utility.ApplicationSetup;
 import org.terrier.utility.ArrayUtils;
 import org.terrier.utility.StringTools;
@@ -86,8 +87,8 @@ public class Decorate implements Process, PostFilter {
 		
 	/** The cache used for the meta data. Implements a 
 	 * Least-Recently-Used policy for retaining the most 
-	 * recently accessed metadata. */ 
-	protected LRUMap<Integer,String[]> metaCache = null;
+	 * recently accessed metadata, and may be used by many threads at once. */ 
+	protected Map<Integer,String[]> metaCache = null;
 	
 	/** The meta index server. It is provided by the manager. */
 	protected MetaIndex metaIndex = null;
@@ -163,9 +164,9 @@ public class Decorate implements Process, PostFilter {
 		}
 		
 		if (index.hasIndexStructure("metacache"))
-			metaCache = (LRUMap<Integer,String[]>) index.getIndexStructure("metacache");
+			metaCache = (Map<Integer,String[]>) index.getIndexStructure("metacache");
 		else
-			metaCache = new LRUMap<Integer,String[]>(1000);
+			metaCache = new ConcurrentLRUMap<Integer,String[]>(1000);
 
 		//preparing the query terms for highlighting
 		String original_q = q.getOriginalQuery();
@@ -260,36 +261,45 @@ public class Decorate implements Process, PostFilter {
 	
 	protected String[] getMetadata(String[] metaKeys, int docid)
 	{
-		String[] metadata = null;
-		synchronized(metaCache) {
-			try {
-				Integer docidObject = Integer.valueOf(docid);
-				if (metaCache.containsKey(docidObject))
-						metadata = metaCache.get(docidObject);
-				else {
-					metadata = metaIndex.getItems(metaKeys, docid);
-					metaCache.put(docidObject,metadata);
-				}
-			} catch(IOException ioe) {
-				logger.error("Problem getting metadata for docid " + docid);
-			} 
-		}
+		final Integer docidObject = Integer.valueOf(docid);
+		String[] metadata = metaCache.get(docidObject);
+		if (metadata != null)
+			return metadata;
+		try {
+			metadata = metaIndex.getItems(metaKeys, docid);
+			metaCache.put(docidObject,metadata);
+		} catch(IOException ioe) {
+			logger.error("Problem getting metadata for docid " + docid);
+		} 
 		return metadata;
 	}
 	
 	protected String[][] getMetadata(String[] metaKeys, int[] docids)
 	{
-		String[][] metadata = null;
+		final String[][] metadata = new String[docids.length][];
+		//only the documents not in the cache are obtained from the meta index, in one batch
+		final TIntArrayList missing = new TIntArrayList();
+		for(int i=0;i<docids.length;i++)
+		{
+			metadata[i] = metaCache.get(Integer.valueOf(docids[i]));
+			if (metadata[i] == null)
+				missing.add(i);
+		}
+		if (missing.size() == 0)
+			return metadata;
+		final int[] missingDocids = new int[missing.size()];
+		for(int i=0;i<missingDocids.length;i++)
+			missingDocids[i] = docids[missing.get(i)];
 		try{
-			metadata = metaIndex.getItems(metaKeys, docids);
-			synchronized (metaCache) {
-				for(int i=0;i<docids.length;i++)
-				{
-					metaCache.put(Integer.valueOf(docids[i]), metadata[i]);
-				}
+			final String[][] items = metaIndex.getItems(metaKeys, missingDocids);
+			for(int i=0;i<missingDocids.length;i++)
+			{
+				metadata[missing.get(i)] = items[i];
+				metaCache.put(Integer.valueOf(missingDocids[i]), items[i]);
 			}
 		} catch (IOException ioe) {
 			logger.error("Problem getting metadata for " + docids.length + " documents");
+			return null;
 		}
 		return metadata;
 	}
@@ -55,6 +55,7 @@ import org.terrier.matching.models.WeightingModelFactory;
 import org.terrier.querying.parser.Query;
 import org.terrier.structures.Index;
 import org.terrier.structures.IndexFactory;
+import org.terrier.structures.cache.QueryResultCache;
 import org.terrier.terms.BaseTermPipelineAccessor;
 import org.terrier.terms.TermPipelineAccessor;
 import org.terrier.utility.ApplicationSetup;
@@ -78,6 +79,9 @@ import org.terrier.utility.ApplicationSetup;
   * <li><tt>querying.allowed.controls</tt> - sets the controls which a users is allowed to set in a query</li>
   * <li><tt>querying.processes</tt> - mappings between controls and the processes they should cause, in order that they should execute</li>
   * <li><tt>querying.postfilters</tt> - mappings between controls and the post filters they should cause, in order that they should execute</li>
+  * <li><tt>querying.resultscache</tt> - name of a {@link QueryResultCache} class used to cache the results of raw queries, such that
+  * repeated queries skip all processes. Must be safe for use by many threads at once, e.g. 
+  * <tt>org.terrier.structures.cache.BoundedQueryResultCache</tt>. Default is no caching.</li>
   * </ul>
   * <p><b>Controls</b><ul>
   * <li><tt>start</tt> : The result number to start at - defaults to 0 (1st result)</li>
@@ -564,6 +568,9 @@ public class LocalManager implements Manager
 	
 	ModuleManager<Process> processModuleManager = new ModuleManager<>("processes", NAMESPACE_PROCESS, true);
 	
+	/** Cache of results for raw queries, or null if results are not cached */
+	protected QueryResultCache resultsCache;
+	
 	
 	/** This class is used as a TermPipelineAccessor, and this variable stores
 	  * the result of the TermPipeline run for that term. */
@@ -582,8 +589,25 @@ public class LocalManager implements Manager
 		this.load_pipeline();
 		this.load_controls_allowed();
 		this.load_controls_default();
+		this.load_results_cache();
 	}
 	/* ----------------------- Initialisation methods --------------------------*/
+	
+	/** load the results cache, if any */
+	protected void load_results_cache()
+	{
+		final String cacheName = ApplicationSetup.getProperty("querying.resultscache", "").trim();
+		if (cacheName.length() == 0)
+			return;
+		try{
+			if (! cacheName.contains("."))
+				resultsCache = ApplicationSetup.getClass("org.terrier.structures.cache." + cacheName).asSubclass(QueryResultCache.class).newInstance();
+			else
+				resultsCache = ApplicationSetup.getClass(cacheName).asSubclass(QueryResultCache.class).newInstance();
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Could not load results cache " + cacheName, e);
+		}
+	}
 
 	/** use the index specified for the Manager */
 	protected void useThisIndex(final Index i)
@@ -893,6 +917,20 @@ public class LocalManager implements Manager
 			throw e;	
 		}
 		
+		//only raw queries are cached, as other query forms may not be reflected in the cache key
+		final boolean cacheable = resultsCache != null && hasRawQuery && ! mqtObtained && ! hasTerrierQLquery && ! hasResultSet;
+		if (cacheable)
+		{
+			ResultSet cached = resultsCache.checkCache(rq);
+			if (cached != null)
+			{
+				rq.setResultSet(cached);
+				logger.info("Finished executing query " + srq.getQueryID() + " in " + (System.currentTimeMillis() - starttime) 
+					+ "ms - " + cached.getResultSize() + " results obtained from cache");
+				return;
+			}
+		}
+		
 		Iterator<Process> iter = processModuleManager.getActiveIterator(rq.getControls());
 		List<String> processesDone = new ArrayList<String>();
 		int ran = 0;
@@ -932,9 +970,13 @@ public class LocalManager implements Manager
 		if (hasResultSet)
 		{
 			msg = " - " + rq.getResultSet().getResultSize() + " results retrieved";
+			if (rq.getResultSet().getStatusCode() == BaseMatching.STATUS_TIMEOUT)
+				msg += " (approximate, as matching was stopped early)";
 		} else {
 			logger.warn("After running " + ran + " processes, no ResultSet was obtained. Controls were: " + rq.getControls().toString());
 		}
+		if (cacheable && hasResultSet)
+			resultsCache.add(rq);
 		final long endtime = System.currentTimeMillis();
 		logger.info("Finished executing query " + srq.getQueryID() + " in " + (endtime - starttime) + "ms" + msg);
 	 }
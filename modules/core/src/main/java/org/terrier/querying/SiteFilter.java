@@ -27,26 +27,34 @@ package org.terrier.querying;
 import java.net.MalformedURLException;
 import java.net.URL;
 
+import org.terrier.matching.DocValuesFilter;
 import org.terrier.matching.ResultSet;
 /** Filter that removes hosts which dont match an appropriate site: constraint, as specified in a control.
  * E.g. site:uk will remove any documents which do not have a hostname ending in uk
  * Assumes that the metadata set has already been decorated with the url.
+ * If the index has doc values with the hostnames of the urls, the site: constraint is instead applied
+ * during matching (see {@link DocValuesFilter}), and this filter keeps all documents.
  * @author Craig Macdonald
  * @since 3.0
  */
 public class SiteFilter implements PostFilter
 {
 	protected String site = "";
+	/** whether the site: constraint has already been applied during matching */
+	protected boolean filteredByMatching = false;
 	
 	/** {@inheritDoc} */
 	public void new_query(Manager m, SearchRequest srq, ResultSet rs)
 	{
 		site = srq.getControl("site").toLowerCase();
+		filteredByMatching = DocValuesFilter.filtersSite(((Request) srq).getIndex());
 	}
 	
 	/** {@inheritDoc} */
 	public byte filter(Manager m, SearchRequest srq, ResultSet rs, int rank, int docid)
 	{
+		if (filteredByMatching)
+			return FILTER_OK;
 		try{
 			URL url = new URL("http://" + rs.getMetaItem("url", docid));
 			if(!url.getHost().toLowerCase().endsWith(site))
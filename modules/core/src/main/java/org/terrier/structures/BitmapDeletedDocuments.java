@@ -0,0 +1,171 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is BitmapDeletedDocuments.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *  Craig Macdonald
+ */
+package org.terrier.structures;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.Files;
+
+/**
+ * A {@link DeletedDocuments} implementation that records deleted documents as a bitmap
+ * with one bit per docid. Checking whether a document is deleted does not lock, and so
+ * is cheap enough to be done for every posting matched, while documents are being deleted
+ * by another thread.
+ * <p>For an {@link IndexOnDisk}, the bitmap is written to the file <tt>prefix.deleted</tt>, and
+ * the structure is recorded in the properties of the index, such that it can be loaded using
+ * <tt>index.getIndexStructure("deleted")</tt>.
+ * @since 5.4
+ */
+@ConcurrentReadable
+public class BitmapDeletedDocuments implements DeletedDocuments
+{
+	/** suffix of the file that the bitmap of an IndexOnDisk is written to */
+	public static final String FILE_SUFFIX = "." + STRUCTURE_NAME;
+
+	/** the bits, replaced when more words are needed */
+	protected volatile AtomicLongArray words;
+	protected volatile int deletedDocuments = 0;
+	protected volatile long deletedTokens = 0;
+
+	/** Creates an empty bitmap */
+	public BitmapDeletedDocuments()
+	{
+		this.words = new AtomicLongArray(0);
+	}
+
+	/** Loads the bitmap written alongside the specified index. If none has been
+	 * written, the bitmap is empty. */
+	public BitmapDeletedDocuments(IndexOnDisk index) throws IOException
+	{
+		this();
+		final String filename = filename(index);
+		if (! Files.exists(filename))
+			return;
+		try(DataInputStream dis = new DataInputStream(Files.openFileStream(filename)))
+		{
+			deletedDocuments = dis.readInt();
+			deletedTokens = dis.readLong();
+			final int length = dis.readInt();
+			final AtomicLongArray w = new AtomicLongArray(length);
+			for(int i=0;i<length;i++)
+				w.set(i, dis.readLong());
+			words = w;
+		}
+	}
+
+	@Override
+	public boolean isDeleted(int docid)
+	{
+		final AtomicLongArray w = words;
+		final int word = docid >>> 6;
+		return word < w.length() && (w.get(word) & (1L << docid)) != 0;
+	}
+
+	/** Marks the specified document as deleted. Returns false if it was already deleted.
+	 * @param docid the docid of the document
+	 * @param length the length of the document, which is added to {@link #getNumberOfDeletedTokens()}
+	 */
+	public synchronized boolean delete(int docid, int length)
+	{
+		if (docid < 0)
+			throw new IllegalArgumentException("docid " + docid + " is negative");
+		final int word = docid >>> 6;
+		AtomicLongArray w = words;
+		if (word >= w.length())
+		{
+			final AtomicLongArray grown = new AtomicLongArray(Math.max(word + 1, w.length() * 2));
+			for(int i=0;i<w.length();i++)
+				grown.set(i, w.get(i));
+			w = grown;
+		}
+		final long bit = 1L << docid;
+		final long old = w.get(word);
+		if ((old & bit) != 0)
+			return false;
+		w.set(word, old | bit);
+		words = w;
+		deletedTokens += length;
+		deletedDocuments++;
+		return true;
+	}
+
+	@Override
+	public int getNumberOfDeletedDocuments()
+	{
+		return deletedDocuments;
+	}
+
+	@Override
+	public long getNumberOfDeletedTokens()
+	{
+		return deletedTokens;
+	}
+
+	/** Returns a mapping from each of the specified number of docids to its docid once
+	 * the deleted documents have been removed, or -1 for the deleted documents.
+	 * @param numberOfDocuments the number of documents to map
+	 * @param offset the docid given to the first document that is not deleted
+	 */
+	public static int[] docidMap(DeletedDocuments deleted, int numberOfDocuments, int offset)
+	{
+		final int[] map = new int[numberOfDocuments];
+		int next = offset;
+		for(int i=0;i<numberOfDocuments;i++)
+			map[i] = deleted != null && deleted.isDeleted(i) ? -1 : next++;
+		return map;
+	}
+
+	/** Writes this bitmap alongside the specified index, and records it as the
+	 * <tt>deleted</tt> structure of that index. */
+	public synchronized void write(IndexOnDisk index) throws IOException
+	{
+		final AtomicLongArray w = words;
+		try(DataOutputStream dos = new DataOutputStream(Files.writeFileStream(filename(index))))
+		{
+			dos.writeInt(deletedDocuments);
+			dos.writeLong(deletedTokens);
+			dos.writeInt(w.length());
+			for(int i=0;i<w.length();i++)
+				dos.writeLong(w.get(i));
+		}
+		if (! index.hasIndexStructure(STRUCTURE_NAME))
+		{
+			index.addIndexStructure(STRUCTURE_NAME, BitmapDeletedDocuments.class.getName(),
+					"org.terrier.structures.IndexOnDisk", "index");
+			index.flush();
+		}
+		IndexUtil.forceStructure(index, STRUCTURE_NAME, this);
+	}
+
+	static String filename(IndexOnDisk index)
+	{
+		return index.getPath() + ApplicationSetup.FILE_SEPARATOR + index.getPrefix() + FILE_SUFFIX;
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is ColumnarDocValues.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *  Craig Macdonald
+ */
+package org.terrier.structures;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.Files;
+
+/**
+ * A {@link DocValues} implementation that holds each column in an array, loaded from the
+ * file <tt>prefix.docvalues</tt> of an {@link IndexOnDisk}. The ordinals of a string or host column 
+ * are stored in bytes, shorts or ints, depending on the size of its dictionary. The file is written 
+ * by <tt>DocValuesBuilder</tt>, and has the following format:
+ * <pre>
+ * int numberOfDocuments, int numberOfColumns
+ * for each column: UTF key, byte type, then either
+ *   long value of each document, for a number column, or
+ *   int dictionary size, UTF each value, byte width, (ordinal+1) of each document in width bytes
+ * </pre>
+ * @since 5.4
+ */
+@ConcurrentReadable
+public class ColumnarDocValues implements DocValues
+{
+	/** suffix of the file that the doc values of an IndexOnDisk are written to */
+	public static final String FILE_SUFFIX = "." + STRUCTURE_NAME;
+
+	protected final int numberOfDocuments;
+	protected final String[] keys;
+	protected final byte[] types;
+	protected final String[][] dictionaries;
+	/** the ordinals of each column, as byte[], short[] or int[], or the values as long[] */
+	protected final Object[] values;
+
+	/** Loads the doc values written alongside the specified index */
+	public ColumnarDocValues(IndexOnDisk index) throws IOException
+	{
+		try(DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.openFileStream(filename(index)))))
+		{
+			numberOfDocuments = dis.readInt();
+			final int numberOfColumns = dis.readInt();
+			keys = new String[numberOfColumns];
+			types = new byte[numberOfColumns];
+			dictionaries = new String[numberOfColumns][];
+			values = new Object[numberOfColumns];
+			for(int c=0;c<numberOfColumns;c++)
+			{
+				keys[c] = dis.readUTF();
+				types[c] = dis.readByte();
+				if (types[c] == TYPE_LONG)
+				{
+					final long[] v = new long[numberOfDocuments];
+					for(int i=0;i<numberOfDocuments;i++)
+						v[i] = dis.readLong();
+					values[c] = v;
+					continue;
+				}
+				final String[] dictionary = new String[dis.readInt()];
+				for(int i=0;i<dictionary.length;i++)
+					dictionary[i] = dis.readUTF();
+				dictionaries[c] = dictionary;
+				switch (dis.readByte())
+				{
+					case 1: {
+						final byte[] v = new byte[numberOfDocuments];
+						dis.readFully(v);
+						values[c] = v;
+						break;
+					}
+					case 2: {
+						final short[] v = new short[numberOfDocuments];
+						for(int i=0;i<numberOfDocuments;i++)
+							v[i] = dis.readShort();
+						values[c] = v;
+						break;
+					}
+					default: {
+						final int[] v = new int[numberOfDocuments];
+						for(int i=0;i<numberOfDocuments;i++)
+							v[i] = dis.readInt();
+						values[c] = v;
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public String[] getKeys()
+	{
+		return keys;
+	}
+
+	@Override
+	public int getNumberOfDocuments()
+	{
+		return numberOfDocuments;
+	}
+
+	@Override
+	public int getColumn(String key)
+	{
+		for(int c=0;c<keys.length;c++)
+			if (keys[c].equals(key))
+				return c;
+		return -1;
+	}
+
+	@Override
+	public byte getType(int column)
+	{
+		return types[column];
+	}
+
+	@Override
+	public String[] getDictionary(int column)
+	{
+		return dictionaries[column];
+	}
+
+	@Override
+	public int getOrdinal(int column, int docid)
+	{
+		if (docid >= numberOfDocuments)
+			return -1;
+		final Object v = values[column];
+		if (v instanceof byte[])
+			return (((byte[]) v)[docid] & 0xFF) - 1;
+		if (v instanceof short[])
+			return (((short[]) v)[docid] & 0xFFFF) - 1;
+		return ((int[]) v)[docid] - 1;
+	}
+
+	@Override
+	public long getLong(int column, int docid)
+	{
+		if (docid >= numberOfDocuments)
+			return MISSING_LONG;
+		return ((long[]) values[column])[docid];
+	}
+
+	/** Returns the lower-cased hostname of the specified URL, which need not have a scheme,
+	 * or null if it is not a valid URL. This is the value stored in a host column. */
+	public static String host(String url)
+	{
+		if (url == null || url.length() == 0)
+			return null;
+		try{
+			return new URL(url.contains("://") ? url : "http://" + url).getHost().toLowerCase();
+		} catch (MalformedURLException mue) {
+			return null;
+		}
+	}
+
+	/** Returns the name of the file holding the doc values of the specified index */
+	public static String filename(IndexOnDisk index)
+	{
+		return index.getPath() + ApplicationSetup.FILE_SEPARATOR + index.getPrefix() + FILE_SUFFIX;
+	}
+}
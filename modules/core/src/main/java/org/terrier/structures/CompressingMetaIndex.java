@@ -33,6 +33,8 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
@@ -42,7 +44,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.regex.Pattern;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
@@ -51,6 +55,7 @@ import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.terrier.compression.LZCodec;
 import org.terrier.sorting.HeapSortInt;
 import org.terrier.structures.collections.FSOrderedMapFile;
 import org.terrier.structures.collections.OrderedMap;
@@ -68,16 +73,41 @@ import com.jakewharton.byteunits.BinaryByteUnit;
 
 /** A {@link MetaIndex} implementation that compresses contents. 
  * Values have maximum lengths, but overall value blobs are 
- * compressed using java.util.zip.Inflater.
+ * compressed using java.util.zip.Inflater, or, if the index property
+ * <tt>index.STRUCTURENAME.codec</tt> is <tt>lz</tt>, using {@link LZCodec} against a
+ * dictionary held in the file <tt>prefix.STRUCTURENAME.dict</tt>.
+ * <p>Many threads may read at once without locking: each thread decompresses into its own buffers.
+ * The data and lookup files are read according to the <tt>index.STRUCTURENAME.data-source</tt>
+ * and <tt>index.STRUCTURENAME.index-source</tt> index properties, which may be <tt>fileinmem</tt>
+ * (loaded into memory), <tt>mmap</tt> (memory-mapped, read without copying) or <tt>file</tt>
+ * (read from disk using positional reads).
  * @author Craig Macdonald &amp; Vassilis Plachouras
  * @since 3.0
  */
+@ConcurrentReadable
 public class CompressingMetaIndex implements MetaIndex {
 	
 	private final static Pattern SPLIT_SPACE = Pattern.compile("\\s+");
 	
 	/** logger to be used in this class */
 	static Logger logger = LoggerFactory.getLogger(CompressingMetaIndex.class);
+	/** value of the <tt>index.STRUCTURENAME.codec</tt> property for zlib compression, the default */
+	public static final String CODEC_ZLIB = "zlib";
+	/** value of the <tt>index.STRUCTURENAME.codec</tt> property for {@link LZCodec} compression */
+	public static final String CODEC_LZ = "lz";
+	/** suffix of the file holding the dictionary of the lz codec */
+	public static final String DICTIONARY_SUFFIX = ".dict";
+	/** largest gap in bytes between records on disk that are obtained by one read by the batch getItems() methods */
+	protected static final int BATCH_READ_GAP = Integer.parseInt(ApplicationSetup.getProperty("metaindex.batch.read.gap", "16384"));
+	/** largest read in bytes by the batch getItems() methods */
+	protected static final int BATCH_READ_MAX = Integer.parseInt(ApplicationSetup.getProperty("metaindex.batch.read.max", "16777216"));
+	/** number of documents above which the batch getItems() methods decompress in parallel */
+	protected static final int BATCH_PARALLEL_THRESHOLD = Integer.parseInt(ApplicationSetup.getProperty("metaindex.batch.parallel.threshold", "1000"));
+	/** number of records in memory that are decompressed by one task by the batch getItems() methods */
+	static final int BATCH_IN_MEMORY_RUN = 256;
+	/** largest number of idle readers that are kept for reuse */
+	static final int MAX_POOLED_READERS = 2 * Runtime.getRuntime().availableProcessors();
+	
 	/** thread-local cache of Inflaters to be re-used for decompression */
 	protected static final ThreadLocal<Inflater> inflaterCache = new ThreadLocal<Inflater>() 
 	{
@@ -102,8 +132,11 @@ public class CompressingMetaIndex implements MetaIndex {
 		public final byte[] read(long offset, int bytes) throws IOException
 		{
 			byte[] out = new byte[bytes];
-			dataSource.seek(offset);
-			dataSource.readFully(out);
+			//seeking and reading is not atomic
+			synchronized (dataSource) {
+				dataSource.seek(offset);
+				dataSource.readFully(out);
+			}
 			return out;
 		}
 		
@@ -139,6 +172,139 @@ public class CompressingMetaIndex implements MetaIndex {
 		}
 	}
 	
+	/** Reads bytes held in memory or memory-mapped, in segments of up to 1GB.
+	 * Bytes are read using absolute positions, so that many threads may read at once. */
+	@ConcurrentReadable
+	static class ByteBufferAccessor implements ByteAccessor
+	{
+		static final int SEGMENT_BITS = 30;
+		static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+		final ByteBuffer[] segments;
+		final RandomAccessFile file;
+
+		ByteBufferAccessor(ByteBuffer[] _segments, RandomAccessFile _file)
+		{
+			this.segments = _segments;
+			this.file = _file;
+		}
+
+		static int numberOfSegments(long length)
+		{
+			return (int) ((length + SEGMENT_MASK) >>> SEGMENT_BITS);
+		}
+
+		/** Memory-maps the specified file */
+		static ByteBufferAccessor map(RandomAccessFile raf) throws IOException
+		{
+			final long length = raf.length();
+			final ByteBuffer[] segments = new ByteBuffer[numberOfSegments(length)];
+			final FileChannel channel = raf.getChannel();
+			for(int i=0;i<segments.length;i++)
+			{
+				final long start = (long)i << SEGMENT_BITS;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(length - start, 1L << SEGMENT_BITS));
+			}
+			return new ByteBufferAccessor(segments, raf);
+		}
+
+		/** Reads the specified number of bytes from the stream into memory */
+		static ByteBufferAccessor load(DataInputStream dis, long length) throws IOException
+		{
+			final ByteBuffer[] segments = new ByteBuffer[numberOfSegments(length)];
+			for(int i=0;i<segments.length;i++)
+			{
+				final byte[] b = new byte[(int) Math.min(length - ((long)i << SEGMENT_BITS), 1L << SEGMENT_BITS)];
+				dis.readFully(b);
+				segments[i] = ByteBuffer.wrap(b);
+			}
+			return new ByteBufferAccessor(segments, null);
+		}
+
+		/** Returns views of the segments, to be used by a single thread with {@link #view(ByteBuffer[], long, int)} */
+		ByteBuffer[] duplicates()
+		{
+			final ByteBuffer[] rtr = new ByteBuffer[segments.length];
+			for(int i=0;i<segments.length;i++)
+				rtr[i] = segments[i].duplicate();
+			return rtr;
+		}
+
+		/** Returns the specified bytes as the remaining bytes of one of the views, without copying,
+		 * or as a copy if the bytes span two segments */
+		final ByteBuffer view(ByteBuffer[] views, long offset, int bytes) throws IOException
+		{
+			final int pos = (int) (offset & SEGMENT_MASK);
+			final ByteBuffer view = views[(int) (offset >>> SEGMENT_BITS)];
+			if (pos + bytes > view.capacity())
+				return ByteBuffer.wrap(read(offset, bytes));
+			view.clear();
+			view.position(pos);
+			view.limit(pos + bytes);
+			return view;
+		}
+
+		public final byte[] read(long offset, int bytes) throws IOException
+		{
+			final byte[] out = new byte[bytes];
+			int done = 0;
+			while (done < bytes)
+			{
+				final ByteBuffer segment = segments[(int) (offset >>> SEGMENT_BITS)].duplicate();
+				segment.position((int) (offset & SEGMENT_MASK));
+				final int n = Math.min(bytes - done, segment.remaining());
+				segment.get(out, done, n);
+				done += n;
+				offset += n;
+			}
+			return out;
+		}
+
+		/** Returns the long at the specified offset, which must be a multiple of 8 */
+		final long getLong(long offset)
+		{
+			return segments[(int) (offset >>> SEGMENT_BITS)].getLong((int) (offset & SEGMENT_MASK));
+		}
+
+		public final void close() throws IOException
+		{
+			if (file != null)
+				file.close();
+		}
+	}
+
+	/** Looks up offsets held in memory or memory-mapped, without locking */
+	@ConcurrentReadable
+	static class ByteBufferDocid2OffsetLookup implements Docid2OffsetLookup
+	{
+		protected final ByteBufferAccessor b;
+		protected final long fileLength;
+		protected final int docidCount;
+
+		ByteBufferDocid2OffsetLookup(ByteBufferAccessor _b, int _docCount, long _fileLength)
+		{
+			b = _b;
+			docidCount = _docCount;
+			fileLength = _fileLength;
+		}
+
+		public final long getOffset(final int docid)
+		{
+			return b.getLong((long)docid * 8);
+		}
+
+		public final int getLength(final int docid)
+		{
+			return (docid+1)==docidCount 
+				? (int)(fileLength - getOffset(docid))
+				: (int)(getOffset(docid+1) - getOffset(docid));
+		}
+
+		public void close() throws IOException
+		{
+			b.close();
+		}
+	}
+
 	static final class LoggingDocid2OffsetLookup implements Docid2OffsetLookup
 	{
 		final Docid2OffsetLookup parent;
@@ -431,6 +597,9 @@ public class CompressingMetaIndex implements MetaIndex {
 		final protected int recordLength;
 		
 		protected Inflater inflater;
+		/** the dictionary, followed by the record, if the lz codec is used, else null */
+		protected final byte[] lzRecord;
+		protected final int dictionaryLength;
 		
 		protected int keyCount;
 		protected int[] keyByteOffset;
@@ -490,6 +659,18 @@ public class CompressingMetaIndex implements MetaIndex {
 			numberOfRecords = _index.getIntIndexProperty("index."+_structureName+".entries", 0);
 						
 			inflater = inflaterCache.get();
+			final byte[] dictionary = loadDictionary(_index, _structureName);
+			if (dictionary != null)
+			{
+				dictionaryLength = dictionary.length;
+				lzRecord = new byte[dictionaryLength + recordLength];
+				System.arraycopy(dictionary, 0, lzRecord, 0, dictionaryLength);
+			}
+			else
+			{
+				dictionaryLength = 0;
+				lzRecord = null;
+			}
 			index = _startingId -1;
 			long targetSkipped = (long)_startingId  * (long)8;
 			long actualSkipped = 0;
@@ -559,16 +740,25 @@ public class CompressingMetaIndex implements MetaIndex {
 				byte[] b = new byte[dataLength];
 				zdata.readFully(b);
 				lastOffset = endOffset +1;
-				inflater.reset();
-				inflater.setInput(b);
-				byte[] bOut = new byte[recordLength];
-				inflater.inflate(bOut);
+				byte[] bOut;
+				if (lzRecord != null)
+				{
+					bOut = lzRecord;
+					LZCodec.decompress(ByteBuffer.wrap(b), bOut, dictionaryLength);
+				}
+				else
+				{
+					inflater.reset();
+					inflater.setInput(b);
+					bOut = new byte[recordLength];
+					inflater.inflate(bOut);
+				}
 				String[] sOut = new String[keyCount];
 		        for(int i=0;i<keyCount;i++)
 		        {
 		            sOut[i] = Text.decode(
 		                bOut,
-		                keyByteOffset[i],
+		                dictionaryLength + keyByteOffset[i],
 		                valueByteLengths[i]).trim();
 		        }
 		        //logger.info("Got entry " + Arrays.deepToString(sOut));
@@ -620,6 +810,14 @@ public class CompressingMetaIndex implements MetaIndex {
 	protected final String prefix;
 	
 	protected final ByteAccessor dataSource;
+	/** the dictionary of the lz codec, or null if zlib is used */
+	protected byte[] dictionary;
+	/** offset of the record in the buffer it is decompressed into, after the dictionary */
+	protected int recordStart;
+	/** the idle readers, which are borrowed by any thread, see {@link #borrow()} */
+	protected final Queue<RecordReader> readers = new ConcurrentLinkedQueue<RecordReader>();
+	/** whether close() has been called, after which returned readers are not kept */
+	protected volatile boolean closed = false;
 	protected Map<Text,IntWritable>[] reverseMetaMaps;
 	protected FixedSizeWriteableFactory<Text>[] keyFactories;
 	
@@ -651,42 +849,168 @@ public class CompressingMetaIndex implements MetaIndex {
 		}
 
 		String fileSource = index.getIndexProperty("index."+structureName + ".data-source", "fileinmem");
-		ByteAccessor _dataSource = null;
 		if (fileSource.equals("fileinmem"))
 		{
 			logger.info("Structure "+ structureName + " loading data file into memory");
+			ByteAccessor _dataSource = null;
 			try{
 				logger.debug("Caching metadata file "+ dataFilename + " to memory");
 				final DataInputStream di = new DataInputStream(Files.openFileStream(dataFilename));
-				_dataSource = new RandomDataInputAccessor(new RandomDataInputMemory(di, dataFileLength));
+				_dataSource = ByteBufferAccessor.load(di, dataFileLength);
 				di.close();
 			} catch (OutOfMemoryError oome) {
-				logger.warn("OutOfMemoryError: Structure "+ structureName + " reading data file directly from disk");
-				//logger.debug("Metadata will be read directly from disk");
-				RandomDataInput rfi = Files.openFileRandom(dataFilename);
-				_dataSource = (rfi instanceof RandomAccessFile)
-					? new ChannelByteAccessor((RandomAccessFile)rfi)
-					: new RandomDataInputAccessor(rfi);
+				logger.warn("OutOfMemoryError: Structure "+ structureName + " memory-mapping data file instead");
+				_dataSource = openFile(dataFilename, true);
 			}
 			dataSource = _dataSource;
 		}
+		else if (fileSource.equals("mmap"))
+		{
+			logger.info("Structure "+ structureName + " memory-mapping data file");
+			dataSource = openFile(dataFilename, true);
+		}
 		else if (fileSource.equals("file"))
 		{
 			long size = Files.length(dataFilename);
 			logger.warn("Structure "+ structureName + " reading data file directly from disk (SLOW) - try index."
-					+structureName+".data-source=fileinmem in the index properties file. " 
+					+structureName+".data-source=fileinmem or mmap in the index properties file. " 
 					+ BinaryByteUnit.format(size) +" of memory would be required.");
-			//logger.debug("Metadata will be read directly from disk");
-			RandomDataInput rfi = Files.openFileRandom(dataFilename);
-			dataSource = (rfi instanceof RandomAccessFile)
-				? new ChannelByteAccessor((RandomAccessFile)rfi)
-				: new RandomDataInputAccessor(rfi);
+			dataSource = openFile(dataFilename, false);
 		}
 		else
 		{
 			throw new IOException(
 				"Bad property value for index."+structureName + ".source="+fileSource); 
 		}
+		dictionary = loadDictionary(index, structureName);
+		recordStart = dictionary != null ? dictionary.length : 0;
+	}
+
+	/** Returns the dictionary of the specified structure if it uses the lz codec, else null */
+	static byte[] loadDictionary(IndexOnDisk index, String structureName) throws IOException
+	{
+		if (! CODEC_LZ.equals(index.getIndexProperty("index."+structureName+".codec", CODEC_ZLIB)))
+			return null;
+		final String filename = index.getPath() + ApplicationSetup.FILE_SEPARATOR + index.getPrefix() + "." + structureName + DICTIONARY_SUFFIX;
+		final byte[] rtr = new byte[(int) Files.length(filename)];
+		try(DataInputStream dis = new DataInputStream(Files.openFileStream(filename)))
+		{
+			dis.readFully(rtr);
+		}
+		return rtr;
+	}
+
+	/** Opens the specified file for positional reads, memory-mapped if mmap is true and the file is local */
+	static ByteAccessor openFile(String filename, boolean mmap) throws IOException
+	{
+		RandomDataInput rfi = Files.openFileRandom(filename);
+		if (! (rfi instanceof RandomAccessFile))
+			return new RandomDataInputAccessor(rfi);
+		return mmap
+			? ByteBufferAccessor.map((RandomAccessFile)rfi)
+			: new ChannelByteAccessor((RandomAccessFile)rfi);
+	}
+
+	/** Opens the specified lookup file, memory-mapped if mmap is true and the file is local */
+	static Docid2OffsetLookup openLookup(String filename, boolean mmap, int length, long dataFileLength) throws IOException
+	{
+		final ByteAccessor b = openFile(filename, mmap);
+		if (b instanceof ByteBufferAccessor)
+			return new ByteBufferDocid2OffsetLookup((ByteBufferAccessor)b, length, dataFileLength);
+		//the on-disk lookup remembers the last offsets read
+		return new SynchronizedDocid2OffsetLookup(new OnDiskDocid2OffsetLookup(b, length, dataFileLength));
+	}
+
+	/** Borrows an idle reader, or creates one if there is none. The reader must be returned 
+	 * using {@link #release(RecordReader)}. */
+	final RecordReader borrow()
+	{
+		final RecordReader reader = readers.poll();
+		return reader != null ? reader : new RecordReader();
+	}
+
+	/** Returns a borrowed reader, which is kept for reuse unless enough readers are idle, 
+	 * or this meta index is closed */
+	final void release(RecordReader reader)
+	{
+		if (closed || readers.size() >= MAX_POOLED_READERS)
+		{
+			reader.end();
+			return;
+		}
+		readers.offer(reader);
+		//a reader returned while closing would otherwise not be ended
+		if (closed)
+			endIdleReaders();
+	}
+
+	/** Releases the native resources of the idle readers, which are discarded */
+	final void endIdleReaders()
+	{
+		RecordReader reader;
+		while((reader = readers.poll()) != null)
+			reader.end();
+	}
+
+	/** The buffers with which one thread at a time reads and decompresses records, so that 
+	 * reads need not allocate or lock */
+	final class RecordReader
+	{
+		final Inflater inflater;
+		/** the dictionary of the lz codec, if any, followed by the record */
+		final byte[] record;
+		/** views of the data, if held in memory or memory-mapped */
+		final ByteBuffer[] views;
+
+		RecordReader()
+		{
+			inflater = dictionary == null ? new Inflater() : null;
+			record = new byte[recordStart + recordLength];
+			if (dictionary != null)
+				System.arraycopy(dictionary, 0, record, 0, recordStart);
+			views = dataSource instanceof ByteBufferAccessor 
+				? ((ByteBufferAccessor)dataSource).duplicates()
+				: null;
+		}
+
+		/** Releases the native resources of the inflater, if any */
+		final void end()
+		{
+			if (inflater != null)
+				inflater.end();
+		}
+
+		/** Decompresses the record of the specified document into record, starting at recordStart */
+		final byte[] read(int docid) throws IOException
+		{
+			return decompress(view(offsetLookup.getOffset(docid), offsetLookup.getLength(docid)));
+		}
+
+		/** Returns the specified bytes of the data, without copying if they are in memory or memory-mapped */
+		final ByteBuffer view(long offset, int length) throws IOException
+		{
+			return views != null
+				? ((ByteBufferAccessor)dataSource).view(views, offset, length)
+				: ByteBuffer.wrap(dataSource.read(offset, length));
+		}
+
+		/** Decompresses the remaining bytes of compressed into record, starting at recordStart */
+		final byte[] decompress(ByteBuffer compressed)
+		{
+			if (inflater == null)
+			{
+				LZCodec.decompress(compressed, record, recordStart);
+				return record;
+			}
+			inflater.reset();
+			inflater.setInput(compressed);
+			try {
+				inflater.inflate(record, 0, recordLength);
+			} catch(DataFormatException dfe) {
+				logger.error("Failed to inflate compressed meta data", dfe);
+			}
+			return record;
+		}
 	}
 
 	public int size() {
@@ -703,6 +1027,8 @@ public class CompressingMetaIndex implements MetaIndex {
 	
 	/** Closes the underlying structures.*/
 	public void close() throws IOException {
+		closed = true;
+		endIdleReaders();
 		dataSource.close();
 		offsetLookup.close();
 		for (Map<Text,IntWritable> m : reverseMetaMaps)
@@ -778,46 +1104,105 @@ public class CompressingMetaIndex implements MetaIndex {
 		}		
 	}
 	
-	/** {@inheritDoc}.
-	 * In this implementation, _docids are sorted to improve disk cache hits. 
-	 *  _docids is however unchanged.
-	 */
+	/** {@inheritDoc} 
+	 *  In this implementation, records are read in order of docid, as for {@link #getItems(String[], int[])}. 
+	 *  _docids is however unchanged. */
 	public String[] getItems(String Key, int[] _docids) throws IOException {
-		final int numDocs = _docids.length;
-		final int[] docids = new int[numDocs];
-		System.arraycopy(_docids, 0, docids, 0, numDocs);
-		final String values[] = new String[numDocs];
-		//optimisation: order by docid, to improve disk cache hit rate
-		final int[] order = new int[numDocs];
-		for(int i=0;i<numDocs;i++)
-			order[i] = i;
-		HeapSortInt.ascendingHeapSort(docids, order);
-		
-		for(int i=0;i<numDocs;i++)
-		{
-			values[order[i]] = getItem(Key, docids[i]);
-		}
+		final String[][] items = getItems(new String[]{Key}, _docids);
+		final String[] values = new String[items.length];
+		for(int i=0;i<items.length;i++)
+			values[i] = items[i][0];
 		return values;
 	}
 
 	/** {@inheritDoc} 
-	 *  In this implementation, _docids are sorted to improve disk cache hits. 
+	 *  In this implementation, _docids are sorted, and records that are near each other on disk are 
+	 *  obtained using one read of up to <tt>metaindex.batch.read.max</tt> bytes (default 16MB), including gaps of 
+	 *  up to <tt>metaindex.batch.read.gap</tt> bytes (default 16KB). Batches of at least 
+	 *  <tt>metaindex.batch.parallel.threshold</tt> documents (default 1000) are decompressed in parallel.
 	 *  _docids is however unchanged. */
 	public String[][] getItems(String Keys[], final int[] _docids) throws IOException {
 		final int numDocs = _docids.length;
 		final int[] docids = new int[numDocs];
 		System.arraycopy(_docids, 0, docids, 0, numDocs);
 		final String[][] saOut = new String[numDocs][];
+		final int kCount = Keys.length;
+		final int[] byteOffsets = new int[kCount];
+		final int[] byteLengths = new int[kCount];
+		for(int i=0;i<kCount;i++)
+		{
+			byteOffsets[i] = recordStart + key2byteoffset.get(Keys[i]);
+			byteLengths[i] = key2bytelength.get(Keys[i]);
+		}
 		
-		//optimisation: order by docid, to improve disk cache hit rate
+		//order by docid, such that records are read sequentially
 		final int[] order = new int[numDocs];
 		for(int i=0;i<numDocs;i++)
 			order[i] = i;
 		HeapSortInt.ascendingHeapSort(docids, order);
+		final long[] offsets = new long[numDocs];
+		final int[] lengths = new int[numDocs];
+		for(int i=0;i<numDocs;i++)
+		{
+			offsets[i] = offsetLookup.getOffset(docids[i]);
+			lengths[i] = offsetLookup.getLength(docids[i]);
+		}
 		
+		//divide into runs of records, each obtained by one read
+		final boolean inMemory = dataSource instanceof ByteBufferAccessor;
+		final List<int[]> runs = new ArrayList<>();
+		int runStart = 0;
+		long runEnd = 0;
 		for(int i=0;i<numDocs;i++)
 		{
-			saOut[order[i]] = getItems(Keys, docids[i]);
+			final long end = offsets[i] + lengths[i];
+			final boolean coalesce = i > runStart && (inMemory
+				? i - runStart < BATCH_IN_MEMORY_RUN
+				: offsets[i] - runEnd <= BATCH_READ_GAP && Math.max(end, runEnd) - offsets[runStart] <= BATCH_READ_MAX);
+			if (i > runStart && ! coalesce)
+			{
+				runs.add(new int[]{runStart, i});
+				runStart = i;
+			}
+			runEnd = i == runStart ? end : Math.max(end, runEnd);
+		}
+		if (numDocs > 0)
+			runs.add(new int[]{runStart, numDocs});
+		
+		try{
+			(numDocs >= BATCH_PARALLEL_THRESHOLD ? runs.parallelStream() : runs.stream()).forEach(run -> {
+				final RecordReader reader = borrow();
+				try{
+					final int first = run[0];
+					final int last = run[1] - 1;
+					final ByteBuffer block = inMemory || first == last
+						? null
+						: ByteBuffer.wrap(dataSource.read(offsets[first], (int) (offsets[last] + lengths[last] - offsets[first])));
+					for(int i=first;i<=last;i++)
+					{
+						final ByteBuffer compressed;
+						if (block == null)
+							compressed = reader.view(offsets[i], lengths[i]);
+						else
+						{
+							compressed = block.duplicate();
+							compressed.position((int) (offsets[i] - offsets[first]));
+							compressed.limit((int) (offsets[i] - offsets[first]) + lengths[i]);
+						}
+						final byte[] bOut = reader.decompress(compressed);
+						final String[] sOut = new String[kCount];
+						for(int k=0;k<kCount;k++)
+							sOut[k] = Text.decode(bOut, byteOffsets[k], byteLengths[k]).trim();
+						saOut[order[i]] = sOut;
+					}
+				} catch (IOException ioe) {
+					throw new UncheckedIOException(ioe);
+				} finally {
+					release(reader);
+				}
+			});
+		} catch (UncheckedIOException uioe) {
+			throw uioe.getCause();
 		}
 		return saOut;
 	}
@@ -826,71 +1211,53 @@ public class CompressingMetaIndex implements MetaIndex {
 	public String getItem(String Key, int docid)
         throws IOException
     {
-		Inflater unzip = inflaterCache.get();
-		unzip.reset();
-		unzip.setInput(dataSource.read(
-			offsetLookup.getOffset(docid), offsetLookup.getLength(docid)
-			));
-		
-		byte[] bOut = new byte[recordLength];
-		try {
-			unzip.inflate(bOut);
-		} catch(DataFormatException dfe) {
-			logger.error("Failed to inflate compressed meta data", dfe);
+		final RecordReader reader = borrow();
+		try{
+			final byte[] bOut = reader.read(docid);
+			return Text.decode(bOut, recordStart + key2byteoffset.get(Key), key2bytelength.get(Key)).trim();
+		} finally {
+			release(reader);
 		}
-		return Text.decode(bOut, key2byteoffset.get(Key), key2bytelength.get(Key)).trim();
     }
 	
 	/** {@inheritDoc} */
 	public String[] getItems(String[] Keys, int docid) throws IOException {
-		Inflater unzip = inflaterCache.get();
-		unzip.reset();
-		unzip.setInput(dataSource.read(
-				offsetLookup.getOffset(docid), offsetLookup.getLength(docid)
-				));
-		byte[] bOut = new byte[recordLength];
-		try {
-			unzip.inflate(bOut);
-		} catch(DataFormatException dfe) {
-			logger.error("Failed to inflate compressed meta data", dfe);
-		}
-        final int kCount = Keys.length;
-        String[] sOut = new String[kCount];
-        for(int i=0;i<kCount;i++)
-        {
-            sOut[i] = Text.decode(
-                bOut,
-                key2byteoffset.get(Keys[i]),
-                key2bytelength.get(Keys[i])).trim();
-        }
-        return sOut;
+		final RecordReader reader = borrow();
+		try{
+			final byte[] bOut = reader.read(docid);
+	        final int kCount = Keys.length;
+	        String[] sOut = new String[kCount];
+	        for(int i=0;i<kCount;i++)
+	        {
+	            sOut[i] = Text.decode(
+	                bOut,
+	                recordStart + key2byteoffset.get(Keys[i]),
+	                key2bytelength.get(Keys[i])).trim();
+	        }
+	        return sOut;
+		} finally {
+			release(reader);
+		}
     }
 	
 	/** {@inheritDoc} */
 	public String[] getAllItems(int docid) throws IOException {
-		Inflater unzip = inflaterCache.get();
-		unzip.reset();
-		unzip.setInput(dataSource.read(
-				offsetLookup.getOffset(docid), offsetLookup.getLength(docid)
-				));
-		byte[] bOut = new byte[recordLength];
-		try {
-			unzip.inflate(bOut);
-		} catch(DataFormatException dfe) {
-			logger.error("Failed to inflate compressed meta data", dfe);
-		}
-        final int kCount = this.keyCount;
-        String[] sOut = new String[kCount];
- 
-        
-        for(int i=0;i<kCount;i++)
-        {
-            sOut[i] = Text.decode(
-                bOut,
-                valueByteOffsets[i],
-                valueByteLengths[i]).trim();
-        }
-        return sOut;
+		final RecordReader reader = borrow();
+		try{
+			final byte[] bOut = reader.read(docid);
+	        final int kCount = this.keyCount;
+	        String[] sOut = new String[kCount];
+	        for(int i=0;i<kCount;i++)
+	        {
+	            sOut[i] = Text.decode(
+	                bOut,
+	                recordStart + valueByteOffsets[i],
+	                valueByteLengths[i]).trim();
+	        }
+	        return sOut;
+		} finally {
+			release(reader);
+		}
 	}
 
 	@SuppressWarnings("unchecked")
@@ -935,60 +1302,34 @@ public class CompressingMetaIndex implements MetaIndex {
 		if (indexSource.equals("fileinmem"))
 		{
 			logger.info("Structure "+ structureName + " reading lookup file into memory");
-			if (indexFileLength < Integer.MAX_VALUE)
-			{	
-				try{
-					DataInputStream dis = new DataInputStream(Files.openFileStream(indexFilename));
+			try{
+				DataInputStream dis = new DataInputStream(Files.openFileStream(indexFilename));
+				if (indexFileLength < Integer.MAX_VALUE)
+				{
 					final long[] docid2offsets = new long[length];
 					for(i=0;i<length;i++)
 						docid2offsets[i] = dis.readLong();
 					logger.debug("docid2offsets.length: " + docid2offsets.length + " ZIP_COMPRESSION_LEVEL: " + compressionLevel + " recordLength: " + recordLength);
 					offsetLookup = new ArrayDocid2OffsetLookup(docid2offsets, dataFileLength);
-					//finished with index file
-					dis.close();
-				} catch (OutOfMemoryError oome) {
-					logger.warn("OutOfMemoryError: Structure "+ structureName + " reading lookup file directly from disk");
-					//logger.debug("Metadata lookup will be read directly from disk: "+ length +" entries, size "+ dataFileLength + " bytes");
-					RandomDataInput rfi = Files.openFileRandom(indexFilename);
-					offsetLookup = new OnDiskDocid2OffsetLookup(
-						rfi instanceof RandomAccessFile
-							? new ChannelByteAccessor((RandomAccessFile)rfi)
-							: new RandomDataInputAccessor(rfi),
-						length, dataFileLength
-						);
-				}
-			}
-			else
-			{
-				try{
-					DataInputStream dis = new DataInputStream(Files.openFileStream(indexFilename));
-					offsetLookup = new OnDiskDocid2OffsetLookup(new RandomDataInputAccessor(new RandomDataInputMemory(dis, indexFileLength)),length, dataFileLength);
-					dis.close();
 				}
-				catch (OutOfMemoryError oome) {
-					logger.warn("OutOfMemoryError: Structure "+ structureName + " reading lookup file directly from disk");
-					//logger.debug("Metadata lookup will be read directly from disk: "+ length +" entries, size "+ dataFileLength + " bytes");
-					RandomDataInput rfi = Files.openFileRandom(indexFilename);
-					offsetLookup = new OnDiskDocid2OffsetLookup(
-						rfi instanceof RandomAccessFile
-							? new ChannelByteAccessor((RandomAccessFile)rfi)
-							: new RandomDataInputAccessor(rfi),
-						length, dataFileLength
-						);
+				else
+				{
+					offsetLookup = new ByteBufferDocid2OffsetLookup(ByteBufferAccessor.load(dis, indexFileLength), length, dataFileLength);
 				}
-			}	
+				//finished with index file
+				dis.close();
+			} catch (OutOfMemoryError oome) {
+				logger.warn("OutOfMemoryError: Structure "+ structureName + " memory-mapping lookup file instead");
+				offsetLookup = openLookup(indexFilename, true, length, dataFileLength);
+			}
+		} else if (indexSource.equals("mmap")) {
+			logger.info("Structure "+ structureName + " memory-mapping lookup file");
+			offsetLookup = openLookup(indexFilename, true, length, dataFileLength);
 		} else {
 			logger.warn("Structure "+ structureName + " reading lookup file directly from disk (SLOW) - try index."
-					+ structureName+".index-source=fileinmem in the index properties file. " 
+					+ structureName+".index-source=fileinmem or mmap in the index properties file. " 
 					+ BinaryByteUnit.format(dataFileLength) +" of memory would be required.");
-			//logger.debug("Metadata lookup will be read directly from disk: "+ length +" entries, size "+ dataFileLength + " bytes");
-			RandomDataInput rfi = Files.openFileRandom(indexFilename);
-			offsetLookup = new OnDiskDocid2OffsetLookup(
-				rfi instanceof RandomAccessFile
-					? new ChannelByteAccessor((RandomAccessFile)rfi)
-					: new RandomDataInputAccessor(rfi),
-				length, dataFileLength
-				);
+			offsetLookup = openLookup(indexFilename, false, length, dataFileLength);
 		}
 		//debug log lookups using a wrapper class
 		if (logger.isDebugEnabled())
@@ -26,8 +26,10 @@
 package org.terrier.structures;
 import gnu.trove.TIntObjectHashMap;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -43,7 +45,9 @@ import org.terrier.utility.Files;
  * <p><b>Index Properties</b>:
  * <ul>
  * <li><tt>index.STRUCTURENAME.bsearchshortcut</tt> - depicts if the String lookups can be sped up using a binary search shortcut. Possible 
- * values are {charmap,default}. Charmap means a hashmap object will be read into memory that defines where to look for a given starting character of the lookup string.</li>
+ * values are {charmap,frontcoded,default}. Charmap means a hashmap object will be read into memory that defines where to look for a given starting character of the lookup string.
+ * Frontcoded means that all terms will be held in memory in a compact front-coded form, such that each lookup reads the lexicon file only once.</li>
+ * <li><tt>index.STRUCTURENAME.data-source</tt> - one of {file,fileinmem,mmap}. Mmap memory maps the lexicon file, such that many threads can lookup terms at once without locking.</li>
  * <li>See also the super-class</li>
  * </ul>
  * @author Craig Macdonald
@@ -76,6 +80,199 @@ public class FSOMapFileLexicon extends FSOMapFileLexiconGeneric<String,Text>
 			return boundaries;
 		}	
 	}
+	
+	/** An in-memory front-coded dictionary of all of the terms of the lexicon, which
+	 * identifies the exact position of a term, such that the lexicon file need only be
+	 * read once for each lookup. Terms are stored in blocks; the first term of each block
+	 * is stored in full, while the remaining terms record only the length of the prefix
+	 * they share with the previous term, followed by their differing suffix. A lookup 
+	 * binary searches the first terms of the blocks, then scans a single block, without 
+	 * decoding any terms or creating any objects. Can be used by many threads at once.
+	 */
+	static class FrontCodedBSearchShortcut implements FSOrderedMapFile.FSOMapFileBSearchShortcut<Text>
+	{
+		static final int BLOCK_SIZE = 16;
+		
+		final int numberOfTerms;
+		final int[] blockOffsets;
+		final byte[] data;
+		
+		public FrontCodedBSearchShortcut(Iterator<Text> terms, int size) throws IOException
+		{
+			blockOffsets = new int[(size + BLOCK_SIZE -1) / BLOCK_SIZE];
+			final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			byte[] previous = new byte[0];
+			int count = 0;
+			while(terms.hasNext())
+			{
+				final Text term = terms.next();
+				final byte[] bytes = term.getBytes();
+				final int length = term.getLength();
+				if (count >= size)
+					throw new IOException("Lexicon has more terms than expected (" + size + ")");
+				if (count % BLOCK_SIZE == 0)
+				{
+					blockOffsets[count / BLOCK_SIZE] = buffer.size();
+					writeVInt(buffer, length);
+					buffer.write(bytes, 0, length);
+				}
+				else
+				{
+					final int maxPrefix = Math.min(length, previous.length);
+					int prefix = 0;
+					while(prefix < maxPrefix && bytes[prefix] == previous[prefix])
+						prefix++;
+					writeVInt(buffer, prefix);
+					writeVInt(buffer, length - prefix);
+					buffer.write(bytes, prefix, length - prefix);
+				}
+				previous = Arrays.copyOf(bytes, length);
+				count++;
+			}
+			if (count != size)
+				throw new IOException("Lexicon has fewer terms ("+count+") than expected (" + size + ")");
+			numberOfTerms = count;
+			data = buffer.toByteArray();
+			logger.info("Front-coded dictionary of " + numberOfTerms + " terms uses " + data.length + " bytes");
+		}
+		
+		public int[] searchBounds(Text key) throws IOException {
+			final int index = indexOf(key.getBytes(), key.getLength());
+			if (index >= 0)
+				return new int[]{index, index+1};
+			return new int[]{-index -1, -index -1};
+		}
+		
+		/** Returns the position of the specified term, or (-(insertion point) -1) if it 
+		 * is not in the dictionary. See also Arrays.binarySearch(). */
+		int indexOf(byte[] key, int keyLength)
+		{
+			//find the last block whose first term is not greater than the key
+			int low = 0;
+			int high = blockOffsets.length -1;
+			int block = -1;
+			while(low <= high)
+			{
+				final int mid = (low + high) >>> 1;
+				final int cmp = compareFirstTerm(mid, key, keyLength);
+				if (cmp == 0)
+					return mid * BLOCK_SIZE;
+				if (cmp < 0)
+				{
+					block = mid;
+					low = mid + 1;
+				}
+				else
+				{
+					high = mid -1;
+				}
+			}
+			if (block == -1)
+				return -1;
+			
+			//scan the block. matched records the length of the prefix that the key
+			//shares with the previous term, which is known to be smaller than the key
+			int pos = blockOffsets[block];
+			final int firstLength = readVInt(data, pos);
+			pos += vIntSize(firstLength);
+			final int maxMatch = Math.min(firstLength, keyLength);
+			int matched = 0;
+			while(matched < maxMatch && data[pos+matched] == key[matched])
+				matched++;
+			pos += firstLength;
+			
+			final int end = Math.min(numberOfTerms, (block+1) * BLOCK_SIZE);
+			for(int t = block * BLOCK_SIZE + 1; t < end; t++)
+			{
+				final int prefix = readVInt(data, pos);
+				pos += vIntSize(prefix);
+				final int suffixLength = readVInt(data, pos);
+				pos += vIntSize(suffixLength);
+				if (prefix > matched)
+				{
+					//this term differs from the key where the previous term did, so is also smaller
+					pos += suffixLength;
+					continue;
+				}
+				if (prefix < matched)
+				{
+					//this term is greater than the previous term where the previous term matched the key
+					return -t -1;
+				}
+				final int maxSuffixMatch = Math.min(suffixLength, keyLength - matched);
+				int j = 0;
+				while(j < maxSuffixMatch && data[pos+j] == key[matched+j])
+					j++;
+				if (j < maxSuffixMatch)
+				{
+					if ((data[pos+j] & 0xFF) > (key[matched+j] & 0xFF))
+						return -t -1;
+				}
+				else
+				{
+					final int termLength = prefix + suffixLength;
+					if (termLength == keyLength)
+						return t;
+					if (termLength > keyLength)
+						return -t -1;
+				}
+				matched += j;
+				pos += suffixLength;
+			}
+			return -end -1;
+		}
+		
+		/** compares the first term of the specified block with the key, as per Text.compareTo() */
+		final int compareFirstTerm(int block, byte[] key, int keyLength)
+		{
+			int pos = blockOffsets[block];
+			final int length = readVInt(data, pos);
+			pos += vIntSize(length);
+			final int minLength = Math.min(length, keyLength);
+			for(int j=0;j<minLength;j++)
+			{
+				final int a = data[pos+j] & 0xFF;
+				final int b = key[j] & 0xFF;
+				if (a != b)
+					return a - b;
+			}
+			return length - keyLength;
+		}
+		
+		static void writeVInt(ByteArrayOutputStream out, int value)
+		{
+			while((value & ~0x7F) != 0)
+			{
+				out.write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			out.write(value);
+		}
+		
+		static int readVInt(byte[] in, int pos)
+		{
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = in[pos++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while((b & 0x80) != 0);
+			return value;
+		}
+		
+		static int vIntSize(int value)
+		{
+			int size = 1;
+			while((value & ~0x7F) != 0)
+			{
+				value >>>= 7;
+				size++;
+			}
+			return size;
+		}
+	}
     
     /** Construct a new FSOMapFileLexicon */
     @SuppressWarnings("unchecked")
@@ -108,6 +305,13 @@ public class FSOMapFileLexicon extends FSOMapFileLexiconGeneric<String,Text>
     			throw new IOException("Problem loading FSOMapFileBSearchShortcut for "+structureName+": "+ e.getMessage()); 
     		}
     	}
+    	else if (termLookup.equals("frontcoded"))
+    	{
+    		final Iterator<Text> terms = this.map.keySet().iterator();
+    		((FSOrderedMapFile<Text,LexiconEntry>)this.map).setBSearchShortcut(
+    			new FrontCodedBSearchShortcut(terms, this.map.size()));
+    		IndexUtil.close(terms);
+    	}
     	else if (termLookup.equals("default"))
     	{
     		//do nothing
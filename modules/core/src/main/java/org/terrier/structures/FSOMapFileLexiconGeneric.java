@@ -34,6 +34,7 @@ import java.util.Map.Entry;
 
 import org.apache.hadoop.io.WritableComparable;
 import org.terrier.structures.collections.FSOrderedMapFile;
+import org.terrier.structures.collections.MappedFSOrderedMapFile;
 import org.terrier.structures.seralization.FixedSizeWriteableFactory;
 import org.terrier.utility.ApplicationSetup;
 import org.terrier.utility.Files;
@@ -98,6 +99,7 @@ public abstract class FSOMapFileLexiconGeneric<K1,K2 extends WritableComparable>
      * <ol>
      * <li>fileinmem - use a RandomDataInputMemory instance over the file</li>
      * <li>file - use file on disk, as normal.</li>
+     * <li>mmap - memory map the file on disk, allowing lookups by many threads at once (see {@link MappedFSOrderedMapFile}).</li>
      * <li>anything else: assume to be a class name, and instantiate using the
      * expected constructor.</li>
      * </ol>
@@ -119,6 +121,12 @@ public abstract class FSOMapFileLexiconGeneric<K1,K2 extends WritableComparable>
 					filename,
 					keyFactory,
                     valueFactory);
+    	if (dataSource.equals("mmap"))
+    		return new MappedFSOrderedMapFile<K,LexiconEntry>(
+					filename,
+					false,
+					keyFactory,
+					valueFactory);
     	if (dataSource.equals("file"))
     		return new FSOrderedMapFile<K,LexiconEntry>(
 					filename,
@@ -154,7 +162,9 @@ public abstract class FSOMapFileLexiconGeneric<K1,K2 extends WritableComparable>
     			constructFilename(structureName, path, prefix, MAPFILE_EXT), 
     			_keyFactory, _valueFactory, 
     			dataFile));
-    	this.keyFactory = _keyFactory;	
+    	this.keyFactory = _keyFactory;
+    	//the map is never modified, and FSOrderedMapFile implementations handle their own concurrency
+    	this.lockedLookups = false;
     	if ("aligned".equals(termIdLookup))
         {
             setTermIdLookup(new IdIsIndex());
@@ -48,6 +48,10 @@ public abstract class MapLexicon<K1,K2 extends WritableComparable> extends Lexic
 	
 	protected Object modificationLock = new Object();
 	
+	/** whether lookups must hold the modificationLock. Lexicons whose maps are never
+	 * modified, and which can be read by many threads at once, may disable this. */
+	protected boolean lockedLookups = true;
+	
 	/**
 	 * Interface for getting the lexicon term index for a given term id
 	 * @author Richard McCreadie
@@ -107,25 +111,38 @@ public abstract class MapLexicon<K1,K2 extends WritableComparable> extends Lexic
 	 */
     public LexiconEntry getLexiconEntry(K1 term)
     {
+    	if (! lockedLookups)
+    		return lookup(term);
     	synchronized(modificationLock) {
-    	
+    		return lookup(term);
+    	}
+    }
+    
+    protected LexiconEntry lookup(K1 term)
+    {
     	K2 key = keyFactory.newInstance();
     	setK2(term, key);
-    	if (!map.containsKey(key)) return null;
-        return map.get(key);
-    	}
+    	//values are never null, so a single lookup suffices
+    	return map.get(key);
     }
+    
 	/** 
 	 * {@inheritDoc} 
 	 */
     public Map.Entry<K1,LexiconEntry> getIthLexiconEntry(int index) 
     {
+    	if (! lockedLookups)
+    		return lookupIth(index);
     	synchronized(modificationLock) {
-    	
+    		return lookupIth(index);
+    	}
+    }
+    
+    protected Map.Entry<K1,LexiconEntry> lookupIth(int index)
+    {
         if (! (map instanceof OrderedMap))
             throw new UnsupportedOperationException();
         return toStringEntry(((OrderedMap<K2, LexiconEntry>)map).get(index));
-    	}
     }
     
     /** 
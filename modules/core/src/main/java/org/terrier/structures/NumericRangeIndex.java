@@ -0,0 +1,179 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is NumericRangeIndex.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *  Craig Macdonald
+ */
+package org.terrier.structures;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.Files;
+
+/**
+ * Answers range queries over the number columns of the {@link DocValues} of an index,
+ * such as dates. For each column, the documents having a value are held sorted by value,
+ * such that the documents with a value in a range are one contiguous run, found by two
+ * binary searches. The docids of the run are returned in ascending order: a narrow run is
+ * sorted directly, while a wide run is collected in a bitmap of the collection, so that
+ * neither requires merging a posting list for each distinct value.
+ * <p>The structure is loaded from the file <tt>prefix.numericrange</tt> of an {@link IndexOnDisk},
+ * which is written by <tt>DocValuesBuilder</tt> and has the following format:
+ * <pre>
+ * int numberOfDocuments, int numberOfColumns
+ * for each column: UTF key, int number of values,
+ *   each long value in ascending order, then the int docid of each value
+ * </pre>
+ * @since 5.4
+ */
+@ConcurrentReadable
+public class NumericRangeIndex
+{
+	/** name of the index structure */
+	public static final String STRUCTURE_NAME = "numericrange";
+	/** suffix of the file that the structure of an IndexOnDisk is written to */
+	public static final String FILE_SUFFIX = "." + STRUCTURE_NAME;
+
+	/** runs longer than 1/DENSE_RATIO of the collection are collected in a bitmap rather than sorted */
+	static final int DENSE_RATIO = 32;
+
+	protected final int numberOfDocuments;
+	protected final String[] keys;
+	protected final long[][] values;
+	protected final int[][] docids;
+
+	/** Loads the structure written alongside the specified index */
+	public NumericRangeIndex(IndexOnDisk index) throws IOException
+	{
+		try(DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.openFileStream(filename(index)))))
+		{
+			numberOfDocuments = dis.readInt();
+			final int numberOfColumns = dis.readInt();
+			keys = new String[numberOfColumns];
+			values = new long[numberOfColumns][];
+			docids = new int[numberOfColumns][];
+			for(int c=0;c<numberOfColumns;c++)
+			{
+				keys[c] = dis.readUTF();
+				final int n = dis.readInt();
+				values[c] = new long[n];
+				docids[c] = new int[n];
+				for(int i=0;i<n;i++)
+					values[c][i] = dis.readLong();
+				for(int i=0;i<n;i++)
+					docids[c][i] = dis.readInt();
+			}
+		}
+	}
+
+	/** Returns the keys of the columns */
+	public String[] getKeys()
+	{
+		return keys;
+	}
+
+	/** Returns the index of the column of the specified key, or -1 if there is none */
+	public int getColumn(String key)
+	{
+		for(int c=0;c<keys.length;c++)
+			if (keys[c].equals(key))
+				return c;
+		return -1;
+	}
+
+	/** Returns the number of documents with a value between lo and hi inclusive in the specified column */
+	public int count(int column, long lo, long hi)
+	{
+		if (lo > hi)
+			return 0;
+		return upperBound(values[column], hi) - lowerBound(values[column], lo);
+	}
+
+	/**
+	 * Returns the docids of the documents with a value between lo and hi inclusive
+	 * in the specified column, in ascending order.
+	 */
+	public int[] getDocids(int column, long lo, long hi)
+	{
+		if (lo > hi)
+			return new int[0];
+		final int start = lowerBound(values[column], lo);
+		final int end = upperBound(values[column], hi);
+		final int n = end - start;
+		if (n <= numberOfDocuments / DENSE_RATIO)
+		{
+			final int[] rtr = Arrays.copyOfRange(docids[column], start, end);
+			Arrays.sort(rtr);
+			return rtr;
+		}
+		final BitSet bits = new BitSet(numberOfDocuments);
+		final int[] d = docids[column];
+		for(int i=start;i<end;i++)
+			bits.set(d[i]);
+		final int[] rtr = new int[n];
+		int i = 0;
+		for(int docid = bits.nextSetBit(0); docid >= 0; docid = bits.nextSetBit(docid+1))
+			rtr[i++] = docid;
+		return rtr;
+	}
+
+	/** Returns the offset of the first value not less than v */
+	static int lowerBound(long[] sorted, long v)
+	{
+		int lo = 0, hi = sorted.length;
+		while (lo < hi)
+		{
+			final int mid = (lo + hi) >>> 1;
+			if (sorted[mid] < v)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/** Returns the offset of the first value greater than v */
+	static int upperBound(long[] sorted, long v)
+	{
+		int lo = 0, hi = sorted.length;
+		while (lo < hi)
+		{
+			final int mid = (lo + hi) >>> 1;
+			if (sorted[mid] <= v)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/** Returns the name of the file holding the structure of the specified index */
+	public static String filename(IndexOnDisk index)
+	{
+		return index.getPath() + ApplicationSetup.FILE_SEPARATOR + index.getPrefix() + FILE_SUFFIX;
+	}
+}
@@ -0,0 +1,367 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TermMaxScores.java
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original contributor)
+ */
+package org.terrier.structures;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.applications.CLITool;
+import org.terrier.applications.CLITool.CLIParsedCLITool;
+import org.terrier.matching.models.WeightingModel;
+import org.terrier.matching.models.WeightingModelFactory;
+import org.terrier.querying.IndexRef;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.Posting;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.ArrayUtils;
+import org.terrier.utility.Files;
+
+/** Records, for each term in the index, statistics that allow upper bounds on the scores of its postings
+ * to be obtained, as needed by dynamic pruning matching strategies such as {@link org.terrier.matching.daat.WAND}.
+ * In particular, for each term, the maximum frequency in any document is recorded. Moreover, for each of a
+ * number of configured weighting models, the frequency and document length of the posting with the highest score
+ * is recorded. At retrieval, the exact maximum score of a term can then be obtained by scoring that posting with the
+ * prepared weighting model - see {@link #getMaxScore(WeightingModel, int)}. This assumes that the weighting model
+ * has the same parameters as when the structure was created (the name of the model, as returned by
+ * {@link WeightingModel#getInfo()}, must match), and that the query term weight is a positive multiplicative
+ * factor of the score. Models that score postings other than by their frequency and document length (e.g.
+ * per-field models) are not supported.
+ * <p>
+ * This structure is stored in a separate file alongside the index (<tt>data.maxscore</tt>), and is loaded as the
+ * <tt>maxscore</tt> index structure, which is used by {@link org.terrier.matching.PostingListManager#getMaxScore(int)}.
+ * It is created by the disk indexers when the property <tt>indexing.maxscore.models</tt> is set, or can be added to
+ * an existing index using the <tt>maxscores</tt> command.
+ * <p>
+ * <b>Properties</b>:
+ * <ul>
+ * <li><tt>indexing.maxscore.models</tt> - comma delimited list of weighting models to record maximum scores for
+ * at indexing time, e.g. <tt>BM25,DPH</tt>. Defaults to empty, i.e. the structure is not created.</li>
+ * </ul>
+ * @since 5.4
+ */
+public class TermMaxScores implements Closeable {
+
+	protected static final Logger logger = LoggerFactory.getLogger(TermMaxScores.class);
+
+	/** usual name of this structure */
+	public static final String STRUCTURE_NAME = "maxscore";
+	/** file extension of maxscore files */
+	public static final String USUAL_EXTENSION = ".maxscore";
+
+	/** names of the weighting models recorded, as returned by getInfo() */
+	protected final String[] modelNames;
+	/** maximum frequency of each term in any document */
+	protected final int[] maxFrequencies;
+	/** for each model, the frequency of the highest scored posting of each term */
+	protected final int[][] maxScoreFrequencies;
+	/** for each model, the document length of the highest scored posting of each term */
+	protected final int[][] maxScoreDocumentLengths;
+
+	/** Loads the structure for the specified index */
+	public TermMaxScores(IndexOnDisk index, String structureName) throws IOException
+	{
+		this(getFilename(index, structureName));
+	}
+
+	/** Loads the structure from the specified file */
+	public TermMaxScores(String filename) throws IOException
+	{
+		final DataInputStream dis = new DataInputStream(Files.openFileStream(filename));
+		final int numTerms = dis.readInt();
+		final int numModels = dis.readInt();
+		modelNames = new String[numModels];
+		for(int m=0;m<numModels;m++)
+			modelNames[m] = dis.readUTF();
+		maxFrequencies = new int[numTerms];
+		maxScoreFrequencies = new int[numModels][numTerms];
+		maxScoreDocumentLengths = new int[numModels][numTerms];
+		for(int t=0;t<numTerms;t++)
+		{
+			maxFrequencies[t] = dis.readInt();
+			for(int m=0;m<numModels;m++)
+			{
+				maxScoreFrequencies[m][t] = dis.readInt();
+				maxScoreDocumentLengths[m][t] = dis.readInt();
+			}
+		}
+		dis.close();
+	}
+
+	/** Returns the number of terms in this structure */
+	public int getNumberOfTerms()
+	{
+		return maxFrequencies.length;
+	}
+
+	/** Returns the names of the weighting models recorded in this structure */
+	public String[] getModelNames()
+	{
+		return modelNames;
+	}
+
+	/** Returns the maximum frequency of the specified term in any document, or Integer.MAX_VALUE if not known */
+	public int getMaxFrequency(int termid)
+	{
+		if (termid < 0 || termid >= maxFrequencies.length)
+			return Integer.MAX_VALUE;
+		return maxFrequencies[termid];
+	}
+
+	/** Returns the exact maximum score that the specified weighting model can give to any posting of
+	 * the specified term. The model must have been prepared for that term.
+	 * @param wmodel prepared weighting model
+	 * @param termid id of the term
+	 * @return maximum score, or Double.POSITIVE_INFINITY if the model or term are not recorded
+	 */
+	public double getMaxScore(WeightingModel wmodel, int termid)
+	{
+		if (termid < 0 || termid >= maxFrequencies.length)
+			return Double.POSITIVE_INFINITY;
+		final String name = wmodel.getInfo();
+		for(int m=0;m<modelNames.length;m++)
+		{
+			if (modelNames[m].equals(name))
+			{
+				//no posting was scored for this term
+				if (maxScoreFrequencies[m][termid] == 0)
+					return Double.POSITIVE_INFINITY;
+				return wmodel.score(maxScoreFrequencies[m][termid], maxScoreDocumentLengths[m][termid]);
+			}
+		}
+		return Double.POSITIVE_INFINITY;
+	}
+
+	@Override
+	public void close() throws IOException {}
+
+	/** Returns the filename of the structure for the specified index */
+	public static String getFilename(IndexOnDisk index, String structureName)
+	{
+		return index.getPath() + "/" + index.getPrefix() + "." + structureName + USUAL_EXTENSION;
+	}
+
+	/** Returns the weighting models configured by the <tt>indexing.maxscore.models</tt> property,
+	 * or the specified default models if the property is not set */
+	public static String[] getModels(String[] defaultModels)
+	{
+		return ArrayUtils.parseCommaDelimitedString(ApplicationSetup.getProperty(
+				"indexing.maxscore.models", ArrayUtils.join(defaultModels, ",")));
+	}
+
+	/** Creates the maxscore structure for the specified index, if the <tt>indexing.maxscore.models</tt>
+	 * property is set. The index is not flushed.
+	 * @param index index to create the structure for
+	 * @param defaultModels models to use if the property is not set
+	 * @return true if the structure was created
+	 */
+	public static boolean createIfEnabled(IndexOnDisk index, String[] defaultModels) throws IOException
+	{
+		final String[] models = getModels(defaultModels);
+		if (models.length == 0)
+			return false;
+		create(index, STRUCTURE_NAME, models);
+		return true;
+	}
+
+	/** Creates the structure for the specified index by scanning the lexicon and the inverted index,
+	 * and adds it to the index. The index is not flushed.
+	 * @param index index to create the structure for
+	 * @param structureName name of the structure, usually "maxscore"
+	 * @param models names of the weighting models to record
+	 */
+	public static void create(IndexOnDisk index, String structureName, String[] models) throws IOException
+	{
+		final List<WeightingModel> wmodels = new ArrayList<>();
+		final List<String> recordedModels = new ArrayList<>();
+		for(String name : models)
+		{
+			final WeightingModel wm = WeightingModelFactory.newInstance(name);
+			if (wm == null)
+				throw new IOException("Could not load weighting model " + name);
+			if (! scoresByFrequency(wm))
+			{
+				logger.warn("Weighting model " + wm.getInfo() + " does not score by frequency and document length, skipping");
+				continue;
+			}
+			final WeightingModel clone = wm.clone();
+			clone.setCollectionStatistics(index.getCollectionStatistics());
+			IndexUtil.configure(index, clone);
+			wmodels.add(clone);
+			recordedModels.add(name);
+		}
+		final int numModels = wmodels.size();
+		final int numTerms = index.getCollectionStatistics().getNumberOfUniqueTerms();
+		final int[] maxFrequencies = new int[numTerms];
+		final int[][] maxScoreFrequencies = new int[numModels][numTerms];
+		final int[][] maxScoreDocumentLengths = new int[numModels][numTerms];
+		final double[] maxScores = new double[numModels];
+
+		@SuppressWarnings("unchecked")
+		final PostingIndex<Pointer> inverted = (PostingIndex<Pointer>) index.getInvertedIndex();
+		@SuppressWarnings("unchecked")
+		final Iterator<Map.Entry<String,LexiconEntry>> lexIn = (Iterator<Map.Entry<String,LexiconEntry>>) index.getIndexStructureInputStream("lexicon");
+		while(lexIn.hasNext())
+		{
+			final LexiconEntry le = lexIn.next().getValue();
+			final int termid = le.getTermId();
+			if (termid < 0 || termid >= numTerms)
+			{
+				logger.warn("Term id " + termid + " is out of range, skipping");
+				continue;
+			}
+			for(WeightingModel wm : wmodels)
+			{
+				wm.setEntryStatistics(le);
+				wm.setKeyFrequency(1d);
+				wm.prepare();
+			}
+			Arrays.fill(maxScores, Double.NEGATIVE_INFINITY);
+			final IterablePosting ip = inverted.getPostings(le);
+			while(ip.next() != IterablePosting.EOL)
+			{
+				final int tf = ip.getFrequency();
+				if (tf > maxFrequencies[termid])
+					maxFrequencies[termid] = tf;
+				for(int m=0;m<numModels;m++)
+				{
+					final double score = wmodels.get(m).score(ip);
+					if (score > maxScores[m])
+					{
+						maxScores[m] = score;
+						maxScoreFrequencies[m][termid] = tf;
+						maxScoreDocumentLengths[m][termid] = ip.getDocumentLength();
+					}
+				}
+			}
+			ip.close();
+		}
+		IndexUtil.close(lexIn);
+
+		final DataOutputStream dos = new DataOutputStream(Files.writeFileStream(getFilename(index, structureName)));
+		dos.writeInt(numTerms);
+		dos.writeInt(numModels);
+		for(WeightingModel wm : wmodels)
+			dos.writeUTF(wm.getInfo());
+		for(int t=0;t<numTerms;t++)
+		{
+			dos.writeInt(maxFrequencies[t]);
+			for(int m=0;m<numModels;m++)
+			{
+				dos.writeInt(maxScoreFrequencies[m][t]);
+				dos.writeInt(maxScoreDocumentLengths[m][t]);
+			}
+		}
+		dos.close();
+		index.addIndexStructure(structureName, TermMaxScores.class.getName(),
+				"org.terrier.structures.IndexOnDisk,java.lang.String", "index,structureName");
+		index.setIndexProperty("index."+structureName+".models", String.join(",", recordedModels));
+		logger.info("Recorded maximum scores of " + numTerms + " terms for " + numModels + " weighting models");
+	}
+
+	/** checks that the weighting model scores postings only using score(tf, docLength) */
+	static boolean scoresByFrequency(WeightingModel wm)
+	{
+		try{
+			return wm.getClass().getMethod("score", Posting.class).getDeclaringClass() == WeightingModel.class;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/** Adds the maxscore structure to an existing index. Usage:
+	 * <tt>bin/terrier maxscores -w BM25,DPH</tt>
+	 */
+	public static class Command extends CLIParsedCLITool
+	{
+		@Override
+		protected Options getOptions() {
+			Options opts = super.getOptions();
+			opts.addOption(Option.builder("w")
+				.longOpt("models")
+				.desc("comma delimited list of weighting models to record maximum scores for, defaults to the indexing.maxscore.models property")
+				.hasArg(true)
+				.build());
+			return opts;
+		}
+
+		@Override
+		public int run(CommandLine line) throws Exception {
+			final String[] models = ArrayUtils.parseCommaDelimitedString(line.hasOption("w")
+				? line.getOptionValue("w")
+				: ApplicationSetup.getProperty("indexing.maxscore.models", ""));
+			if (models.length == 0)
+			{
+				System.err.println("No weighting models specified");
+				return 1;
+			}
+			IndexOnDisk.setIndexLoadingProfileAsRetrieval(false);
+			final IndexRef ref = getIndexRef(line);
+			final Index index = IndexFactory.of(ref);
+			if (index == null)
+			{
+				System.err.println("Index not found at " + ref);
+				return 1;
+			}
+			if (! (index instanceof IndexOnDisk))
+			{
+				System.err.println("Maximum scores can only be added to an IndexOnDisk, not " + index.getClass().getSimpleName());
+				return 1;
+			}
+			final IndexOnDisk indexOnDisk = (IndexOnDisk)index;
+			create(indexOnDisk, STRUCTURE_NAME, models);
+			indexOnDisk.flush();
+			indexOnDisk.close();
+			return 0;
+		}
+
+		@Override
+		public String commandname() {
+			return "maxscores";
+		}
+
+		@Override
+		public String helpsummary() {
+			return "records the maximum scores of each term in an existing index, for dynamic pruning";
+		}
+
+		@Override
+		public String sourcepackage() {
+			return CLITool.PLATFORM_MODULE;
+		}
+	}
+}
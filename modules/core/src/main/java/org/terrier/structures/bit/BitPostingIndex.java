@@ -48,7 +48,11 @@ import org.terrier.utility.io.WrappedIOException;
  * <li><tt>index.STRUCTURENAME.data-files</tt> - how many files represent this structure.</li>
  * <li><tt>index.STRUCTURENAME.data-source</tt> - one of {file,fileinmem} or a class implements BitInSeekable.</li>
  * <li><tt>index.STRUCTURENAME.fields.count</tt> - how many fields are in use by this structures.</li>
+ * <li><tt>index.STRUCTURENAME.skip.block.size</tt> - if greater than zero, the skips recorded for this structure
+ * by {@link BitPostingIndexSkips} are loaded, and used by <tt>next(int)</tt> of the IterablePostings.</li>
  * </ul>
+ * Frequently read posting lists can be retained in decoded form by a {@link BitPostingIndexCache}, 
+ * which is enabled by setting the <tt>postings.cache.bytes</tt> property.
  * @since 3.0
  */
 public class BitPostingIndex implements PostingIndex<BitIndexPointer>
@@ -60,6 +64,10 @@ public class BitPostingIndex implements PostingIndex<BitIndexPointer>
 	protected DocumentIndex doi;
 	protected IndexOnDisk index = null;
 	protected int fieldCount = 0;
+	/** skips for the posting lists, or null if none */
+	protected BitPostingIndexSkips skips = null;
+	/** cache of decoded posting lists, or null if none */
+	protected BitPostingIndexCache cache = null;
 	
 
 	/**
@@ -83,6 +91,7 @@ public class BitPostingIndex implements PostingIndex<BitIndexPointer>
 				_index.getIndexProperty("index."+_structureName+".data-source", "file"), 
 				_index.getIntIndexProperty("index."+_structureName+".fields.count", 0));
 		index = _index;
+		skips = BitPostingIndexSkips.load(_index, _structureName);
 		
 	}
 	
@@ -109,6 +118,7 @@ public class BitPostingIndex implements PostingIndex<BitIndexPointer>
 				_index.getIndexProperty("index."+_structureName+".data-source", "file"), 
 				_index.getIntIndexProperty("index."+_structureName+".fields.count", 0));
 		index = _index;
+		skips = BitPostingIndexSkips.load(_index, _structureName);
 		
 	}
 
@@ -159,6 +169,9 @@ public class BitPostingIndex implements PostingIndex<BitIndexPointer>
 		fieldCount = _fieldCount;
 		this.doi = _doi;
 		setPostingImplementation(_postingImplementation);
+		//document lengths must be available to be decoded into the cache
+		if (_doi != null)
+			cache = BitPostingIndexCache.createIfEnabled();
 	}
 	
 
@@ -174,10 +187,48 @@ public class BitPostingIndex implements PostingIndex<BitIndexPointer>
 		}
 	}
 	
+	/** Set the skips to use for the posting lists of this structure. Skips are
+	 * normally loaded automatically according to the index properties.
+	 * @param _skips skips to use, or null to disable skipping */
+	public void setSkips(BitPostingIndexSkips _skips)
+	{
+		skips = _skips;
+	}
+	
+	/** Set the cache of decoded posting lists to use for this structure. A cache is normally
+	 * created automatically according to the <tt>postings.cache.bytes</tt> property.
+	 * @param _cache cache to use, or null to disable caching */
+	public void setCache(BitPostingIndexCache _cache)
+	{
+		cache = _cache;
+	}
+	
+	/** Returns the cache of decoded posting lists used by this structure, or null if none */
+	public BitPostingIndexCache getCache()
+	{
+		return cache;
+	}
+	
 	/** 
 	 * {@inheritDoc} 
 	 */
 	public IterablePosting getPostings(Pointer pointer) throws IOException
+	{
+		//direct index postings are not cached, as they are rarely re-read
+		final boolean cacheable = cache != null && ! (pointer instanceof DocumentIndexEntry);
+		if (cacheable)
+		{
+			final IterablePosting cached = cache.getPostings((BitIndexPointer)pointer);
+			if (cached != null)
+				return cached;
+			if (cache.shouldCache((BitIndexPointer)pointer))
+				return cache.cache((BitIndexPointer)pointer, readPostings(pointer));
+		}
+		return readPostings(pointer);
+	}
+	
+	/** Returns the posting list for the specified pointer, as read from the file */
+	protected IterablePosting readPostings(Pointer pointer) throws IOException
 	{
 		final BitIn _file = this.file[((BitIndexPointer)pointer).getFileNumber()].readReset(((BitIndexPointer)pointer).getOffset(), ((BitIndexPointer)pointer).getOffsetBits());
 		IterablePosting rtr = null;
@@ -194,6 +245,15 @@ public class BitPostingIndex implements PostingIndex<BitIndexPointer>
 		} catch (Exception e) {
 			throw new WrappedIOException(e);
 		}
+		if (skips != null && rtr instanceof BasicIterablePosting)
+		{
+			final BitIndexPointer bitPointer = (BitIndexPointer)pointer;
+			final int list = skips.getListIndex(bitPointer);
+			if (list != -1)
+				((BasicIterablePosting)rtr).setSkips(skips, 
+					skips.getFirstSkip(bitPointer.getFileNumber(), list), 
+					skips.getEndSkip(bitPointer.getFileNumber(), list));
+		}
 		return rtr;
 	}
 	/** 
@@ -0,0 +1,314 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is BitPostingIndexCache.java
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original contributor)
+ */
+package org.terrier.structures.bit;
+
+import gnu.trove.TIntArrayList;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.postings.ArrayOfBasicIterablePosting;
+import org.terrier.structures.postings.ArrayOfBlockFieldIterablePosting;
+import org.terrier.structures.postings.ArrayOfBlockIterablePosting;
+import org.terrier.structures.postings.ArrayOfFieldIterablePosting;
+import org.terrier.structures.postings.BlockPosting;
+import org.terrier.structures.postings.FieldPosting;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.utility.ApplicationSetup;
+
+/** A cache of decoded posting lists for a {@link BitPostingIndex}. Frequently read posting lists
+ * are decoded once into arrays of docids, frequencies, document lengths, and (where present) field
+ * frequencies, field lengths and positions, which are then served to later readers through the
+ * <tt>ArrayOf*IterablePosting</tt> classes, avoiding the decompression of the posting list from the file.
+ * <p>
+ * The cache is bounded by the estimated number of bytes of the decoded posting lists, and the least
+ * recently used posting lists are evicted first. A posting list is only decoded into the cache once it
+ * has been read a minimum number of times, as estimated by a small table of counters, such that
+ * rarely read posting lists do not displace frequently read ones. The cache can be shared by many
+ * threads at once.
+ * <p>
+ * Cached posting lists do not make use of any {@link BitPostingIndexSkips}.
+ * <p>
+ * <b>Properties</b>:
+ * <ul>
+ * <li><tt>postings.cache.bytes</tt> - maximum size of the decoded posting lists to retain for each structure.
+ * Defaults to 0, i.e. no caching.</li>
+ * <li><tt>postings.cache.min.reads</tt> - the number of times a posting list must be read before it is
+ * admitted to the cache. Defaults to 2.</li>
+ * </ul>
+ * @since 5.4
+ */
+public class BitPostingIndexCache {
+
+	/** number of counters used to estimate how often posting lists are read */
+	static final int COUNTER_WIDTH = 4096;
+	/** estimated fixed overhead in bytes of each cached posting list */
+	static final long ENTRY_OVERHEAD = 128;
+
+	/** A posting list decoded into arrays */
+	static final class DecodedPostings
+	{
+		final int[] ids;
+		final int[] freqs;
+		final int[] lens;
+		final int[][] tff;
+		final int[][] lf;
+		final int[] posCount;
+		final int[] allpos;
+		final long bytes;
+
+		DecodedPostings(int[] _ids, int[] _freqs, int[] _lens, int[][] _tff, int[][] _lf, int[] _posCount, int[] _allpos)
+		{
+			ids = _ids;
+			freqs = _freqs;
+			lens = _lens;
+			tff = _tff;
+			lf = _lf;
+			posCount = _posCount;
+			allpos = _allpos;
+			long b = ENTRY_OVERHEAD + 12l * ids.length;
+			if (tff != null)
+				b += 2l * ids.length * (16 + 4 * (tff.length > 0 ? tff[0].length : 0));
+			if (posCount != null)
+				b += 4l * (posCount.length + allpos.length);
+			bytes = b;
+		}
+
+		IterablePosting newPosting()
+		{
+			if (tff != null && posCount != null)
+				return new ArrayOfBlockFieldIterablePosting(ids, freqs, lens, tff, lf, posCount, allpos);
+			if (tff != null)
+				return new ArrayOfFieldIterablePosting(ids, freqs, lens, tff, lf);
+			if (posCount != null)
+				return new ArrayOfBlockIterablePosting(ids, freqs, lens, posCount, allpos);
+			return new ArrayOfBasicIterablePosting(ids, freqs, lens);
+		}
+	}
+
+	/** access-ordered map of cached posting lists, guarded by this object's monitor */
+	protected final LinkedHashMap<Long, DecodedPostings> cache = new LinkedHashMap<>(16, 0.75f, true);
+	/** estimated number of times each posting list has been read, guarded by this object's monitor */
+	protected final byte[] readCounts = new byte[COUNTER_WIDTH];
+	protected int reads = 0;
+	protected final long maxBytes;
+	protected final int minReads;
+	protected long bytes = 0;
+
+	protected final LongAdder hits = new LongAdder();
+	protected final LongAdder misses = new LongAdder();
+	protected final LongAdder evictions = new LongAdder();
+
+	/** Constructs a cache retaining at most the specified number of bytes of decoded posting lists
+	 * @param _maxBytes maximum estimated size of the cached posting lists
+	 * @param _minReads number of times a posting list must be read before it is cached
+	 */
+	public BitPostingIndexCache(long _maxBytes, int _minReads)
+	{
+		this.maxBytes = _maxBytes;
+		this.minReads = Math.max(1, Math.min(_minReads, Byte.MAX_VALUE));
+	}
+
+	/** Returns a cache configured by the <tt>postings.cache.*</tt> properties, or null if caching is disabled */
+	public static BitPostingIndexCache createIfEnabled()
+	{
+		final long maxBytes = Long.parseLong(ApplicationSetup.getProperty("postings.cache.bytes", "0"));
+		if (maxBytes <= 0)
+			return null;
+		return new BitPostingIndexCache(maxBytes, Integer.parseInt(ApplicationSetup.getProperty("postings.cache.min.reads", "2")));
+	}
+
+	static long key(BitIndexPointer pointer)
+	{
+		return ((long)pointer.getFileNumber() << 56) | (pointer.getOffset() << 3) | pointer.getOffsetBits();
+	}
+
+	static int counter(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15l;
+		return (int)(h >>> 32) & (COUNTER_WIDTH -1);
+	}
+
+	/** Returns the cached posting list for the specified pointer, or null if it is not cached */
+	public IterablePosting getPostings(BitIndexPointer pointer)
+	{
+		final DecodedPostings decoded;
+		synchronized (this) {
+			decoded = cache.get(key(pointer));
+		}
+		if (decoded == null)
+		{
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return decoded.newPosting();
+	}
+
+	/** Records a read of the posting list for the specified pointer, which was not cached. Returns true if
+	 * the posting list has now been read often enough to be admitted to the cache. */
+	public boolean shouldCache(BitIndexPointer pointer)
+	{
+		if (ENTRY_OVERHEAD + 12l * pointer.getNumberOfEntries() > maxBytes)
+			return false;
+		final int i = counter(key(pointer));
+		synchronized (this) {
+			if (readCounts[i] < Byte.MAX_VALUE)
+				readCounts[i]++;
+			//age the counts, so that posting lists that were once popular do not remain so forever
+			if (++reads >= 10 * COUNTER_WIDTH)
+			{
+				for(int j=0;j<COUNTER_WIDTH;j++)
+					readCounts[j] >>>= 1;
+				reads = 0;
+			}
+			return readCounts[i] >= minReads;
+		}
+	}
+
+	/** Decodes the specified posting list, which is then retained in the cache for the specified pointer.
+	 * @param pointer pointer of the posting list
+	 * @param ip posting list as read from the file, which is closed
+	 * @return a posting list iterating over the decoded postings
+	 */
+	public IterablePosting cache(BitIndexPointer pointer, IterablePosting ip) throws IOException
+	{
+		final DecodedPostings decoded = decode(ip, pointer.getNumberOfEntries());
+		ip.close();
+		if (decoded.bytes <= maxBytes)
+		{
+			final Long key = key(pointer);
+			synchronized (this) {
+				final DecodedPostings old = cache.put(key, decoded);
+				bytes += decoded.bytes;
+				if (old != null)
+					bytes -= old.bytes;
+				final Iterator<Map.Entry<Long,DecodedPostings>> iter = cache.entrySet().iterator();
+				while(bytes > maxBytes)
+				{
+					final Map.Entry<Long,DecodedPostings> victim = iter.next();
+					if (victim.getKey().equals(key))
+						continue;
+					iter.remove();
+					bytes -= victim.getValue().bytes;
+					evictions.increment();
+				}
+			}
+		}
+		return decoded.newPosting();
+	}
+
+	static DecodedPostings decode(IterablePosting ip, int numEntries) throws IOException
+	{
+		final boolean fields = ip instanceof FieldPosting;
+		final boolean blocks = ip instanceof BlockPosting;
+		final int[] ids = new int[numEntries];
+		final int[] freqs = new int[numEntries];
+		final int[] lens = new int[numEntries];
+		final int[][] tff = fields ? new int[numEntries][] : null;
+		final int[][] lf = fields ? new int[numEntries][] : null;
+		final int[] posCount = blocks ? new int[numEntries] : null;
+		final TIntArrayList allpos = blocks ? new TIntArrayList(numEntries) : null;
+		int i = 0;
+		while(ip.next() != IterablePosting.EOL)
+		{
+			ids[i] = ip.getId();
+			freqs[i] = ip.getFrequency();
+			lens[i] = ip.getDocumentLength();
+			if (fields)
+			{
+				tff[i] = ((FieldPosting)ip).getFieldFrequencies().clone();
+				lf[i] = ((FieldPosting)ip).getFieldLengths().clone();
+			}
+			if (blocks)
+			{
+				final int[] positions = ((BlockPosting)ip).getPositions();
+				posCount[i] = positions.length;
+				allpos.add(positions);
+			}
+			i++;
+		}
+		if (i != numEntries)
+			throw new IOException("Expected " + numEntries + " postings, but decoded " + i);
+		return new DecodedPostings(ids, freqs, lens, tff, lf, posCount, blocks ? allpos.toNativeArray() : null);
+	}
+
+	/** Removes all posting lists from the cache */
+	public synchronized void clear()
+	{
+		cache.clear();
+		bytes = 0;
+	}
+
+	/** Returns the number of posting lists currently cached */
+	public synchronized int size()
+	{
+		return cache.size();
+	}
+
+	/** Returns the estimated size in bytes of the posting lists currently cached */
+	public synchronized long getBytes()
+	{
+		return bytes;
+	}
+
+	/** Returns the number of reads served from the cache */
+	public long getHitCount()
+	{
+		return hits.sum();
+	}
+
+	/** Returns the number of reads not served from the cache */
+	public long getMissCount()
+	{
+		return misses.sum();
+	}
+
+	/** Returns the proportion of reads served from the cache */
+	public double getHitRate()
+	{
+		final long h = getHitCount();
+		final long total = h + getMissCount();
+		return total == 0 ? 0d : (double)h / (double)total;
+	}
+
+	/** Returns the number of posting lists evicted from the cache */
+	public long getEvictionCount()
+	{
+		return evictions.sum();
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.getClass().getSimpleName() + "{size=" + size() + ", bytes=" + getBytes()
+			+ ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "}";
+	}
+}
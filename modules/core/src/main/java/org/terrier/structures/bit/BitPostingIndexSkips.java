@@ -0,0 +1,425 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is BitPostingIndexSkips.java
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original contributor)
+ */
+package org.terrier.structures.bit;
+
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongArrayList;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.applications.CLITool;
+import org.terrier.applications.CLITool.CLIParsedCLITool;
+import org.terrier.querying.IndexRef;
+import org.terrier.structures.BitFilePosition;
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexFactory;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.IndexUtil;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.Files;
+
+/** Skip pointers for the posting lists of a {@link BitPostingIndex}. The posting lists of a bit-compressed structure
+ * are split into blocks of a fixed number of postings. For each posting list longer than one block, this structure records,
+ * for the end of every block, the docid of the last posting in the block, the bit offset (relative to the start of the posting list)
+ * of the first posting of the next block, and the maximum frequency of any posting in the block. Using these,
+ * {@link org.terrier.structures.postings.bit.BasicIterablePosting#next(int)} can jump over whole blocks of postings without
+ * decoding them.
+ * <p>
+ * The skips are recorded in a separate file alongside the structure (e.g. <tt>data.inverted.skips</tt>), such that the posting
+ * format itself is unchanged, and indices without skips continue to load. Skips are only used if the index property
+ * <tt>index.STRUCTURENAME.skip.block.size</tt> is greater than zero. They are created by the disk indexers when
+ * the property <tt>indexing.STRUCTURENAME.skip.block.size</tt> is set, or can be added to an existing index using
+ * the <tt>skips</tt> command.
+ * <p>
+ * <b>Properties</b>:
+ * <ul>
+ * <li><tt>indexing.STRUCTURENAME.skip.block.size</tt> - number of postings in each skip block to create at indexing time.
+ * Defaults to 0, i.e. no skips are created.</li>
+ * </ul>
+ * @since 5.4
+ */
+public class BitPostingIndexSkips {
+
+	protected static final Logger logger = LoggerFactory.getLogger(BitPostingIndexSkips.class);
+
+	/** default number of postings in each block, used by the skips command */
+	public static final int DEFAULT_BLOCK_SIZE = 128;
+
+	/** file extension of skips files */
+	public static final String USUAL_EXTENSION = ".skips";
+
+	/** number of postings in each block */
+	protected final int blockSize;
+	/** for each data file, the bit offset of the start of each posting list that has skips, in ascending order */
+	protected final long[][] listStarts;
+	/** for each data file, the index in the skip arrays of the first skip of each posting list */
+	protected final int[][] listFirstSkip;
+	/** for each data file, the index in the skip arrays after the last skip of each posting list */
+	protected final int[][] listEndSkip;
+	/** the docid of the last posting in each block */
+	protected final int[] skipDocids;
+	/** the bit offset of the start of the next block, relative to the start of the posting list */
+	protected final long[] skipOffsets;
+	/** the maximum frequency of any posting in each block */
+	protected final int[] skipMaxFrequencies;
+
+	protected BitPostingIndexSkips(int _blockSize, long[][] _listStarts, int[][] _listFirstSkip, int[][] _listEndSkip,
+			int[] _skipDocids, long[] _skipOffsets, int[] _skipMaxFrequencies)
+	{
+		this.blockSize = _blockSize;
+		this.listStarts = _listStarts;
+		this.listFirstSkip = _listFirstSkip;
+		this.listEndSkip = _listEndSkip;
+		this.skipDocids = _skipDocids;
+		this.skipOffsets = _skipOffsets;
+		this.skipMaxFrequencies = _skipMaxFrequencies;
+	}
+
+	/** Returns the number of postings in each skip block */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/** Returns the index of the posting list commencing at the specified pointer,
+	 * or -1 if no skips are recorded for that posting list.
+	 * @param pointer pointer of the posting list */
+	public int getListIndex(BitIndexPointer pointer)
+	{
+		final int fileId = pointer.getFileNumber();
+		if (fileId >= listStarts.length)
+			return -1;
+		final int index = Arrays.binarySearch(listStarts[fileId], bitPosition(pointer.getOffset(), pointer.getOffsetBits()));
+		return index < 0 ? -1 : index;
+	}
+
+	/** Returns the index of the first skip of the specified posting list
+	 * @param fileId data file number of the posting list
+	 * @param listIndex index of the posting list, as obtained from getListIndex() */
+	public int getFirstSkip(int fileId, int listIndex) {
+		return listFirstSkip[fileId][listIndex];
+	}
+
+	/** Returns the index after the last skip of the specified posting list
+	 * @param fileId data file number of the posting list
+	 * @param listIndex index of the posting list, as obtained from getListIndex() */
+	public int getEndSkip(int fileId, int listIndex) {
+		return listEndSkip[fileId][listIndex];
+	}
+
+	/** Returns the docid of the last posting of the block denoted by the specified skip */
+	public int getDocid(int skip) {
+		return skipDocids[skip];
+	}
+
+	/** Returns the bit offset (relative to the start of the posting list) of the block following the specified skip */
+	public long getOffset(int skip) {
+		return skipOffsets[skip];
+	}
+
+	/** Returns the maximum frequency in the block ending at the specified skip */
+	public int getMaxFrequency(int skip) {
+		return skipMaxFrequencies[skip];
+	}
+
+	/** Returns the last skip in the range [from,to) whose docid is less than target, or from-1 if there is no such skip */
+	public int findSkip(int from, int to, int target)
+	{
+		int lo = from, hi = to -1;
+		while(lo <= hi)
+		{
+			final int mid = (lo + hi) >>> 1;
+			if (skipDocids[mid] < target)
+				lo = mid + 1;
+			else
+				hi = mid - 1;
+		}
+		return hi;
+	}
+
+	static long bitPosition(long byteOffset, byte bitOffset)
+	{
+		return (byteOffset << 3) + bitOffset;
+	}
+
+	/** Returns the filename of the skips file for the specified structure */
+	public static String getFilename(IndexOnDisk index, String structureName)
+	{
+		return index.getPath() + "/" + index.getPrefix() + "." + structureName + USUAL_EXTENSION;
+	}
+
+	/** Loads the skips for the specified structure of the specified index, if these are enabled
+	 * by the index property <tt>index.STRUCTURENAME.skip.block.size</tt>.
+	 * @return null if skips are not enabled or are not available */
+	public static BitPostingIndexSkips load(IndexOnDisk index, String structureName) throws IOException
+	{
+		final int blockSize = index.getIntIndexProperty("index."+structureName+".skip.block.size", 0);
+		if (blockSize <= 0)
+			return null;
+		final String filename = getFilename(index, structureName);
+		if (! Files.exists(filename))
+		{
+			logger.warn("Skips for structure "+structureName+" of index "+ index.toString()+" not found at " + filename);
+			return null;
+		}
+		return load(filename);
+	}
+
+	/** Loads the skips from the specified file */
+	public static BitPostingIndexSkips load(String filename) throws IOException
+	{
+		final DataInputStream dis = new DataInputStream(Files.openFileStream(filename));
+		final int blockSize = dis.readInt();
+		final int fileCount = dis.readByte();
+		final TLongArrayList[] starts = new TLongArrayList[fileCount];
+		final TIntArrayList[] firsts = new TIntArrayList[fileCount];
+		final TIntArrayList[] ends = new TIntArrayList[fileCount];
+		for(int i=0;i<fileCount;i++)
+		{
+			starts[i] = new TLongArrayList();
+			firsts[i] = new TIntArrayList();
+			ends[i] = new TIntArrayList();
+		}
+		final TIntArrayList docids = new TIntArrayList();
+		final TLongArrayList offsets = new TLongArrayList();
+		final TIntArrayList maxFreqs = new TIntArrayList();
+		try{
+			while(true)
+			{
+				final byte fileId;
+				try{
+					fileId = dis.readByte();
+				} catch (EOFException eofe) {
+					break;
+				}
+				starts[fileId].add(dis.readLong());
+				firsts[fileId].add(docids.size());
+				final int skipCount = dis.readInt();
+				for(int i=0;i<skipCount;i++)
+				{
+					docids.add(dis.readInt());
+					offsets.add(dis.readLong());
+					maxFreqs.add(dis.readInt());
+				}
+				ends[fileId].add(docids.size());
+			}
+		} finally {
+			dis.close();
+		}
+		final long[][] listStarts = new long[fileCount][];
+		final int[][] listFirstSkip = new int[fileCount][];
+		final int[][] listEndSkip = new int[fileCount][];
+		for(int i=0;i<fileCount;i++)
+		{
+			listStarts[i] = starts[i].toNativeArray();
+			listFirstSkip[i] = firsts[i].toNativeArray();
+			listEndSkip[i] = ends[i].toNativeArray();
+		}
+		logger.debug("Loaded " + docids.size() + " skips from " + filename);
+		return new BitPostingIndexSkips(blockSize, listStarts, listFirstSkip, listEndSkip,
+				docids.toNativeArray(), offsets.toNativeArray(), maxFreqs.toNativeArray());
+	}
+
+	/** Creates skips for the specified structure of the specified index, if the property
+	 * <tt>indexing.STRUCTURENAME.skip.block.size</tt> is greater than zero.
+	 * @param index index to create skips for
+	 * @param structureName name of the structure, e.g. "inverted"
+	 * @param defaultBlockSize block size to use if the property is not set
+	 * @return true if skips were created
+	 */
+	public static boolean createIfEnabled(IndexOnDisk index, String structureName, int defaultBlockSize) throws IOException
+	{
+		final int blockSize = Integer.parseInt(ApplicationSetup.getProperty(
+				"indexing."+structureName+".skip.block.size", String.valueOf(defaultBlockSize)));
+		if (blockSize <= 0)
+			return false;
+		create(index, structureName, blockSize);
+		return true;
+	}
+
+	/** Creates skips for the specified structure of the specified index, and records the
+	 * <tt>index.STRUCTURENAME.skip.block.size</tt> index property. The index is not flushed.
+	 * @param index index to create skips for
+	 * @param structureName name of the structure, e.g. "inverted"
+	 * @param blockSize number of postings in each block
+	 */
+	public static void create(IndexOnDisk index, String structureName, int blockSize) throws IOException
+	{
+		final Object inputStream = index.getIndexStructureInputStream(structureName);
+		if (! (inputStream instanceof BitPostingIndexInputStream))
+		{
+			logger.warn("Cannot create skips for structure " + structureName + " of type "
+				+ (inputStream == null ? "null" : inputStream.getClass().getName()));
+			IndexUtil.close(inputStream);
+			return;
+		}
+		final byte fileCount = Byte.parseByte(index.getIndexProperty("index."+structureName+".data-files", "1"));
+		final BitPostingIndexInputStream bpiis = (BitPostingIndexInputStream)inputStream;
+		write(bpiis, fileCount, getFilename(index, structureName), blockSize);
+		bpiis.close();
+		index.setIndexProperty("index."+structureName+".skip.block.size", String.valueOf(blockSize));
+	}
+
+	/** Writes skips for all posting lists of the specified input stream to the specified file.
+	 * @param bpiis the posting lists to create skips for
+	 * @param fileCount number of data files of the structure
+	 * @param filename filename to write the skips to
+	 * @param blockSize number of postings in each block
+	 */
+	public static void write(BitPostingIndexInputStream bpiis, byte fileCount, String filename, int blockSize) throws IOException
+	{
+		if (blockSize <= 0)
+			throw new IllegalArgumentException("Skip block size must be positive");
+		final DataOutputStream dos = new DataOutputStream(Files.writeFileStream(filename));
+		dos.writeInt(blockSize);
+		dos.writeByte(fileCount);
+
+		final TIntArrayList docids = new TIntArrayList();
+		final TLongArrayList offsets = new TLongArrayList();
+		final TIntArrayList maxFreqs = new TIntArrayList();
+		long listCount = 0;
+		long skipCount = 0;
+		while(bpiis.hasNext())
+		{
+			final IterablePosting ip = bpiis.next();
+			if (ip == null)
+				continue;
+			final BitIndexPointer pointer = (BitIndexPointer)bpiis.getCurrentPointer();
+			final int numEntries = pointer.getNumberOfEntries();
+			if (numEntries <= blockSize)
+				continue;
+			final long start = bitPosition(pointer.getOffset(), pointer.getOffsetBits());
+			docids.resetQuick();
+			offsets.resetQuick();
+			maxFreqs.resetQuick();
+			int read = 0;
+			int maxFreq = 0;
+			while(ip.next() != IterablePosting.EOL)
+			{
+				read++;
+				if (ip.getFrequency() > maxFreq)
+					maxFreq = ip.getFrequency();
+				if (read % blockSize == 0 && read < numEntries)
+				{
+					final BitFilePosition pos = bpiis.getPos();
+					docids.add(ip.getId());
+					offsets.add(bitPosition(pos.getOffset(), pos.getOffsetBits()) - start);
+					maxFreqs.add(maxFreq);
+					maxFreq = 0;
+				}
+			}
+			dos.writeByte(pointer.getFileNumber());
+			dos.writeLong(start);
+			dos.writeInt(docids.size());
+			for(int i=0;i<docids.size();i++)
+			{
+				dos.writeInt(docids.get(i));
+				dos.writeLong(offsets.get(i));
+				dos.writeInt(maxFreqs.get(i));
+			}
+			listCount++;
+			skipCount += docids.size();
+		}
+		dos.close();
+		logger.info("Wrote " + skipCount + " skips for " + listCount + " posting lists with block size " + blockSize);
+	}
+
+	/** Adds skips to the posting structure of an existing index. Usage:
+	 * <tt>bin/terrier skips [-s structure] [-b blocksize]</tt>
+	 */
+	public static class Command extends CLIParsedCLITool
+	{
+		@Override
+		protected Options getOptions() {
+			Options opts = super.getOptions();
+			opts.addOption(Option.builder("s")
+				.longOpt("structure")
+				.desc("name of the posting structure to add skips to, defaults to inverted")
+				.hasArg(true)
+				.build());
+			opts.addOption(Option.builder("b")
+				.longOpt("blocksize")
+				.desc("number of postings in each skip block, defaults to " + DEFAULT_BLOCK_SIZE)
+				.hasArg(true)
+				.build());
+			return opts;
+		}
+
+		@Override
+		public int run(CommandLine line) throws Exception {
+			final String structureName = line.hasOption("s") ? line.getOptionValue("s") : "inverted";
+			final int blockSize = line.hasOption("b") ? Integer.parseInt(line.getOptionValue("b")) : DEFAULT_BLOCK_SIZE;
+			IndexOnDisk.setIndexLoadingProfileAsRetrieval(false);
+			final IndexRef ref = getIndexRef(line);
+			final Index index = IndexFactory.of(ref);
+			if (index == null)
+			{
+				System.err.println("Index not found at " + ref);
+				return 1;
+			}
+			if (! (index instanceof IndexOnDisk))
+			{
+				System.err.println("Skips can only be added to an IndexOnDisk, not " + index.getClass().getSimpleName());
+				return 1;
+			}
+			final IndexOnDisk indexOnDisk = (IndexOnDisk)index;
+			if (! indexOnDisk.hasIndexStructureInputStream(structureName))
+			{
+				System.err.println("Index has no " + structureName + " structure");
+				return 1;
+			}
+			create(indexOnDisk, structureName, blockSize);
+			indexOnDisk.flush();
+			indexOnDisk.close();
+			return 0;
+		}
+
+		@Override
+		public String commandname() {
+			return "skips";
+		}
+
+		@Override
+		public String helpsummary() {
+			return "adds skip pointers to the posting lists of an existing index";
+		}
+
+		@Override
+		public String sourcepackage() {
+			return CLITool.PLATFORM_MODULE;
+		}
+	}
+}
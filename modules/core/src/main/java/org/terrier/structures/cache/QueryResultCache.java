@@ -32,7 +32,9 @@ package org.terrier.structures.cache;
 import org.terrier.matching.ResultSet;
 import org.terrier.querying.SearchRequest;
 
-/** Interface for introducing caching strategies into TRECQuerying */
+/** Interface for introducing caching strategies into TRECQuerying and LocalManager.
+ * Implementations used by LocalManager (see property <tt>querying.resultscache</tt>)
+ * must be safe for use by many threads at once. */
 public interface QueryResultCache {
 	/** Returns the ResultSet for the specified query, or null
 	 * if that query has no cached results.
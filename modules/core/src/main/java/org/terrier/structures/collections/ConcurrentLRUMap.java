@@ -0,0 +1,144 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is ConcurrentLRUMap.java
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original contributor)
+ */
+package org.terrier.structures.collections;
+
+import java.util.AbstractMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/** A map with a fixed maximum size that many threads may use at once. Entries are 
+ * divided by the hash of their key among segments, each an {@link LRUMap} with its 
+ * own lock, such that threads rarely wait for each other. The least-recently-used 
+ * entry of a segment is removed when the segment is full, so the eviction order is
+ * only approximately least-recently-used overall.
+ * @param <K> type of the key
+ * @param <V> type of the value
+ * @since 5.4
+ */
+public class ConcurrentLRUMap<K, V> extends AbstractMap<K, V> {
+
+	/** number of segments, at most */
+	static final int SEGMENTS = 16;
+	
+	final LRUMap<K,V>[] segments;
+	
+	/**
+	 * default constructor
+	 */
+	public ConcurrentLRUMap() {
+		this(LRUMap.DEFAULT_SIZE);
+	}
+	
+	/**
+	 * constructor
+	 * @param sMaxSize
+	 */
+	public ConcurrentLRUMap(String sMaxSize) {
+		this(Integer.parseInt(sMaxSize));
+	}
+	
+	/**
+	 * constructor
+	 * @param maxSize maximum number of entries
+	 */
+	@SuppressWarnings("unchecked")
+	public ConcurrentLRUMap(int maxSize) {
+		int count = 1;
+		while (count < SEGMENTS && count * 2 <= maxSize)
+			count *= 2;
+		segments = new LRUMap[count];
+		for(int i=0;i<count;i++)
+			segments[i] = new LRUMap<K,V>(maxSize / count);
+	}
+	
+	final LRUMap<K,V> segment(Object key) {
+		int h = key.hashCode();
+		h ^= h >>> 16;
+		return segments[h & (segments.length - 1)];
+	}
+	
+	@Override
+	public V get(Object key) {
+		final LRUMap<K,V> segment = segment(key);
+		synchronized (segment) {
+			return segment.get(key);
+		}
+	}
+	
+	@Override
+	public boolean containsKey(Object key) {
+		final LRUMap<K,V> segment = segment(key);
+		synchronized (segment) {
+			return segment.containsKey(key);
+		}
+	}
+	
+	@Override
+	public V put(K key, V value) {
+		final LRUMap<K,V> segment = segment(key);
+		synchronized (segment) {
+			return segment.put(key, value);
+		}
+	}
+	
+	@Override
+	public V remove(Object key) {
+		final LRUMap<K,V> segment = segment(key);
+		synchronized (segment) {
+			return segment.remove(key);
+		}
+	}
+	
+	@Override
+	public int size() {
+		int size = 0;
+		for(LRUMap<K,V> segment : segments)
+			synchronized (segment) {
+				size += segment.size();
+			}
+		return size;
+	}
+	
+	@Override
+	public void clear() {
+		for(LRUMap<K,V> segment : segments)
+			synchronized (segment) {
+				segment.clear();
+			}
+	}
+	
+	/** Returns a copy of the entries, which is not updated as the map changes */
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		final Set<Entry<K,V>> entries = new HashSet<>();
+		for(LRUMap<K,V> segment : segments)
+			synchronized (segment) {
+				for(Entry<K,V> e : segment.entrySet())
+					entries.add(new SimpleImmutableEntry<>(e));
+			}
+		return entries;
+	}
+}
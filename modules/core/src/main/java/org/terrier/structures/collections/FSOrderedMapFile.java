@@ -853,6 +853,24 @@ public class FSOrderedMapFile<
 	    this.numberOfEntries = (int) (dataFile.length() / (long)entrySize);  
 	    this.shortcut = new DefaultMapFileBSearchShortcut<K>();
     }
+    
+    /** Constructor for subclasses that access the underlying file themselves, rather than 
+     * through a RandomDataInput.
+     * @param filename Filename of the file containing the structure
+     * @param length length of the file, in bytes
+     * @param _keyFactory factory object for keys
+     * @param _valueFactory factory object for values
+     */
+    protected FSOrderedMapFile(String filename, long length, FixedSizeWriteableFactory<K> _keyFactory,
+            FixedSizeWriteableFactory<V> _valueFactory)
+    {
+    	this.dataFilename = filename;
+    	this.keyFactory = _keyFactory;
+	    this.valueFactory = _valueFactory;
+	    this.entrySize = _keyFactory.getSize() + _valueFactory.getSize();
+	    this.numberOfEntries = (int) (length / (long)entrySize);  
+	    this.shortcut = new DefaultMapFileBSearchShortcut<K>();
+    }
 	/** 
 	 * Get the key factory 
 	 */
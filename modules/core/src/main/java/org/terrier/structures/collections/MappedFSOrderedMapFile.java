@@ -0,0 +1,334 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is MappedFSOrderedMapFile.java
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original contributor)
+ */
+package org.terrier.structures.collections;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableUtils;
+import org.terrier.structures.seralization.FixedSizeTextFactory;
+import org.terrier.structures.seralization.FixedSizeWriteableFactory;
+import org.terrier.utility.Files;
+
+/** A read-only {@link FSOrderedMapFile} where the underlying file is memory mapped.
+ * Unlike FSOrderedMapFile, lookups do not seek a shared file pointer, and hence
+ * many threads can perform lookups at once without locking. Moreover, for
+ * {@link org.apache.hadoop.io.Text} keys, the binary search compares the
+ * serialised keys directly in the mapped file, such that no objects are created
+ * for each probe. Files larger than 2GB are mapped in several regions, each
+ * containing a whole number of entries. The file must be on a local filesystem.
+ * <p>
+ * This is used by {@link org.terrier.structures.FSOMapFileLexicon} when the
+ * <tt>index.STRUCTURENAME.data-source</tt> index property is set to <tt>mmap</tt>.
+ * @since 5.4
+ * @param <K> Type of the keys
+ * @param <V> Type of the values
+ */
+@SuppressWarnings("rawtypes")
+public class MappedFSOrderedMapFile<
+		K extends WritableComparable,
+		V extends Writable
+		> extends FSOrderedMapFile<K,V>
+{
+	/** mapped regions of the file */
+	protected final ByteBuffer[] regions;
+	/** number of entries in each region */
+	protected final int entriesPerRegion;
+	/** whether the keys can be compared without deserialising */
+	protected final boolean textKeys;
+
+	/** Construct a new object to access the underlying file data structure
+	 *
+	 * @param filename Filename of the file containing the structure
+	 * @param updateable Must be false, this implementation is read-only
+	 * @param _keyFactory factory object for keys
+	 * @param _valueFactory factory object for values
+	 * @throws IOException thrown if an IO problem occurs
+	 */
+	public MappedFSOrderedMapFile(
+			String filename,
+			boolean updateable,
+			FixedSizeWriteableFactory<K> _keyFactory,
+			FixedSizeWriteableFactory<V> _valueFactory)
+		throws IOException
+	{
+		super(filename, Files.length(filename), _keyFactory, _valueFactory);
+		if (updateable)
+			throw new UnsupportedOperationException(MappedFSOrderedMapFile.class.getSimpleName() + " is read-only");
+		this.entriesPerRegion = Integer.MAX_VALUE / entrySize;
+		final int numRegions = numberOfEntries == 0 ? 0 : 1 + (numberOfEntries -1) / entriesPerRegion;
+		this.regions = new ByteBuffer[numRegions];
+		try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+		{
+			for(int r=0;r<numRegions;r++)
+			{
+				final long start = (long)r * (long)entriesPerRegion * (long)entrySize;
+				final long length = (long)Math.min(entriesPerRegion, numberOfEntries - r * entriesPerRegion) * (long)entrySize;
+				final MappedByteBuffer region = channel.map(MapMode.READ_ONLY, start, length);
+				regions[r] = region;
+			}
+		}
+		this.textKeys = _keyFactory instanceof FixedSizeTextFactory;
+	}
+
+	/** {@inheritDoc}
+	 * This implementation takes no locks, and so can be called by many threads at once. */
+	@SuppressWarnings("unchecked")
+	@Override
+	protected MapFileEntry<K,V> getEntry(K key)
+	{
+		int[] bounds;
+		try{
+			bounds = shortcut.searchBounds(key);
+		} catch (IOException ioe) {
+			bounds = new int[]{0, numberOfEntries};
+		}
+		int low = bounds[0];
+		int high = bounds[1];
+		int i;
+		int compareEntry;
+
+		try{
+			if (textKeys && key instanceof Text)
+			{
+				final byte[] keyBytes = ((Text)key).getBytes();
+				final int keyLength = ((Text)key).getLength();
+				while (low < high) {
+					i = (low + high) >>> 1;
+					if ((compareEntry = compareText(i, keyBytes, keyLength)) < 0)
+						low = i + 1;
+					else if (compareEntry > 0)
+						high = i;
+					else
+						return readEntry(i);
+				}
+				//check the entry at the boundary, in case the shortcut was imprecise
+				if (high < numberOfEntries && compareText(high, keyBytes, keyLength) == 0)
+					return readEntry(high);
+			}
+			else
+			{
+				final K testKey = keyFactory.newInstance();
+				final BufferDataInput in = new BufferDataInput();
+				while (low < high) {
+					i = (low + high) >>> 1;
+					in.seek(i);
+					testKey.readFields(in);
+					if ((compareEntry = testKey.compareTo(key)) < 0)
+						low = i + 1;
+					else if (compareEntry > 0)
+						high = i;
+					else
+						return readEntry(i);
+				}
+				if (high < numberOfEntries)
+				{
+					in.seek(high);
+					testKey.readFields(in);
+					if (testKey.compareTo(key) == 0)
+						return readEntry(high);
+				}
+			}
+			return new MapFileEntry<K,V>(key, null, -(high) -1);
+		} catch (IOException ioe) {
+			logger.error("IOException reading " + this.getClass().getSimpleName(), ioe);
+			return new MapFileEntry<K,V>(key, null, Integer.MIN_VALUE);
+		}
+	}
+
+	/** {@inheritDoc}
+	 * This implementation takes no locks, and so can be called by many threads at once. */
+	@Override
+	public Entry<K,V> get(int entryNumber)
+	{
+		if (entryNumber >= numberOfEntries)
+			throw new NoSuchElementException("Entry number "+ entryNumber + " is larger than map size of "+ numberOfEntries);
+		try{
+			return readEntry(entryNumber);
+		} catch (IOException ioe) {
+			throw new NoSuchElementException(
+				"IOException reading " + this.getClass().getSimpleName() + " for entry number "+ entryNumber +" : "+ioe);
+		}
+	}
+
+	/** {@inheritDoc}
+	 * Mapped regions are released once garbage collected. */
+	@Override
+	public void close() throws IOException {}
+
+	protected MapFileEntry<K,V> readEntry(int entryNumber) throws IOException
+	{
+		final BufferDataInput in = new BufferDataInput();
+		in.seek(entryNumber);
+		final K key = keyFactory.newInstance();
+		final V value = valueFactory.newInstance();
+		key.readFields(in);
+		value.readFields(in);
+		return new MapFileEntry<K,V>(key, value, entryNumber);
+	}
+
+	/** compares the Text key of the specified entry with the specified bytes,
+	 * in the same manner as Text.compareTo() */
+	protected final int compareText(int entryNumber, byte[] keyBytes, int keyLength)
+	{
+		final ByteBuffer region = regions[entryNumber / entriesPerRegion];
+		int offset = (entryNumber % entriesPerRegion) * entrySize;
+		//decode the vint length, as written by Text.write()
+		final byte first = region.get(offset);
+		final int vintSize = WritableUtils.decodeVIntSize(first);
+		int length;
+		if (vintSize == 1)
+		{
+			length = first;
+		}
+		else
+		{
+			length = 0;
+			for(int j=1;j<vintSize;j++)
+				length = (length << 8) | (region.get(offset + j) & 0xFF);
+		}
+		offset += vintSize;
+		final int minLength = Math.min(length, keyLength);
+		for(int j=0;j<minLength;j++)
+		{
+			final int a = region.get(offset + j) & 0xFF;
+			final int b = keyBytes[j] & 0xFF;
+			if (a != b)
+				return a - b;
+		}
+		return length - keyLength;
+	}
+
+	/** a DataInput over the mapped regions, which does not alter their positions */
+	class BufferDataInput implements DataInput
+	{
+		ByteBuffer region;
+		int pos;
+
+		void seek(int entryNumber)
+		{
+			region = regions[entryNumber / entriesPerRegion];
+			pos = (entryNumber % entriesPerRegion) * entrySize;
+		}
+
+		@Override
+		public void readFully(byte[] b) throws IOException {
+			readFully(b, 0, b.length);
+		}
+
+		@Override
+		public void readFully(byte[] b, int off, int len) throws IOException {
+			for(int j=0;j<len;j++)
+				b[off+j] = region.get(pos++);
+		}
+
+		@Override
+		public int skipBytes(int n) throws IOException {
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public boolean readBoolean() throws IOException {
+			return region.get(pos++) != 0;
+		}
+
+		@Override
+		public byte readByte() throws IOException {
+			return region.get(pos++);
+		}
+
+		@Override
+		public int readUnsignedByte() throws IOException {
+			return region.get(pos++) & 0xFF;
+		}
+
+		@Override
+		public short readShort() throws IOException {
+			final short rtr = region.getShort(pos);
+			pos += 2;
+			return rtr;
+		}
+
+		@Override
+		public int readUnsignedShort() throws IOException {
+			return readShort() & 0xFFFF;
+		}
+
+		@Override
+		public char readChar() throws IOException {
+			final char rtr = region.getChar(pos);
+			pos += 2;
+			return rtr;
+		}
+
+		@Override
+		public int readInt() throws IOException {
+			final int rtr = region.getInt(pos);
+			pos += 4;
+			return rtr;
+		}
+
+		@Override
+		public long readLong() throws IOException {
+			final long rtr = region.getLong(pos);
+			pos += 8;
+			return rtr;
+		}
+
+		@Override
+		public float readFloat() throws IOException {
+			return Float.intBitsToFloat(readInt());
+		}
+
+		@Override
+		public double readDouble() throws IOException {
+			return Double.longBitsToDouble(readLong());
+		}
+
+		@Override
+		public String readLine() throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String readUTF() throws IOException {
+			return DataInputStream.readUTF(this);
+		}
+	}
+}
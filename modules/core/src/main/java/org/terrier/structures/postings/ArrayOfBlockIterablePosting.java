@@ -46,6 +46,12 @@ public class ArrayOfBlockIterablePosting extends ArrayOfBasicIterablePosting imp
 		this.posCount = posCount;
 		this.allpos = allpos;
 	}
+	
+	public ArrayOfBlockIterablePosting(int[] _ids, int[] _freqs, int[] _lens, int[] posCount, int[] allpos) {
+		super(_ids, _freqs, _lens);
+		this.posCount = posCount;
+		this.allpos = allpos;
+	}
 
 	@Override
 	public int[] getPositions() {
@@ -0,0 +1,53 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is BlockMaxIterablePosting.java
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original contributor)
+ */
+package org.terrier.structures.postings;
+
+/** 
+ * An IterablePosting whose postings are split into blocks of consecutive postings (not to be confused
+ * with the block positions of {@link BlockPosting}), for which the largest docid and largest frequency
+ * of each block are known without decoding the postings. This allows dynamic pruning strategies such 
+ * as BlockMax-WAND to obtain tighter upper bounds on the scores of documents.
+ * 
+ * @since 5.4
+ * @see org.terrier.structures.bit.BitPostingIndexSkips
+ */
+public interface BlockMaxIterablePosting extends IterablePosting {
+	
+	/** 
+	 * Finds the block that contains the first posting with id not less than target, without
+	 * moving the current posting. target should not be less than the current id.
+	 * @param target docid to look for
+	 * @return largest docid in that block, or EOL if the block is not known (e.g. the last block of the posting list)
+	 */
+	int nextShallow(int target);
+	
+	/**
+	 * Returns the largest frequency of any posting in the block found by the last call to 
+	 * {@link #nextShallow(int)}.
+	 * @return largest frequency in the block, or Integer.MAX_VALUE if not known
+	 */
+	int getBlockMaxFrequency();
+}
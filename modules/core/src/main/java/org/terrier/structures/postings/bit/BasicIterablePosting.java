@@ -37,18 +37,33 @@ import java.io.IOException;
  */
 import org.terrier.compression.bit.BitIn;
 import org.terrier.structures.DocumentIndex;
+import org.terrier.structures.bit.BitPostingIndexSkips;
 import org.terrier.structures.postings.BasicPostingImpl;
+import org.terrier.structures.postings.BlockMaxIterablePosting;
 import org.terrier.structures.postings.IterablePosting;
 import org.terrier.structures.postings.WritablePosting;
 
 @SuppressWarnings("serial")
-public class BasicIterablePosting extends BasicPostingImpl implements IterablePosting
+public class BasicIterablePosting extends BasicPostingImpl implements BlockMaxIterablePosting
 {
 	protected int numEntries;
 	
 	protected BitIn bitFileReader;
 	protected DocumentIndex doi;
 	
+	/** skips for this posting list, or null if there are none */
+	protected BitPostingIndexSkips skips;
+	/** index of the first skip of this posting list */
+	protected int firstSkip;
+	/** index after the last skip of this posting list */
+	protected int endSkip;
+	/** total number of postings in this posting list */
+	protected int totalEntries;
+	/** bit position of the start of this posting list in bitFileReader */
+	protected long startBitPosition;
+	/** skip ending the block found by the last call to nextShallow(), or -1 if not known */
+	protected int shallowSkip = -1;
+	
 	/**
 	 * Empty constructor used ONLY for reflection
 	 */
@@ -123,9 +138,74 @@ public class BasicIterablePosting extends BasicPostingImpl implements IterablePo
 		return id;
 	}
 	
+	/** Sets the skips to use for this posting list. Must be called before any posting is read.
+	 * @param _skips the skips of the structure
+	 * @param _firstSkip index of the first skip of this posting list
+	 * @param _endSkip index after the last skip of this posting list
+	 */
+	public void setSkips(BitPostingIndexSkips _skips, int _firstSkip, int _endSkip)
+	{
+		skips = _skips;
+		firstSkip = _firstSkip;
+		endSkip = _endSkip;
+		totalEntries = numEntries;
+		startBitPosition = (bitFileReader.getByteOffset() << 3) + bitFileReader.getBitOffset();
+	}
+	
+	/** Moves the bitFileReader to the start of the last block whose preceding postings all have docids
+	 * less than target, if that block is ahead of the current posting. */
+	protected void skipTo(int target) throws IOException
+	{
+		final int blockSize = skips.getBlockSize();
+		//skips for blocks that have already been read cannot be used
+		final int from = firstSkip + (totalEntries - numEntries) / blockSize;
+		if (from >= endSkip)
+			return;
+		final int skip = skips.findSkip(from, endSkip, target);
+		if (skip < from)
+			return;
+		final long currentBitPosition = (bitFileReader.getByteOffset() << 3) + bitFileReader.getBitOffset();
+		long skipLength = startBitPosition + skips.getOffset(skip) - currentBitPosition;
+		while(skipLength > Integer.MAX_VALUE)
+		{
+			bitFileReader.skipBits(Integer.MAX_VALUE);
+			skipLength -= Integer.MAX_VALUE;
+		}
+		bitFileReader.skipBits((int)skipLength);
+		id = skips.getDocid(skip);
+		numEntries = totalEntries - (skip - firstSkip + 1) * blockSize;
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public int nextShallow(int target)
+	{
+		shallowSkip = -1;
+		if (skips == null)
+			return EOL;
+		//the block of the current posting
+		final int read = totalEntries - numEntries;
+		final int from = firstSkip + (read > 0 ? read - 1 : 0) / skips.getBlockSize();
+		final int skip = Math.max(skips.findSkip(from, endSkip, target) + 1, from);
+		//the last block of each posting list has no skip
+		if (skip >= endSkip)
+			return EOL;
+		shallowSkip = skip;
+		return skips.getDocid(skip);
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public int getBlockMaxFrequency()
+	{
+		return shallowSkip == -1 ? Integer.MAX_VALUE : skips.getMaxFrequency(shallowSkip);
+	}
+	
 	@Override
 	public int next(int target) throws IOException
 	{
+		if (skips != null && id < target)
+			skipTo(target);
 	    while (id < target)
 	        if (numEntries > 0)
 	            next();
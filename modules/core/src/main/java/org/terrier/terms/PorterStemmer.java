@@ -476,5 +476,19 @@ public class PorterStemmer extends StemmerTermPipeline
 		this.stem();
 		return this.toString();
 	}
+
+	/**
+	 * Stems the term in the buffer in place, and passes it onto the next object in the term pipeline.
+	 * No String is created.
+	 * @param t the term to stem.
+	 */
+	@Override
+	public void processTerm(TermBuffer t)
+	{
+		this.add(t.chars, t.length);
+		this.stem();
+		t.set(b, i_end);
+		next.processTerm(t);
+	}
 }
 
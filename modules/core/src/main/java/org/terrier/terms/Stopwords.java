@@ -34,6 +34,7 @@ import org.slf4j.LoggerFactory;
 import gnu.trove.THashSet;
 
 import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.TermDictionary;
 /** 
  * Implements stopword removal, as a TermPipeline object. Stopword list to load can be
  * passed in the constructor or loaded from the <tt>stopwords.filename</tt> property.
@@ -59,6 +60,8 @@ public class Stopwords implements TermPipeline
 
 	/** The hashset that contains all the stop words.*/
 	protected final THashSet<String> stopWords = new THashSet<String>();
+	/** The stop words, for looking up terms held in buffers */
+	protected final TermDictionary stopWordsDictionary = new TermDictionary();
 	/** 
 	 * Makes a new stopword termpipeline object. The stopwords 
 	 * file is loaded from the application setup file, 
@@ -136,6 +139,7 @@ public class Stopwords implements TermPipeline
 					if (INTERN_STOPWORDS)
 						word = word.intern();
 					stopWords.add(word);
+					stopWordsDictionary.add(word);
 				}
 			}
 			br.close();
@@ -153,6 +157,7 @@ public class Stopwords implements TermPipeline
 	public void clear()
 	{
 		stopWords.clear();	
+		stopWordsDictionary.clear();
 	}
 
 	/** Returns true is term t is a stopword */
@@ -174,6 +179,19 @@ public class Stopwords implements TermPipeline
 			return;
 		next.processTerm(t);
 	}
+
+	/** 
+	 * Checks to see if the term in the buffer is a stopword, without creating a String. 
+	 * If not, the buffer is passed on to the next TermPipeline object.
+	 * @param t The term to be checked.
+	 */
+	@Override
+	public void processTerm(final TermBuffer t)
+	{
+		if (stopWordsDictionary.getId(t) >= 0)
+			return;
+		next.processTerm(t);
+	}
 	
 	/** {@inheritDoc} */
 	public boolean reset() {
@@ -0,0 +1,141 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org 
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TermBuffer.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ */
+package org.terrier.terms;
+
+/**
+ * A term held in a reusable buffer of characters. Tokenisers and term pipeline stages that
+ * support buffers read terms into it and modify them in place, such that no String is created
+ * for each occurrence of a term. The content is only valid until the next term is read into the buffer.
+ * @see TermPipeline#processTerm(TermBuffer)
+ * @since 5.4
+ */
+public final class TermBuffer implements CharSequence
+{
+	/** the characters of the term are chars[0] to chars[length-1] */
+	public char[] chars;
+	/** the length of the term */
+	public int length = 0;
+
+	/** Constructs an empty buffer */
+	public TermBuffer()
+	{
+		this(32);
+	}
+
+	/** Constructs an empty buffer with the specified capacity */
+	public TermBuffer(int capacity)
+	{
+		chars = new char[Math.max(1, capacity)];
+	}
+
+	/**
+	 * Ensures that the buffer can hold a term of the specified length, keeping the current term.
+	 * @return the array of characters, which may have been replaced
+	 */
+	public char[] ensureCapacity(int capacity)
+	{
+		if (chars.length < capacity)
+		{
+			final char[] newChars = new char[Math.max(capacity, chars.length * 2)];
+			System.arraycopy(chars, 0, newChars, 0, length);
+			chars = newChars;
+		}
+		return chars;
+	}
+
+	/**
+	 * Sets the term to the specified String.
+	 * @return false, leaving the buffer empty, if the term is null or empty
+	 */
+	public boolean set(String term)
+	{
+		if (term == null)
+		{
+			length = 0;
+			return false;
+		}
+		final int len = term.length();
+		ensureCapacity(len);
+		term.getChars(0, len, chars, 0);
+		length = len;
+		return len > 0;
+	}
+
+	/** Sets the term to the first len characters of src */
+	public void set(char[] src, int len)
+	{
+		ensureCapacity(len);
+		System.arraycopy(src, 0, chars, 0, len);
+		length = len;
+	}
+
+	/** Returns true if the term has the same characters as the specified String */
+	public boolean contentEquals(String term)
+	{
+		if (term.length() != length)
+			return false;
+		for(int i=0;i<length;i++)
+			if (term.charAt(i) != chars[i])
+				return false;
+		return true;
+	}
+
+	/** Returns the same hash code as {@link String#hashCode()} of the term */
+	public int termHashCode()
+	{
+		int h = 0;
+		for(int i=0;i<length;i++)
+			h = 31 * h + chars[i];
+		return h;
+	}
+
+	@Override
+	public int length()
+	{
+		return length;
+	}
+
+	@Override
+	public char charAt(int index)
+	{
+		if (index >= length)
+			throw new IndexOutOfBoundsException(String.valueOf(index));
+		return chars[index];
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		return toString().substring(start, end);
+	}
+
+	/** Returns a new String of the term */
+	@Override
+	public String toString()
+	{
+		return new String(chars, 0, length);
+	}
+}
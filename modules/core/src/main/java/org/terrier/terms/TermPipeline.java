@@ -39,6 +39,18 @@ public interface TermPipeline
 	 * @param t String the term to process.
 	 */
 	void processTerm(String t);
+
+	/**
+	 * Processes a term held in a reusable buffer. Stages that support buffers modify the term
+	 * in place and pass the buffer to the next stage, while those that do not, as by default,
+	 * process the term as a String. Terms that are discarded are not passed on.
+	 * @param t the term to process, which is only valid during this call.
+	 * @since 5.4
+	 */
+	default void processTerm(TermBuffer t)
+	{
+		processTerm(t.toString());
+	}
 	
 	/**
 	 * This method implements the specific rest option needed to implements
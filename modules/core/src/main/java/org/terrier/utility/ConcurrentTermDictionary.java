@@ -0,0 +1,193 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org 
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is ConcurrentTermDictionary.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ */
+package org.terrier.utility;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.terrier.terms.TermBuffer;
+
+/**
+ * Assigns consecutive int ids to terms, such that many threads can obtain the ids of terms at once,
+ * e.g. the threads of an indexer that record the postings of documents by term id. Ids are assigned
+ * in the order that terms are first seen, and are valid until {@link #clear()} is called.
+ * <p>Each thread should look up terms using a {@link Cache} of its own, which keeps the ids of the terms
+ * it has seen, so that most lookups neither contend with other threads nor create a String.
+ * @since 5.4
+ */
+public class ConcurrentTermDictionary
+{
+	/** maximum number of terms kept by a cache before it is cleared */
+	protected static final int MAX_CACHED_TERMS = 1 << 20;
+
+	/** the id of each term */
+	protected final ConcurrentHashMap<String,Integer> ids;
+	/** the String of each term, by id. Written while holding the lock of this object. */
+	protected volatile String[] terms;
+	/** number of terms. Guarded by this object. */
+	protected int size = 0;
+	/** incremented each time the dictionary is cleared, so that caches can notice */
+	protected volatile int generation = 0;
+
+	/** Constructs an empty dictionary */
+	public ConcurrentTermDictionary()
+	{
+		this(1024);
+	}
+
+	/** Constructs an empty dictionary, sized for the expected number of terms */
+	public ConcurrentTermDictionary(int expectedTerms)
+	{
+		ids = new ConcurrentHashMap<>(Math.max(16, expectedTerms));
+		terms = new String[Math.max(16, expectedTerms)];
+	}
+
+	/** Returns the id of the term, adding it to the dictionary if it is not present */
+	public int getId(String term)
+	{
+		final Integer id = ids.get(term);
+		return id != null ? id : add(term);
+	}
+
+	/** Returns the id of the term, or -1 if it is not in the dictionary */
+	public int getIdIfPresent(String term)
+	{
+		final Integer id = ids.get(term);
+		return id != null ? id : -1;
+	}
+
+	protected synchronized int add(String term)
+	{
+		final Integer existing = ids.get(term);
+		if (existing != null)
+			return existing;
+		final int id = size++;
+		if (id == terms.length)
+		{
+			//the new array is only published once it has the new term
+			final String[] newTerms = Arrays.copyOf(terms, id * 2);
+			newTerms[id] = term;
+			terms = newTerms;
+		}
+		else
+		{
+			terms[id] = term;
+		}
+		ids.put(term, id);
+		return id;
+	}
+
+	/** Returns the String of the term with the specified id, which must have been obtained from this dictionary */
+	public String getTerm(int id)
+	{
+		return terms[id];
+	}
+
+	/** Returns the number of terms in the dictionary */
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	/** Removes all terms, such that ids are assigned from 0 again. Must not be called while other threads use the dictionary. */
+	public synchronized void clear()
+	{
+		ids.clear();
+		terms = new String[terms.length];
+		size = 0;
+		generation++;
+	}
+
+	/** Creates a cache for use by one thread */
+	public Cache newCache()
+	{
+		return new Cache();
+	}
+
+	/**
+	 * Keeps the ids of the terms looked up by one thread. A term held in a {@link TermBuffer} is only
+	 * made into a String the first time that the cache sees it. Not thread-safe.
+	 */
+	public class Cache
+	{
+		/** the terms seen by this cache */
+		final TermDictionary local = new TermDictionary();
+		/** the id in the dictionary of each term of local, by its id in local */
+		int[] globalIds = new int[1024];
+		/** number of terms of local whose ids in the dictionary are known */
+		int known = 0;
+		/** the generation of the dictionary when this cache was last cleared */
+		int cacheGeneration = generation;
+
+		/** Returns the dictionary of this cache */
+		public ConcurrentTermDictionary getDictionary()
+		{
+			return ConcurrentTermDictionary.this;
+		}
+
+		/** Returns the id of the term in the dictionary, adding it if it is not present */
+		public int getId(TermBuffer term)
+		{
+			check();
+			final int localId = local.getId(term);
+			if (localId >= 0)
+				return globalIds[localId];
+			return learn(local.add(term));
+		}
+
+		/** Returns the id of the term in the dictionary, adding it if it is not present */
+		public int getId(String term)
+		{
+			check();
+			final int localId = local.add(term);
+			if (localId < known)
+				return globalIds[localId];
+			return learn(localId);
+		}
+
+		/** finds the id in the dictionary of a term just added to local */
+		int learn(int localId)
+		{
+			final int globalId = ConcurrentTermDictionary.this.getId(local.getTerm(localId));
+			if (localId == globalIds.length)
+				globalIds = Arrays.copyOf(globalIds, localId * 2);
+			globalIds[localId] = globalId;
+			known = localId + 1;
+			return globalId;
+		}
+
+		/** clears the cache if the dictionary has been cleared, or if the cache is too large */
+		void check()
+		{
+			if (cacheGeneration != generation || known >= MAX_CACHED_TERMS)
+			{
+				local.clear();
+				known = 0;
+				cacheGeneration = generation;
+			}
+		}
+	}
+}
@@ -237,6 +237,20 @@ public class StringTools {
 		return new String(chars);
 	}
 
+	/**
+	 * Lowercases the first length characters of the array in place, as {@link #toLowerCase(String)}.
+	 * @param chars the characters to lowercase
+	 * @param length the number of characters to lowercase
+	 * @since 5.4
+	 */
+	public static final void toLowerCase(char[] chars, int length) {
+		for (int i = 0; i < length; i++) {
+			final char k = chars[i];
+			final char c = k < 192 ? LOWER_CASE[k] : k;
+			chars[i] = c != 0 ? c : k;
+		}
+	}
+
 	public static final String toUpperCase(String value) {
 		char[] chars = value.toCharArray();
 
@@ -0,0 +1,175 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org 
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TermDictionary.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ */
+package org.terrier.utility;
+
+import java.util.Arrays;
+
+import org.terrier.terms.TermBuffer;
+
+/**
+ * Assigns consecutive int ids to terms, and keeps one String for each. Unlike {@link TermCodes},
+ * terms can be looked up from a {@link TermBuffer}, such that a String is only created the first time a term
+ * is seen. Hence {@link #intern(TermBuffer)} obtains the String of a term without allocating for each occurrence.
+ * Ids are valid until {@link #clear()} is called. Not thread-safe.
+ * @since 5.4
+ */
+public class TermDictionary
+{
+	/** id+1 of the term in each slot of the open-addressing table, or 0 if the slot is empty */
+	protected int[] table;
+	/** the hash code of each term, by id */
+	protected int[] hashes;
+	/** the String of each term, by id */
+	protected String[] terms;
+	/** number of terms */
+	protected int size = 0;
+
+	/** Constructs an empty dictionary */
+	public TermDictionary()
+	{
+		this(1024);
+	}
+
+	/** Constructs an empty dictionary, sized for the expected number of terms */
+	public TermDictionary(int expectedTerms)
+	{
+		int capacity = 16;
+		while (capacity < expectedTerms * 2)
+			capacity <<= 1;
+		table = new int[capacity];
+		hashes = new int[capacity / 2];
+		terms = new String[capacity / 2];
+	}
+
+	/** Returns the number of terms in the dictionary */
+	public int size()
+	{
+		return size;
+	}
+
+	static int spread(int h)
+	{
+		return h ^ (h >>> 16);
+	}
+
+	/** Returns the slot of the term in the table, or the empty slot where it would be added */
+	protected int slot(TermBuffer term, int hash)
+	{
+		final int mask = table.length - 1;
+		int slot = spread(hash) & mask;
+		int entry;
+		while ((entry = table[slot]) != 0)
+		{
+			if (hashes[entry-1] == hash && term.contentEquals(terms[entry-1]))
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/** Returns the id of the term, or -1 if it is not in the dictionary */
+	public int getId(TermBuffer term)
+	{
+		return table[slot(term, term.termHashCode())] - 1;
+	}
+
+	/** Returns the id of the term, adding it to the dictionary if it is not present */
+	public int add(TermBuffer term)
+	{
+		final int hash = term.termHashCode();
+		final int slot = slot(term, hash);
+		if (table[slot] != 0)
+			return table[slot] - 1;
+		return put(slot, term.toString(), hash);
+	}
+
+	/** Returns the id of the term, adding it to the dictionary if it is not present */
+	public int add(String term)
+	{
+		final int hash = term.hashCode();
+		final int mask = table.length - 1;
+		int slot = spread(hash) & mask;
+		int entry;
+		while ((entry = table[slot]) != 0)
+		{
+			if (hashes[entry-1] == hash && terms[entry-1].equals(term))
+				return entry - 1;
+			slot = (slot + 1) & mask;
+		}
+		return put(slot, term, hash);
+	}
+
+	protected int put(int slot, String term, int hash)
+	{
+		final int id = size++;
+		if (id == terms.length)
+		{
+			terms = Arrays.copyOf(terms, id * 2);
+			hashes = Arrays.copyOf(hashes, id * 2);
+		}
+		terms[id] = term;
+		hashes[id] = hash;
+		table[slot] = id + 1;
+		//keep the table at most half full
+		if (size * 2 > table.length)
+			rehash(table.length * 2);
+		return id;
+	}
+
+	protected void rehash(int capacity)
+	{
+		final int[] newTable = new int[capacity];
+		final int mask = capacity - 1;
+		for(int id=0;id<size;id++)
+		{
+			int slot = spread(hashes[id]) & mask;
+			while (newTable[slot] != 0)
+				slot = (slot + 1) & mask;
+			newTable[slot] = id + 1;
+		}
+		table = newTable;
+	}
+
+	/** Returns the String of the term with the specified id */
+	public String getTerm(int id)
+	{
+		return terms[id];
+	}
+
+	/** Returns the String of the term, adding it to the dictionary if it is not present */
+	public String intern(TermBuffer term)
+	{
+		return terms[add(term)];
+	}
+
+	/** Removes all terms, such that ids are assigned from 0 again */
+	public void clear()
+	{
+		Arrays.fill(table, 0);
+		Arrays.fill(terms, 0, size, null);
+		size = 0;
+	}
+}
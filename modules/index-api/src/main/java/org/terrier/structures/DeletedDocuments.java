@@ -0,0 +1,49 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is DeletedDocuments.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *  Craig Macdonald
+ */
+package org.terrier.structures;
+
+/**
+ * Records the documents that have been deleted from an index, but whose postings
+ * remain in its structures until they are purged, e.g. by merging. Matching consults
+ * this structure, which is obtained from an index using the structure name
+ * {@link #STRUCTURE_NAME}, such that deleted documents are never retrieved.
+ * @since 5.4
+ */
+@ConcurrentReadable
+public interface DeletedDocuments
+{
+	/** name of the index structure recording the deleted documents */
+	String STRUCTURE_NAME = "deleted";
+
+	/** Returns true if the document with the specified docid has been deleted */
+	boolean isDeleted(int docid);
+
+	/** Returns the number of documents that have been deleted */
+	int getNumberOfDeletedDocuments();
+
+	/** Returns the total length of the documents that have been deleted */
+	long getNumberOfDeletedTokens();
+}
@@ -0,0 +1,80 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is DocValues.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *  Craig Macdonald
+ */
+package org.terrier.structures;
+
+/**
+ * Attributes of each document, stored column-wise such that the value of a document can
+ * be obtained cheaply for every document matched. Each column holds one attribute, taken
+ * from a metadata key at indexing time, and has one of the following types:
+ * <ul>
+ * <li>{@link #TYPE_STRING} - dictionary-encoded strings: each document has the ordinal of its
+ * value in the sorted dictionary of the column.</li>
+ * <li>{@link #TYPE_HOST} - as for strings, but the value is the lower-cased hostname of a URL.</li>
+ * <li>{@link #TYPE_LONG} - fixed-width numbers, such as dates.</li>
+ * </ul>
+ * Matching uses this structure, obtained from an index using the structure name 
+ * {@link #STRUCTURE_NAME}, to filter documents before they are scored.
+ * @since 5.4
+ */
+@ConcurrentReadable
+public interface DocValues
+{
+	/** name of the index structure holding the doc values */
+	String STRUCTURE_NAME = "docvalues";
+
+	/** type of a column of dictionary-encoded strings */
+	byte TYPE_STRING = 0;
+	/** type of a column of dictionary-encoded hostnames */
+	byte TYPE_HOST = 1;
+	/** type of a column of numbers */
+	byte TYPE_LONG = 2;
+
+	/** value of a number column for a document without a value */
+	long MISSING_LONG = Long.MIN_VALUE;
+
+	/** Returns the keys of the columns */
+	String[] getKeys();
+
+	/** Returns the number of documents with values */
+	int getNumberOfDocuments();
+
+	/** Returns the index of the column of the specified key, or -1 if there is none */
+	int getColumn(String key);
+
+	/** Returns the type of the specified column */
+	byte getType(int column);
+
+	/** Returns the sorted distinct values of the specified string or host column */
+	String[] getDictionary(int column);
+
+	/** Returns the ordinal in the dictionary of the value of the specified document, 
+	 * or -1 if the document has no value */
+	int getOrdinal(int column, int docid);
+
+	/** Returns the value of the specified document in a number column, 
+	 * or {@link #MISSING_LONG} if the document has no value */
+	long getLong(int column, int docid);
+}
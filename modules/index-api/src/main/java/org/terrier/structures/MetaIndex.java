@@ -57,7 +57,8 @@ public interface MetaIndex extends java.io.Closeable
     /** Obtain all metadata for specified document. */
     String[] getAllItems(int docid) throws IOException;
 
-    /** Obtain metadata of specified type for specified documents. */
+    /** Obtain metadata of specified type for specified documents. Return array is in the order of docids. 
+     * Implementations should prefer this to many calls to getItem(), as they may read the documents in any order. */
     String[] getItems(String Key, int[] docids) throws IOException;
     
     /** Obtain metadata of specified types for specified document. */
@@ -50,8 +50,9 @@ public interface UpdatableIndex {
 			DocumentPostingList docContents) throws Exception;
 
 	
-	/** Removes a document from the index. Returns true if successful.
-	 * No known operable implementations at this time. */
+	/** Removes a document from the index, such that it is no longer retrieved. Returns 
+	 * true if successful. Implementations record the document as deleted, and its postings 
+	 * are purged when the index is merged. */
 	public boolean removeDocument(int docid);
 	
 	/** Adds specified content contents to the named document id.
@@ -27,12 +27,20 @@
 
 package org.terrier.realtime.incremental;
 
+import org.terrier.realtime.memory.MemoryIndex;
+import org.terrier.realtime.memory.MemoryPostingSlabs;
+import org.terrier.structures.Index;
 import org.terrier.utility.ApplicationSetup;
 import org.terrier.utility.RuntimeMemoryChecker;
 
 /**
  * An IncrementalFlushPolicy that will flush an index to disk after
- * a memory-used threshold has been reached.
+ * a memory-used threshold has been reached. Postings held outside of the Java heap
+ * (<tt>memory.inverted.offheap</tt>) are not counted by the heap usage, so the
+ * index is also flushed once they use the same proportion of
+ * <tt>incremental.flushmemory.offheap.max</tt> bytes (defaults to the maximum heap size,
+ * which is the JVM's default limit of direct memory), or once the postings of
+ * the memory index use that proportion of the space they can address.
  * @author Richard McCreadie, Stuart Mackie
  * @since 4.0
  */
@@ -42,6 +50,11 @@ public class IncrementalFlushMemory extends IncrementalFlushPolicy {
 	 * Maximum memory to use before flushing to disk.
 	 */
 	private double maxMem;
+	
+	/*
+	 * Maximum memory that postings can use outside of the Java heap.
+	 */
+	private long maxOffHeap;
 
 	/**
 	 * Get max memory from terrier.properties.
@@ -50,6 +63,8 @@ public class IncrementalFlushMemory extends IncrementalFlushPolicy {
 		super(index);
 		maxMem = Double.parseDouble(ApplicationSetup.getProperty(
 				"incremental.flushmemory", "0.70"));
+		maxOffHeap = Long.parseLong(ApplicationSetup.getProperty(
+				"incremental.flushmemory.offheap.max", String.valueOf(Runtime.getRuntime().maxMemory())));
 	}
 
 	/**
@@ -63,6 +78,17 @@ public class IncrementalFlushMemory extends IncrementalFlushPolicy {
 	 * Is flushing required?
 	 */
 	public boolean flushCheck() {
+		if (index.memory.getPostingsAllocatedBytes() >= maxMem * MemoryPostingSlabs.MAX_BYTES)
+			return true;
+		//memory indices waiting to be written still hold their off-heap postings
+		long offHeap = 0;
+		synchronized (indices) {
+			for (Index i : indices)
+				if (i instanceof MemoryIndex)
+					offHeap += ((MemoryIndex) i).getOffHeapBytes();
+		}
+		if (offHeap >= maxMem * maxOffHeap)
+			return true;
 		return new RuntimeMemoryChecker(
 				ApplicationSetup.MEMORY_THRESHOLD_SINGLEPASS, maxMem)
 				.checkMemory();
@@ -54,7 +54,7 @@ public class IncrementalFlushPolicy implements Runnable {
 	/*
 	 * List of indices to flush. (Reference to list in MultiIndex).
 	 */
-	private static List<Index> indices;
+	static List<Index> indices;
 	
 	/**
 	 * Create a new flush thread.
@@ -85,32 +85,41 @@ public class IncrementalFlushPolicy implements Runnable {
 	}
 
 	/**
-	 * Flush contents of in-memory index to disk.
+	 * Flush contents of in-memory index to disk. The memory index to flush
+	 * is the one before the current memory index.
 	 */
 	public void run() {
+		flush((MemoryIndex) indices.get(indices.size() - 2));
+	}
+
+	/**
+	 * Writes the specified (frozen) in-memory index to disk, as a new partition, 
+	 * and replaces it with the on-disk index in the list of indices.
+	 * @param memory the in-memory index, which must no longer be updated
+	 * @return the ID of the new partition, or -1 if it could not be written
+	 * @since 5.4
+	 */
+	public int flush(MemoryIndex memory) {
 
 		// Index prefix and prefix ID.
-		String partition = index.prefix + "-"
-				+ index.prefixID;
+		final int partitionID = index.nextPrefixID();
+		String partition = index.prefix + "-" + partitionID;
 
 		// Write in-memory index to disk.
-		// List position indices.size()-2.
 		try {
-			((MemoryIndex) indices.get(indices.size() - 2)).write(
-					index.path, partition);
+			memory.write(index.path, partition);
 		} catch (IOException e) {
-			e.printStackTrace();
+			logger.error("***REALTIME*** IncrementalIndex could not flush " + partition, e);
+			return -1;
 		}
-
-		// Increment prefix ID.
-		index.prefixID++;
 		
 		// Update list of indices (replace memory with the disk index).
 		IndexOnDisk indexOnDisk = IndexOnDisk.createIndex(index.path, partition);
-		synchronized (indices) {
-			indices.set(indices.size() - 2, indexOnDisk);
-		}
+		// Term filter is built from the in-memory lexicon, which is cheaper to scan.
+		index.addTermFilter(indexOnDisk, memory.getLexicon());
+		index.replaceMemory(memory, indexOnDisk);
 
 		logger.info("***REALTIME*** IncrementalIndex flushed: " + partition);
+		return partitionID;
 	}
 }
@@ -29,11 +29,20 @@ package org.terrier.realtime.incremental;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -43,10 +52,16 @@ import org.terrier.indexing.Document;
 import org.terrier.querying.IndexRef;
 import org.terrier.realtime.UpdatableIndex;
 import org.terrier.realtime.memory.MemoryIndex;
+import org.terrier.realtime.multi.ShardTermFilter;
+import org.terrier.structures.BitmapDeletedDocuments;
+import org.terrier.structures.DeletedDocuments;
 import org.terrier.structures.Index;
 import org.terrier.structures.IndexOnDisk;
 import org.terrier.structures.IndexFactory;
+import org.terrier.structures.Lexicon;
+import org.terrier.structures.MetaIndex;
 import org.terrier.structures.indexing.DocumentPostingList;
+import org.terrier.structures.merging.StructureMerger;
 import org.terrier.utility.ApplicationSetup;
 
 /**
@@ -56,10 +71,18 @@ import org.terrier.utility.ApplicationSetup;
  * been flushed to disk, optionally the on-disk portion of the incremental index can then be merged
  * together (based upon a MergePolicy) and/or deleted (based upon a DeletePolicy).</p>
  * 
+ * <p>By default, flushes and merges happen in the background. On a flush, the full memory index 
+ * is frozen, and remains searchable while a flush thread writes it to disk, and a new memory index
+ * accepts documents. Merges are run one at a time by a merge thread of minimum priority. In both 
+ * cases, the list of shards is changed atomically once the new on-disk index is complete.</p>
+ * 
  * <p><b>Properties</b></p>
  * <ul><li>incremental.flush: the flush policy to use. Four possible values are supported: noflush (default), flushdocs, flushmem, flushtime</li></ul>
  * <ul><li>incremental.merge: the merge policy to use. Three possible values are supported: nomerge (default), single, geometric</li></ul>
  * <ul><li>incremental.delete: the delete policy to use. Two possible values are supported: nodelete (default), deleteFixedSize</li></ul>
+ * <ul><li>incremental.background: whether flushes and merges happen in background threads. Defaults to true.</li></ul>
+ * <ul><li>incremental.flush.maxpending: the number of frozen memory indices that may be waiting to be written 
+ * before indexing blocks. Defaults to 2.</li></ul>
  * 
  * @author Richard McCreadie, Stuart Mackie
  * @since 4.0
@@ -110,7 +133,7 @@ public class IncrementalIndex extends org.terrier.realtime.multi.MultiIndex impl
 	 * Flush, merge and delete policy.
 	 */
 	private boolean flush;
-	private IncrementalFlushPolicy flushPolicy;
+	IncrementalFlushPolicy flushPolicy;
 	private boolean merge;
 	private IncrementalMergePolicy mergePolicy;
 	private boolean delete;
@@ -123,6 +146,14 @@ public class IncrementalIndex extends org.terrier.realtime.multi.MultiIndex impl
 	
 	/** A lock that stops multiple indexing operations from happening at once **/
     Object indexingLock = new Object();
+
+	/** The threads that write frozen memory indices, and merge on-disk indices, or null if these happen in the foreground **/
+	protected ExecutorService flushThread;
+	protected ExecutorService mergeThread;
+	/** Bounds the number of frozen memory indices waiting to be written **/
+	protected Semaphore pendingFlushes;
+	/** The frozen memory indices not yet taken by a flush, in the order that they were frozen **/
+	protected final Queue<MemoryIndex> frozenIndices = new ConcurrentLinkedQueue<MemoryIndex>();
 	
 	
 	/**
@@ -260,6 +291,22 @@ public class IncrementalIndex extends org.terrier.realtime.multi.MultiIndex impl
 		policy = ApplicationSetup.getProperty("incremental.delete", "nodelete");
 		deletePolicy = IncrementalDeletePolicy.get(policy);
 
+		// Background flushing and merging
+		if ((flush || merge) && Boolean.parseBoolean(ApplicationSetup.getProperty("incremental.background", "true"))) {
+			pendingFlushes = new Semaphore(Math.max(1, Integer.parseInt(ApplicationSetup.getProperty("incremental.flush.maxpending", "2"))));
+			flushThread = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "terrier-incremental-flush");
+				t.setDaemon(true);
+				return t;
+			});
+			mergeThread = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "terrier-incremental-merge");
+				t.setDaemon(true);
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			});
+		}
+
 		logger.info("***REALTIME*** IncrementalIndex (NEW)");
 	}
 
@@ -268,21 +315,31 @@ public class IncrementalIndex extends org.terrier.realtime.multi.MultiIndex impl
 	 */
 	public void indexDocument(Document doc) throws Exception {
 
-		synchronized(indexingLock) {
-		
 		// Don't index null documents.
 		if (doc == null)
 			return;
 
+		// Tokenise the document before taking the lock, so that
+		// many threads can process documents at once.
+		final DocumentPostingList docContents = memory.tokenise(doc);
+
+		boolean frozen = false;
+		synchronized(indexingLock) {
+
 		// Index document.
-		memory.indexDocument(doc);
+		memory.indexDocument(doc.getAllProperties(), docContents);
 
 		// Check flush.
-		if (flush && flushPolicy.flushCheck() == true)
-			flush();
+		if (flush && flushPolicy.flushCheck() == true) {
+			freezeMemory();
+			frozen = true;
+		}
 		
 		}
 
+		// Flush outside the lock, which writing a frozen index needs to swap it for its partition.
+		if (frozen)
+			flushFrozen();
 	}
 
 	/**
@@ -291,6 +348,7 @@ public class IncrementalIndex extends org.terrier.realtime.multi.MultiIndex impl
 	public void indexDocument(Map<String, String> docProperties,
 			DocumentPostingList docContents) throws Exception {
 
+		boolean frozen = false;
 		synchronized(indexingLock) {
 		
 		// Don't index null documents.
@@ -301,41 +359,233 @@ public class IncrementalIndex extends org.terrier.realtime.multi.MultiIndex impl
 		memory.indexDocument(docProperties, docContents);
 
 		// Check flush.
-		if (flush && flushPolicy.flushCheck() == true)
-			flush();
+		if (flush && flushPolicy.flushCheck() == true) {
+			freezeMemory();
+			frozen = true;
+		}
 
 		}
+
+		// Flush outside the lock, which writing a frozen index needs to swap it for its partition.
+		if (frozen)
+			flushFrozen();
 	}
 
-	/** {@inheritDoc} */
+	/** {@inheritDoc}
+	 * <p>The current memory index is frozen and replaced by a new one. If flushes happen in the 
+	 * background, this only blocks while too many frozen memory indices are waiting to be written.
+	 */
 	public void flush() throws IOException {
+		synchronized(indexingLock) {
+			freezeMemory();
+		}
+		flushFrozen();
+	}
 
-		// Create new (empty) in-memory index.
+	/**
+	 * Freezes the current memory index, replacing it by a new (empty) one, and queues it to be 
+	 * written by {@link #flushFrozen()}. Called while holding the indexingLock.
+	 */
+	protected void freezeMemory() {
 		synchronized (super.indices) {
+			frozenIndices.add(memory);
 			super.indices.add(memory = new MemoryIndex());
 		}
+	}
+
+	/**
+	 * Writes the oldest frozen memory index that no flush has taken, in the background if enabled.
+	 * Must not be called while holding the indexingLock: when too many flushes are pending, this 
+	 * waits for them, and they need the indexingLock to replace their memory indices.
+	 */
+	protected void flushFrozen() throws IOException {
+		if (flushThread == null) {
+			runFlush(frozenIndices.poll());
+			return;
+		}
+		try {
+			pendingFlushes.acquire();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to flush");
+		}
+		flushThread.execute(() -> {
+			try {
+				runFlush(frozenIndices.poll());
+			} catch (Exception e) {
+				logger.error("***REALTIME*** IncrementalIndex flush failed", e);
+			} finally {
+				pendingFlushes.release();
+			}
+		});
+	}
+
+	/** Writes the specified frozen memory index to disk, then applies the delete and merge policies */
+	protected void runFlush(MemoryIndex frozen) {
 
 		// Flush old (full) in-memory index to disk.
-		flushPolicy.run();
+		final int partition = flushPolicy.flush(frozen);
+		if (partition == -1)
+			return;
 
 		// Run delete policy to remove old indices if any
 		if (delete && deletePolicy.deletePolicy() == true) {
 			deletePolicy.runPolicy(indices);
 		}
-		
+
 		// Check merge.
-		if (merge && mergePolicy.mergeCheck() == true)
+		if (! merge)
+			return;
+		if (mergeThread == null) {
+			runMerge(partition);
+			return;
+		}
+		mergeThread.execute(() -> {
+			try {
+				runMerge(partition);
+			} catch (Exception e) {
+				logger.error("***REALTIME*** IncrementalIndex merge failed", e);
+			}
+		});
+	}
+
+	/** Applies the merge policy after the specified partition was flushed */
+	protected void runMerge(int partition) {
+		mergePolicy.setFlushedPartition(partition);
+		if (mergePolicy.mergeCheck() == true)
 			((Runnable) mergePolicy).run();
-		
+	}
 
+	/**
+	 * Waits until the flushes and merges started so far in the background have completed.
+	 * @since 5.4
+	 */
+	public void waitForBackgroundTasks() throws InterruptedException {
+		try {
+			//merges are started by flushes, so wait for the flushes first
+			if (flushThread != null)
+				flushThread.submit(() -> {}).get();
+			if (mergeThread != null)
+				mergeThread.submit(() -> {}).get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e);
+		}
 	}
 
 	/** {@inheritDoc} */
 	public void close() throws IOException {
 		if (flush && flushPolicy.flushCheck() == true)
 			flush();
+		if (flushThread == null)
+			return;
+		try {
+			waitForBackgroundTasks();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		flushThread.shutdown();
+		mergeThread.shutdown();
+		try {
+			mergeThread.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
 	}
 	
+	/** Returns the ID of a new on-disk partition */
+	synchronized int nextPrefixID() {
+		return prefixID++;
+	}
+
+	/** Returns the partition ID of the specified shard, or -1 if it is not an on-disk partition of this index */
+	int getPartitionID(Index shard) {
+		if (! (shard instanceof IndexOnDisk))
+			return -1;
+		final String shardPrefix = ((IndexOnDisk) shard).getPrefix();
+		if (! shardPrefix.startsWith(prefix + "-"))
+			return -1;
+		try {
+			return Integer.parseInt(shardPrefix.substring(prefix.length() + 1));
+		} catch (NumberFormatException nfe) {
+			return -1;
+		}
+	}
+
+	/** Returns the IDs of the on-disk partitions of this index, in shard order */
+	List<Integer> getPartitions() {
+		List<Integer> partitions = new ArrayList<Integer>();
+		synchronized (indices) {
+			for (Index shard : indices) {
+				final int id = getPartitionID(shard);
+				if (id != -1)
+					partitions.add(id);
+			}
+		}
+		return partitions;
+	}
+
+	/**
+	 * Atomically replaces two on-disk partitions by the index they were merged into,
+	 * which takes the position of the first of them in the list of shards. Documents
+	 * deleted from the partitions while they were merged are deleted from the merged index.
+	 * @param merger the merger that wrote the merged index, which maps the docids of the partitions
+	 */
+	void replacePartitions(int partition1, int partition2, IndexOnDisk merged, StructureMerger merger) {
+		synchronized (indexingLock) {
+		synchronized (indices) {
+			int position = -1;
+			for (int i = indices.size() - 1; i >= 0; i--) {
+				final int id = getPartitionID(indices.get(i));
+				if (id == partition1 || id == partition2) {
+					final int sourceIndex = id == partition1 ? 1 : 2;
+					reapplyDeletions(indices.remove(i), merged, docid -> merger.getMergedDocid(sourceIndex, docid));
+					position = i;
+				}
+			}
+			if (position == -1) {
+				logger.warn("***REALTIME*** IncrementalIndex partitions " + partition1 + " and " + partition2 + " not found");
+				position = 0;
+			}
+			indices.add(position, merged);
+		}
+		}
+	}
+
+	/**
+	 * Atomically replaces a frozen memory index by the on-disk partition it was written to.
+	 * Documents deleted from the memory index while it was written are deleted from the partition.
+	 */
+	void replaceMemory(MemoryIndex frozen, IndexOnDisk written) {
+		synchronized (indexingLock) {
+		synchronized (indices) {
+			reapplyDeletions(frozen, written, docid -> docid);
+			indices.set(indices.indexOf(frozen), written);
+		}
+		}
+	}
+
+	/**
+	 * Deletes from a new shard the documents that are deleted from a shard that it replaces, 
+	 * and which have not already been purged or deleted. Called while holding the indexingLock, 
+	 * such that no document can be deleted from the replaced shard afterwards.
+	 * @param docidMap maps each docid of the replaced shard to its docid in the new shard, or -1 if it was purged
+	 */
+	protected void reapplyDeletions(Index replaced, IndexOnDisk replacement, IntUnaryOperator docidMap) {
+		if (! replaced.hasIndexStructure(DeletedDocuments.STRUCTURE_NAME))
+			return;
+		final DeletedDocuments deleted = (DeletedDocuments) replaced.getIndexStructure(DeletedDocuments.STRUCTURE_NAME);
+		if (deleted == null || deleted.getNumberOfDeletedDocuments() == 0)
+			return;
+		final int numDocs = replaced.getCollectionStatistics().getNumberOfDocuments();
+		for (int docid = 0; docid < numDocs; docid++) {
+			if (! deleted.isDeleted(docid))
+				continue;
+			final int newDocid = docidMap.applyAsInt(docid);
+			if (newDocid != -1 && removeDocument(replacement, newDocid))
+				logger.debug("***REALTIME*** IncrementalIndex re-applied deletion of " + docid + " to " + replacement.getPrefix());
+		}
+	}
+
 	/** This method prints out the last time this index was updated as a String in GMT format **/
 	@SuppressWarnings("deprecation")
 	public String getTimeOfLastUpdate() {
@@ -366,10 +616,104 @@ public class IncrementalIndex extends org.terrier.realtime.multi.MultiIndex impl
 	public void setPrefixID(int prefixID) {
 		this.prefixID = prefixID;
 	}
+	
+	/**
+	 * Builds the term filter of a shard that has been flushed or merged to disk, writes it alongside 
+	 * the shard, and records it for lexicon lookups.
+	 * @param shard the new on-disk shard
+	 * @param lexicon the lexicon containing the terms of the shard
+	 */
+	void addTermFilter(IndexOnDisk shard, Lexicon<String> lexicon) {
+		if (! useTermFilters || shard == null)
+			return;
+		try {
+			ShardTermFilter filter = ShardTermFilter.build(lexicon);
+			filter.write(shard.getPath(), shard.getPrefix());
+			setTermFilter(shard, filter);
+		} catch (IOException e) {
+			logger.warn("***REALTIME*** Could not write term filter for " + shard.getPrefix(), e);
+		}
+	}
 
+	/** {@inheritDoc}
+	 * <p>The docid is that used for matching, i.e. relative to the shards selected for matching. 
+	 * A document in the in-memory shard is removed from that shard. For a document in an on-disk 
+	 * shard, the deleted documents of the shard are updated and written alongside it. In either case,
+	 * the statistics of the shard are unchanged until the document is purged when its shard is merged,
+	 * at which point the docids of later documents change, such that a docid obtained before a 
+	 * merge may then denote another document; {@link #removeDocument(String)} is not affected.
+	 */
 	@Override
 	public boolean removeDocument(int docid) {
-		return false;
+		synchronized(indexingLock) {
+			int offset = 0;
+			for (Index shard : getSelectedShards()) {
+				final int numDocs = shard.getCollectionStatistics().getNumberOfDocuments();
+				if (docid < offset + numDocs)
+					return removeDocument(shard, docid - offset);
+				offset += numDocs;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Removes the document with the specified docno, which, unlike its docid, does not change 
+	 * when partitions are merged. The docno is looked up using the reverse meta index of each 
+	 * shard, if it has one for the <tt>docno</tt> key, or otherwise by scanning its meta index.
+	 * @return true if a document was removed
+	 * @since 5.4
+	 */
+	public boolean removeDocument(String docno) {
+		synchronized(indexingLock) {
+			for (Index shard : getSelectedShards()) {
+				try {
+					final int docid = getDocid(shard.getMetaIndex(), docno, shard.getCollectionStatistics().getNumberOfDocuments());
+					if (docid != -1)
+						return removeDocument(shard, docid);
+				} catch (IOException ioe) {
+					logger.error("***REALTIME*** Could not look up document " + docno, ioe);
+					return false;
+				}
+			}
+			return false;
+		}
+	}
+
+	/** Returns the docid of the document with the specified docno in a shard, or -1 if it has no such document */
+	protected static int getDocid(MetaIndex meta, String docno, int numDocs) throws IOException {
+		for (String key : meta.getReverseKeys())
+			if (key.equals("docno"))
+				return meta.getDocument("docno", docno);
+		for (int docid = 0; docid < numDocs; docid++)
+			if (docno.equals(meta.getItem("docno", docid)))
+				return docid;
+		return -1;
+	}
+
+	/** Removes the document with the specified docid local to the specified shard */
+	protected boolean removeDocument(Index shard, int docid) {
+		if (docid < 0)
+			return false;
+		if (shard instanceof UpdatableIndex)
+			return ((UpdatableIndex) shard).removeDocument(docid);
+		if (! (shard instanceof IndexOnDisk))
+			return false;
+		final IndexOnDisk disk = (IndexOnDisk) shard;
+		try {
+			final BitmapDeletedDocuments deleted = disk.hasIndexStructure(DeletedDocuments.STRUCTURE_NAME)
+				? (BitmapDeletedDocuments) disk.getIndexStructure(DeletedDocuments.STRUCTURE_NAME)
+				: new BitmapDeletedDocuments();
+			final int length = disk.getDocumentIndex().getDocumentLength(docid);
+			if (! deleted.delete(docid, length))
+				return false;
+			deleted.write(disk);
+			logger.debug("***REALTIME*** IncrementalIndex removeDocument (" + docid + " of " + disk.getPrefix() + ")");
+			return true;
+		} catch (IOException ioe) {
+			logger.error("***REALTIME*** Could not remove document " + docid + " of " + disk.getPrefix(), ioe);
+			return false;
+		}
 	}
 
 	@Override
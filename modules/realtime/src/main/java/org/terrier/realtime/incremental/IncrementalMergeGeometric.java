@@ -86,13 +86,13 @@ public class IncrementalMergeGeometric extends IncrementalMergePolicy implements
 
 		// 1
 		if (parts.size() == 0) {
-			parts.put(1, index.prefixID - 1);
+			parts.put(1, flushedPartition);
 			sizes.put(1, 1);
 			state();
 			return;
 		} else {
 			if (sizes.get(1) < Math.pow(g, 1)) {
-				parts.put(1, merge(parts.get(1), index.prefixID - 1));
+				parts.put(1, merge(parts.get(1), flushedPartition));
 				sizes.put(1, sizes.get(1) + 1);
 				state();
 				return;
@@ -101,13 +101,13 @@ public class IncrementalMergeGeometric extends IncrementalMergePolicy implements
 
 		// 2
 		if (parts.size() == 1) {
-			parts.put(2, index.prefixID - 1);
+			parts.put(2, flushedPartition);
 			sizes.put(2, 1);
 			state();
 			return;
 		} else {
 			if (sizes.get(2) < Math.pow(g, 2)) {
-				parts.put(2, merge(parts.get(2), index.prefixID - 1));
+				parts.put(2, merge(parts.get(2), flushedPartition));
 				sizes.put(2, sizes.get(2) + 1);
 				state();
 				return;
@@ -116,13 +116,13 @@ public class IncrementalMergeGeometric extends IncrementalMergePolicy implements
 
 		// 3
 		if (parts.size() == 2) {
-			parts.put(3, index.prefixID - 1);
+			parts.put(3, flushedPartition);
 			sizes.put(3, 1);
 			state();
 			return;
 		} else {
 			if (sizes.get(3) < Math.pow(g, 3)) {
-				parts.put(3, merge(parts.get(3), index.prefixID - 1));
+				parts.put(3, merge(parts.get(3), flushedPartition));
 				sizes.put(3, sizes.get(3) + 1);
 				state();
 				return;
@@ -146,29 +146,26 @@ public class IncrementalMergeGeometric extends IncrementalMergePolicy implements
 				index.prefix + "-" + partition2);
 
 		// Destination index.
+		final int partitionD = index.nextPrefixID();
 		IndexOnDisk indexD = IndexOnDisk.createNewIndex(index.path,
-				index.prefix + "-" + index.prefixID);
+				index.prefix + "-" + partitionD);
 
 		// Merge the index structures.
 		StructureMerger merger = new StructureMerger(src1, src2, indexD);
 		merger.mergeStructures();
+		index.addTermFilter(indexD, indexD.getLexicon());
 
 		logger.info("***REALTIME*** IncrementalIndex merged: " + partition1
-				+ " and " + partition2 + " into " + index.prefixID);
-
-		// Increment prefix ID.
-		index.prefixID++;
+				+ " and " + partition2 + " into " + partitionD);
 
 		// Update list of indices.
 		merged.add(partition1);
 		merged.add(partition2);
 		purgeMerged();
-		synchronized (indices) {
-			// FIXME
-		}
+		index.replacePartitions(partition1, partition2, indexD, merger);
 
 		// Return prefixID of new partition.
-		return index.prefixID - 1;
+		return partitionD;
 	}
 
 	/*
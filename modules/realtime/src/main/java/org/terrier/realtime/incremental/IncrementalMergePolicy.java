@@ -59,6 +59,11 @@ public class IncrementalMergePolicy {
 	 */
 	protected static List<Integer> merged = new ArrayList<Integer>();
 
+	/*
+	 * ID of the partition most recently flushed to disk.
+	 */
+	protected int flushedPartition = -1;
+
 	/**
 	 * Create a new merge thread.
 	 */
@@ -71,6 +76,15 @@ public class IncrementalMergePolicy {
 		return new IncrementalMergePolicy(index);
 	}
 
+	/**
+	 * Records the ID of the partition most recently flushed to disk, 
+	 * before the merge policy is checked and run.
+	 * @since 5.4
+	 */
+	public void setFlushedPartition(int partition) {
+		flushedPartition = partition;
+	}
+
 	/**
 	 * Delete indices which have been merged.
 	 */
@@ -27,6 +27,8 @@
 
 package org.terrier.realtime.incremental;
 
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terrier.structures.Index;
@@ -58,15 +60,20 @@ public class IncrementalMergeSingle extends IncrementalMergePolicy implements
 	 * Is merging required?
 	 */
 	public boolean mergeCheck() {
-		return indices.size() > 2;
+		return index.getPartitions().size() > 1;
 	}
 
 	/** Merge flushed index partitions into a single partition. */
 	public void run() {
 
-		// Partitions to merge.
-		int partition1 = index.prefixID - 2;
-		int partition2 = index.prefixID - 1;
+		// Partitions to merge: the first two on-disk partitions, which are
+		// adjacent, such that the order of documents is unchanged.
+		List<Integer> partitions = index.getPartitions();
+		if (partitions.size() < 2)
+			return;
+		int partition1 = partitions.get(0);
+		int partition2 = partitions.get(1);
+		int partitionD = index.nextPrefixID();
 
 		// Source index 1.
 		IndexOnDisk src1 = IndexOnDisk.createIndex(index.path,
@@ -78,26 +85,20 @@ public class IncrementalMergeSingle extends IncrementalMergePolicy implements
 
 		// Destination index.
 		IndexOnDisk indexD = IndexOnDisk.createNewIndex(index.path,
-				index.prefix + "-" + index.prefixID);
+				index.prefix + "-" + partitionD);
 
 		// Merge the index structures.
 		StructureMerger merger = new StructureMerger(src1, src2, indexD);
 		merger.mergeStructures();
+		index.addTermFilter(indexD, indexD.getLexicon());
 
 		logger.info("***REALTIME*** IncrementalIndex merged: " + partition1
-				+ " and " + partition2 + " into " + index.prefixID);
-
-		// Increment prefix ID.
-		index.prefixID++;
+				+ " and " + partition2 + " into " + partitionD);
 
 		// Update list of indices.
 		merged.add(partition1);
 		merged.add(partition2);
 		purgeMerged();
-		synchronized (indices) {
-			indices.remove(0);
-			indices.remove(0);
-			indices.add(0, indexD);
-		}
+		index.replacePartitions(partition1, partition2, indexD, merger);
 	}
 }
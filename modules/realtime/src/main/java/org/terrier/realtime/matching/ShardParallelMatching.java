@@ -0,0 +1,332 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is ShardParallelMatching.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk>
+ */
+
+package org.terrier.realtime.matching;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.matching.BaseMatching;
+import org.terrier.matching.Matching;
+import org.terrier.matching.MatchingQueryTerms;
+import org.terrier.matching.MatchingQueryTerms.QueryTermProperties;
+import org.terrier.matching.QueryResultSet;
+import org.terrier.matching.ResultSet;
+import org.terrier.matching.matchops.Operator;
+import org.terrier.matching.matchops.SingleTermOp;
+import org.terrier.querying.LocalManager;
+import org.terrier.realtime.multi.MultiIndex;
+import org.terrier.realtime.multi.MultiStats;
+import org.terrier.structures.CollectionStatistics;
+import org.terrier.structures.EntryStatistics;
+import org.terrier.structures.Index;
+import org.terrier.structures.Lexicon;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.utility.ApplicationSetup;
+
+/**
+ * Matches a query against each shard of a {@link MultiIndex} (such as an
+ * {@link org.terrier.realtime.incremental.IncrementalIndex}) in parallel, rather than walking the
+ * posting lists of the shards one after another through {@link org.terrier.realtime.multi.MultiInverted}.
+ * Each shard is matched by its own instance of the configured Matching class, e.g. daat.Full, on a
+ * pool of threads shared by all instances of this class. The per-shard top-k results are then
+ * merged into a single ResultSet, with the docids of each shard offset as for the MultiIndex.
+ *
+ * <p>To keep scores comparable across shards, each shard is matched using the collection statistics
+ * of the whole MultiIndex, and the statistics of each query term are obtained from the MultiIndex
+ * lexicon before the shards are matched. Document score modifiers are applied by the Matching
+ * of each shard. Shards are selected by the selective matching policy of the MultiIndex.</p>
+ *
+ * <p>To use, set the <tt>matching</tt> control to <tt>org.terrier.realtime.matching.ShardParallelMatching</tt>.</p>
+ *
+ * <p><b>Properties</b></p>
+ * <ul>
+ * <li><tt>multiindex.parallel.matching</tt> - the Matching class used for each shard. Defaults to daat.Full.</li>
+ * <li><tt>multiindex.parallel.threads</tt> - the number of threads shared by all instances for matching
+ * shards. Defaults to the number of available processors.</li>
+ * <li><tt>matching.retrieved_set_size</tt> - the number of documents in the merged ResultSet,
+ * or 0 for all. Defaults to 1000.</li>
+ * </ul>
+ *
+ * @author Craig Macdonald
+ * @since 5.4
+ */
+public class ShardParallelMatching implements Matching {
+
+	protected static final Logger logger = LoggerFactory.getLogger(ShardParallelMatching.class);
+
+	/** threads shared by all instances, created on first use */
+	private static ExecutorService POOL;
+
+	static synchronized ExecutorService getPool()
+	{
+		if (POOL == null)
+		{
+			final int threads = Integer.parseInt(ApplicationSetup.getProperty("multiindex.parallel.threads",
+					String.valueOf(Runtime.getRuntime().availableProcessors())));
+			POOL = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+				Thread t = new Thread(r, "terrier-shard-matching");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return POOL;
+	}
+
+	/** the index being matched */
+	protected final MultiIndex index;
+	/** name of the Matching class used for each shard */
+	protected final String shardMatchingName;
+	/** collection statistics set by {@link #setCollectionStatistics(CollectionStatistics)}, if any */
+	protected CollectionStatistics collectionStatistics = null;
+	/** Matching instances for the shards matched by the previous query */
+	protected Map<Index, Matching> shardMatchings = new IdentityHashMap<>();
+
+	/** Create a new Matching instance for the specified MultiIndex */
+	public ShardParallelMatching(Index _index)
+	{
+		if (! (_index instanceof MultiIndex))
+			throw new IllegalArgumentException(this.getClass().getSimpleName() + " requires a MultiIndex, but got " + _index);
+		this.index = (MultiIndex) _index;
+		String name = ApplicationSetup.getProperty("multiindex.parallel.matching", "daat.Full");
+		if (name.indexOf('.') == -1 || name.startsWith("daat.") || name.startsWith("taat."))
+			name = LocalManager.NAMESPACE_MATCHING + name;
+		this.shardMatchingName = name;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getInfo() {
+		return "ShardParallelMatching(" + shardMatchingName + ")";
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void setCollectionStatistics(CollectionStatistics cs) {
+		this.collectionStatistics = cs;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public ResultSet match(String queryNumber, MatchingQueryTerms queryTerms) throws IOException
+	{
+		final List<Index> shards = index.getSelectedShards();
+		final int shardCount = shards.size();
+		if (shardCount == 0)
+			return new QueryResultSet(0);
+		final CollectionStatistics globalStats = collectionStatistics != null
+			? collectionStatistics
+			: getCollectionStatistics(shards);
+
+		//record the statistics of the whole index for each query term, so the shards score alike
+		final Lexicon<String> lexicon = index.getLexicon();
+		for (Map.Entry<Operator, QueryTermProperties> entry : queryTerms)
+		{
+			if (entry.getValue().stats == null)
+				entry.getValue().stats = getStatistics(entry.getKey(), lexicon);
+		}
+
+		final Matching[] matchings = getShardMatchings(shards, globalStats);
+		final int[] offsets = new int[shardCount];
+		int currentOffset = 0;
+		for (int i = 0; i < shardCount; i++)
+		{
+			offsets[i] = currentOffset;
+			currentOffset += shards.get(i).getCollectionStatistics().getNumberOfDocuments();
+		}
+
+		//the first shard is matched by this thread, the others are matched by the pool
+		final ResultSet[] results = new ResultSet[shardCount];
+		final List<Future<ResultSet>> futures = new ArrayList<>(shardCount);
+		final ExecutorService pool = shardCount > 1 ? getPool() : null;
+		for (int i = 1; i < shardCount; i++)
+		{
+			final Matching m = matchings[i];
+			//matching alters the weighting models of the query terms, so each shard needs its own copy
+			final MatchingQueryTerms shardQueryTerms = queryTerms.clone();
+			futures.add(pool.submit(() -> m.match(queryNumber, shardQueryTerms)));
+		}
+		boolean interrupted = false;
+		try {
+			results[0] = matchings[0].match(queryNumber, shardCount > 1 ? queryTerms.clone() : queryTerms);
+			for (int i = 1; i < shardCount; i++)
+			{
+				try {
+					results[i] = futures.get(i-1).get();
+				} catch (InterruptedException ie) {
+					//return what has been matched so far, as for a deadline
+					interrupted = true;
+					break;
+				} catch (ExecutionException ee) {
+					final Throwable cause = ee.getCause();
+					if (cause instanceof IOException)
+						throw (IOException) cause;
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					throw new IOException(cause);
+				}
+			}
+		} finally {
+			for (Future<ResultSet> f : futures)
+				f.cancel(true);
+		}
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+			if (results[0] == null)
+				throw new InterruptedIOException("Interrupted while matching query " + queryNumber);
+		}
+		ResultSet rtr = merge(results, offsets, getRetrievedSetSize());
+		if (interrupted)
+			rtr.setStatusCode(BaseMatching.STATUS_TIMEOUT);
+		return rtr;
+	}
+
+	/** Merges the ResultSets of the shards, which are each sorted by descending score, into a single ResultSet
+	 * of at most the specified number of documents. Shards with a null ResultSet are ignored.
+	 * @param results ResultSet of each shard
+	 * @param offsets docid offset of each shard
+	 * @param size maximum number of documents in the merged ResultSet, or 0 for all.
+	 * @return merged ResultSet
+	 */
+	protected static ResultSet merge(ResultSet[] results, int[] offsets, int size)
+	{
+		final int shardCount = results.length;
+		int available = 0;
+		int exact = 0;
+		int statusCode = 0;
+		for (ResultSet rs : results)
+		{
+			if (rs == null)
+				continue;
+			available += rs.getResultSize();
+			exact += rs.getExactResultSize();
+			if (rs.getStatusCode() == BaseMatching.STATUS_TIMEOUT)
+				statusCode = BaseMatching.STATUS_TIMEOUT;
+		}
+		if (size == 0 || size > available)
+			size = available;
+
+		final int[] docids = new int[size];
+		final double[] scores = new double[size];
+		final short[] occurrences = new short[size];
+		//position reached in each shard; there are few shards, so each is checked for the next best
+		final int[] positions = new int[shardCount];
+		for (int rank = 0; rank < size; rank++)
+		{
+			int best = -1;
+			double bestScore = 0;
+			for (int s = 0; s < shardCount; s++)
+			{
+				if (results[s] == null || positions[s] >= results[s].getResultSize())
+					continue;
+				final double score = results[s].getScores()[positions[s]];
+				if (best == -1 || score > bestScore)
+				{
+					best = s;
+					bestScore = score;
+				}
+			}
+			final int pos = positions[best]++;
+			docids[rank] = results[best].getDocids()[pos] + offsets[best];
+			scores[rank] = bestScore;
+			final short[] shardOccurrences = results[best].getOccurrences();
+			if (shardOccurrences != null)
+				occurrences[rank] = shardOccurrences[pos];
+		}
+		ResultSet rtr = new QueryResultSet(docids, scores, occurrences);
+		rtr.setExactResultSize(Math.max(exact, size));
+		rtr.setStatusCode(statusCode);
+		return rtr;
+	}
+
+	/** Returns the Matching instances for the specified shards, reusing those of the previous query
+	 * where the shard has not changed, e.g. by a flush or merge */
+	protected Matching[] getShardMatchings(List<Index> shards, CollectionStatistics globalStats) throws IOException
+	{
+		final Map<Index, Matching> current = new IdentityHashMap<>();
+		final Matching[] rtr = new Matching[shards.size()];
+		int i = 0;
+		for (Index shard : shards)
+		{
+			Matching m = shardMatchings.get(shard);
+			if (m == null)
+			{
+				try{
+					m = ApplicationSetup.getClass(shardMatchingName).asSubclass(Matching.class)
+						.getConstructor(Index.class).newInstance(shard);
+				} catch (Exception e) {
+					throw new IOException("Could not create matching " + shardMatchingName + " for shard " + shard, e);
+				}
+			}
+			m.setCollectionStatistics(globalStats);
+			current.put(shard, m);
+			rtr[i++] = m;
+		}
+		shardMatchings = current;
+		return rtr;
+	}
+
+	/** Returns the statistics of the specified query term in the whole MultiIndex, or null if it does not occur */
+	protected EntryStatistics getStatistics(Operator term, Lexicon<String> lexicon) throws IOException
+	{
+		if (term instanceof SingleTermOp)
+			return lexicon.getLexiconEntry(((SingleTermOp) term).getTerm());
+		Pair<EntryStatistics,IterablePosting> pair = term.getPostingIterator(index);
+		if (pair == null)
+			return null;
+		if (pair.getRight() != null)
+			pair.getRight().close();
+		return pair.getLeft();
+	}
+
+	/** Returns the collection statistics of the specified shards taken together */
+	protected static CollectionStatistics getCollectionStatistics(List<Index> shards)
+	{
+		CollectionStatistics[] stats = new CollectionStatistics[shards.size()];
+		int i = 0;
+		for (Index shard : shards)
+			stats[i++] = shard.getCollectionStatistics();
+		return MultiStats.factory(stats);
+	}
+
+	/** Returns the maximum number of documents in the merged ResultSet, or 0 for all */
+	protected static int getRetrievedSetSize()
+	{
+		return Integer.parseInt(ApplicationSetup.getProperty("matching.retrieved_set_size", "1000"));
+	}
+}
@@ -0,0 +1,304 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is CompressedMemoryPostingList.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk>
+ */
+
+package org.terrier.realtime.memory;
+
+import java.util.Arrays;
+
+import org.terrier.structures.postings.IterablePosting;
+
+/**
+ * A posting list that is appended to a chain of chunks allocated from {@link MemoryPostingSlabs}.
+ * Each posting is written as variable-length ints: the gap from the previous docid, the
+ * frequency, then the frequency in each field, if any. Chunks double in size from 16 bytes
+ * up to 4KB, and the last 4 bytes of each chunk hold the address of the next.
+ * <p>The last posting is held uncompressed until a posting for a later docid is added, such
+ * that the frequencies of the most recently added document can be updated cheaply. Adding a
+ * posting for an earlier docid rewrites the whole list into new chunks, which should be rare.
+ * <p>A {@link Cursor} iterates over the postings that had been added when it was obtained,
+ * and is unaffected by postings added later. A cursor can also be limited to docids below
+ * a high-water mark, such that the postings of a document still being indexed are not read.
+ * @since 5.4
+ */
+public class CompressedMemoryPostingList implements MemoryPostingList {
+
+	static final int MAX_LEVEL = 8;
+
+	/** Returns the size of the chunks at the specified level */
+	static int chunkSize(int level) {
+		return 16 << Math.min(level, MAX_LEVEL);
+	}
+
+	protected final MemoryPostingSlabs slabs;
+	protected final int numberOfFields;
+	/** address of the first chunk */
+	protected int head;
+	/** address at which the next byte is written */
+	protected int writeAddress;
+	/** address of the pointer to the next chunk, at the end of the current chunk */
+	protected int chunkEnd;
+	protected int level;
+	/** number of postings written to the chunks */
+	protected int encoded;
+	protected int lastEncodedDocid;
+	/** the last posting, not yet written to the chunks, or -1 if the list is empty */
+	protected int pendingDocid;
+	protected int pendingFreq;
+	protected final int[] pendingFields;
+
+	/**
+	 * Creates an empty posting list.
+	 * @param slabs the storage to allocate chunks from
+	 * @param numberOfFields the number of field frequencies of each posting
+	 */
+	public CompressedMemoryPostingList(MemoryPostingSlabs slabs, int numberOfFields) {
+		this.slabs = slabs;
+		this.numberOfFields = numberOfFields;
+		this.pendingFields = new int[numberOfFields];
+		reset();
+	}
+
+	protected void reset() {
+		level = 0;
+		head = writeAddress = slabs.allocate(chunkSize(0));
+		chunkEnd = head + chunkSize(0) - 4;
+		encoded = 0;
+		lastEncodedDocid = -1;
+		pendingDocid = -1;
+	}
+
+	/** Returns the number of postings */
+	public synchronized int size() {
+		return encoded + (pendingDocid != -1 ? 1 : 0);
+	}
+
+	/**
+	 * Adds a posting, or adds to the frequencies of an existing posting for the same docid.
+	 * @param docid the docid of the posting
+	 * @param freq the frequency to add
+	 * @param fields the field frequencies to add, or null if there are none
+	 * @return true if a new posting was added, false if the docid already had a posting
+	 */
+	public synchronized boolean addOrUpdate(int docid, int freq, int[] fields) {
+		if (docid == pendingDocid) {
+			pendingFreq += freq;
+			addFields(pendingFields, fields);
+			return false;
+		}
+		if (docid > pendingDocid) {
+			append(docid, freq, fields);
+			return true;
+		}
+		return rebuild(docid, freq, fields);
+	}
+
+	/** Returns a cursor over the postings added so far */
+	public Cursor cursor() {
+		return cursor(Integer.MAX_VALUE);
+	}
+
+	/** Returns a cursor over the postings added so far with docids less than limit */
+	public synchronized Cursor cursor(int limit) {
+		return new Cursor(this, limit);
+	}
+
+	protected void append(int docid, int freq, int[] fields) {
+		if (pendingDocid != -1)
+			encodePending();
+		pendingDocid = docid;
+		pendingFreq = freq;
+		Arrays.fill(pendingFields, 0);
+		addFields(pendingFields, fields);
+	}
+
+	protected void encodePending() {
+		writeVInt(pendingDocid - lastEncodedDocid);
+		writeVInt(pendingFreq);
+		for (int i = 0; i < numberOfFields; i++)
+			writeVInt(pendingFields[i]);
+		lastEncodedDocid = pendingDocid;
+		encoded++;
+	}
+
+	/** Rewrites the list into new chunks, with the posting for the specified earlier docid added */
+	protected boolean rebuild(int docid, int freq, int[] fields) {
+		final Cursor c = new Cursor(this, Integer.MAX_VALUE);
+		int n = c.size();
+		final int[] docids = new int[n + 1];
+		final int[] freqs = new int[n + 1];
+		final int[][] fieldFreqs = new int[n + 1][];
+		for (int i = 0; i < n; i++) {
+			docids[i] = c.next();
+			freqs[i] = c.getFrequency();
+			fieldFreqs[i] = c.getFields().clone();
+		}
+		int index = Arrays.binarySearch(docids, 0, n, docid);
+		final boolean isNew = index < 0;
+		if (isNew) {
+			index = -(index + 1);
+			System.arraycopy(docids, index, docids, index + 1, n - index);
+			System.arraycopy(freqs, index, freqs, index + 1, n - index);
+			System.arraycopy(fieldFreqs, index, fieldFreqs, index + 1, n - index);
+			docids[index] = docid;
+			freqs[index] = 0;
+			fieldFreqs[index] = new int[numberOfFields];
+			n++;
+		}
+		freqs[index] += freq;
+		addFields(fieldFreqs[index], fields);
+
+		//the old chunks are left for any cursors still reading them
+		reset();
+		for (int i = 0; i < n; i++)
+			append(docids[i], freqs[i], fieldFreqs[i]);
+		return isNew;
+	}
+
+	protected static void addFields(int[] dest, int[] fields) {
+		if (fields == null)
+			return;
+		final int l = Math.min(dest.length, fields.length);
+		for (int i = 0; i < l; i++)
+			dest[i] += fields[i];
+	}
+
+	protected void writeVInt(int value) {
+		while ((value & ~0x7F) != 0) {
+			writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		writeByte(value);
+	}
+
+	protected void writeByte(int b) {
+		if (writeAddress == chunkEnd) {
+			final int size = chunkSize(++level);
+			final int next = slabs.allocate(size);
+			slabs.putInt(chunkEnd, next);
+			writeAddress = next;
+			chunkEnd = next + size - 4;
+		}
+		slabs.put(writeAddress++, (byte) b);
+	}
+
+	/** Iterates over the postings of a CompressedMemoryPostingList, as they were when the cursor was obtained */
+	public static class Cursor {
+		protected final MemoryPostingSlabs slabs;
+		protected final int limit;
+		protected final int size;
+		protected int remaining;
+		protected int encodedRemaining;
+		protected int address;
+		protected int chunkEnd;
+		protected int level = 0;
+		protected int docid = -1;
+		protected int freq;
+		protected final int[] fields;
+		protected final int pendingDocid;
+		protected final int pendingFreq;
+		protected final int[] pendingFields;
+
+		Cursor(CompressedMemoryPostingList pl, int limit) {
+			this.slabs = pl.slabs;
+			this.limit = limit;
+			//postings are appended in docid order, so only the last can be a document still being indexed
+			this.size = this.remaining = pl.encoded + (pl.pendingDocid != -1 && pl.pendingDocid < limit ? 1 : 0);
+			this.encodedRemaining = pl.encoded;
+			this.address = pl.head;
+			this.chunkEnd = pl.head + chunkSize(0) - 4;
+			this.fields = new int[pl.numberOfFields];
+			this.pendingDocid = pl.pendingDocid;
+			this.pendingFreq = pl.pendingFreq;
+			this.pendingFields = pl.pendingFields.clone();
+		}
+
+		/** Returns the number of postings */
+		public int size() {
+			return size;
+		}
+
+		/** Returns true if no postings remain after the current one */
+		public boolean endOfPostings() {
+			return remaining == 0;
+		}
+
+		/** Moves to the next posting, returning its docid, or {@link IterablePosting#EOL} */
+		public int next() {
+			if (remaining == 0 || docid >= limit)
+				return docid = IterablePosting.EOL;
+			remaining--;
+			if (encodedRemaining > 0) {
+				encodedRemaining--;
+				docid += readVInt();
+				freq = readVInt();
+				for (int i = 0; i < fields.length; i++)
+					fields[i] = readVInt();
+				if (docid >= limit) {
+					remaining = 0;
+					return docid = IterablePosting.EOL;
+				}
+			} else {
+				docid = pendingDocid;
+				freq = pendingFreq;
+				System.arraycopy(pendingFields, 0, fields, 0, fields.length);
+			}
+			return docid;
+		}
+
+		/** Returns the docid of the current posting */
+		public int getId() {
+			return docid;
+		}
+
+		/** Returns the frequency of the current posting */
+		public int getFrequency() {
+			return freq;
+		}
+
+		/** Returns the field frequencies of the current posting. The array is reused by later postings. */
+		public int[] getFields() {
+			return fields;
+		}
+
+		protected int readVInt() {
+			int b = readByte();
+			int value = b & 0x7F;
+			for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+				b = readByte();
+				value |= (b & 0x7F) << shift;
+			}
+			return value;
+		}
+
+		protected int readByte() {
+			if (address == chunkEnd) {
+				address = slabs.getInt(chunkEnd);
+				chunkEnd = address + chunkSize(++level) - 4;
+			}
+			return slabs.get(address++);
+		}
+	}
+}
@@ -76,6 +76,12 @@ public class MemoryCollectionStatistics extends CollectionStatistics implements
             fieldTokens[fi] += ftokens[fi];
     }
     
+    /** Returns a copy of these statistics, which is not changed by later updates. */
+    public MemoryCollectionStatistics copy() {
+        return new MemoryCollectionStatistics(numberOfDocuments, numberOfUniqueTerms,
+            numberOfTokens, numberOfPointers, fieldTokens.clone(), fieldNames);
+    }
+
     /** Relcaluate average lengths. */
     public void relcaluate() {
         this.recalculateAverageLengths();
@@ -240,6 +240,12 @@ public class MemoryCompressedMetaIndex extends MemoryMetaIndex implements MetaIn
 		return -1;
 	}
 
+	/** Returns no keys, as reverse lookups are not implemented. */
+	@Override
+	public String[] getReverseKeys() {
+		return new String[0];
+	}
+
 	/**
 	 * Delete contents of metadata index (but keep keys).
 	 */
@@ -27,10 +27,9 @@
 
 package org.terrier.realtime.memory;
 
-import gnu.trove.TIntArrayList;
-
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map.Entry;
 
@@ -41,7 +40,10 @@ import org.terrier.structures.collections.MapEntry;
 
 /**
  * An in-memory version of the Document index. Stores the length
- * of each document.
+ * of each document. The lengths can be read while documents are being added:
+ * the array of lengths is grown by copying, and is reassigned only once complete,
+ * while readers do not go beyond the number of visible documents (see 
+ * {@link #setVisibleDocuments(int)}).
  * 
  * @author Richard McCreadie, Stuart Mackie
  * @since 4.0
@@ -50,7 +52,11 @@ public class MemoryDocumentIndex implements DocumentIndex,Serializable {
 
 	private static final long serialVersionUID = -7639008149037297229L;
 	/* Document lengths. */
-	public TIntArrayList docLengths = new TIntArrayList();
+	protected volatile int[] docLengths = new int[1024];
+	/** the number of documents added */
+	protected volatile int numberOfDocuments = 0;
+	/** the number of documents that can be read */
+	protected volatile int visibleDocuments = Integer.MAX_VALUE;
 
 	/**
 	 * Constructor.
@@ -62,29 +68,50 @@ public class MemoryDocumentIndex implements DocumentIndex,Serializable {
 	 * Add document length to document index.
 	 */
 	public void addDocument(int length) {
-		docLengths.add(length);
+		final int docid = numberOfDocuments;
+		int[] l = docLengths;
+		if (docid >= l.length)
+			l = Arrays.copyOf(l, l.length * 2);
+		l[docid] = length;
+		//the array is (re)assigned after the length is written, and before the document is counted
+		docLengths = l;
+		numberOfDocuments = docid + 1;
 	}
 	
 	public void setLength(int docid, int newLength) {
-		docLengths.set(docid, newLength);
+		checkDocid(docid);
+		docLengths[docid] = newLength;
+	}
+
+	/** Sets the number of documents that can be read. Documents with larger docids,
+	 * which are still being indexed, are not counted or iterated over. */
+	public void setVisibleDocuments(int numberOfDocuments) {
+		visibleDocuments = numberOfDocuments;
+	}
+
+	/** Throws an exception if no document with the specified docid has been added */
+	protected void checkDocid(int docid) {
+		if (docid < 0 || docid >= numberOfDocuments)
+			throw new ArrayIndexOutOfBoundsException(docid);
 	}
 
 	/** {@inheritDoc} */
 	public DocumentIndexEntry getDocumentEntry(int docid) throws IOException {
 		BasicDocumentIndexEntry die = new BasicDocumentIndexEntry();
 		die.setOffset(docid, (byte)0);
-		die.setDocumentLength(docLengths.get(docid));
+		die.setDocumentLength(getDocumentLength(docid));
 		return die;
 	}
 
 	/** {@inheritDoc} */
 	public int getDocumentLength(int docid) throws IOException {
-		return docLengths.get(docid);
+		checkDocid(docid);
+		return docLengths[docid];
 	}
 
 	/** {@inheritDoc} */
 	public int getNumberOfDocuments() {
-		return docLengths.size();
+		return Math.min(visibleDocuments, numberOfDocuments);
 	}
 
 	/**
@@ -110,12 +137,12 @@ public class MemoryDocumentIndex implements DocumentIndex,Serializable {
 
 		// private Iterator<DocumentIndexEntry> iter = null;
 		public boolean hasNext() {
-			return index < docLengths.size();
+			return index < MemoryDocumentIndex.this.getNumberOfDocuments();
 		}
 
 		public Entry<Integer, DocumentIndexEntry> next() {
 			BasicDocumentIndexEntry die = new BasicDocumentIndexEntry();
-			die.setDocumentLength(docLengths.get(index));
+			die.setDocumentLength(docLengths[index]);
 			Entry<Integer, DocumentIndexEntry> e = new MapEntry<Integer, DocumentIndexEntry>(index, die);
 			index++;
 			return e;
@@ -133,12 +160,12 @@ public class MemoryDocumentIndex implements DocumentIndex,Serializable {
 
 		// private Iterator<DocumentIndexEntry> iter = null;
 		public boolean hasNext() {
-			return index < docLengths.size();
+			return index < MemoryDocumentIndex.this.getNumberOfDocuments();
 		}
 
 		public DocumentIndexEntry next() {
 			BasicDocumentIndexEntry die = new BasicDocumentIndexEntry();
-			die.setDocumentLength(docLengths.get(index));
+			die.setDocumentLength(docLengths[index]);
 			index++;
 			return die;
 		}
@@ -72,7 +72,7 @@ public class MemoryDocumentIndexMap extends MemoryDocumentIndex {
 	
 	@Override
 	public void addDocument(int length) {
-		int docid = docLengths.size();
+		int docid = numberOfDocuments;
 		super.addDocument(length);
 		docids2lengths.put(docid, length);
 	}
@@ -45,8 +45,10 @@ import org.terrier.realtime.WritableIndex;
 import org.terrier.structures.indexing.DiskIndexWriter;
 import org.terrier.structures.AbstractPostingOutputStream;
 import org.terrier.structures.BasicLexiconEntry;
+import org.terrier.structures.BitmapDeletedDocuments;
 import org.terrier.structures.BitIndexPointer;
 import org.terrier.structures.CollectionStatistics;
+import org.terrier.structures.DeletedDocuments;
 import org.terrier.structures.DocumentIndex;
 import org.terrier.structures.DocumentIndexEntry;
 import org.terrier.structures.FSOMapFileLexiconOutputStream;
@@ -81,6 +83,11 @@ import org.terrier.utility.FieldScore;
  * A MemoryIndex is also writable, i.e. it has a write() method that will convert
  * it to an IndexOnDisk and write it out to the location specified by terrier.index.path
  * and with prefix terrier.index.prefix.
+ * <p>Documents can be indexed by many threads at once. Each thread applies its own term
+ * pipeline to its documents, and the indexingLock is only held while the resulting
+ * DocumentPostingList is added to the index structures. Searches do not take any lock:
+ * a document becomes visible to searches, along with its contribution to the collection
+ * statistics, once all of its postings have been added (see {@link #publish()}). 
  * 
  * @author Richard McCreadie, Dyaa Albakour 
  * @since 4.0
@@ -99,7 +106,11 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 	protected MemoryMetaIndex metadata;
 	protected MemoryDocumentIndex document;
 	protected MemoryCollectionStatistics stats;
+	/** a copy of stats for the documents that are visible to searches */
+	protected volatile MemoryCollectionStatistics visibleStats;
 	protected MemoryDirectIndex direct;
+	/** the documents that have been removed from this index */
+	protected BitmapDeletedDocuments deleted = new BitmapDeletedDocuments();
 	
     // Blocks and fields.
     protected boolean      blocks    = (ApplicationSetup.getProperty("block.indexing", "").equals("")) ? false : true;
@@ -108,8 +119,11 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
     public TObjectIntHashMap<String> fieldIDs;
 	
     
-    /** A lock that stops multiple indexing operations from happening at once **/
+    /** A lock that stops multiple indexing operations from updating the index structures at once **/
     protected Object indexingLock = new Object();
+
+    /** The tokeniser of each thread indexing documents, as term pipelines are not thread-safe */
+    protected final ThreadLocal<DocumentTokeniser> tokenisers = ThreadLocal.withInitial(this::newDocumentTokeniser);
     
     // Compression code for writing
     protected CompressionConfiguration compressionInvertedConfig;
@@ -141,6 +155,7 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
     	this.inverted = inverted;
     	this.metadata = metadata;
     	this.stats = stats;
+    	publish();
     }
 
 	/**
@@ -166,9 +181,9 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 		inverted = new MemoryInvertedIndex(lexicon, document);
 		metadata = new MemoryMetaIndex();
 		stats = new MemoryCollectionStatistics(0, 0, 0, 0, new long[fieldtags.length], fieldtags);
-		load_pipeline(); // For term processing (stemming, stop-words).
 
 		direct = new MemoryDirectIndex(document);
+		publish();
 		
 		logger.info("***REALTIME*** MemoryIndex (NEW)");
 	}
@@ -187,6 +202,8 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 			return getCollectionStatistics();
 		if (structureName.equalsIgnoreCase("direct"))
 			return direct;
+		if (structureName.equalsIgnoreCase(DeletedDocuments.STRUCTURE_NAME))
+			return deleted;
 		else
 			return null;
 	}
@@ -216,6 +233,17 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 		return inverted;
 	}
 
+	/** Returns the number of bytes allocated for the postings of the inverted index */
+	public long getPostingsAllocatedBytes() {
+		return inverted != null ? inverted.getAllocatedBytes() : 0;
+	}
+
+	/** Returns the number of bytes allocated for postings outside of the Java heap, 
+	 * which are not counted by the JVM's heap usage */
+	public long getOffHeapBytes() {
+		return inverted != null ? inverted.getOffHeapBytes() : 0;
+	}
+
 	/** {@inheritDoc} */
 	public MetaIndex getMetaIndex() {
 		return metadata;
@@ -226,9 +254,11 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 		return document;
 	}
 
-	/** {@inheritDoc} */
+	/** {@inheritDoc} 
+	 * <p>The statistics are those of the documents visible to searches, and are not changed
+	 * by documents indexed later. */
 	public CollectionStatistics getCollectionStatistics() {
-		return stats;
+		return visibleStats;
 	}
 
 	/** Not implemented. */
@@ -241,22 +271,45 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 	}
 
 	/**
-	 * Index a new document.
+	 * Index a new document. The document is processed by the term pipeline
+	 * of the calling thread, before the indexingLock is obtained.
 	 */
 	public void indexDocument(Document doc) throws Exception {
+		// Don't index null documents.
+		if (doc == null)
+			return;
+		indexDocument(doc.getAllProperties(), tokenise(doc));
+	}
 
-		synchronized(indexingLock) {
-			// Don't index null documents.
-			if (doc == null)
-				return;
-	
-			// Process terms through term pipeline.
-			docPostings = new DocumentPostingList();
-			while (!doc.endOfDocument())
-				pipeline_first.processTerm(doc.getNextTerm());
-	
-			indexDocument(doc.getAllProperties(), docPostings);
-		}
+	/**
+	 * Processes the terms of the specified document through the term pipeline of
+	 * the calling thread, and returns its postings. No lock is held, so many threads
+	 * can tokenise documents at once.
+	 * @since 5.4
+	 */
+	public DocumentPostingList tokenise(Document doc) {
+		return tokenisers.get().tokenise(doc);
+	}
+
+	/**
+	 * Makes the documents indexed so far visible to searches, along with the collection
+	 * statistics that include them, and the statistics of their terms. Called while holding 
+	 * the indexingLock, once the structures of a document are complete. Posting lists, the 
+	 * document index and the meta index only return documents with docids below the number 
+	 * of visible documents, so that a search never sees a document that is partially indexed.
+	 * @since 5.4
+	 */
+	protected void publish() {
+		if (lexicon != null)
+			lexicon.publish();
+		visibleStats = stats.copy();
+		final int numberOfDocuments = stats.getNumberOfDocuments();
+		if (document != null)
+			document.setVisibleDocuments(numberOfDocuments);
+		if (metadata != null)
+			metadata.setVisibleDocuments(numberOfDocuments);
+		if (inverted != null)
+			inverted.setVisibleDocuments(numberOfDocuments);
 	}
 	
 	public boolean hasIndexStructure(String structureName) {
@@ -266,6 +319,7 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 			case "lexicon": return true;
 			case "document": return true;
 			case "meta": return true;
+			case DeletedDocuments.STRUCTURE_NAME: return true;
 			case "direct-inputstream": return true;
 			case "inverted-inputstream": return true;
 			case "lexicon-inputstream": return true;
@@ -314,6 +368,7 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 		stats.update(1, docContents.getDocumentLength(),
 				docContents.termSet().length);
 		stats.updateUniqueTerms(lexicon.numberOfEntries());
+		publish();
 
 		logger.debug("***REALTIME*** MemoryIndex indexDocument ("
 				+ stats.getNumberOfDocuments() + ")");
@@ -332,19 +387,10 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 	 * time, but do not need search functionality. 
 	 */
 	public void indexUnDocument(Document doc) throws Exception {
-
-		synchronized(indexingLock) {
-			// Don't index null documents.
-			if (doc == null)
-				return;
-	
-			// Process terms through term pipeline.
-			docPostings = new DocumentPostingList();
-			while (!doc.endOfDocument())
-				pipeline_first.processTerm(doc.getNextTerm());
-	
-			indexUnDocument(doc.getAllProperties(), docPostings);
-		}
+		// Don't index null documents.
+		if (doc == null)
+			return;
+		indexUnDocument(doc.getAllProperties(), tokenise(doc));
 	}
 	
 	
@@ -388,6 +434,7 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 		stats.update(1, docContents.getDocumentLength(),
 				docContents.termSet().length);
 		stats.updateUniqueTerms(lexicon.numberOfEntries());
+		publish();
 
 		logger.debug("***REALTIME*** MemoryIndex indexDocument ("
 				+ stats.getNumberOfDocuments() + ")");
@@ -405,14 +452,7 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 		// Don't index null documents.
 		if (doc == null)
 			return false;
-		
-		synchronized(indexingLock) {
-			// Process terms through term pipeline.
-			docPostings = new DocumentPostingList();
-			while (!doc.endOfDocument())
-				pipeline_first.processTerm(doc.getNextTerm());
-			return addToDocument(docid, docPostings);
-		}
+		return addToDocument(docid, tokenise(doc));
 	}
 
 	/** {@inheritDoc}
@@ -454,6 +494,7 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 			stats.update(0, docContents.getDocumentLength(),
 					pointers);
 			stats.updateUniqueTerms(lexicon.numberOfEntries());
+			publish();
 
 			logger.debug("***REALTIME*** MemoryIndex addToDocument ("
 					+ stats.getNumberOfDocuments() + ")");
@@ -478,6 +519,9 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 			}
 
 			Index newIndex = makeDiskIndexWriter(path, prefix).write(this);
+			//the postings of removed documents are written, so record that they are deleted
+			if (deleted.getNumberOfDeletedDocuments() > 0 && newIndex instanceof IndexOnDisk)
+				deleted.write((IndexOnDisk) newIndex);
 
 			// FIXME: why?
 			logger.debug("***REALTIME*** MemoryIndex write END");
@@ -510,32 +554,22 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 	public void flush() throws IOException {
 	}
 
-	/*
-	 * FIXME.
-	 */
-
-	/** FIXME */
-	protected DocumentPostingList docPostings;
-
-	/** FIXME */
-	protected TermPipeline pipeline_first;
-
 	/** FIXME */
 	protected final static String PIPELINE_NAMESPACE = "org.terrier.terms.";
 
-	/** FIXME */
-	protected TermPipeline getEndOfPipeline() {
-		return new BasicTermProcessor();
+	/** Returns a new tokeniser, for a thread that is indexing documents */
+	protected DocumentTokeniser newDocumentTokeniser() {
+		return new DocumentTokeniser();
 	}
 
-	/** FIXME */
-	protected void load_pipeline() {
+	/** Creates the term pipeline configured by the <tt>termpipelines</tt> property,
+	 * ending with the specified stage, and returns its first stage. */
+	protected TermPipeline createPipeline(TermPipeline last) {
 		String[] pipes = ApplicationSetup
 				.getProperty("termpipelines", "Stopwords,PorterStemmer").trim()
 				.split("\\s*,\\s*");
 
-		TermPipeline next = getEndOfPipeline();
-		final TermPipeline last = next;
+		TermPipeline next = last;
 		TermPipeline tmp;
 		for (int i = pipes.length - 1; i >= 0; i--) {
 			try {
@@ -560,16 +594,33 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 		// terms to skip the pipeline processing sequence
 		if ((skipTerms = ApplicationSetup.getProperty("termpipelines.skip",
 				null)) != null && skipTerms.trim().length() > 0)
-			pipeline_first = new SkipTermPipeline(next, last);
-		else
-			pipeline_first = next;
+			return new SkipTermPipeline(next, last);
+		return next;
 	}
 
-	/** FIXME */
-	private class BasicTermProcessor implements TermPipeline {
+	/** Processes the terms of documents through a term pipeline, of which it is the
+	 * last stage, to obtain their postings. Each indexing thread has its own. */
+	protected class DocumentTokeniser implements TermPipeline {
+		protected final TermPipeline first;
+		protected DocumentPostingList postings;
+
+		protected DocumentTokeniser() {
+			first = createPipeline(this);
+		}
+
+		/** Returns the postings of the specified document */
+		public DocumentPostingList tokenise(Document doc) {
+			postings = new DocumentPostingList();
+			while (!doc.endOfDocument())
+				first.processTerm(doc.getNextTerm());
+			final DocumentPostingList rtr = postings;
+			postings = null;
+			return rtr;
+		}
+
 		public void processTerm(String term) {
 			if (term != null) {
-				docPostings.insert(term);
+				postings.insert(term);
 			}
 		}
 
@@ -578,9 +629,28 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 		}
 	}
 	
+	/** {@inheritDoc}
+	 * <p>The document is recorded as deleted, such that it is no longer retrieved. No statistic 
+	 * is changed: the numbers of documents, tokens and pointers, and the statistics of the terms
+	 * of the document, all still count it, as docids are not reused. The postings of the document, 
+	 * along with its contribution to the statistics, remain until the index is written and then 
+	 * merged, at which point the document is purged.
+	 */
 	@Override
-	public boolean removeDocument(int docid) {		
-		return false;
+	public boolean removeDocument(int docid) {
+		synchronized(indexingLock) {
+			if (docid < 0 || docid >= stats.getNumberOfDocuments())
+				return false;
+			try {
+				if (! deleted.delete(docid, document.getDocumentLength(docid)))
+					return false;
+			} catch (IOException ioe) {
+				logger.error("Could not remove document " + docid, ioe);
+				return false;
+			}
+			logger.debug("***REALTIME*** MemoryIndex removeDocument (" + docid + ")");
+		}
+		return true;
 	}
 	
 	
@@ -633,7 +703,6 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 		lexicon = new MemoryLexicon();
 		inverted = new MemoryInvertedIndex(lexicon, superIndex.getDocumentIndex());
 		stats = new MemoryCollectionStatistics(0, 0, 0, 0, new long[] {}, fieldtags);
-		load_pipeline(); // For term processing (stemming, stop-words).
 		
 		logger.info("reading out inverted..");
 		long before = Calendar.getInstance().getTimeInMillis();
@@ -752,6 +821,7 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 
 		//WARNING: number of unique terms and the number of pointers are set to 0 (should they be the same value?)
 		stats = new MemoryCollectionStatistics(numberOfDocuments, numTerms, numberTokens, 0, new long[] {}, fieldtags);
+		publish();
 		
 		//Meta - We can just use the original meta index as we do lookups based on docid
 		//       this is covered by the following methods
@@ -28,10 +28,10 @@
 package org.terrier.realtime.memory;
 
 import gnu.trove.TIntArrayList;
-import gnu.trove.TIntObjectHashMap;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map.Entry;
 
@@ -48,6 +48,11 @@ import org.terrier.structures.postings.IterablePosting;
  * A basic inverted file implementation for use with MemoryIndex structures.
  * This version does not support fields or blocks. Since it is a memory-based
  * structure, access is via a MemoryPointer rather than BitIndexPointer.
+ * Each posting list is a {@link CompressedMemoryPostingList}, allocated from
+ * {@link MemoryPostingSlabs} shared by all terms.
+ * <p>Postings are added by one thread at a time, while any number of threads
+ * can read postings without locking. Only the postings of documents with docids
+ * below {@link #setVisibleDocuments(int)} are read.
  * 
  * @author Richard McCreadie, Stuart Mackie
  * @since 4.0
@@ -60,7 +65,11 @@ public class MemoryInvertedIndex implements PostingIndex<MemoryPointer>,Serializ
 	 */
 	protected DocumentIndex doi;
 	protected Lexicon<String> lex;
-	protected TIntObjectHashMap<MemoryPostingList> postings;
+	/** the posting list of each term, indexed by termid. Replaced when it is grown. */
+	protected volatile MemoryPostingList[] postings;
+	protected transient MemoryPostingSlabs slabs;
+	/** the number of documents that can be read from posting lists */
+	protected volatile int visibleDocuments = Integer.MAX_VALUE;
 
 	/**
 	 * Constructor.
@@ -68,82 +77,42 @@ public class MemoryInvertedIndex implements PostingIndex<MemoryPointer>,Serializ
 	public MemoryInvertedIndex(Lexicon<String> lex, DocumentIndex doi) {
 		this.lex = lex;
 		this.doi = doi;
-		postings = new TIntObjectHashMap<MemoryPostingList>();
+		postings = new MemoryPostingList[1024];
+		slabs = new MemoryPostingSlabs();
 	}
 
-	/*
-	 * Postings list.
-	 */
-	public class BasicMemoryPostingList implements MemoryPostingList {
-		private TIntArrayList pl_doc;
-		private TIntArrayList pl_freq;
-
-		public BasicMemoryPostingList() {
-			pl_doc = new TIntArrayList();
-			pl_freq = new TIntArrayList();
-		}
-		
-		public BasicMemoryPostingList(int[] docids, int[] docfreqs) {
-			pl_doc = new TIntArrayList();
-			pl_freq = new TIntArrayList();
-			pl_doc.add(docids);
-			pl_freq.add(docfreqs);
-		}
-
-		public BasicMemoryPostingList(int docid, int docfreq) {
-			pl_doc = new TIntArrayList();
-			pl_freq = new TIntArrayList();
-			pl_doc.add(docid);
-			pl_freq.add(docfreq);
-		}
-
-		public void add(int docid, int docfreq) {
-			pl_doc.add(docid);
-			pl_freq.add(docfreq);
-		}
-		
-		public int getFreq(int docid) {
-			int index = pl_doc.binarySearch(docid);
-			if (index >= 0)
-			{
-				return pl_freq.get(index);
-			}
-			return -1;
-		}
-		
-		/** Returns true iff we did not already have a posting for this document */
-		public boolean addOrUpdateFreq(int docid, int freq) {
-			int index = pl_doc.binarySearch(docid);
-			if (index >= 0)
-			{
-				pl_freq.setQuick(index, freq + pl_freq.get(index));	
-				return false;
-			} else {
-				pl_doc.insert( -(index +1), docid);
-				pl_freq.insert( -(index +1), freq);	
-				return true;
-			}
-			
-		}
-		
+	/** Returns the posting list of the term denoted by ptr, or null if it has none */
+	protected CompressedMemoryPostingList getPostingList(int ptr) {
+		final MemoryPostingList[] p = postings;
+		return ptr < p.length ? (CompressedMemoryPostingList) p[ptr] : null;
+	}
 
-		public TIntArrayList getPl_doc() {
-			return pl_doc;
-		}
+	/** Returns the posting list of the term denoted by ptr, creating it if it does not exist */
+	protected CompressedMemoryPostingList getOrCreate(int ptr, int numberOfFields) {
+		MemoryPostingList[] p = postings;
+		CompressedMemoryPostingList pl = ptr < p.length ? (CompressedMemoryPostingList) p[ptr] : null;
+		if (pl == null) {
+			pl = new CompressedMemoryPostingList(slabs, numberOfFields);
+			if (ptr >= p.length)
+				p = Arrays.copyOf(p, Math.max(ptr + 1, p.length * 2));
+			p[ptr] = pl;
+			//the array is (re)assigned after the element is written, such that readers see the complete posting list
+			postings = p;
+		}
+		return pl;
+	}
 
-		public TIntArrayList getPl_freq() {
-			return pl_freq;
-		}
+	/** Sets the number of documents that can be read from posting lists. Postings of
+	 * documents with larger docids, which are still being indexed, are not read. */
+	public void setVisibleDocuments(int numberOfDocuments) {
+		visibleDocuments = numberOfDocuments;
 	}
 
 	/**
 	 * Add posting to inverted file.
 	 */
 	public void add(int ptr, int docid, int freq) {
-		if (postings.containsKey(ptr))
-			((BasicMemoryPostingList)postings.get(ptr)).add(docid, freq);
-		else
-			postings.put(ptr, new BasicMemoryPostingList(docid, freq));
+		getOrCreate(ptr, 0).addOrUpdate(docid, freq, null);
 	}
 	
 	/** Adds or updates the frequency of the term denoted by ptr by freq.
@@ -151,17 +120,17 @@ public class MemoryInvertedIndex implements PostingIndex<MemoryPointer>,Serializ
 	 * already contained the term */
 	public boolean addOrUpdate(int ptr, int docid, int freq) {
 		assert freq > 0;
-		
-		if (postings.containsKey(ptr))
-		{
-			BasicMemoryPostingList bmpl = (BasicMemoryPostingList) postings.get(ptr);
-			return bmpl.addOrUpdateFreq(docid, freq);			
-		}
-		else
-		{				
-			postings.put(ptr, new BasicMemoryPostingList(docid, freq));
-			return true;
-		}
+		return getOrCreate(ptr, 0).addOrUpdate(docid, freq, null);
+	}
+
+	/** Returns the number of bytes allocated for postings */
+	public long getAllocatedBytes() {
+		return slabs.getAllocatedBytes();
+	}
+
+	/** Returns the number of bytes allocated for postings outside of the Java heap */
+	public long getOffHeapBytes() {
+		return slabs.isOffHeap() ? slabs.getAllocatedBytes() : 0;
 	}
 	
 	/**
@@ -169,22 +138,24 @@ public class MemoryInvertedIndex implements PostingIndex<MemoryPointer>,Serializ
 	 * @param ptr
 	 */
 	public void remove(int ptr) {
-		if (postings.containsKey(ptr)) postings.remove(ptr);
+		final MemoryPostingList[] p = postings;
+		if (ptr < p.length) p[ptr] = null;
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public IterablePosting getPostings(Pointer pointer) throws IOException {
-		BasicMemoryPostingList pl = ((BasicMemoryPostingList)postings.get(((MemoryPointer)pointer).getPointer()));
+		CompressedMemoryPostingList pl = getPostingList(((MemoryPointer)pointer).getPointer());
 		if (pl==null) {
-			pl = new BasicMemoryPostingList();
+			return new MemoryIterablePosting(doi, new TIntArrayList(), new TIntArrayList());
 		}
-		return new MemoryIterablePosting(doi, pl.getPl_doc(), pl.getPl_freq());
+		return new MemoryIterablePosting(doi, pl.cursor(visibleDocuments));
 	}
 
 	/** {@inheritDoc} */
 	public void close() throws IOException {
 		postings = null;
+		slabs = null;
 	}
 
 	/**
@@ -37,7 +37,9 @@ import org.terrier.structures.postings.IterablePostingImpl;
 import org.terrier.structures.postings.WritablePosting;
 
 /**
- * A postings list implementation held fully in memory.
+ * A postings list implementation held fully in memory. The postings are either
+ * read from a {@link CompressedMemoryPostingList.Cursor}, or from arrays of
+ * docids and frequencies.
  * 
  * @author Richard McCreadie, Stuart Mackie
  * @since 4.0
@@ -52,6 +54,8 @@ public class MemoryIterablePosting extends IterablePostingImpl {
 	protected DocumentIndex doi;
 	protected TIntArrayList pl_doc = new TIntArrayList();
 	private TIntArrayList pl_freq = new TIntArrayList();
+	/** the postings, if read from a compressed posting list, else null */
+	protected CompressedMemoryPostingList.Cursor cursor;
 
 	/**
 	 * Constructor.
@@ -63,15 +67,28 @@ public class MemoryIterablePosting extends IterablePostingImpl {
 		this.pl_freq = pl_freq;
 	}
 
+	/**
+	 * Constructor, for the postings of a compressed posting list.
+	 * @since 5.4
+	 */
+	public MemoryIterablePosting(DocumentIndex doi, CompressedMemoryPostingList.Cursor cursor) {
+		this.doi = doi;
+		this.cursor = cursor;
+		this.pl_doc = null;
+		this.pl_freq = null;
+	}
+
 	/** {@inheritDoc} */
 	public int getFrequency() {
+		if (cursor != null)
+			return cursor.getFrequency();
 		return pl_freq.get(index);
 	}
 
 	/** {@inheritDoc} */
 	public int getDocumentLength() {
 		try {
-			return doi.getDocumentLength(pl_doc.get(index));
+			return doi.getDocumentLength(cursor != null ? id : pl_doc.get(index));
 		} catch (IOException e) {
 			e.printStackTrace();
 			return -1;
@@ -80,7 +97,7 @@ public class MemoryIterablePosting extends IterablePostingImpl {
 
 	/** {@inheritDoc} */
 	public int getId() {
-		if (pl_doc.size()==0) {
+		if (cursor == null && pl_doc != null && pl_doc.size()==0) {
 			// special case: the posting list is empty, but some retrieval code (i.e. DAAT retrieval) assumes 
 			//               that each posting list must have at least one document in it. So we add a new document
 			//               with no terms in it
@@ -92,6 +109,8 @@ public class MemoryIterablePosting extends IterablePostingImpl {
 
 	/** {@inheritDoc} */
 	public int next() throws IOException {
+		if (cursor != null)
+			return id = cursor.next();
 		if ((pl_doc == null) || (++index >= pl_doc.size()))
 			return id = EOL;
 		else
@@ -100,6 +119,8 @@ public class MemoryIterablePosting extends IterablePostingImpl {
 
 	/** {@inheritDoc} */
 	public boolean endOfPostings() {
+		if (cursor != null)
+			return cursor.endOfPostings();
 		if ((pl_doc == null) || (index >= pl_doc.size()-1) || pl_doc.size()==0)
 			return true;
 		else
@@ -112,6 +133,7 @@ public class MemoryIterablePosting extends IterablePostingImpl {
 		doi = null;
 		pl_doc = null;
 		pl_freq = null;
+		cursor = null;
 	}
 
 	/** {@inheritDoc} */
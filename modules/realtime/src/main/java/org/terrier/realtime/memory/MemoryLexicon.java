@@ -35,6 +35,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.hadoop.io.Text;
 import org.terrier.structures.EntryStatistics;
@@ -48,6 +49,11 @@ import org.terrier.utility.ApplicationSetup;
 /**
  * The lexicon structure for a MemoryIndex. Since this is a memory structure,
  * the lexicon entries are of type MemoryPointers rather than BitIndexPointer.
+ * Looking up a term does not lock, so that searches are not blocked while terms are added;
+ * the other methods lock against modifications. A lookup returns a copy of the statistics of 
+ * the term, which is not changed by later modifications. Once {@link #publish()} has been called, 
+ * lookups only see the statistics of a term as of the last call, so that a MemoryIndex can publish 
+ * them along with the collection statistics of the documents visible to searches.
  * 
  * @author Richard McCreadie, Stuart Mackie
  * @since 4.0
@@ -55,6 +61,15 @@ import org.terrier.utility.ApplicationSetup;
 public class MemoryLexicon extends MapLexicon<String,Text> implements Serializable {
 
 	private static final long serialVersionUID = 6642638617614776293L;
+	
+	/** the lexicon entries, keyed by termid */
+	protected final TIntObjectHashMap<LexiconEntry> entriesByTermId = new TIntObjectHashMap<LexiconEntry>();
+	/** the lexicon entries, keyed by term, for lookups without locking */
+	protected final ConcurrentHashMap<String,LexiconEntry> entriesByTerm = new ConcurrentHashMap<String,LexiconEntry>();
+	/** the entries whose statistics have changed since they were last published */
+	protected final ArrayList<MemoryLexiconEntry> changed = new ArrayList<MemoryLexiconEntry>();
+	/** set once publish() is called, after which changes are only visible to lookups once published */
+	protected boolean deferPublication = false;
 
 	/**
 	 * Constructor.
@@ -73,9 +88,10 @@ public class MemoryLexicon extends MapLexicon<String,Text> implements Serializab
 	public int term(String term, EntryStatistics es) {
 		synchronized(modificationLock) {
 		
-		LexiconEntry le = this.getLexiconEntry(term);
+		LexiconEntry le = entriesByTerm.get(term);
 		if (le != null) {
 			le.add(es);
+			changed(le);
 			return le.getTermId();
 		}
 		int termid = super.map.size();
@@ -83,6 +99,9 @@ public class MemoryLexicon extends MapLexicon<String,Text> implements Serializab
 		key.set(term);
 		((LexiconEntry) es).setTermId(termid);
 		super.map.put(key, (LexiconEntry) es);
+		entriesByTermId.put(termid, (LexiconEntry) es);
+		changed((LexiconEntry) es);
+		entriesByTerm.put(term, (LexiconEntry) es);
 		return termid;
 		
 		}
@@ -91,15 +110,19 @@ public class MemoryLexicon extends MapLexicon<String,Text> implements Serializab
 	public int term(String term, EntryStatistics es, int termid) {
 		synchronized(modificationLock) {
 		
-		LexiconEntry le = this.getLexiconEntry(term);
+		LexiconEntry le = entriesByTerm.get(term);
 		if (le != null) {
 			le.add(es);
+			changed(le);
 			return le.getTermId();
 		}
 		Text key = keyFactory.newInstance();
 		key.set(term);
 		((LexiconEntry) es).setTermId(termid);
 		super.map.put(key, (LexiconEntry) es);
+		entriesByTermId.put(termid, (LexiconEntry) es);
+		changed((LexiconEntry) es);
+		entriesByTerm.put(term, (LexiconEntry) es);
 		return termid;
 		
 		}
@@ -116,6 +139,8 @@ public class MemoryLexicon extends MapLexicon<String,Text> implements Serializab
 			LexiconEntry le = super.map.get(text);
 			if (le.getDocumentFrequency()<cutoff) {
 				super.map.remove(text);
+				entriesByTermId.remove(le.getTermId());
+				entriesByTerm.remove(text.toString());
 				removed++;
 			}
 		}
@@ -146,6 +171,46 @@ public class MemoryLexicon extends MapLexicon<String,Text> implements Serializab
 			}
 	}
 
+	/** {@inheritDoc} This does not lock. Returns null if the statistics of the term have not yet been published. */
+	@Override
+	public LexiconEntry getLexiconEntry(String term) {
+		final LexiconEntry le = entriesByTerm.get(term);
+		return le != null ? ((MemoryLexiconEntry) le).published : null;
+	}
+
+	/** Records that the statistics of the specified entry have changed. Called while holding the modificationLock. */
+	protected void changed(LexiconEntry le) {
+		final MemoryLexiconEntry mle = (MemoryLexiconEntry) le;
+		if (deferPublication)
+			changed.add(mle);
+		else
+			mle.published = mle.snapshot();
+	}
+
+	/**
+	 * Makes the statistics of the terms changed since the last call visible to lookups. 
+	 * Once this has been called, later changes are not visible until the next call.
+	 * @since 5.4
+	 */
+	public void publish() {
+		synchronized(modificationLock) {
+			deferPublication = true;
+			for (MemoryLexiconEntry mle : changed)
+				mle.published = mle.snapshot();
+			changed.clear();
+		}
+	}
+
+	/**
+	 * Returns the lexicon entry of the term with the specified termid, or null
+	 * if there is no such term.
+	 */
+	public LexiconEntry getLexiconEntryByTermId(int termid) {
+		synchronized(modificationLock) {
+			return entriesByTermId.get(termid);
+		}
+	}
+
 	/**
 	 *  Lexicon iterator.
 	 */
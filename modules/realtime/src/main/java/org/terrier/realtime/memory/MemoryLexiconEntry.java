@@ -52,6 +52,8 @@ public class MemoryLexiconEntry extends LexiconEntry implements MemoryPointer,Se
 	private int termid;
 	private int df, tf;
 	private int maxtf = Integer.MAX_VALUE;
+	/** the copy of these statistics returned by lookups of a MemoryLexicon, or null if not yet published */
+	transient volatile MemoryLexiconEntry published;
 
 	/**
 	 * Constructor.
@@ -179,6 +181,11 @@ public class MemoryLexiconEntry extends LexiconEntry implements MemoryPointer,Se
 	public void write(DataOutput out) throws IOException {
 	}
 
+	/** Returns a copy of these statistics, which is not changed by later updates */
+	public MemoryLexiconEntry snapshot() {
+		return new MemoryLexiconEntry(termid, df, tf, maxtf);
+	}
+
 	public MemoryLexiconEntry clone() {
 		MemoryLexiconEntry mle = new MemoryLexiconEntry(df,tf);
 		mle.setTermId(termid);
@@ -31,10 +31,9 @@ import gnu.trove.TObjectIntHashMap;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 
 import org.terrier.structures.MetaIndex;
@@ -46,7 +45,9 @@ import org.terrier.utility.ArrayUtils;
  * An in-memory version of a Meta-data index. It stores additional information
  * about each document, e.g. the docno or title. Access to the memory versions 
  * of the meta index are faster than the on-disk versions, but can use up large
- * amounts of RAM to store.
+ * amounts of RAM to store. Like {@link MemoryDocumentIndex}, the metadata of
+ * documents can be read while further documents are being written, up to the
+ * number of visible documents.
  * 
  * <p><b>Properties</b></p>
  * <ul><li>indexer.meta.forward.keys</tt> - key names to store in the meta index</li>
@@ -63,7 +64,11 @@ public class MemoryMetaIndex extends MetaIndexBuilder implements MetaIndex,Seria
 	/*
 	 * Meta-data index structures.
 	 */
-	private List<String[]> metadata;
+	private volatile String[][] metadata;
+	/** the number of documents written */
+	private volatile int numberOfEntries;
+	/** the number of documents that can be read */
+	private volatile int visibleDocuments = Integer.MAX_VALUE;
 	private TObjectIntHashMap<String> key2meta;
 	private int[] keylengths;
 	private boolean[] isReverse;
@@ -100,7 +105,7 @@ public class MemoryMetaIndex extends MetaIndexBuilder implements MetaIndex,Seria
 			throw new IllegalArgumentException("Meta keys and keylens mismatch.");
 		}
 		
-		metadata = new ArrayList<String[]>();
+		metadata = new String[1024][];
 		key2meta = new TObjectIntHashMap<String>();
 		int i = 0;
 		for (String key : keys)
@@ -118,7 +123,20 @@ public class MemoryMetaIndex extends MetaIndexBuilder implements MetaIndex,Seria
 	/** {@inheritDoc} */
 	@Override
 	public int size() {
-		return metadata.size();
+		return Math.min(visibleDocuments, numberOfEntries);
+	}
+
+	/** Sets the number of documents that can be read. Documents with larger docids,
+	 * which are still being indexed, are not counted or iterated over. */
+	public void setVisibleDocuments(int numberOfDocuments) {
+		visibleDocuments = numberOfDocuments;
+	}
+
+	/** Returns the metadata of the specified document */
+	protected String[] getEntry(int docid) {
+		if (docid < 0 || docid >= numberOfEntries)
+			throw new IndexOutOfBoundsException("Index: " + docid + ", Size: " + numberOfEntries);
+		return metadata[docid];
 	}
 
 
@@ -131,13 +149,13 @@ public class MemoryMetaIndex extends MetaIndexBuilder implements MetaIndex,Seria
 	/** {@inheritDoc} */
 	@Override
 	public String getItem(String key, int docid) throws IOException {
-		return metadata.get(docid)[key2meta.get(key)];
+		return getEntry(docid)[key2meta.get(key)];
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public String[] getAllItems(int docid) throws IOException {
-		return metadata.get(docid);
+		return getEntry(docid);
 	}
 
 	/** {@inheritDoc} */
@@ -146,7 +164,7 @@ public class MemoryMetaIndex extends MetaIndexBuilder implements MetaIndex,Seria
 		String[] data = new String[docids.length];
 		int index = key2meta.get(key);
 		for (int i = 0; i < docids.length; i++)
-			data[i] = metadata.get(docids[i])[index];
+			data[i] = getEntry(docids[i])[index];
 		return data;
 	}
 
@@ -155,7 +173,7 @@ public class MemoryMetaIndex extends MetaIndexBuilder implements MetaIndex,Seria
 	public String[] getItems(String[] keys, int docid) throws IOException {
 		String[] data = new String[keys.length];
 		for (int i = 0; i < keys.length; i++)
-			data[i] = metadata.get(docid)[key2meta.get(keys[i])];
+			data[i] = getEntry(docid)[key2meta.get(keys[i])];
 		return data;
 	}
 
@@ -206,18 +224,25 @@ public class MemoryMetaIndex extends MetaIndexBuilder implements MetaIndex,Seria
 	@Override
 	public void writeDocumentEntry(String[] data) {
 		//forward metadata
-		metadata.add(data);
+		final int docid = numberOfEntries;
+		String[][] m = metadata;
+		if (docid >= m.length)
+			m = Arrays.copyOf(m, m.length * 2);
+		m[docid] = data;
+		//the array is (re)assigned after the entry is written, and before the entry is counted
+		metadata = m;
 		
 		//reverse metadata
-		if (revkeys.length == 0)
-			return;
-		for(int i=0;i<data.length;i++)
+		if (revkeys.length > 0)
 		{
-			if (! isReverse[i])
-				continue;
-			int docid = metadata.size() -1;
-			key2value2id.get(this.keys[i]).put(data[i], docid+1);
+			for(int i=0;i<data.length;i++)
+			{
+				if (! isReverse[i])
+					continue;
+				key2value2id.get(this.keys[i]).put(data[i], docid+1);
+			}
 		}
+		numberOfEntries = docid + 1;
 	}
 	
 	@Override
@@ -239,7 +264,8 @@ public class MemoryMetaIndex extends MetaIndexBuilder implements MetaIndex,Seria
 	 */
 	@Override
 	public void close() throws IOException {
-		metadata.clear();
+		numberOfEntries = 0;
+		metadata = new String[1024][];
 		if (key2meta!=null) key2meta.clear();
 		for (TObjectIntHashMap<String> map : key2value2id.values())
 			map.clear();
@@ -256,14 +282,14 @@ public class MemoryMetaIndex extends MetaIndexBuilder implements MetaIndex,Seria
 	 * Meta-data index iterator.
 	 */
 	private class MetaIterator implements Iterator<String[]> {
-		Iterator<String[]> iter = metadata.iterator();
+		int index = 0;
 
 		public boolean hasNext() {
-			return iter.hasNext();
+			return index < size();
 		}
 
 		public String[] next() {
-			return iter.next();
+			return metadata[index++];
 		}
 
 		public void remove() {
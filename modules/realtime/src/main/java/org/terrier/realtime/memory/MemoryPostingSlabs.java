@@ -0,0 +1,145 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is MemoryPostingSlabs.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk>
+ */
+
+package org.terrier.realtime.memory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.terrier.utility.ApplicationSetup;
+
+/**
+ * The storage shared by the {@link CompressedMemoryPostingList}s of a
+ * {@link MemoryInvertedIndex}. Bytes are allocated from large fixed-size slabs,
+ * so that each posting list does not need its own arrays. Space is never freed,
+ * until the whole index is discarded. Slabs can be allocated outside of the Java
+ * heap, in which case they are not counted by the JVM's heap usage.
+ * <p>An address is a non-negative int, such that a MemoryInvertedIndex
+ * can hold at most 2GB of compressed postings.
+ * <p><b>Properties:</b>
+ * <ul>
+ * <li><tt>memory.inverted.slab.size</tt> - the size of each slab in bytes, rounded up to
+ * a power of two. Defaults to 65536.</li>
+ * <li><tt>memory.inverted.offheap</tt> - whether slabs are allocated outside of the Java heap.
+ * Defaults to false.</li>
+ * </ul>
+ * @since 5.4
+ */
+public class MemoryPostingSlabs {
+
+	/** smallest size of a slab */
+	static final int MIN_SLAB_SIZE = 4096;
+	/** the most bytes that can be addressed by the slabs */
+	public static final long MAX_BYTES = (long) Integer.MAX_VALUE + 1l;
+
+	protected final int slabSize;
+	protected final int slabShift;
+	protected final int slabMask;
+	protected final boolean offHeap;
+	protected volatile ByteBuffer[] slabs = new ByteBuffer[8];
+	protected int numberOfSlabs = 0;
+	/** offset of the next free byte in the last slab */
+	protected int used = 0;
+
+	/** Creates slabs configured by properties */
+	public MemoryPostingSlabs() {
+		this(Integer.parseInt(ApplicationSetup.getProperty("memory.inverted.slab.size", "65536")),
+			Boolean.parseBoolean(ApplicationSetup.getProperty("memory.inverted.offheap", "false")));
+	}
+
+	/**
+	 * Creates slabs of the specified size.
+	 * @param slabSize size of each slab in bytes, rounded up to a power of two
+	 * @param offHeap whether slabs are allocated outside of the Java heap
+	 */
+	public MemoryPostingSlabs(int slabSize, boolean offHeap) {
+		slabSize = Math.max(MIN_SLAB_SIZE, slabSize);
+		if (Integer.bitCount(slabSize) != 1)
+			slabSize = Integer.highestOneBit(slabSize) << 1;
+		this.slabSize = slabSize;
+		this.slabShift = Integer.numberOfTrailingZeros(slabSize);
+		this.slabMask = slabSize - 1;
+		this.offHeap = offHeap;
+	}
+
+	/** Returns the size of each slab */
+	public int getSlabSize() {
+		return slabSize;
+	}
+
+	/** Returns true if the slabs are allocated outside of the Java heap */
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+
+	/** Returns the number of bytes allocated for slabs */
+	public long getAllocatedBytes() {
+		return (long) numberOfSlabs * slabSize;
+	}
+
+	/** Allocates the specified number of contiguous bytes, which must not
+	 * be more than the size of a slab, and returns the address of the first. */
+	public synchronized int allocate(int size) {
+		if (size > slabSize)
+			throw new IllegalArgumentException("Cannot allocate " + size + " bytes from slabs of " + slabSize);
+		if (numberOfSlabs == 0 || used + size > slabSize)
+			newSlab();
+		final int address = ((numberOfSlabs -1) << slabShift) | used;
+		used += size;
+		return address;
+	}
+
+	protected void newSlab() {
+		if ((long) (numberOfSlabs + 1) << slabShift > MAX_BYTES)
+			throw new IllegalStateException("MemoryPostingSlabs is full at " + getAllocatedBytes() + " bytes");
+		ByteBuffer[] s = slabs;
+		if (numberOfSlabs == s.length)
+			s = Arrays.copyOf(s, s.length * 2);
+		s[numberOfSlabs++] = offHeap ? ByteBuffer.allocateDirect(slabSize) : ByteBuffer.allocate(slabSize);
+		slabs = s;
+		used = 0;
+	}
+
+	/** Returns the byte at the specified address */
+	public final byte get(int address) {
+		return slabs[address >>> slabShift].get(address & slabMask);
+	}
+
+	/** Sets the byte at the specified address */
+	public final void put(int address, byte b) {
+		slabs[address >>> slabShift].put(address & slabMask, b);
+	}
+
+	/** Returns the int at the specified address, which must not span two slabs */
+	public final int getInt(int address) {
+		return slabs[address >>> slabShift].getInt(address & slabMask);
+	}
+
+	/** Sets the int at the specified address, which must not span two slabs */
+	public final void putInt(int address, int value) {
+		slabs[address >>> slabShift].putInt(address & slabMask, value);
+	}
+}
@@ -26,12 +26,9 @@
 
 package org.terrier.realtime.memory.fields;
 
-import gnu.trove.TIntArrayList;
-
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map.Entry;
 
 import org.terrier.realtime.memory.MemoryDocumentIndex;
@@ -47,24 +44,31 @@ import org.terrier.structures.collections.MapEntry;
 public class MemoryDocumentIndexFields extends MemoryDocumentIndex implements FieldDocumentIndex {
 
 	private static final long serialVersionUID = -3154305694924339094L;
-	// Per-field lengths (tokens).
-    private List<TIntArrayList> fieldLengths;
+	// Per-field lengths (tokens), grown by copying like the document lengths.
+    private volatile int[][] fieldLengths;
 
     /** Constructor. */
     public MemoryDocumentIndexFields() {
         super();
-        fieldLengths = new ArrayList<TIntArrayList>();
+        fieldLengths = new int[docLengths.length][];
     }
 
     /** Add document length and field lengths to document index. */
     public void addDocument(int length, int[] flengths) {
-        docLengths.add(length);
-        fieldLengths.add(new TIntArrayList(flengths));
+        final int docid = numberOfDocuments;
+        int[][] f = fieldLengths;
+        if (docid >= f.length)
+            f = Arrays.copyOf(f, f.length * 2);
+        f[docid] = flengths.clone();
+        fieldLengths = f;
+        //the document is counted once its field lengths are written
+        super.addDocument(length);
     }
 
     /** {@inheritDoc} */
     public int[] getFieldLengths(int docid) {
-        return fieldLengths.get(docid).toNativeArray();
+        checkDocid(docid);
+        return fieldLengths[docid].clone();
     }
 
     /** {@inheritDoc} */
@@ -98,13 +102,13 @@ public class MemoryDocumentIndexFields extends MemoryDocumentIndex implements Fi
 
 		// private Iterator<DocumentIndexEntry> iter = null;
 		public boolean hasNext() {
-			return index < docLengths.size();
+			return index < getNumberOfDocuments();
 		}
 
 		public Entry<Integer, DocumentIndexEntry> next() {
 			FieldDocumentIndexEntry die = new FieldDocumentIndexEntry();
-			die.setDocumentLength(docLengths.get(index));
-			die.setFieldLengths(fieldLengths.get(index++).toNativeArray());
+			die.setDocumentLength(docLengths[index]);
+			die.setFieldLengths(fieldLengths[index++].clone());
 			Entry<Integer, DocumentIndexEntry> e = new MapEntry<Integer, DocumentIndexEntry>(index, die);
 			return e;
 		}
@@ -118,13 +122,13 @@ public class MemoryDocumentIndexFields extends MemoryDocumentIndex implements Fi
 
 		// private Iterator<DocumentIndexEntry> iter = null;
 		public boolean hasNext() {
-			return index < docLengths.size();
+			return index < getNumberOfDocuments();
 		}
 
 		public DocumentIndexEntry next() {
 			FieldDocumentIndexEntry die = new FieldDocumentIndexEntry();
-			die.setDocumentLength(docLengths.get(index));
-			die.setFieldLengths(fieldLengths.get(index++).toNativeArray());
+			die.setDocumentLength(docLengths[index]);
+			die.setFieldLengths(fieldLengths[index++].clone());
 			return die;
 		}
 
@@ -30,13 +30,14 @@ import gnu.trove.TIntHashSet;
 
 import java.util.Set;
 
+import org.terrier.indexing.Document;
 import org.terrier.realtime.memory.MemoryCollectionStatistics;
 import org.terrier.realtime.memory.MemoryIndex;
 import org.terrier.structures.FieldDocumentIndex;
 import org.terrier.structures.Index;
+import org.terrier.structures.indexing.DocumentPostingList;
 import org.terrier.structures.indexing.FieldDocumentPostingList;
 import org.terrier.structures.indexing.CompressionFactory.CompressionConfiguration;
-import org.terrier.terms.TermPipeline;
 import org.terrier.utility.ApplicationSetup;
 
 /** Super-type of fields index implementations. 
@@ -53,8 +54,7 @@ public abstract class MemoryFields extends MemoryIndex {
         for (int i = 0; i < fieldtags.length; i++)
             fieldTokens[i] = 0;
         stats = new MemoryCollectionStatistics(0, 0, 0, 0, fieldTokens, fieldtags);
-        load_pipeline();
-        pipeline = pipeline_first;
+        publish();
     }
 
     /** {@inheritDoc} */
@@ -66,15 +66,29 @@ public abstract class MemoryFields extends MemoryIndex {
      * Term pipeline.
      */
 
-    protected TermPipeline             pipeline;
-    protected FieldDocumentPostingList fdpl;
-    protected Set<String>              docFields;
-
-    protected TermPipeline getEndOfPipeline() {
-        return new TermProcessor();
+    protected DocumentTokeniser newDocumentTokeniser() {
+        return new FieldsDocumentTokeniser();
     }
 
-    private class TermProcessor implements TermPipeline {
+    /** Records the fields of each term of a document, for the calling thread. */
+    protected class FieldsDocumentTokeniser extends DocumentTokeniser {
+        protected Set<String> docFields;
+
+        public DocumentPostingList tokenise(Document doc) {
+            postings = new FieldDocumentPostingList(fieldtags.length);
+            while (!doc.endOfDocument()) {
+                String term = doc.getNextTerm();
+                if (term == null || term.equals(""))
+                    continue;
+                docFields = doc.getFields();
+                first.processTerm(term);
+            }
+            final DocumentPostingList rtr = postings;
+            postings = null;
+            docFields = null;
+            return rtr;
+        }
+
         public void processTerm(String term) {
             if (term != null) {
                 TIntHashSet freqs = new TIntHashSet(0);
@@ -82,15 +96,9 @@ public abstract class MemoryFields extends MemoryIndex {
                     freqs.add(fieldIDs.get(docField));
                 if (fieldIDs.containsKey("ELSE") && freqs.size() == 0)
                     freqs.add(fieldIDs.get("ELSE"));
-                ((FieldDocumentPostingList) fdpl).insert(term, freqs.toArray());
+                ((FieldDocumentPostingList) postings).insert(term, freqs.toArray());
             }
         }
-
-        public boolean reset() {
-            return true;
-        }
     }
 
-
-
 }
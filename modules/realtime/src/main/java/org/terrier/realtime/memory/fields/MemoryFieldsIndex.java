@@ -31,7 +31,6 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import org.terrier.indexing.Document;
 import org.terrier.structures.AbstractPostingOutputStream;
 import org.terrier.structures.BitIndexPointer;
 import org.terrier.structures.DocumentIndexEntry;
@@ -87,6 +86,7 @@ public class MemoryFieldsIndex extends MemoryFields {
         logger.info("** Fields **");
         inverted = new MemoryFieldsInvertedIndex(lexicon, document);
         direct = new MemoryFieldsDirectIndex(this.getDocumentIndex());
+        publish();
     }
 
     /** {@inheritDoc} */
@@ -137,29 +137,10 @@ public class MemoryFieldsIndex extends MemoryFields {
         stats.updateUniqueTerms(lexicon.numberOfEntries());
         stats.updateFields(fieldcounts);
         stats.relcaluate();
+        publish();
 		}
 	}
     
-    /** {@inheritDoc} */
-    @Override
-    public void indexDocument(Document doc) throws Exception {
-
-        if (doc == null)
-            return;
-
-        // Process terms through term pipeline.
-        fdpl = new FieldDocumentPostingList(fieldtags.length);
-        while (!doc.endOfDocument()) {
-            String term = doc.getNextTerm();
-            if (term == null || term.equals(""))
-                continue;
-            docFields = doc.getFields();
-            pipeline.processTerm(term);
-        }
-
-        indexDocument(doc.getAllProperties(), fdpl);
-    }
-
     @Override
     protected DiskIndexWriter makeDiskIndexWriter(String path, String prefix) {
         return new DiskIndexWriter(path, prefix)
@@ -32,17 +32,17 @@ import gnu.trove.TIntArrayList;
 import gnu.trove.TIntObjectHashMap;
 
 import java.io.IOException;
-import java.util.Arrays;
 
+import org.terrier.realtime.memory.CompressedMemoryPostingList;
 import org.terrier.realtime.memory.MemoryInvertedIndex;
 import org.terrier.realtime.memory.MemoryPointer;
-import org.terrier.realtime.memory.MemoryPostingList;
 import org.terrier.structures.DocumentIndex;
 import org.terrier.structures.Lexicon;
 import org.terrier.structures.Pointer;
 import org.terrier.structures.postings.IterablePosting;
 
-/** Postings list (non-compressed) (fields). 
+/** Postings list (compressed) (fields). The field frequencies of each posting are
+ * held in its {@link CompressedMemoryPostingList}.
  * 
  *  @author Stuart Mackie
  * @since 4.0
@@ -68,68 +68,16 @@ public class MemoryFieldsInvertedIndex extends MemoryInvertedIndex {
 
     /** Insert/update posting (docid,freq,(fields)). */
     public void add(int termid, int docid, int freq, int[] fields) {
-        if (postings.containsKey(termid))
-            ((FieldsMemoryPostingList)postings.get(termid)).add(docid, freq, fields);
-        else
-            postings.put(termid, new FieldsMemoryPostingList(docid, freq, fields));
+        getOrCreate(termid, fields.length).addOrUpdate(docid, freq, fields);
     }
 
     /** {@inheritDoc} */
     @Override
     public IterablePosting getPostings(Pointer _termid) throws IOException {
     	MemoryPointer termid = (MemoryPointer)_termid;
-        FieldsMemoryPostingList pl;
-        if (postings.containsKey(termid.getPointer()))
-            pl = (FieldsMemoryPostingList) postings.get(termid.getPointer());
-        else
-            pl = new FieldsMemoryPostingList();
-        return new MemoryFieldsIterablePosting(doi, pl.docids(), pl.freqs(), pl.fields());
-    }
-
-    /* Postings list. */
-    private class FieldsMemoryPostingList implements MemoryPostingList{
-
-        // (docid,freq,(fields))
-        TIntArrayList            docids;
-        TIntArrayList            freqs;
-        TIntObjectHashMap<int[]> fields;
-
-        /* Constructor. */
-        FieldsMemoryPostingList() {
-            docids = new TIntArrayList();
-            freqs = new TIntArrayList();
-            fields = new TIntObjectHashMap<int[]>();
-        }
-
-        /* Constructor. */
-        FieldsMemoryPostingList(int docid, int freq, int[] fields) {
-            this();
-            add(docid, freq, fields);
-        }
-
-        /* Add posting. */
-        void add(int docid, int freq, int[] fields) {
-            docids.add(docid);
-            freqs.add(freq);
-            this.fields.put(docid, Arrays.copyOf(fields, fields.length));
-        }
-
-        /* Get docids. */
-        TIntArrayList docids() {
-            return new TIntArrayList(docids.toNativeArray());
-        }
-
-        /* Get freqs. */
-        TIntArrayList freqs() {
-            return new TIntArrayList(freqs.toNativeArray());
-        }
-
-        /* Get fields. */
-        TIntObjectHashMap<int[]> fields() {
-            TIntObjectHashMap<int[]> tmp = new TIntObjectHashMap<int[]>(fields.size());
-            for (int docid : fields.keys())
-                tmp.put(docid, Arrays.copyOf(fields.get(docid), fields.get(docid).length));
-            return tmp;
-        }
+        CompressedMemoryPostingList pl = getPostingList(termid.getPointer());
+        if (pl == null)
+            return new MemoryFieldsIterablePosting(doi, new TIntArrayList(), new TIntArrayList(), new TIntObjectHashMap<int[]>());
+        return new MemoryFieldsIterablePosting(doi, pl.cursor(visibleDocuments));
     }
 }
@@ -31,6 +31,7 @@ import gnu.trove.TIntObjectHashMap;
 
 import java.io.IOException;
 
+import org.terrier.realtime.memory.CompressedMemoryPostingList;
 import org.terrier.realtime.memory.MemoryIterablePosting;
 import org.terrier.structures.DocumentIndex;
 import org.terrier.structures.postings.FieldPosting;
@@ -53,8 +54,15 @@ public class MemoryFieldsIterablePosting extends MemoryIterablePosting implement
         this.fields = fields;
     }
 
+    /** Constructor, for the postings of a compressed posting list, which include the field frequencies. */
+    public MemoryFieldsIterablePosting(DocumentIndex docindex, CompressedMemoryPostingList.Cursor cursor) {
+        super(docindex, cursor);
+    }
+
     /** {@inheritDoc} */
     public int[] getFieldFrequencies() {
+    	if (cursor != null)
+    		return cursor.getFields();
     	if (pl_doc.size()==0) {
     		int[] f = {};
     		fields.put(index, f);
@@ -81,6 +89,8 @@ public class MemoryFieldsIterablePosting extends MemoryIterablePosting implement
 	/** {@inheritDoc} */
 	@Override
 	public WritablePosting asWritablePosting() {
-		return new FieldPostingImpl(getId(), getFrequency(), getFieldFrequencies());
+		//the field frequencies of a cursor are reused by its next posting
+		int[] fieldFreqs = getFieldFrequencies();
+		return new FieldPostingImpl(getId(), getFrequency(), cursor != null ? fieldFreqs.clone() : fieldFreqs);
 	}
 }
@@ -60,6 +60,14 @@ public class MemoryFieldsLexiconEntry extends MemoryLexiconEntry implements Fiel
 		this.fields = new int[0];
 	}
 
+    /** {@inheritDoc} */
+    @Override
+    public MemoryLexiconEntry snapshot() {
+        MemoryFieldsLexiconEntry le = new MemoryFieldsLexiconEntry(getTermId(), getDocumentFrequency(), getFrequency(), fields.clone());
+        le.setMaxFrequencyInDocuments(getMaxFrequencyInDocuments());
+        return le;
+    }
+
     /** {@inheritDoc} */
     public int[] getFieldFrequencies() {
         return fields;
@@ -76,6 +84,8 @@ public class MemoryFieldsLexiconEntry extends MemoryLexiconEntry implements Fiel
     /** {@inheritDoc} */
     public void subtract(EntryStatistics le) {
         super.subtract(le);
+        if (! (le instanceof FieldEntryStatistics))
+            return;
         int[] fields = ((FieldEntryStatistics) le).getFieldFrequencies();
         for (int i = 0; i < fields.length; i++)
             this.fields[i] -= fields[i];
@@ -0,0 +1,89 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is MultiDeletedDocuments.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk>
+ */
+
+package org.terrier.realtime.multi;
+
+import java.util.Arrays;
+
+import org.terrier.structures.DeletedDocuments;
+
+/**
+ * Represents the deleted documents of multiple shards. It is used within MultiIndex.
+ *
+ * @author Craig Macdonald
+ * @since 5.4
+ */
+public class MultiDeletedDocuments implements DeletedDocuments {
+
+	private final DeletedDocuments[] deleted;
+	private final int[] starts;
+
+	/**
+	 * constructor.
+	 * @param deleted the deleted documents of each shard, or null for shards without any
+	 * @param offsets the number of documents in each shard
+	 */
+	public MultiDeletedDocuments(DeletedDocuments[] deleted, int[] offsets) {
+		this.deleted = deleted;
+		this.starts = new int[deleted.length];
+		int start = 0;
+		for (int i = 0; i < deleted.length; i++) {
+			starts[i] = start;
+			start += offsets[i];
+		}
+	}
+
+	/** {@inheritDoc} */
+	public boolean isDeleted(int docid) {
+		int i = Arrays.binarySearch(starts, docid);
+		if (i < 0)
+			i = -i - 2;
+		//skip any empty shards
+		while (i + 1 < starts.length && starts[i + 1] <= docid)
+			i++;
+		if (i < 0 || deleted[i] == null)
+			return false;
+		return deleted[i].isDeleted(docid - starts[i]);
+	}
+
+	/** {@inheritDoc} */
+	public int getNumberOfDeletedDocuments() {
+		int count = 0;
+		for (DeletedDocuments d : deleted)
+			if (d != null)
+				count += d.getNumberOfDeletedDocuments();
+		return count;
+	}
+
+	/** {@inheritDoc} */
+	public long getNumberOfDeletedTokens() {
+		long count = 0;
+		for (DeletedDocuments d : deleted)
+			if (d != null)
+				count += d.getNumberOfDeletedTokens();
+		return count;
+	}
+}
@@ -30,16 +30,21 @@ package org.terrier.realtime.multi;
 import java.io.IOException;
 import java.io.Flushable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terrier.realtime.matching.IncrementalSelectiveMatching;
 import org.terrier.querying.IndexRef;
 import org.terrier.structures.CollectionStatistics;
+import org.terrier.structures.DeletedDocuments;
 import org.terrier.structures.DocumentIndex;
 import org.terrier.structures.Index;
 import org.terrier.structures.IndexFactory;
+import org.terrier.structures.IndexOnDisk;
 import org.terrier.structures.Lexicon;
 import org.terrier.structures.MetaIndex;
 import org.terrier.structures.Pointer;
@@ -54,7 +59,9 @@ import org.terrier.utility.ApplicationSetup;
  * uses a subset of the shards this contains.
  * 
  * <p><b>Properties</b></p>
- * <ul><li>multiindex.selectivematching</tt> - What policy should be used to perform matching. Two options are supported: all (default), mostrecent</li></ul>
+ * <ul><li>multiindex.selectivematching</tt> - What policy should be used to perform matching. Two options are supported: all (default), mostrecent</li>
+ * <li><tt>multiindex.termfilter</tt> - whether lexicon lookups should skip on-disk shards that do not contain the term, 
+ * using a {@link ShardTermFilter} for each. Defaults to true.</li></ul>
  * 
  * @author Richard McCreadie, Stuart Mackie
  * @since 4.0
@@ -75,6 +82,13 @@ public class MultiIndex extends Index {
 	
 	protected boolean blocks;
 	protected boolean fields;
+	
+	/**
+	 * The term filter of each on-disk shard, built or read on first use. Shards that are 
+	 * removed by a merge or delete are dropped when no longer referenced.
+	 */
+	protected final Map<Index, ShardTermFilter> termFilters = Collections.synchronizedMap(new WeakHashMap<Index, ShardTermFilter>());
+	protected final boolean useTermFilters = ShardTermFilter.enabled();
 
 	/**
 	 * Constructor.
@@ -106,31 +120,63 @@ public class MultiIndex extends Index {
 	/** {@inheritDoc} */
 	@SuppressWarnings("unchecked")
 	public Lexicon<String> getLexicon() {
-		int indexCount = indices.size();
+		List<Index> shards = getSelectedShards();
+		int indexCount = shards.size();
 		int[] offsets = new int[indexCount];
 		Lexicon<String>[] lexicons = new Lexicon[indexCount];
+		ShardTermFilter[] filters = useTermFilters ? new ShardTermFilter[indexCount] : null;
 
 		int i = 0;
-		for (Index index : selectiveMatchingPolicy.getSelectedIndices(indices)) {
+		for (Index index : shards) {
 			lexicons[i] = index.getLexicon();
 			offsets[i] = index.getCollectionStatistics()
 					.getNumberOfUniqueTerms();
+			if (useTermFilters)
+				filters[i] = getTermFilter(index);
 			i++;
 		}
 
-		return new MultiLexicon(lexicons, offsets);
+		return new MultiLexicon(lexicons, offsets, filters);
+	}
+	
+	/**
+	 * Returns the term filter of the specified shard, or null if the shard has none, e.g. 
+	 * because it can still be updated. The filter of an on-disk shard is obtained on first use.
+	 * @param shard the index shard
+	 * @return term filter, or null
+	 * @since 5.4
+	 */
+	public ShardTermFilter getTermFilter(Index shard) {
+		ShardTermFilter filter = termFilters.get(shard);
+		if (filter == null && shard instanceof IndexOnDisk) {
+			filter = ShardTermFilter.get((IndexOnDisk) shard);
+			if (filter != null)
+				termFilters.put(shard, filter);
+		}
+		return filter;
+	}
+	
+	/**
+	 * Records the term filter of a shard, such as one built when it was flushed or merged.
+	 * @param shard the index shard
+	 * @param filter its term filter
+	 * @since 5.4
+	 */
+	public void setTermFilter(Index shard, ShardTermFilter filter) {
+		termFilters.put(shard, filter);
 	}
 
 	/** {@inheritDoc} */
 	@SuppressWarnings("unchecked")
 	public PostingIndex<?> getInvertedIndex() {
-		int ondisk = indices.size();
+		List<Index> shards = getSelectedShards();
+		int ondisk = shards.size();
 		int[] offsets = new int[ondisk];
 		PostingIndex<?>[] postings = new PostingIndex[ondisk];
 
 		int currentoffset = 0;
 		int i = 0;
-		for (Index index : selectiveMatchingPolicy.getSelectedIndices(indices)) {
+		for (Index index : shards) {
 			postings[i] = index.getInvertedIndex();
 			offsets[i] = currentoffset;
 			currentoffset += index.getCollectionStatistics()
@@ -143,12 +189,13 @@ public class MultiIndex extends Index {
 
 	/** {@inheritDoc} */
 	public MetaIndex getMetaIndex() {
-		int ondisk = indices.size();
+		List<Index> shards = getSelectedShards();
+		int ondisk = shards.size();
 		int[] offsets = new int[ondisk];
 		MetaIndex[] metas = new MetaIndex[ondisk];
 
 		int i =0;
-		for (Index index : selectiveMatchingPolicy.getSelectedIndices(indices)) {
+		for (Index index : shards) {
 			metas[i] = index.getMetaIndex();
 			offsets[i] = index.getCollectionStatistics()
 					.getNumberOfDocuments();
@@ -160,12 +207,13 @@ public class MultiIndex extends Index {
 
 	/** {@inheritDoc} */
 	public DocumentIndex getDocumentIndex() {
-		int ondisk = indices.size();
+		List<Index> shards = getSelectedShards();
+		int ondisk = shards.size();
 		int[] offsets = new int[ondisk];
 		DocumentIndex[] docs = new DocumentIndex[ondisk];
 
 		int i =0;
-		for (Index index : selectiveMatchingPolicy.getSelectedIndices(indices)) {
+		for (Index index : shards) {
 			docs[i] = index.getDocumentIndex();
 			offsets[i] = index.getCollectionStatistics()
 					.getNumberOfDocuments();
@@ -177,11 +225,12 @@ public class MultiIndex extends Index {
 
 	/** {@inheritDoc} */
 	public CollectionStatistics getCollectionStatistics() {
-		int ondisk = indices.size();
+		List<Index> shards = getSelectedShards();
+		int ondisk = shards.size();
 		CollectionStatistics[] stats = new CollectionStatistics[ondisk];
 
 		int i =0;
-		for (Index index : selectiveMatchingPolicy.getSelectedIndices(indices)) {
+		for (Index index : shards) {
 			stats[i] = index.getCollectionStatistics();
 			i++;
 		}
@@ -191,11 +240,12 @@ public class MultiIndex extends Index {
 	
 	@SuppressWarnings("unchecked")
 	public PostingIndex<?> getDirectIndex() {
-		int ondisk = indices.size();
+		List<Index> shards = getSelectedShards();
+		int ondisk = shards.size();
 		PostingIndex<?>[] postings = new PostingIndex[ondisk];
 
 		int i = 0;
-		for (Index index : selectiveMatchingPolicy.getSelectedIndices(indices)) {
+		for (Index index : shards) {
 			postings[i] = index.getDirectIndex();
 			i++;
 		}
@@ -211,10 +261,44 @@ public class MultiIndex extends Index {
 			case "lexicon": return true;
 			case "document": return true;
 			case "meta": return true;
+			case DeletedDocuments.STRUCTURE_NAME: return true;
 		}
 		return false;
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public Object getIndexStructure(String structureName) {
+		if (structureName.equals(DeletedDocuments.STRUCTURE_NAME))
+			return getDeletedDocuments();
+		return super.getIndexStructure(structureName);
+	}
+
+	/**
+	 * Returns the documents deleted from the selected shards, or null if no
+	 * documents have been deleted from them.
+	 * @return deleted documents, or null
+	 * @since 5.4
+	 */
+	public DeletedDocuments getDeletedDocuments() {
+		List<Index> shards = getSelectedShards();
+		DeletedDocuments[] deleted = new DeletedDocuments[shards.size()];
+		int[] offsets = new int[shards.size()];
+		boolean any = false;
+
+		int i = 0;
+		for (Index index : shards) {
+			offsets[i] = index.getCollectionStatistics()
+					.getNumberOfDocuments();
+			if (index.hasIndexStructure(DeletedDocuments.STRUCTURE_NAME)) {
+				deleted[i] = (DeletedDocuments) index.getIndexStructure(DeletedDocuments.STRUCTURE_NAME);
+				any |= deleted[i] != null && deleted[i].getNumberOfDeletedDocuments() > 0;
+			}
+			i++;
+		}
+		return any ? new MultiDeletedDocuments(deleted, offsets) : null;
+	}
+
 	/** Not implemented. */
 	public Object getIndexStructureInputStream(String structureName) {
 		return null;
@@ -236,6 +320,21 @@ public class MultiIndex extends Index {
 		return indices.get(i);
 	}
 	
+	/**
+	 * Returns the index shards selected for matching by the selective matching policy, 
+	 * in docid order. The list returned is a copy, and is not affected by later flushes 
+	 * or merges. The structures of this index are each obtained from such a copy, so that 
+	 * a change to the shards, made while holding the lock of the list of shards, is seen 
+	 * atomically.
+	 * @return list of the selected shards
+	 * @since 5.4
+	 */
+	public List<Index> getSelectedShards() {
+		synchronized (indices) {
+			return new ArrayList<Index>(selectiveMatchingPolicy.getSelectedIndices(indices));
+		}
+	}
+	
 	/**
 	 * Returns the number of index shards that this incremental index contains
 	 * @return integer number of shards
@@ -70,6 +70,8 @@ public class MultiLexicon extends Lexicon<String> {
 	LRUMap<Integer, String> hash2term = new LRUMap<>(1000);
 	private Lexicon<String>[] lexicons;
 	private int[] numTerms;
+	/** term filter of each lexicon, or null where a lexicon must always be probed */
+	private ShardTermFilter[] filters;
 	private ArrayList<String> uniqueTerms;
 
 	private boolean approximateNumberofEntries = Boolean
@@ -84,8 +86,20 @@ public class MultiLexicon extends Lexicon<String> {
 	 * constructor.
 	 */
 	public MultiLexicon(Lexicon<String>[] lexicons, int[] numTerms) {
+		this(lexicons, numTerms, null);
+	}
+	
+	/**
+	 * constructor, where lookups skip the lexicons whose filter shows they do not contain the term.
+	 * @param lexicons lexicon of each shard
+	 * @param numTerms number of terms of each shard
+	 * @param filters term filter of each shard, which may be null, or contain nulls for shards without a filter
+	 * @since 5.4
+	 */
+	public MultiLexicon(Lexicon<String>[] lexicons, int[] numTerms, ShardTermFilter[] filters) {
 		this.lexicons = lexicons;
 		this.numTerms = numTerms;
+		this.filters = filters;
 		Set<String> unorderedTerms = new HashSet<String>();
 		if (!approximateNumberofEntries)
 			for (Lexicon<String> lex : lexicons)
@@ -130,19 +144,24 @@ public class MultiLexicon extends Lexicon<String> {
 
 	/** {@inheritDoc} */
 	public LexiconEntry getLexiconEntry(String term) {
-		LexiconEntry[] les = new LexiconEntry[lexicons.length];
+		//only allocated once the term is found
+		LexiconEntry[] les = null;
 		LexiconEntry le;
 		int i = 0;
-		boolean found = false;
 		for (Lexicon<String> lexicon : lexicons) {
+			if (filters != null && filters[i] != null && ! filters[i].mightContain(term)) {
+				i++;
+				continue;
+			}
 			le = lexicon.getLexiconEntry(term);
 			if (le != null) {
+				if (les == null)
+					les = new LexiconEntry[lexicons.length];
 				les[i] = le;
-				found = true;
 			}
 			i++;
 		}
-		if (! found)
+		if (les == null)
 			return null;
 		int hashcode = hashCode(term);
 		this.hash2term.putIfAbsent(hashcode, term);
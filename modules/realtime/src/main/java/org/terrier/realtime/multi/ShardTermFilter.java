@@ -0,0 +1,150 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is ShardTermFilter.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk>
+ */
+
+package org.terrier.realtime.multi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.IndexUtil;
+import org.terrier.structures.Lexicon;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.Files;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * A Bloom filter over the terms of an index shard that will not change, such as one flushed or
+ * merged to disk by an {@link org.terrier.realtime.incremental.IncrementalIndex}. {@link MultiLexicon}
+ * uses it to skip the lexicons of shards that definitely do not contain a term. The filter of a shard
+ * is written alongside it, as <tt>prefix.termfilter</tt>.
+ *
+ * <p><b>Properties</b></p>
+ * <ul>
+ * <li><tt>multiindex.termfilter</tt> - whether term filters are used for on-disk shards. Defaults to true.</li>
+ * <li><tt>multiindex.termfilter.fpp</tt> - the false positive probability of the filters built. Defaults to 0.01,
+ * i.e. about 10 bits per term.</li>
+ * </ul>
+ *
+ * @author Craig Macdonald
+ * @since 5.4
+ */
+public class ShardTermFilter {
+
+	protected static final Logger logger = LoggerFactory.getLogger(ShardTermFilter.class);
+
+	/** suffix of the file that a filter is written to */
+	public static final String FILE_SUFFIX = ".termfilter";
+
+	final BloomFilter<CharSequence> filter;
+
+	ShardTermFilter(BloomFilter<CharSequence> _filter)
+	{
+		this.filter = _filter;
+	}
+
+	/** Returns false if the term definitely does not occur in the shard */
+	public boolean mightContain(String term)
+	{
+		return filter.mightContain(term);
+	}
+
+	/** Returns the approximate number of terms added to this filter */
+	public long approximateNumberOfTerms()
+	{
+		return filter.approximateElementCount();
+	}
+
+	/** Returns whether term filters should be used, according to the property <tt>multiindex.termfilter</tt> */
+	public static boolean enabled()
+	{
+		return Boolean.parseBoolean(ApplicationSetup.getProperty("multiindex.termfilter", "true"));
+	}
+
+	/** Builds a filter containing all of the terms in the specified lexicon */
+	public static ShardTermFilter build(Lexicon<String> lexicon) throws IOException
+	{
+		final double fpp = Double.parseDouble(ApplicationSetup.getProperty("multiindex.termfilter.fpp", "0.01"));
+		BloomFilter<CharSequence> bf = BloomFilter.create(
+			Funnels.stringFunnel(StandardCharsets.UTF_8), Math.max(1, lexicon.numberOfEntries()), fpp);
+		Iterator<Map.Entry<String,LexiconEntry>> lexIn = lexicon.iterator();
+		while(lexIn.hasNext())
+			bf.put(lexIn.next().getKey());
+		IndexUtil.close(lexIn);
+		return new ShardTermFilter(bf);
+	}
+
+	/** Writes this filter alongside the specified index */
+	public void write(String path, String prefix) throws IOException
+	{
+		try(OutputStream out = Files.writeFileStream(filename(path, prefix)))
+		{
+			filter.writeTo(out);
+		}
+	}
+
+	/** Reads the filter written alongside the specified index, or returns null if there is none */
+	public static ShardTermFilter read(String path, String prefix) throws IOException
+	{
+		final String filename = filename(path, prefix);
+		if (! Files.exists(filename))
+			return null;
+		try(InputStream in = Files.openFileStream(filename))
+		{
+			return new ShardTermFilter(BloomFilter.readFrom(in, Funnels.stringFunnel(StandardCharsets.UTF_8)));
+		}
+	}
+
+	/** Returns the filter of the specified on-disk index. This is read from disk if it was
+	 * written, otherwise it is built from the lexicon of the index. Returns null if
+	 * the filter cannot be obtained. */
+	public static ShardTermFilter get(IndexOnDisk index)
+	{
+		try{
+			ShardTermFilter rtr = read(index.getPath(), index.getPrefix());
+			if (rtr == null)
+				rtr = build(index.getLexicon());
+			return rtr;
+		} catch (IOException ioe) {
+			logger.warn("Could not obtain term filter for index " + index + ", all of its lookups will use its lexicon", ioe);
+			return null;
+		}
+	}
+
+	static String filename(String path, String prefix)
+	{
+		return path + ApplicationSetup.FILE_SEPARATOR + prefix + FILE_SUFFIX;
+	}
+}
@@ -4,6 +4,7 @@ import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.terrier.matching.BaseMatching;
 import org.terrier.querying.Request;
 import org.terrier.querying.ScoredDoc;
 import org.terrier.querying.ScoredDocList;
@@ -32,12 +33,15 @@ public class JSONOutputFormat implements org.terrier.structures.outputformat.Out
         JSONObject json = new JSONObject();
         json.put("qid", q.getQueryID());
         json.put("query", q.getOriginalQuery());
-        if (q instanceof Request)
+        //no MatchingQueryTerms are available for results obtained from a cache
+        if (q instanceof Request && ((Request)q).getMatchingQueryTerms() != null)
         {
             Request rq = (Request)q;
             json.put("matchopql", rq.getMatchingQueryTerms().toString() );
         }
         json.put("num_results", results.size());
+        if (q instanceof Request && ((Request)q).getResultSet() != null)
+            json.put("approximate", ((Request)q).getResultSet().getStatusCode() == BaseMatching.STATUS_TIMEOUT);
 
         JSONArray array = new JSONArray();
 
@@ -0,0 +1,223 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is SearchExecutor.java.
+ *
+ * The Original Code is Copyright (C) 2017-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *  Craig Macdonald
+ */
+package org.terrier.rest;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.utility.ApplicationSetup;
+
+/** Runs the queries of the REST server, with admission control. At most <tt>rest.max.inflight</tt> queries
+ * are executed at once, and at most <tt>rest.max.queued</tt> further queries wait to be executed. Queries
+ * submitted beyond these limits are rejected, such that the server sheds load rather than accumulating
+ * an unbounded backlog. Where the JVM supports virtual threads, each query is executed on its own virtual
+ * thread; otherwise a fixed pool of <tt>rest.max.inflight</tt> threads is used.
+ * <p><b>Properties</b>:
+ * <ul>
+ * <li><tt>rest.max.inflight</tt> - maximum number of queries to execute at once. Defaults to the number of processors.</li>
+ * <li><tt>rest.max.queued</tt> - maximum number of queries waiting to be executed. Defaults to 100.</li>
+ * <li><tt>rest.timeout.ms</tt> - time in milliseconds after which a query is cancelled, or 0 for no limit. Defaults to 0.</li>
+ * <li><tt>rest.virtual.threads</tt> - whether to use virtual threads where available. Defaults to true.</li>
+ * </ul>
+ * @since 5.4
+ */
+public class SearchExecutor {
+
+	protected static final Logger logger = LoggerFactory.getLogger(SearchExecutor.class);
+
+	protected final ExecutorService executor;
+	/** permits for each query admitted, whether waiting or executing */
+	protected final Semaphore admitted;
+	/** permits for each query executing, or null if the size of the thread pool limits this */
+	protected final Semaphore executing;
+	protected final int maxInFlight;
+	protected final int maxQueued;
+	protected final long timeout;
+
+	protected final LongAdder completed = new LongAdder();
+	protected final LongAdder rejected = new LongAdder();
+	protected final LongAdder timedOut = new LongAdder();
+
+	/** Constructs an executor configured by the <tt>rest.*</tt> properties
+	 * @param threadSafe whether the Manager can execute several queries at once. If not, queries are executed one at a time.
+	 */
+	public SearchExecutor(boolean threadSafe)
+	{
+		this(
+			threadSafe
+				? Integer.parseInt(ApplicationSetup.getProperty("rest.max.inflight", String.valueOf(Runtime.getRuntime().availableProcessors())))
+				: 1,
+			Integer.parseInt(ApplicationSetup.getProperty("rest.max.queued", "100")),
+			Long.parseLong(ApplicationSetup.getProperty("rest.timeout.ms", "0")),
+			Boolean.parseBoolean(ApplicationSetup.getProperty("rest.virtual.threads", "true")));
+	}
+
+	/** Constructs an executor
+	 * @param _maxInFlight maximum number of queries to execute at once
+	 * @param _maxQueued maximum number of queries waiting to be executed
+	 * @param _timeout time in milliseconds after which a query should be cancelled, or 0 for no limit
+	 * @param virtualThreads whether to use virtual threads where available
+	 */
+	public SearchExecutor(int _maxInFlight, int _maxQueued, long _timeout, boolean virtualThreads)
+	{
+		if (_maxInFlight <= 0 || _maxQueued < 0)
+			throw new IllegalArgumentException("Invalid limits for " + this.getClass().getSimpleName());
+		this.maxInFlight = _maxInFlight;
+		this.maxQueued = _maxQueued;
+		this.timeout = _timeout;
+		this.admitted = new Semaphore(_maxInFlight + _maxQueued);
+		final ExecutorService virtual = virtualThreads ? newVirtualThreadExecutor() : null;
+		if (virtual != null)
+		{
+			this.executor = virtual;
+			this.executing = new Semaphore(_maxInFlight, true);
+			logger.info("Using virtual threads for at most " + _maxInFlight + " queries at once");
+		}
+		else
+		{
+			this.executor = Executors.newFixedThreadPool(_maxInFlight, r -> {
+				Thread t = new Thread(r, "terrier-rest-query");
+				t.setDaemon(true);
+				return t;
+			});
+			this.executing = null;
+			logger.info("Using " + _maxInFlight + " threads for queries");
+		}
+	}
+
+	/** returns a virtual-thread-per-task executor, or null if this JVM has no virtual threads */
+	static ExecutorService newVirtualThreadExecutor()
+	{
+		try{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/** Submits the specified query for execution.
+	 * @param query the work to be done for the query
+	 * @return a future that can be used to cancel the query
+	 * @throws RejectedExecutionException if too many queries are already admitted
+	 */
+	public Future<?> submit(final Runnable query)
+	{
+		if (! admitted.tryAcquire())
+		{
+			rejected.increment();
+			throw new RejectedExecutionException("Too many queries in progress (" + maxInFlight + " executing, " + maxQueued + " queued)");
+		}
+		//claimed by whichever of the query and its cancellation happens first, which then releases the permit
+		final AtomicBoolean claimed = new AtomicBoolean();
+		final FutureTask<Void> task = new FutureTask<Void>(() -> {
+			if (! claimed.compareAndSet(false, true))
+				return null;
+			try{
+				if (executing != null)
+					executing.acquire();
+				try{
+					query.run();
+				} finally {
+					if (executing != null)
+						executing.release();
+				}
+				completed.increment();
+			} finally {
+				//a query that was cancelled while running holds its place until it actually stops
+				admitted.release();
+			}
+			return null;
+		}){
+			@Override
+			protected void done() {
+				//a query cancelled before it started will never run, so release its place here
+				if (claimed.compareAndSet(false, true))
+					admitted.release();
+			}
+		};
+		try{
+			executor.execute(task);
+		} catch (RejectedExecutionException ree) {
+			admitted.release();
+			rejected.increment();
+			throw ree;
+		}
+		return task;
+	}
+
+	/** Records that a query was cancelled as it exceeded the timeout */
+	public void timedOut(Future<?> query)
+	{
+		query.cancel(true);
+		timedOut.increment();
+	}
+
+	/** Returns the time in milliseconds after which queries should be cancelled, or 0 for no limit */
+	public long getTimeout()
+	{
+		return timeout;
+	}
+
+	/** Returns the number of queries currently admitted, whether waiting or executing */
+	public int getAdmittedCount()
+	{
+		return maxInFlight + maxQueued - admitted.availablePermits();
+	}
+
+	/** Returns the number of queries that completed */
+	public long getCompletedCount()
+	{
+		return completed.sum();
+	}
+
+	/** Returns the number of queries that were rejected as too many queries were admitted */
+	public long getRejectedCount()
+	{
+		return rejected.sum();
+	}
+
+	/** Returns the number of queries that were cancelled as they exceeded the timeout */
+	public long getTimedOutCount()
+	{
+		return timedOut.sum();
+	}
+
+	/** Stops accepting queries, and waits for admitted queries to finish */
+	public void shutdown() throws InterruptedException
+	{
+		executor.shutdown();
+		executor.awaitTermination(timeout > 0 ? timeout : 60000, TimeUnit.MILLISECONDS);
+	}
+}
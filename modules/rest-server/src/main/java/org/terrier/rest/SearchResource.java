@@ -25,8 +25,14 @@
  */
 package org.terrier.rest;
 
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
@@ -34,9 +40,14 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.terrier.querying.IndexRef;
 import org.terrier.querying.Manager;
 import org.terrier.querying.ManagerFactory;
@@ -51,44 +62,101 @@ import org.terrier.utility.ApplicationSetup;
 
 import com.google.common.annotations.VisibleForTesting;
 
+/** Answers queries for the REST server. Queries are executed asynchronously by a {@link SearchExecutor},
+ * which limits the number of queries in progress - queries beyond those limits receive a 503 response, 
+ * as do queries that exceed the timeout (if any). Where the terrier-concurrent module is available, 
+ * the index is made thread-safe for retrieval, such that several queries can be executed at once; 
+ * otherwise, queries are executed one at a time. Results are streamed to the client as they are formatted.
+ */
 @Path("/search")
 public class SearchResource {
 
+	protected static final Logger logger = LoggerFactory.getLogger(SearchResource.class);
+	
 	static final String DEFAULT_FORMAT = "trec";
+	static final String CONCURRENT_PREFIX = "concurrent:";
+	
+	static IndexRef indexRef;
+	static Manager m;
+	static SearchExecutor executor;
 	
-	@SuppressWarnings("deprecation")
-	static IndexRef indexRef = IndexRef.of(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX);
-	static Manager m = ManagerFactory.from(indexRef);
+	static {
+		reinit();
+	}
 	
 	@VisibleForTesting @SuppressWarnings("deprecation")
-	public static void reinit()
+	public static synchronized void reinit()
 	{
-		indexRef = IndexRef.of(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX);
+		IndexRef ref = IndexRef.of(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX);
+		//use a thread-safe index and manager where these are available
+		final IndexRef concurrentRef = IndexRef.of(CONCURRENT_PREFIX + ref.toString());
+		final boolean threadSafe = IndexFactory.whoSupports(concurrentRef) != null;
+		if (threadSafe)
+			ref = concurrentRef;
+		else
+			logger.warn("Concurrent index support not found, queries will be executed one at a time");
+		indexRef = ref;
 		m = ManagerFactory.from(indexRef);
+		if (executor != null)
+		{
+			try{
+				executor.shutdown();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		executor = new SearchExecutor(threadSafe);
 	}
 	
 	@GET
     @Produces(MediaType.TEXT_PLAIN)
 	@Path("{format}")
-    public Response search(
-    	@QueryParam("query") String query,
-    	@QueryParam("controls")@DefaultValue("") String controls,
-    	@QueryParam("qid")@DefaultValue("") String qid,
-    	@QueryParam("wmodel")@DefaultValue("") String wmodel,
-    	@QueryParam("matching")@DefaultValue("") String matching,
-    	@PathParam("format")@DefaultValue(DEFAULT_FORMAT) String format
+    public void search(
+    	@Suspended final AsyncResponse response,
+    	@QueryParam("query") final String query,
+    	@QueryParam("controls")@DefaultValue("") final String controls,
+    	@QueryParam("qid")@DefaultValue("") final String qid,
+    	@QueryParam("wmodel")@DefaultValue("") final String wmodel,
+    	@QueryParam("matching")@DefaultValue("") final String matching,
+    	@PathParam("format")@DefaultValue(DEFAULT_FORMAT) final String format
     	) 
 	{
-		System.err.println("Querying " + indexRef.toString() + " for query " + query);
-		if (format == null)
-			format = DEFAULT_FORMAT;
-		
+		final Manager manager = m;
+		final SearchExecutor queryExecutor = executor;
+		final Future<?> future;
+		try{
+			future = queryExecutor.submit(() -> 
+				response.resume(search(manager, query, controls, qid, wmodel, matching, format == null ? DEFAULT_FORMAT : format)));
+		} catch (RejectedExecutionException ree) {
+			logger.warn("Rejected query " + query + ": " + ree.getMessage());
+			response.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+				.entity(ree.getMessage())
+				.header("Retry-After", "1")
+				.build());
+			return;
+		}
+		if (queryExecutor.getTimeout() > 0)
+		{
+			response.setTimeoutHandler(r -> {
+				queryExecutor.timedOut(future);
+				logger.warn("Query " + query + " cancelled after " + queryExecutor.getTimeout() + "ms");
+				r.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+					.entity("Query exceeded time limit of " + queryExecutor.getTimeout() + "ms")
+					.build());
+			});
+			response.setTimeout(queryExecutor.getTimeout(), TimeUnit.MILLISECONDS);
+		}
+    }
+	
+	Response search(Manager manager, String query, String controls, String qid, String wmodel, String matching, String format)
+	{
+		logger.debug("Querying " + indexRef.toString() + " for query " + query);
 		SearchRequest srq = null;
 		try{
-			srq = m.newSearchRequestFromQuery(query);
+			srq = manager.newSearchRequestFromQuery(query);
 			if (controls.length() > 0)
 			{
-				System.err.println("controls="+ controls);
+				logger.debug("controls="+ controls);
 				String[] controlKVs = controls.split(";");
 				for(String kv : controlKVs)
 				{
@@ -99,7 +167,7 @@ public class SearchResource {
 					if (kvs.length == 2)//stop no value being a problem
 						srq.setControl(kvs[0], kvs[1]);
 					else
-						System.err.println("invalid control="+ kv);
+						logger.warn("invalid control="+ kv);
 				}				 
 			}
 			
@@ -111,14 +179,16 @@ public class SearchResource {
 			if (qid.length() != 0)
 				srq.setQueryID(qid);
 			
-			m.runSearchRequest(srq);
+			manager.runSearchRequest(srq);
 			
-			StringWriter sw = new StringWriter();
-			PrintWriter pw = new PrintWriter(sw);			
-			OutputFormat of = getOutputFormat(srq, format);
-			of.printResults(pw, srq, "terrier-rest", "Q0", 0);
-			pw.flush();
-	        return Response.ok(sw.toString())
+			final SearchRequest results = srq;
+			final OutputFormat of = getOutputFormat(srq, format);
+			final StreamingOutput output = os -> {
+				PrintWriter pw = new PrintWriter(new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8)));
+				of.printResults(pw, results, "terrier-rest", "Q0", 0);
+				pw.flush();
+			};
+	        return Response.ok(output)
 					.type(of.contentType())
 					.header("Access-Control-Allow-Origin", "*")
 					.build();
@@ -127,8 +197,7 @@ public class SearchResource {
 			PrintWriter p = new PrintWriter(s);
 			p.println(e.toString());
 			e.printStackTrace(p);
-			System.err.println(e.toString());
-			e.printStackTrace();
+			logger.error("Problem running query " + query, e);
 			p.flush();
 			return Response.status(500).entity(s.toString()).build();
 		}
@@ -37,6 +37,8 @@ import org.terrier.applications.CLITool.CLIParsedCLITool;
 
 /**
  * Loads the default index and exports via a REST service at http://localhost:8080/
+ * The number of queries executed at once, the number waiting, and the time allowed for each
+ * query are controlled by the properties described in {@link SearchExecutor}.
  */
 public class SingleIndexRestServer extends CLIParsedCLITool {
     @Override
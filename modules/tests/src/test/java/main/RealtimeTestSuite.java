@@ -29,15 +29,20 @@ package main;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import org.terrier.realtime.incremental.TestDocumentDeletion;
 import org.terrier.realtime.incremental.TestIncremental;
+import org.terrier.realtime.matching.TestShardParallelMatching;
+import org.terrier.realtime.memory.TestCompressedMemoryPostingList;
 import org.terrier.realtime.memory.TestMemoryDirect;
 import org.terrier.realtime.memory.TestMemoryIndex;
+import org.terrier.realtime.memory.TestMemoryIndexConcurrency;
 import org.terrier.realtime.memory.TestMemoryIndexer;
 import org.terrier.realtime.memory.TestMemoryInvertedIndex;
 import org.terrier.realtime.memory.TestMemoryLexicon;
 import org.terrier.realtime.memory.TestMemoryMetaIndex;
 import org.terrier.realtime.memory.fields.TestMemoryFieldsIndex;
 import org.terrier.realtime.multi.TestMultiIndex;
+import org.terrier.realtime.multi.TestShardTermFilter;
 /** This class defines the active JUnit test classes for Terrier
  * @since 3.0
  * @author Craig Macdonald */
@@ -48,11 +53,16 @@ import org.terrier.realtime.multi.TestMultiIndex;
         TestMemoryFieldsIndex.class,
         TestMemoryIndexer.class,
         TestMemoryInvertedIndex.class,
+        TestCompressedMemoryPostingList.class,
         TestMemoryIndex.class,
+        TestMemoryIndexConcurrency.class,
         TestMemoryLexicon.class,
         TestMemoryMetaIndex.class,
         TestMultiIndex.class,
+        TestShardTermFilter.class,
         TestIncremental.class,
+        TestDocumentDeletion.class,
+        TestShardParallelMatching.class,
         TestMemoryDirect.class
 })
 public class RealtimeTestSuite{}
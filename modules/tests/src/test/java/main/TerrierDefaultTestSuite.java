@@ -31,6 +31,7 @@ import org.junit.runners.Suite.SuiteClasses;
 import org.terrier.applications.TestCLITool;
 import org.terrier.applications.TestDirectQuerySource;
 import org.terrier.applications.TestShowDocumentCommand;
+import org.terrier.compression.TestLZCodec;
 import org.terrier.compression.bit.TestCompressedBitFiles;
 import org.terrier.compression.bit.TestCompressedBitFilesDelta;
 import org.terrier.compression.bit.TestCompressedBitFilesGolomb;
@@ -56,12 +57,18 @@ import org.terrier.indexing.TestTweetJSONCollection;
 import org.terrier.indexing.TestWARC10Collection;
 import org.terrier.indexing.tokenisation.TestEnglishTokeniser;
 import org.terrier.indexing.tokenisation.TestUTFTokeniser;
+import org.terrier.matching.TestMatching.TestDAATBlockMaxWANDMatching;
 import org.terrier.matching.TestMatching.TestDAATFullMatching;
+import org.terrier.matching.TestMatching.TestDAATWANDMatching;
 import org.terrier.matching.TestMatching.TestTAATFullMatching;
+import org.terrier.matching.TestDocValuesFilter;
 import org.terrier.matching.TestMatchingQueryTerms;
+import org.terrier.matching.TestMatchingTimeout;
 import org.terrier.matching.TestResultSets;
 import org.terrier.matching.TestTRECResultsMatching;
+import org.terrier.matching.daat.TestWAND;
 import org.terrier.matching.matchops.TestMatchOpQLParser;
+import org.terrier.matching.matchops.TestNumericRangeOp;
 import org.terrier.matching.matchops.TestTRECQueryingMatchOpQL;
 import org.terrier.matching.models.TestWeightingModelFactory;
 import org.terrier.querying.TestDecorate;
@@ -70,21 +77,30 @@ import org.terrier.querying.TestSimpleDecorate;
 import org.terrier.querying.parser.TestQueryParser;
 import org.terrier.querying.summarisation.TestDefaultSummariser;
 import org.terrier.rest.TestClientAndServer;
+import org.terrier.rest.TestSearchExecutor;
 import org.terrier.statistics.TestGammaFunction.TestWikipediaLanczosGammaFunction;
 import org.terrier.structures.TestBasicLexiconEntry;
 import org.terrier.structures.TestBitIndexPointer;
 import org.terrier.structures.TestCompressingMetaIndex;
+import org.terrier.structures.TestFSOMapFileLexicon;
 import org.terrier.structures.TestIndexOnDisk;
 import org.terrier.structures.TestIndexUtil;
 import org.terrier.structures.TestTRECQuery;
+import org.terrier.structures.TestTermMaxScores;
+import org.terrier.structures.cache.TestBoundedQueryResultCache;
 import org.terrier.structures.bit.TestBitPostingIndex;
 import org.terrier.structures.bit.TestBitPostingIndexInputStream;
+import org.terrier.structures.bit.TestBitPostingIndexCache;
+import org.terrier.structures.bit.TestBitPostingIndexSkips;
 import org.terrier.structures.bit.TestPostingStructures;
 import org.terrier.structures.collections.TestFSArrayFile;
+import org.terrier.structures.collections.TestConcurrentLRUMap;
 import org.terrier.structures.collections.TestFSOrderedMapFile;
 import org.terrier.structures.indexing.TestIndexing;
 import org.terrier.structures.indexing.TestIndexingFatalErrors;
+import org.terrier.structures.indexing.TestTermIdDocumentPostingList;
 import org.terrier.structures.indexing.singlepass.TestInverted2DirectIndexBuilder;
+import org.terrier.structures.indexing.singlepass.TestThreadedSinglePassIndexer;
 import org.terrier.structures.merging.TestMerger;
 import org.terrier.structures.postings.TestFieldORIterablePosting;
 import org.terrier.structures.postings.TestFieldOnlyIterablePosting;
@@ -100,6 +116,7 @@ import org.terrier.tests.ShakespeareEndToEndTestSuite;
 import org.terrier.utility.TestArrayUtils;
 import org.terrier.utility.TestClassNameParser;
 import org.terrier.utility.TestCollectionStatistics;
+import org.terrier.utility.TestConcurrentTermDictionary;
 import org.terrier.utility.TestDistance;
 import org.terrier.utility.TestHeapSort;
 import org.terrier.utility.TestMavenResolution;
@@ -108,6 +125,7 @@ import org.terrier.utility.TestStaTools;
 import org.terrier.utility.TestStringTools;
 import org.terrier.utility.TestTagSet;
 import org.terrier.utility.TestTermCodes;
+import org.terrier.utility.TestTermDictionary;
 import org.terrier.utility.TestUnitUtils;
 import org.terrier.utility.TestVersion;
 import org.terrier.utility.io.TestCountingInputStream;
@@ -139,6 +157,7 @@ import org.terrier.utility.io.TestRandomDataInputMemory;
 	TestCompressedBitFiles.class,
 	TestCompressedBitFilesDelta.class,
 	TestCompressedBitFilesGolomb.class,
+	TestLZCodec.class,
 	
 	
 	//.evaluation
@@ -176,13 +195,19 @@ import org.terrier.utility.io.TestRandomDataInputMemory;
 	//.matching
 	TestMatchingQueryTerms.class,
 	TestDAATFullMatching.class,
+	TestDAATWANDMatching.class,
+	TestDAATBlockMaxWANDMatching.class,
+	TestWAND.class,
 	TestTAATFullMatching.class,
 	TestTRECResultsMatching.class,
 	TestResultSets.class,
+	TestMatchingTimeout.class,
+	TestDocValuesFilter.class,
 	
 	//matching.matchops
 	TestTRECQueryingMatchOpQL.class,
 	TestMatchOpQLParser.class,
+	TestNumericRangeOp.class,
 	
 	//matching.models
 	TestWeightingModelFactory.class,
@@ -200,6 +225,7 @@ import org.terrier.utility.io.TestRandomDataInputMemory;
 	
 	//rest
 	TestClientAndServer.class,
+	TestSearchExecutor.class,
 	
 	//.statistics
 	TestWikipediaLanczosGammaFunction.class,
@@ -209,25 +235,35 @@ import org.terrier.utility.io.TestRandomDataInputMemory;
 	TestBitIndexPointer.class,
 	TestBitPostingIndex.class,
 	TestBitPostingIndexInputStream.class,
+	TestBitPostingIndexSkips.class,
+	TestBitPostingIndexCache.class,
 	TestCompressingMetaIndex.class,
+	TestFSOMapFileLexicon.class,
 	TestPostingStructures.class,
 	TestIndexUtil.class,
 	TestTRECQuery.class,
 	TestIndexOnDisk.class,
+	TestTermMaxScores.class,
+	
+	//.structures.cache
+	TestBoundedQueryResultCache.class,
 	
 	//.structures.collections
 	TestFSOrderedMapFile.class,
+	TestConcurrentLRUMap.class,
 	TestFSArrayFile.class,
 	
 	//.structures.indexing
 	TestIndexing.class,
 	TestIndexingFatalErrors.class,
+	TestTermIdDocumentPostingList.class,
 	
 	//structures.indexing.merging
 	TestMerger.class,
 	
 	//.structures.indexing.sp.hadoop
 	TestInverted2DirectIndexBuilder.class,
+	TestThreadedSinglePassIndexer.class,
 	
 	//.structures.indexing.sp.hadoop
 //	TestBitPostingIndexInputFormat.class,
@@ -262,6 +298,8 @@ import org.terrier.utility.io.TestRandomDataInputMemory;
 	TestStaTools.class,
 	TestStringTools.class,
 	TestTermCodes.class,
+	TestTermDictionary.class,
+	TestConcurrentTermDictionary.class,
 	TestUnitUtils.class,
 	TestVersion.class,
 	//TestTimer.class,
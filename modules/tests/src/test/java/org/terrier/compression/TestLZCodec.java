@@ -0,0 +1,105 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestLZCodec.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk>
+ */
+package org.terrier.compression;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestLZCodec {
+
+	static byte[] roundTrip(LZCodec.Compressor compressor, byte[] dictionary, byte[] record)
+	{
+		byte[] compressed = new byte[LZCodec.maxCompressedLength(record.length)];
+		int length = compressor.compress(record, record.length, compressed);
+		byte[] dest = new byte[dictionary.length + record.length];
+		System.arraycopy(dictionary, 0, dest, 0, dictionary.length);
+		int end = LZCodec.decompress(ByteBuffer.wrap(compressed, 0, length), dest, dictionary.length);
+		assertEquals(dest.length, end);
+		return Arrays.copyOfRange(dest, dictionary.length, end);
+	}
+
+	static List<byte[]> records(int count)
+	{
+		List<byte[]> records = new ArrayList<>();
+		for(int i=0;i<count;i++)
+			records.add(("http://www.example" + (i % 5) + ".com/news/article" + i + ".html\0\0\0\0\0\0\0\0\0\0").getBytes(StandardCharsets.UTF_8));
+		return records;
+	}
+
+	@Test public void testNoDictionary()
+	{
+		LZCodec.Compressor compressor = new LZCodec.Compressor(new byte[0]);
+		Random random = new Random(42);
+		for(int length : new int[]{0, 1, 3, 4, 5, 14, 15, 16, 270, 300, 5000})
+		{
+			//random bytes are mostly literals, repeated runs are matches
+			byte[] noise = new byte[length];
+			random.nextBytes(noise);
+			assertArrayEquals(noise, roundTrip(compressor, new byte[0], noise));
+			byte[] runs = new byte[length];
+			for(int i=0;i<length;i++)
+				runs[i] = (byte) ((i / 40) % 3);
+			assertArrayEquals(runs, roundTrip(compressor, new byte[0], runs));
+		}
+	}
+
+	@Test public void testDictionary()
+	{
+		List<byte[]> samples = records(100);
+		byte[] dictionary = LZCodec.trainDictionary(samples, 1024);
+		assertTrue(dictionary.length > 0);
+		assertTrue(dictionary.length <= 1024);
+		LZCodec.Compressor compressor = new LZCodec.Compressor(dictionary);
+		LZCodec.Compressor plain = new LZCodec.Compressor(new byte[0]);
+		byte[] buffer = new byte[1024];
+		int withDictionary = 0, without = 0;
+		for(byte[] record : records(200))
+		{
+			assertArrayEquals(record, roundTrip(compressor, dictionary, record));
+			withDictionary += compressor.compress(record, record.length, buffer);
+			without += plain.compress(record, record.length, buffer);
+		}
+		assertTrue(withDictionary < without);
+	}
+
+	@Test public void testTrainNoRepeats()
+	{
+		assertEquals(0, LZCodec.trainDictionary(new ArrayList<>(), 1024).length);
+		List<byte[]> samples = new ArrayList<>();
+		samples.add("abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.UTF_8));
+		assertEquals(0, LZCodec.trainDictionary(samples, 1024).length);
+	}
+}
@@ -29,6 +29,7 @@ package org.terrier.indexing;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import gnu.trove.TObjectIntHashMap;
 
@@ -427,6 +428,139 @@ public class TestIndexers extends ApplicationSetupBasedTest {
 		testIndexer(new BasicIndexer(ApplicationSetup.TERRIER_INDEX_PATH, "fields"), true, true);
 	}
 	
+	@Test
+	public void testBasicPipelinedNoFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "");
+		ApplicationSetup.setProperty("indexer.pipeline.threads", "2");
+		testIndexer(new BasicIndexer(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX), true, false);
+	}
+	
+	@Test
+	public void testBasicPipelinedFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "TITLE,ELSE");
+		ApplicationSetup.setProperty("indexer.pipeline.threads", "2");
+		testIndexer(new BasicIndexer(ApplicationSetup.TERRIER_INDEX_PATH, "fields"), true, true);
+	}
+	
+	@Test
+	public void testBasicCharTermsNoFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "");
+		ApplicationSetup.setProperty("indexer.char.terms", "true");
+		testIndexer(new BasicIndexer(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX), true, false);
+	}
+	
+	@Test
+	public void testBasicCharTermsFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "TITLE,ELSE");
+		ApplicationSetup.setProperty("indexer.char.terms", "true");
+		testIndexer(new BasicIndexer(ApplicationSetup.TERRIER_INDEX_PATH, "fields"), true, true);
+	}
+	
+	@Test
+	public void testBasicPipelinedCharTermsNoFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "");
+		ApplicationSetup.setProperty("indexer.pipeline.threads", "2");
+		ApplicationSetup.setProperty("indexer.char.terms", "true");
+		testIndexer(new BasicIndexer(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX), true, false);
+	}
+	
+	@Test
+	public void testBasicTermIdsNoFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "");
+		ApplicationSetup.setProperty("indexer.termids", "true");
+		testIndexer(new BasicIndexer(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX), true, false);
+	}
+	
+	@Test
+	public void testBasicTermIdsFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "TITLE,ELSE");
+		ApplicationSetup.setProperty("indexer.termids", "true");
+		testIndexer(new BasicIndexer(ApplicationSetup.TERRIER_INDEX_PATH, "fields"), true, true);
+	}
+	
+	@Test
+	public void testBasicPipelinedTermIdsFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "TITLE,ELSE");
+		ApplicationSetup.setProperty("indexer.pipeline.threads", "2");
+		ApplicationSetup.setProperty("indexer.char.terms", "true");
+		ApplicationSetup.setProperty("indexer.termids", "true");
+		testIndexer(new BasicIndexer(ApplicationSetup.TERRIER_INDEX_PATH, "fields"), true, true);
+	}
+	
+	/** stopwords and stems must be the same whether terms are passed through the term pipeline as Strings or buffers */
+	@Test
+	public void testCharTermsTermPipeline() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "");
+		ApplicationSetup.setProperty("termpipelines", "Stopwords,PorterStemmer");
+		final String[] texts = new String[]{
+			"The cats and the dogs were chasing horses", 
+			"Chasing CATS is what the dogs like", 
+			"horses"};
+		Index[] indices = new Index[2];
+		for(int i=0;i<2;i++)
+		{
+			ApplicationSetup.setProperty("indexer.char.terms", String.valueOf(i == 1));
+			Document[] sourceDocs = new Document[texts.length];
+			for(int d=0;d<texts.length;d++)
+				sourceDocs[d] = new FileDocument("doc" + d, new ByteArrayInputStream(texts[d].getBytes()), new EnglishTokeniser());
+			Indexer indexer = new BasicIndexer(ApplicationSetup.TERRIER_INDEX_PATH, "char" + i);
+			indexer.index(new Collection[]{new CollectionDocumentList(sourceDocs)});
+			indices[i] = Index.createIndex(ApplicationSetup.TERRIER_INDEX_PATH, "char" + i);
+			assertNotNull(indices[i]);
+		}
+		assertEquals(indices[0].getCollectionStatistics().getNumberOfUniqueTerms(), indices[1].getCollectionStatistics().getNumberOfUniqueTerms());
+		assertEquals(indices[0].getCollectionStatistics().getNumberOfTokens(), indices[1].getCollectionStatistics().getNumberOfTokens());
+		for(String term : new String[]{"cat", "dog", "chase", "hors"})
+		{
+			assertNotNull(term, indices[1].getLexicon().getLexiconEntry(term));
+			assertEquals(indices[0].getLexicon().getLexiconEntry(term).getFrequency(), indices[1].getLexicon().getLexiconEntry(term).getFrequency());
+		}
+		assertNull(indices[1].getLexicon().getLexiconEntry("the"));
+		for(int d=0;d<texts.length;d++)
+			assertEquals(indices[0].getDocumentIndex().getDocumentLength(d), indices[1].getDocumentIndex().getDocumentLength(d));
+		indices[0].close();
+		indices[1].close();
+	}
+	
+	/** docids must follow the order of the collection, however many threads process the documents */
+	@Test
+	public void testPipelinedOrder() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "");
+		ApplicationSetup.setProperty("indexer.pipeline.threads", "3");
+		ApplicationSetup.setProperty("indexer.pipeline.capacity", "4");
+		final int N = 200;
+		Document[] sourceDocs = new Document[N];
+		for(int i=0;i<N;i++)
+		{
+			StringBuilder text = new StringBuilder();
+			for(int j=0;j<=i%7;j++)
+				text.append("term").append(j).append(' ');
+			sourceDocs[i] = new FileDocument("doc" + i, new ByteArrayInputStream(text.toString().getBytes()), new EnglishTokeniser());
+		}
+		Indexer indexer = new BasicSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX);
+		indexer.index(new Collection[]{new CollectionDocumentList(sourceDocs)});
+		Index index = Index.createIndex(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX);
+		assertNotNull(index);
+		assertEquals(N, index.getCollectionStatistics().getNumberOfDocuments());
+		for(int i=0;i<N;i++)
+		{
+			assertEquals("doc" + i, index.getMetaIndex().getItem("filename", i));
+			assertEquals(i%7 + 1, index.getDocumentIndex().getDocumentLength(i));
+		}
+		assertEquals(N, index.getLexicon().getLexiconEntry("term0").getDocumentFrequency());
+		index.close();
+	}
+	
 	@Test
 	public void testBlockNoFields() throws Exception
 	{
@@ -453,6 +587,87 @@ public class TestIndexers extends ApplicationSetupBasedTest {
 		testIndexer(new BasicSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, "fields"), false, true);
 	}
 	
+	@Test
+	public void testBasicSPPipelinedNoFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "");
+		ApplicationSetup.setProperty("indexer.pipeline.threads", "2");
+		testIndexer(new BasicSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX), false, false);
+	}
+	@Test
+	public void testBasicSPPipelinedFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "TITLE,ELSE");
+		ApplicationSetup.setProperty("indexer.pipeline.threads", "2");
+		testIndexer(new BasicSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, "fields"), false, true);
+	}
+	
+	@Test
+	public void testBasicSPCharTermsNoFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "");
+		ApplicationSetup.setProperty("indexer.char.terms", "true");
+		testIndexer(new BasicSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX), false, false);
+	}
+	@Test
+	public void testBasicSPCharTermsFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "TITLE,ELSE");
+		ApplicationSetup.setProperty("indexer.char.terms", "true");
+		testIndexer(new BasicSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, "fields"), false, true);
+	}
+	
+	@Test
+	public void testBasicSPTermIdsNoFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "");
+		ApplicationSetup.setProperty("indexer.termids", "true");
+		testIndexer(new BasicSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX), false, false);
+	}
+	@Test
+	public void testBasicSPTermIdsFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "TITLE,ELSE");
+		ApplicationSetup.setProperty("indexer.termids", "true");
+		testIndexer(new BasicSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, "fields"), false, true);
+	}
+	@Test
+	public void testBasicSPPipelinedTermIdsNoFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "");
+		ApplicationSetup.setProperty("indexer.pipeline.threads", "2");
+		ApplicationSetup.setProperty("indexer.termids", "true");
+		testIndexer(new BasicSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX), false, false);
+	}
+	
+	@Test
+	public void testBasicSPParallelMergeNoFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "");
+		//a run for each document, merged in ranges of terms
+		ApplicationSetup.setProperty("indexing.singlepass.max.documents.flush", "1");
+		ApplicationSetup.setProperty("indexing.singlepass.merge.threads", "3");
+		testIndexer(new BasicSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX), false, false);
+	}
+	@Test
+	public void testBasicSPParallelMergeFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "TITLE,ELSE");
+		ApplicationSetup.setProperty("indexing.singlepass.max.documents.flush", "1");
+		ApplicationSetup.setProperty("indexing.singlepass.merge.threads", "3");
+		testIndexer(new BasicSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, "fields"), false, true);
+	}
+	@Test
+	public void testBasicSPParallelMergeSmallBuffer() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "");
+		//too small for all ranges to be merged at once
+		ApplicationSetup.setProperty("indexing.singlepass.max.documents.flush", "1");
+		ApplicationSetup.setProperty("indexing.singlepass.merge.threads", "3");
+		ApplicationSetup.setProperty("indexing.singlepass.merge.buffer.memory", "16K");
+		testIndexer(new BasicSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX), false, false);
+	}
+	
 	@Test
 	public void testBlockSPNoFields() throws Exception
 	{
@@ -465,5 +680,22 @@ public class TestIndexers extends ApplicationSetupBasedTest {
 		ApplicationSetup.setProperty("FieldTags.process", "TITLE,ELSE");
 		testIndexer(new BlockSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, "fields"), false, true);
 	}
+	
+	@Test
+	public void testBlockSPParallelMergeNoFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "");
+		ApplicationSetup.setProperty("indexing.singlepass.max.documents.flush", "1");
+		ApplicationSetup.setProperty("indexing.singlepass.merge.threads", "3");
+		testIndexer(new BlockSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX), false, false);
+	}
+	@Test
+	public void testBlockSPParallelMergeFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "TITLE,ELSE");
+		ApplicationSetup.setProperty("indexing.singlepass.max.documents.flush", "1");
+		ApplicationSetup.setProperty("indexing.singlepass.merge.threads", "3");
+		testIndexer(new BlockSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, "fields"), false, true);
+	}
 
 }
@@ -29,11 +29,14 @@ package org.terrier.indexing.tokenisation;
 
 
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 
 import org.junit.Test;
+import org.terrier.terms.TermBuffer;
 
 public class TestEnglishTokeniser extends BaseTestTokeniser {
 
@@ -98,4 +101,26 @@ public class TestEnglishTokeniser extends BaseTestTokeniser {
 		testTokenisation(tokenise("...   a;b ?"), "a", "b");
 	}
 	
+	/** tokens read into a buffer must be the same as those from next() */
+	@Test public void testNextTerm() throws Exception
+	{
+		for (String text : new String[]{
+			"hello there", "Hello THERE Mr Wolf", "a bbbb c 0a0000 d", 
+			"hello there mr wolf thisisareallylongword aye", "...   a;b ?", "a\u0133a", ""})
+		{
+			TokenStream strings = tokenise(text);
+			TokenStream buffers = tokenise(text);
+			TermBuffer buffer = new TermBuffer(1);
+			while(strings.hasNext())
+			{
+				assertTrue(buffers.hasNext());
+				String t = strings.next();
+				assertEquals(t != null, buffers.nextTerm(buffer));
+				if (t != null)
+					assertEquals(t, buffer.toString());
+			}
+			assertFalse(buffers.hasNext());
+		}
+	}
+	
 }
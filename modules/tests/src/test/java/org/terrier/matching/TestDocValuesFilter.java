@@ -0,0 +1,163 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestDocValuesFilter.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk>
+ */
+
+package org.terrier.matching;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.querying.LocalManager;
+import org.terrier.querying.Manager;
+import org.terrier.querying.Request;
+import org.terrier.querying.SearchRequest;
+import org.terrier.structures.DocValues;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.indexing.DocValuesBuilder;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+
+public class TestDocValuesFilter extends ApplicationSetupBasedTest {
+
+	static final String[][] VALUES = new String[][]{
+		{"a.example.uk/x", "en", "20200101"},
+		{"b.example.com/y", "fr", "20200615"},
+		{"example.uk", "en", "20201231"},
+		{"c.other.org", "de", ""},
+		{"", "en", "20210101"},
+		{"http://news.bbc.co.uk/z", "fr", "20190505"}
+	};
+
+	static final String[] MATCHINGS = new String[]{"org.terrier.matching.daat.Full", "org.terrier.matching.taat.Full"};
+
+	IndexOnDisk makeIndex() throws Exception
+	{
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("ignore.low.idf.terms", "false");
+		String[] docnos = new String[VALUES.length];
+		String[] docs = new String[VALUES.length];
+		for(int i=0;i<VALUES.length;i++)
+		{
+			docnos[i] = "doc" + i;
+			docs[i] = "alpha bravo";
+		}
+		IndexOnDisk index = (IndexOnDisk) IndexTestUtils.makeIndex(docnos, docs);
+		DocValuesBuilder builder = new DocValuesBuilder(index, new String[]{"url", "lang", "date"},
+			new byte[]{DocValues.TYPE_HOST, DocValues.TYPE_STRING, DocValues.TYPE_LONG});
+		for(String[] v : VALUES)
+			builder.addDocument(v);
+		builder.close();
+		return IndexOnDisk.createIndex(index.getPath(), index.getPrefix());
+	}
+
+	static int[] retrieve(Index index, String matching, String site, String filter)
+	{
+		Manager mgr = new LocalManager(index);
+		SearchRequest srq = mgr.newSearchRequest("q", "alpha");
+		srq.setControl(SearchRequest.CONTROL_WMODEL, "Tf");
+		srq.setControl(SearchRequest.CONTROL_MATCHING, matching);
+		if (site != null)
+			srq.setControl(DocValuesFilter.SITE_CONTROL, site);
+		if (filter != null)
+			srq.setControl(DocValuesFilter.CONTROL, filter);
+		mgr.runSearchRequest(srq);
+		ResultSet rs = ((Request) srq).getResultSet();
+		int[] docids = Arrays.copyOf(rs.getDocids(), rs.getResultSize());
+		Arrays.sort(docids);
+		return docids;
+	}
+
+	@Test public void testDocValues() throws Exception {
+		IndexOnDisk index = makeIndex();
+		assertTrue(index.hasIndexStructure(DocValues.STRUCTURE_NAME));
+		DocValues dv = (DocValues) index.getIndexStructure(DocValues.STRUCTURE_NAME);
+		assertEquals(VALUES.length, dv.getNumberOfDocuments());
+		int url = dv.getColumn("url");
+		assertEquals(DocValues.TYPE_HOST, dv.getType(url));
+		assertArrayEquals(new String[]{"a.example.uk", "b.example.com", "c.other.org", "example.uk", "news.bbc.co.uk"}, dv.getDictionary(url));
+		assertEquals(-1, dv.getOrdinal(url, 4));
+		assertEquals("news.bbc.co.uk", dv.getDictionary(url)[dv.getOrdinal(url, 5)]);
+		int lang = dv.getColumn("lang");
+		assertArrayEquals(new String[]{"de", "en", "fr"}, dv.getDictionary(lang));
+		assertEquals(1, dv.getOrdinal(lang, 0));
+		int date = dv.getColumn("date");
+		assertEquals(20200615l, dv.getLong(date, 1));
+		assertEquals(DocValues.MISSING_LONG, dv.getLong(date, 3));
+		assertEquals(-1, dv.getColumn("colour"));
+		assertTrue(DocValuesFilter.filtersSite(index));
+	}
+
+	@Test public void testFilters() throws Exception {
+		IndexOnDisk index = makeIndex();
+		for(String matching : MATCHINGS)
+		{
+			assertArrayEquals(new int[]{0,1,2,3,4,5}, retrieve(index, matching, null, null));
+			assertArrayEquals(new int[]{0,2,5}, retrieve(index, matching, "uk", null));
+			assertArrayEquals(new int[]{5}, retrieve(index, matching, "UK", "lang:fr"));
+			assertArrayEquals(new int[]{0,2,4}, retrieve(index, matching, null, "lang:en"));
+			assertArrayEquals(new int[]{0,1,2}, retrieve(index, matching, null, "lang:en,fr date:20200101..20201231"));
+			assertArrayEquals(new int[]{0,5}, retrieve(index, matching, null, "date:..20200101"));
+			assertArrayEquals(new int[]{4}, retrieve(index, matching, null, "date:20210101"));
+			assertArrayEquals(new int[]{1}, retrieve(index, matching, null, "url:example.com"));
+			//keys without doc values are filtered using the meta index
+			assertArrayEquals(new int[]{1,3}, retrieve(index, matching, null, "docno:doc1,doc3"));
+			assertArrayEquals(new int[]{1}, retrieve(index, matching, null, "docno:doc1,doc3 lang:fr"));
+		}
+		//keys with neither doc values nor meta index values cannot be filtered
+		SearchRequest srq = new LocalManager(index).newSearchRequest("q", "alpha");
+		srq.setControl(DocValuesFilter.CONTROL, "colour:red");
+		try{
+			DocValuesFilter.get(index, (Request) srq);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException iae) {}
+	}
+
+	@Test public void testWithoutDocValues() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		Index index = IndexTestUtils.makeIndex(new String[]{"doc1", "doc2", "doc3"}, new String[]{"alpha", "alpha bravo", "alpha"});
+		assertFalse(index.hasIndexStructure(DocValues.STRUCTURE_NAME));
+		for(String matching : MATCHINGS)
+			assertArrayEquals(new int[]{0,2}, retrieve(index, matching, null, "docno:doc1,doc3"));
+	}
+
+	@Test public void testBuiltByMetaIndex() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("indexer.docvalues.keys", "docno");
+		Index index = IndexTestUtils.makeIndex(new String[]{"doc2", "doc1", "doc2"}, new String[]{"alpha", "bravo", "alpha bravo"});
+		DocValues dv = (DocValues) index.getIndexStructure(DocValues.STRUCTURE_NAME);
+		assertNotNull(dv);
+		int docno = dv.getColumn("docno");
+		assertArrayEquals(new String[]{"doc1", "doc2"}, dv.getDictionary(docno));
+		assertEquals(1, dv.getOrdinal(docno, 0));
+		assertEquals(0, dv.getOrdinal(docno, 1));
+		assertEquals(1, dv.getOrdinal(docno, 2));
+		assertArrayEquals(new int[]{0,2}, retrieve(index, "org.terrier.matching.daat.Full", null, "docno:doc2"));
+		assertFalse(DocValuesFilter.filtersSite(index));
+	}
+}
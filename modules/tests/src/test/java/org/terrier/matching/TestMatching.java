@@ -88,6 +88,34 @@ public abstract class TestMatching extends ApplicationSetupBasedTest {
 		}
 	}
 	
+	public static class TestDAATWANDMatching extends TestMatching
+	{
+		@Override
+		protected Matching makeMatching(Index i)
+		{
+			return new org.terrier.matching.daat.WAND(i);
+		}
+
+		@Override
+		protected Class<? extends Matching> getMatchingClass() {
+			return org.terrier.matching.daat.WAND.class;
+		}
+	}
+	
+	public static class TestDAATBlockMaxWANDMatching extends TestMatching
+	{
+		@Override
+		protected Matching makeMatching(Index i)
+		{
+			return new org.terrier.matching.daat.BlockMaxWAND(i);
+		}
+
+		@Override
+		protected Class<? extends Matching> getMatchingClass() {
+			return org.terrier.matching.daat.BlockMaxWAND.class;
+		}
+	}
+	
 	@Before public void setIndexerProperties()
 	{
 		ApplicationSetup.setProperty("indexer.meta.forward.keys", "filename");
@@ -0,0 +1,182 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestMatchingTimeout.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ *
+ */
+package org.terrier.matching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.matching.models.BM25;
+import org.terrier.querying.LocalManager;
+import org.terrier.querying.Request;
+import org.terrier.querying.SearchRequest;
+import org.terrier.structures.Index;
+import org.terrier.structures.cache.BoundedQueryResultCache;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+
+public class TestMatchingTimeout extends ApplicationSetupBasedTest {
+
+	static final int NUM_DOCS = 3000;
+
+	/** a weighting model that is slow to score the first documents */
+	public static class SlowBM25 extends BM25
+	{
+		private static final long serialVersionUID = 1L;
+		static final AtomicInteger slowScores = new AtomicInteger();
+
+		@Override
+		public double score(double tf, double docLength) {
+			if (slowScores.getAndDecrement() > 0)
+			{
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return super.score(tf, docLength);
+		}
+	}
+
+	Index makeIndex() throws Exception
+	{
+		ApplicationSetup.setProperty("termpipelines", "");
+		String[] docnos = new String[NUM_DOCS];
+		String[] docs = new String[NUM_DOCS];
+		for(int d=0;d<NUM_DOCS;d++)
+		{
+			docnos[d] = "doc" + d;
+			docs[d] = d % 2 == 0 ? "alpha bravo" : "alpha charlie charlie";
+		}
+		return IndexTestUtils.makeIndex(docnos, docs);
+	}
+
+	MatchingQueryTerms makeQuery(Request rq)
+	{
+		MatchingQueryTerms mqt = new MatchingQueryTerms("1", rq);
+		mqt.setTermProperty("alpha", 1.0d);
+		mqt.setTermProperty("charlie", 1.0d);
+		mqt.setDefaultTermWeightingModel(new SlowBM25());
+		return mqt;
+	}
+
+	@Test public void testTimeout() throws Exception
+	{
+		ApplicationSetup.setProperty("matching.retrieved_set_size", "0");
+		Index index = makeIndex();
+		for(Matching m : new Matching[]{new org.terrier.matching.daat.Full(index), new org.terrier.matching.daat.WAND(index), new org.terrier.matching.taat.Full(index)})
+		{
+			//no time limit
+			SlowBM25.slowScores.set(1);
+			ResultSet rs = m.match("1", makeQuery(new Request()));
+			assertEquals(m.getInfo(), 0, rs.getStatusCode());
+			assertEquals(m.getInfo(), NUM_DOCS, rs.getResultSize());
+
+			//time limit is exceeded
+			Request rq = new Request();
+			rq.setControl(BaseMatching.TIMEOUT_CONTROL, "5");
+			SlowBM25.slowScores.set(1);
+			rs = m.match("1", makeQuery(rq));
+			assertEquals(m.getInfo(), BaseMatching.STATUS_TIMEOUT, rs.getStatusCode());
+			assertTrue(m.getInfo(), rs.getResultSize() > 0);
+			assertTrue(m.getInfo(), rs.getResultSize() < NUM_DOCS);
+			//the status survives cropping of the results
+			assertEquals(m.getInfo(), BaseMatching.STATUS_TIMEOUT, rs.getResultSet(0, 1).getStatusCode());
+
+			//time limit is not exceeded
+			rq.setControl(BaseMatching.TIMEOUT_CONTROL, "60000");
+			SlowBM25.slowScores.set(1);
+			rs = m.match("1", makeQuery(rq));
+			assertEquals(m.getInfo(), 0, rs.getStatusCode());
+			assertEquals(m.getInfo(), NUM_DOCS, rs.getResultSize());
+		}
+		index.close();
+	}
+
+	@Test public void testInvalidTimeout() throws Exception
+	{
+		ApplicationSetup.setProperty("matching.retrieved_set_size", "0");
+		Index index = makeIndex();
+		for(Matching m : new Matching[]{new org.terrier.matching.daat.Full(index), new org.terrier.matching.taat.Full(index)})
+		{
+			//a non-numeric control is ignored, and matching has no time limit
+			Request rq = new Request();
+			rq.setControl(BaseMatching.TIMEOUT_CONTROL, "5ms");
+			SlowBM25.slowScores.set(1);
+			ResultSet rs = m.match("1", makeQuery(rq));
+			assertEquals(m.getInfo(), 0, rs.getStatusCode());
+			assertEquals(m.getInfo(), NUM_DOCS, rs.getResultSize());
+		}
+		index.close();
+	}
+
+	@Test public void testInterrupted() throws Exception
+	{
+		ApplicationSetup.setProperty("matching.retrieved_set_size", "0");
+		Index index = makeIndex();
+		SlowBM25.slowScores.set(0);
+		Thread.currentThread().interrupt();
+		ResultSet rs;
+		try{
+			rs = new org.terrier.matching.daat.Full(index).match("1", makeQuery(new Request()));
+		} finally {
+			assertTrue(Thread.interrupted());
+		}
+		assertEquals(BaseMatching.STATUS_TIMEOUT, rs.getStatusCode());
+		assertTrue(rs.getResultSize() < NUM_DOCS);
+		index.close();
+	}
+
+	@Test public void testManager() throws Exception
+	{
+		ApplicationSetup.setProperty("matching.retrieved_set_size", "0");
+		ApplicationSetup.setProperty("querying.resultscache", BoundedQueryResultCache.class.getName());
+		Index index = makeIndex();
+		LocalManager m = new LocalManager(index);
+		SearchRequest srq = m.newSearchRequest("1", "alpha charlie");
+		srq.setControl(SearchRequest.CONTROL_WMODEL, SlowBM25.class.getName());
+		srq.setControl(BaseMatching.TIMEOUT_CONTROL, "5");
+		SlowBM25.slowScores.set(1);
+		m.runSearchRequest(srq);
+		ResultSet rs = ((Request)srq).getResultSet();
+		assertEquals(BaseMatching.STATUS_TIMEOUT, rs.getStatusCode());
+
+		//approximate results are not cached
+		srq = m.newSearchRequest("1", "alpha charlie");
+		srq.setControl(SearchRequest.CONTROL_WMODEL, SlowBM25.class.getName());
+		srq.setControl(BaseMatching.TIMEOUT_CONTROL, "5");
+		m.runSearchRequest(srq);
+		assertFalse(rs == ((Request)srq).getResultSet());
+		assertEquals(0, ((Request)srq).getResultSet().getStatusCode());
+		index.close();
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestWAND.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ *   
+ */
+package org.terrier.matching.daat;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.matching.BaseMatching;
+import org.terrier.matching.Matching;
+import org.terrier.matching.MatchingQueryTerms;
+import org.terrier.matching.MatchingQueryTerms.MatchingTerm;
+import org.terrier.matching.MatchingQueryTerms.QueryTermProperties;
+import org.terrier.matching.PostingListManager;
+import org.terrier.matching.ResultSet;
+import org.terrier.matching.matchops.SynonymOp;
+import org.terrier.matching.models.BM25;
+import org.terrier.matching.models.DPH;
+import org.terrier.matching.models.DirichletLM;
+import org.terrier.matching.models.TF_IDF;
+import org.terrier.matching.models.WeightingModel;
+import org.terrier.structures.Index;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+
+public class TestWAND extends ApplicationSetupBasedTest {
+
+	static final String[] VOCAB = new String[]{
+		"alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel", 
+		"india", "juliet", "kilo", "lima", "mike", "november", "oscar", "papa"};
+	
+	Index makeIndex(Random r, boolean blocks) throws Exception
+	{
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("indexing.inverted.skip.block.size", "4");
+		final int numDocs = 400;
+		String[] docnos = new String[numDocs];
+		String[] docs = new String[numDocs];
+		for(int d=0;d<numDocs;d++)
+		{
+			docnos[d] = "doc" + d;
+			StringBuilder s = new StringBuilder();
+			final int length = 1 + r.nextInt(40);
+			for(int j=0;j<length;j++)
+			{
+				//skewed term distribution
+				final int t = (int) Math.min(VOCAB.length -1, Math.abs(r.nextGaussian()) * VOCAB.length / 3);
+				s.append(VOCAB[t]);
+				s.append(' ');
+			}
+			docs[d] = s.toString();
+		}
+		return blocks
+			? IndexTestUtils.makeIndexBlocks(docnos, docs)
+			: IndexTestUtils.makeIndex(docnos, docs);
+	}
+	
+	MatchingQueryTerms makeQuery(String[] terms, WeightingModel wm, boolean synonym)
+	{
+		MatchingQueryTerms mqt = new MatchingQueryTerms("1");
+		for(String t : terms)
+			mqt.setTermProperty(t, 1.0d);
+		if (synonym)
+		{
+			QueryTermProperties qtp = new QueryTermProperties(mqt.size(), 1.0d);
+			qtp.setTag(BaseMatching.BASE_MATCHING_TAG);
+			mqt.add(new MatchingTerm(new SynonymOp(new String[]{"india", "papa"}), qtp));
+		}
+		mqt.setDefaultTermWeightingModel(wm);
+		return mqt;
+	}
+	
+	void compare(Index index, Random r, WeightingModel wm, int numQueries) throws Exception
+	{
+		for(int q=0;q<numQueries;q++)
+		{
+			final String[] terms = new String[1 + r.nextInt(5)];
+			for(int j=0;j<terms.length;j++)
+				terms[j] = VOCAB[r.nextInt(VOCAB.length)];
+			final boolean synonym = r.nextInt(4) == 0;
+			ResultSet expected = new Full(index).match("1", makeQuery(terms, wm.clone(), synonym));
+			for(Matching m : new Matching[]{new WAND(index), new BlockMaxWAND(index)})
+			{
+				ResultSet actual = m.match("1", makeQuery(terms, wm.clone(), synonym));
+				final String message = m.getInfo() + " " + wm.getInfo() + " " + java.util.Arrays.toString(terms);
+				assertEquals(message, expected.getResultSize(), actual.getResultSize());
+				assertArrayEquals(message, expected.getDocids(), actual.getDocids());
+				assertArrayEquals(message, expected.getScores(), actual.getScores(), 0.0d);
+			}
+		}
+	}
+	
+	@Test public void testSameAsFull() throws Exception
+	{
+		ApplicationSetup.setProperty("matching.retrieved_set_size", "10");
+		Random r = new Random(13);
+		Index index = makeIndex(r, false);
+		for(WeightingModel wm : new WeightingModel[]{new BM25(), new TF_IDF(), new DirichletLM(), new DPH()})
+			compare(index, r, wm, 40);
+		index.close();
+	}
+	
+	@Test public void testSameAsFullBlocks() throws Exception
+	{
+		ApplicationSetup.setProperty("matching.retrieved_set_size", "5");
+		Random r = new Random(7);
+		Index index = makeIndex(r, true);
+		compare(index, r, new BM25(), 40);
+		index.close();
+	}
+	
+	@Test public void testUpperBounds() throws Exception
+	{
+		Random r = new Random(3);
+		Index index = makeIndex(r, false);
+		for(WeightingModel wm : new WeightingModel[]{new BM25(), new TF_IDF(), new DirichletLM()})
+		{
+			PostingListManager plm = new PostingListManager(index, index.getCollectionStatistics(), makeQuery(VOCAB, wm, false));
+			plm.prepare(true);
+			for(int i=0;i<plm.size();i++)
+			{
+				final double maxScore = plm.getMaxScore(i);
+				assertTrue(maxScore < Double.POSITIVE_INFINITY);
+				IterablePosting ip = plm.getPosting(i);
+				do {
+					assertTrue(wm.getInfo(), plm.score(i) <= maxScore);
+				} while(ip.next() != IterablePosting.EOL);
+			}
+			plm.close();
+		}
+		index.close();
+	}
+}
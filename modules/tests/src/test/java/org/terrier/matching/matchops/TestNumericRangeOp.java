@@ -0,0 +1,163 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestNumericRangeOp.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk>
+ */
+
+package org.terrier.matching.matchops;
+
+import static org.junit.Assert.*;
+
+import java.text.SimpleDateFormat;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.structures.DocValues;
+import org.terrier.structures.EntryStatistics;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.NumericRangeIndex;
+import org.terrier.structures.indexing.DocValuesBuilder;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+
+public class TestNumericRangeOp extends ApplicationSetupBasedTest {
+
+	static final int N = 100;
+
+	/** the date of each document in January 2020, or missing for every 10th document */
+	static long date(int docid)
+	{
+		return docid % 10 == 9 ? DocValues.MISSING_LONG : 20200101 + (docid * 7) % 28;
+	}
+
+	IndexOnDisk makeIndex() throws Exception
+	{
+		ApplicationSetup.setProperty("termpipelines", "");
+		String[] docnos = new String[N];
+		String[] docs = new String[N];
+		for(int i=0;i<N;i++)
+		{
+			docnos[i] = "doc" + i;
+			docs[i] = i % 2 == 0 ? "alpha" : "alpha bravo";
+		}
+		IndexOnDisk index = (IndexOnDisk) IndexTestUtils.makeIndex(docnos, docs);
+		DocValuesBuilder builder = new DocValuesBuilder(index, new String[]{"lang", "date"},
+			new byte[]{DocValues.TYPE_STRING, DocValues.TYPE_LONG});
+		for(int i=0;i<N;i++)
+			builder.addDocument(new String[]{"en", date(i) == DocValues.MISSING_LONG ? "" : String.valueOf(date(i))});
+		builder.close();
+		return IndexOnDisk.createIndex(index.getPath(), index.getPrefix());
+	}
+
+	static void checkPostings(IterablePosting ip, long lo, long hi) throws Exception
+	{
+		for(int i=0;i<N;i++)
+		{
+			long d = date(i);
+			if (d == DocValues.MISSING_LONG || d < lo || d > hi)
+				continue;
+			assertEquals(i, ip.next());
+			assertEquals(1, ip.getFrequency());
+			assertEquals(i % 2 == 0 ? 1 : 2, ip.getDocumentLength());
+		}
+		assertEquals(IterablePosting.EOL, ip.next());
+	}
+
+	static int count(long lo, long hi)
+	{
+		int count = 0;
+		for(int i=0;i<N;i++)
+		{
+			long d = date(i);
+			if (d != DocValues.MISSING_LONG && d >= lo && d <= hi)
+				count++;
+		}
+		return count;
+	}
+
+	@Test public void testNumericRangeIndex() throws Exception {
+		IndexOnDisk index = makeIndex();
+		assertTrue(index.hasIndexStructure(NumericRangeIndex.STRUCTURE_NAME));
+		NumericRangeIndex ranges = (NumericRangeIndex) index.getIndexStructure(NumericRangeIndex.STRUCTURE_NAME);
+		assertArrayEquals(new String[]{"date"}, ranges.getKeys());
+		assertEquals(-1, ranges.getColumn("lang"));
+		int column = ranges.getColumn("date");
+		//narrow ranges are sorted, wide ranges use a bitmap
+		long[][] queries = new long[][]{
+			{20200101, 20200101}, {20200105, 20200106}, {20200101, 20200128},
+			{20200110, 20200120}, {0, Long.MAX_VALUE}, {20200129, 20200131}, {20200120, 20200110}};
+		for(long[] q : queries)
+		{
+			assertEquals(count(q[0], q[1]), ranges.count(column, q[0], q[1]));
+			int[] docids = ranges.getDocids(column, q[0], q[1]);
+			assertEquals(count(q[0], q[1]), docids.length);
+			int i = 0;
+			for(int docid=0;docid<N;docid++)
+			{
+				long d = date(docid);
+				if (d != DocValues.MISSING_LONG && d >= q[0] && d <= q[1])
+					assertEquals(docid, docids[i++]);
+			}
+		}
+	}
+
+	@Test public void testRangeOp() throws Exception {
+		IndexOnDisk index = makeIndex();
+		Operator op = new MatchOpQLParser("#range(date 20200110 20200120)").parse().getKey();
+		assertTrue(op instanceof NumericRangeOp);
+		assertEquals("#range(date 20200110 20200120)", op.toString());
+		Pair<EntryStatistics, IterablePosting> pair = op.getPostingIterator(index);
+		assertNotNull(pair);
+		assertEquals(count(20200110, 20200120), pair.getLeft().getDocumentFrequency());
+		assertEquals(count(20200110, 20200120), pair.getLeft().getFrequency());
+		checkPostings(pair.getRight(), 20200110, 20200120);
+
+		pair = new NumericRangeOp("date", 20200103, 20200103).getPostingIterator(index);
+		checkPostings(pair.getRight(), 20200103, 20200103);
+
+		assertNull(new NumericRangeOp("date", 20200201, 20200301).getPostingIterator(index));
+		assertNull(new NumericRangeOp("lang", 0, 1).getPostingIterator(index));
+	}
+
+	@Test public void testInvalidRangeOp() throws Exception {
+		for (String q : new String[]{"#range(date 2020a 20200120)", "#range(date 20200110 99999999999999999999)", "#range(date 20200120 20200110)"})
+		{
+			try{
+				new MatchOpQLParser(q).parse();
+				fail("Expected ParseException for " + q);
+			} catch (ParseException pe) {}
+		}
+	}
+
+	@Test public void testDateRangeOp() throws Exception {
+		IndexOnDisk index = makeIndex();
+		SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
+		DateRangeOp op = new DateRangeOp(format.parse("20200103"), format.parse("20200117"));
+		Pair<EntryStatistics, IterablePosting> pair = op.getPostingIterator(index);
+		assertNotNull(pair);
+		assertEquals(count(20200103, 20200117), pair.getLeft().getDocumentFrequency());
+		checkPostings(pair.getRight(), 20200103, 20200117);
+	}
+}
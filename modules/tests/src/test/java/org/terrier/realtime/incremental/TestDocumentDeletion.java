@@ -0,0 +1,264 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestDocumentDeletion.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk>
+ */
+
+package org.terrier.realtime.incremental;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.indexing.TaggedDocument;
+import org.terrier.indexing.tokenisation.EnglishTokeniser;
+import org.terrier.matching.ResultSet;
+import org.terrier.querying.LocalManager;
+import org.terrier.querying.Manager;
+import org.terrier.querying.Request;
+import org.terrier.querying.SearchRequest;
+import org.terrier.realtime.UpdatableIndex;
+import org.terrier.realtime.memory.MemoryIndex;
+import org.terrier.realtime.memory.fields.MemoryFieldsIndex;
+import org.terrier.realtime.multi.MultiIndex;
+import org.terrier.structures.DeletedDocuments;
+import org.terrier.structures.FieldEntryStatistics;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.merging.StructureMerger;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+
+public class TestDocumentDeletion extends ApplicationSetupBasedTest {
+
+	static final String[] MATCHINGS = new String[]{"org.terrier.matching.daat.Full", "org.terrier.matching.taat.Full"};
+
+	static int[] retrieve(Index index, String query, String matching)
+	{
+		Manager mgr = new LocalManager(index);
+		SearchRequest srq = mgr.newSearchRequest(query, query);
+		srq.setControl(SearchRequest.CONTROL_WMODEL, "Tf");
+		srq.setControl(SearchRequest.CONTROL_MATCHING, matching);
+		mgr.runSearchRequest(srq);
+		ResultSet rs = ((Request) srq).getResultSet();
+		assertNotNull(rs);
+		int[] docids = new int[rs.getResultSize()];
+		System.arraycopy(rs.getDocids(), 0, docids, 0, docids.length);
+		java.util.Arrays.sort(docids);
+		return docids;
+	}
+
+	static void index(UpdatableIndex index, String docno, String text) throws Exception
+	{
+		Map<String,String> props = new HashMap<String,String>();
+		props.put("docno", docno);
+		index.indexDocument(IndexTestUtils.makeDocumentFromText(text, props));
+	}
+
+	@Test public void testMemoryIndex() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("ignore.low.idf.terms", "false");
+		MemoryIndex index = new MemoryIndex();
+		index(index, "A", "one two three");
+		index(index, "B", "two three four");
+		index(index, "C", "three four five");
+		for (String matching : MATCHINGS)
+			assertArrayEquals(new int[]{0,1,2}, retrieve(index, "three", matching));
+
+		assertTrue(index.removeDocument(1));
+		assertFalse(index.removeDocument(1));
+		assertFalse(index.removeDocument(3));
+
+		//statistics still count the removed document until it is purged, and docids are not reused
+		assertEquals(3, index.getCollectionStatistics().getNumberOfDocuments());
+		assertEquals(9l, index.getCollectionStatistics().getNumberOfTokens());
+		assertEquals(9l, index.getCollectionStatistics().getNumberOfPointers());
+		assertEquals(2, index.getLexicon().getLexiconEntry("two").getDocumentFrequency());
+		assertEquals(3, index.getLexicon().getLexiconEntry("three").getDocumentFrequency());
+		DeletedDocuments deleted = (DeletedDocuments) index.getIndexStructure(DeletedDocuments.STRUCTURE_NAME);
+		assertEquals(1, deleted.getNumberOfDeletedDocuments());
+		assertTrue(deleted.isDeleted(1));
+
+		for (String matching : MATCHINGS)
+		{
+			assertArrayEquals(new int[]{0,2}, retrieve(index, "three", matching));
+			assertArrayEquals(new int[]{0}, retrieve(index, "two", matching));
+			assertArrayEquals(new int[]{2}, retrieve(index, "four", matching));
+		}
+
+		//a new document takes the next docid
+		index(index, "D", "three six");
+		for (String matching : MATCHINGS)
+			assertArrayEquals(new int[]{0,2,3}, retrieve(index, "three", matching));
+
+		//deletions are retained when the index is written
+		IndexOnDisk disk = (IndexOnDisk) index.write(ApplicationSetup.TERRIER_INDEX_PATH, "deletions");
+		disk = IndexOnDisk.createIndex(disk.getPath(), disk.getPrefix());
+		assertTrue(disk.hasIndexStructure(DeletedDocuments.STRUCTURE_NAME));
+		assertTrue(((DeletedDocuments) disk.getIndexStructure(DeletedDocuments.STRUCTURE_NAME)).isDeleted(1));
+		for (String matching : MATCHINGS)
+			assertArrayEquals(new int[]{0,2,3}, retrieve(disk, "three", matching));
+	}
+
+	@Test public void testMemoryFieldsIndex() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("ignore.low.idf.terms", "false");
+		ApplicationSetup.setProperty("FieldTags.process", "TITLE,ELSE");
+		try{
+			MemoryFieldsIndex index = new MemoryFieldsIndex();
+			Map<String,String> props = new HashMap<String,String>();
+			props.put("docno", "A");
+			index.indexDocument(new TaggedDocument(new ByteArrayInputStream("<TITLE>curry</TITLE><CONTENT>church turing knuth</CONTENT>".getBytes()), props, new EnglishTokeniser()));
+			props = new HashMap<String,String>();
+			props.put("docno", "B");
+			index.indexDocument(new TaggedDocument(new ByteArrayInputStream("<TITLE>turing</TITLE><CONTENT>knuth knuth turing</CONTENT>".getBytes()), props, new EnglishTokeniser()));
+			assertArrayEquals(new int[]{1,2}, ((FieldEntryStatistics) index.getLexicon().getLexiconEntry("turing")).getFieldFrequencies());
+			assertArrayEquals(new long[]{2,6}, index.getCollectionStatistics().getFieldTokens());
+
+			assertTrue(index.removeDocument(1));
+
+			//field frequencies and field lengths of the removed document are still counted
+			assertEquals(2, index.getCollectionStatistics().getNumberOfDocuments());
+			assertEquals(2, index.getLexicon().getLexiconEntry("turing").getDocumentFrequency());
+			assertArrayEquals(new int[]{1,2}, ((FieldEntryStatistics) index.getLexicon().getLexiconEntry("turing")).getFieldFrequencies());
+			assertArrayEquals(new long[]{2,6}, index.getCollectionStatistics().getFieldTokens());
+			assertEquals(8l, index.getCollectionStatistics().getNumberOfTokens());
+			for (String matching : MATCHINGS)
+				assertArrayEquals(new int[]{0}, retrieve(index, "turing", matching));
+		} finally {
+			ApplicationSetup.setProperty("FieldTags.process", "");
+		}
+	}
+
+	@Test public void testIncrementalIndex() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("ignore.low.idf.terms", "false");
+		IndexOnDisk shard = (IndexOnDisk) IndexTestUtils.makeIndex(
+			new String[]{"A", "B"}, new String[]{"one two three", "two three four"});
+		IncrementalIndex index = IncrementalIndex.get(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX);
+		assertEquals(2, index.getNumberOfShards());
+		index(index.memory, "C", "three four five");
+		for (String matching : MATCHINGS)
+			assertArrayEquals(new int[]{0,1,2}, retrieve(index, "three", matching));
+
+		//one from the on-disk shard, one from the in-memory shard
+		assertTrue(index.removeDocument(1));
+		assertTrue(index.removeDocument(2));
+		assertFalse(index.removeDocument(1));
+		assertFalse(index.removeDocument(3));
+
+		DeletedDocuments deleted = ((MultiIndex) index).getDeletedDocuments();
+		assertNotNull(deleted);
+		assertEquals(2, deleted.getNumberOfDeletedDocuments());
+		assertFalse(deleted.isDeleted(0));
+		assertTrue(deleted.isDeleted(1));
+		assertTrue(deleted.isDeleted(2));
+		for (String matching : MATCHINGS)
+		{
+			assertArrayEquals(new int[]{0}, retrieve(index, "three", matching));
+			assertArrayEquals(new int[0], retrieve(index, "four", matching));
+		}
+
+		//the statistics of the on-disk shard are unchanged, while its deletions are persisted
+		assertEquals(2, index.getIthShard(0).getCollectionStatistics().getNumberOfDocuments());
+		assertEquals(6l, index.getIthShard(0).getCollectionStatistics().getNumberOfTokens());
+		IndexOnDisk reopened = IndexOnDisk.createIndex(shard.getPath(), shard.getPrefix());
+		assertEquals(6l, reopened.getCollectionStatistics().getNumberOfTokens());
+		assertTrue(((DeletedDocuments) reopened.getIndexStructure(DeletedDocuments.STRUCTURE_NAME)).isDeleted(1));
+	}
+
+	@Test public void testRemoveByDocno() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("ignore.low.idf.terms", "false");
+		IncrementalIndex index = IncrementalIndex.get(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX);
+		index(index.memory, "A", "one three");
+		index(index.memory, "B", "two three");
+		assertTrue(index.removeDocument("B"));
+		assertFalse(index.removeDocument("B"));
+		assertFalse(index.removeDocument("C"));
+		for (String matching : MATCHINGS)
+			assertArrayEquals(new int[]{0}, retrieve(index, "three", matching));
+	}
+
+	@Test public void testRemoveDuringFlush() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("ignore.low.idf.terms", "false");
+		IncrementalIndex index = IncrementalIndex.get(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX);
+		final MemoryIndex frozen = index.memory;
+		index(frozen, "A", "one three");
+		index(frozen, "B", "two three");
+		index(frozen, "C", "three four");
+		assertTrue(index.removeDocument(0));
+		IndexOnDisk disk = (IndexOnDisk) frozen.write(ApplicationSetup.TERRIER_INDEX_PATH, index.prefix + "-" + index.nextPrefixID());
+		disk = IndexOnDisk.createIndex(disk.getPath(), disk.getPrefix());
+
+		//a deletion made while the memory index is written is not lost when it is replaced
+		assertTrue(index.removeDocument(2));
+		index.replaceMemory(frozen, disk);
+		assertEquals(1, index.getPartitions().size());
+		DeletedDocuments deleted = (DeletedDocuments) disk.getIndexStructure(DeletedDocuments.STRUCTURE_NAME);
+		assertEquals(2, deleted.getNumberOfDeletedDocuments());
+		assertTrue(deleted.isDeleted(0));
+		assertTrue(deleted.isDeleted(2));
+		for (String matching : MATCHINGS)
+			assertArrayEquals(new int[]{1}, retrieve(index, "three", matching));
+	}
+
+	@Test public void testRemoveDuringMerge() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("ignore.low.idf.terms", "false");
+		ApplicationSetup.setProperty("incremental.flush", "flushdocs");
+		ApplicationSetup.setProperty("incremental.flushdocs", "2");
+		ApplicationSetup.setProperty("incremental.background", "false");
+		IncrementalIndex index = IncrementalIndex.get(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX);
+		index(index, "A", "one three");
+		index(index, "B", "two three");
+		index(index, "C", "three four");
+		index(index, "D", "three five");
+		final List<Integer> partitions = index.getPartitions();
+		assertEquals(2, partitions.size());
+
+		//A is purged by the merge, while D is removed during the merge
+		assertTrue(index.removeDocument("A"));
+		IndexOnDisk src1 = IndexOnDisk.createIndex(index.path, index.prefix + "-" + partitions.get(0));
+		IndexOnDisk src2 = IndexOnDisk.createIndex(index.path, index.prefix + "-" + partitions.get(1));
+		IndexOnDisk merged = IndexOnDisk.createNewIndex(index.path, index.prefix + "-" + index.nextPrefixID());
+		StructureMerger merger = new StructureMerger(src1, src2, merged);
+		merger.mergeStructures();
+		assertTrue(index.removeDocument("D"));
+		index.replacePartitions(partitions.get(0), partitions.get(1), merged, merger);
+
+		assertEquals(1, index.getPartitions().size());
+		assertEquals(3, merged.getCollectionStatistics().getNumberOfDocuments());
+		assertTrue(((DeletedDocuments) merged.getIndexStructure(DeletedDocuments.STRUCTURE_NAME)).isDeleted(2));
+		for (String matching : MATCHINGS)
+			assertArrayEquals(new int[]{0,1}, retrieve(index, "three", matching));
+		assertFalse(index.removeDocument("D"));
+		assertTrue(index.removeDocument("C"));
+	}
+}
@@ -27,18 +27,25 @@
 
 package org.terrier.realtime.incremental;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.junit.Test;
 import org.terrier.indexing.Collection;
 import org.terrier.indexing.CollectionDocumentList;
 import org.terrier.indexing.Document;
 import org.terrier.indexing.FileDocument;
+import org.terrier.indexing.IndexTestUtils;
 import org.terrier.indexing.tokenisation.EnglishTokeniser;
+import org.terrier.realtime.memory.MemoryIndex;
 import org.terrier.structures.Index;
 import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.MetaIndex;
 import org.terrier.structures.indexing.classical.BasicIndexer;
 import org.terrier.tests.ApplicationSetupBasedTest;
 import org.terrier.utility.ApplicationSetup;
@@ -73,6 +80,100 @@ public class TestIncremental extends ApplicationSetupBasedTest {
 		// assertEquals(4, index.indices.size());
 	}
 
+	@Test
+	public void testBackgroundFlushAndMerge() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("incremental.flush", "flushdocs");
+		ApplicationSetup.setProperty("incremental.flushdocs", "2");
+		ApplicationSetup.setProperty("incremental.merge", "single");
+		IncrementalIndex index = IncrementalIndex.get(
+				ApplicationSetup.TERRIER_INDEX_PATH,
+				ApplicationSetup.TERRIER_INDEX_PREFIX);
+		final int numDocs = 7;
+		for (int i = 0; i < numDocs; i++) {
+			Map<String,String> props = new HashMap<String,String>();
+			props.put("docno", "doc" + i);
+			index.indexDocument(IndexTestUtils.makeDocumentFromText("turing knuth " + i, props));
+			//documents are searchable while they are flushed and merged
+			assertEquals(i + 1, index.getCollectionStatistics().getNumberOfDocuments());
+		}
+		index.waitForBackgroundTasks();
+
+		//three flushes, merged into a single on-disk partition, and the current memory index
+		assertEquals(1, index.getPartitions().size());
+		assertEquals(2, index.getNumberOfShards());
+		assertTrue(index.getIthShard(0) instanceof IndexOnDisk);
+		assertEquals(numDocs, index.getCollectionStatistics().getNumberOfDocuments());
+		assertEquals(numDocs, index.getLexicon().getLexiconEntry("turing").getDocumentFrequency());
+		MetaIndex meta = index.getMetaIndex();
+		for (int i = 0; i < numDocs; i++)
+			assertEquals("doc" + i, meta.getItem("docno", i));
+		index.close();
+	}
+
+	@Test(timeout = 60000)
+	public void testBackgroundFlushMorePendingThanAllowed() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("incremental.flush", "flushdocs");
+		ApplicationSetup.setProperty("incremental.flushdocs", "1");
+		ApplicationSetup.setProperty("incremental.flush.maxpending", "1");
+		IncrementalIndex index = IncrementalIndex.get(
+				ApplicationSetup.TERRIER_INDEX_PATH,
+				ApplicationSetup.TERRIER_INDEX_PREFIX);
+		//a slow flush, such that documents are indexed while flushes wait for a permit
+		index.flushPolicy = new IncrementalFlushDocs(index) {
+			@Override
+			public int flush(MemoryIndex memory) {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+				return super.flush(memory);
+			}
+		};
+		final int numDocs = 6;
+		for (int i = 0; i < numDocs; i++) {
+			Map<String,String> props = new HashMap<String,String>();
+			props.put("docno", "doc" + i);
+			index.indexDocument(IndexTestUtils.makeDocumentFromText("turing knuth " + i, props));
+		}
+		index.waitForBackgroundTasks();
+
+		//each document was flushed to its own partition, in order
+		assertEquals(numDocs, index.getPartitions().size());
+		assertEquals(numDocs, index.getCollectionStatistics().getNumberOfDocuments());
+		MetaIndex meta = index.getMetaIndex();
+		for (int i = 0; i < numDocs; i++)
+			assertEquals("doc" + i, meta.getItem("docno", i));
+		index.close();
+	}
+
+	@Test
+	public void testFlushMemoryOffHeap() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("memory.inverted.offheap", "true");
+		ApplicationSetup.setProperty("memory.inverted.slab.size", "4096");
+		ApplicationSetup.setProperty("incremental.flush", "flushmem");
+		ApplicationSetup.setProperty("incremental.flushmemory.offheap.max", "8192");
+		ApplicationSetup.setProperty("incremental.background", "false");
+		IncrementalIndex index = IncrementalIndex.get(
+				ApplicationSetup.TERRIER_INDEX_PATH,
+				ApplicationSetup.TERRIER_INDEX_PREFIX);
+		//off-heap postings are not counted by the heap, but still cause a flush
+		int numDocs = 0;
+		while (index.getPartitions().size() == 0 && numDocs < 10000) {
+			Map<String,String> props = new HashMap<String,String>();
+			props.put("docno", "doc" + numDocs);
+			index.indexDocument(IndexTestUtils.makeDocumentFromText("turing knuth term" + numDocs, props));
+			numDocs++;
+		}
+		assertEquals(1, index.getPartitions().size());
+		assertTrue(index.memory.getOffHeapBytes() < 8192);
+		assertEquals(numDocs, index.getCollectionStatistics().getNumberOfDocuments());
+		index.close();
+	}
+
 	/*
 	 * make index disk1 with m document make increcmenta index populate
 	 * incremental index with same m documents compare indices make index disk2
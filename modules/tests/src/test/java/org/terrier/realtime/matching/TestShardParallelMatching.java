@@ -0,0 +1,116 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestShardParallelMatching.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk>
+ */
+
+package org.terrier.realtime.matching;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.matching.ResultSet;
+import org.terrier.querying.LocalManager;
+import org.terrier.querying.Manager;
+import org.terrier.querying.Request;
+import org.terrier.querying.SearchRequest;
+import org.terrier.realtime.multi.MultiIndex;
+import org.terrier.structures.Index;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+
+public class TestShardParallelMatching extends ApplicationSetupBasedTest {
+
+	static final String[] DOCNOS = new String[]{"A", "B", "C", "D"};
+	static final String[] DOCS = new String[]{
+		"one two three",
+		"three four five three",
+		"five six one",
+		"three three three seven"};
+
+	static ResultSet query(Index index, String query, String matching)
+	{
+		Manager mgr = new LocalManager(index);
+		SearchRequest srq = mgr.newSearchRequest(query, query);
+		srq.setControl(SearchRequest.CONTROL_WMODEL, "BM25");
+		if (matching != null)
+			srq.setControl(SearchRequest.CONTROL_MATCHING, matching);
+		mgr.runSearchRequest(srq);
+		ResultSet rs = ((Request) srq).getResultSet();
+		assertNotNull(rs);
+		return rs;
+	}
+
+	static void compare(ResultSet expected, ResultSet actual)
+	{
+		assertEquals(expected.getResultSize(), actual.getResultSize());
+		assertEquals(expected.getExactResultSize(), actual.getExactResultSize());
+		for (int i = 0; i < expected.getResultSize(); i++)
+		{
+			assertEquals("Mismatch for score at rank "+i, expected.getScores()[i], actual.getScores()[i], 1e-6d);
+			assertEquals("Mismatch for docid at rank "+i, expected.getDocids()[i], actual.getDocids()[i]);
+		}
+	}
+
+	@Test public void testSameAsSingleIndex() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("ignore.low.idf.terms", "false");
+		Index disk = IndexTestUtils.makeIndex(DOCNOS, DOCS);
+		Index[] shards = new Index[DOCNOS.length];
+		for (int i = 0; i < DOCNOS.length; i++)
+			shards[i] = IndexTestUtils.makeIndex(new String[]{DOCNOS[i]}, new String[]{DOCS[i]});
+		MultiIndex multi = new MultiIndex(shards, false, false);
+
+		for (String query : new String[]{"three", "one five", "seven six", "nothere", "three nothere"})
+		{
+			ResultSet expected = query(disk, query, null);
+			ResultSet actual = query(multi, query, ShardParallelMatching.class.getName());
+			compare(expected, actual);
+			//and the same as sequential matching over the MultiIndex
+			compare(query(multi, query, null), actual);
+		}
+	}
+
+	@Test public void testRetrievedSetSize() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("ignore.low.idf.terms", "false");
+		Index disk = IndexTestUtils.makeIndex(DOCNOS, DOCS);
+		MultiIndex multi = new MultiIndex(new Index[]{
+			IndexTestUtils.makeIndex(new String[]{"A", "B"}, new String[]{DOCS[0], DOCS[1]}),
+			IndexTestUtils.makeIndex(new String[]{"C", "D"}, new String[]{DOCS[2], DOCS[3]})
+		}, false, false);
+		ApplicationSetup.setProperty("matching.retrieved_set_size", "2");
+		ResultSet expected = query(disk, "three one", null);
+		ResultSet actual = query(multi, "three one", ShardParallelMatching.class.getName());
+		assertEquals(2, actual.getResultSize());
+		assertEquals(4, actual.getExactResultSize());
+		compare(expected, actual);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNotMultiIndex() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		new ShardParallelMatching(IndexTestUtils.makeIndex(DOCNOS, DOCS));
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestCompressedMemoryPostingList.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk>
+ */
+
+package org.terrier.realtime.memory;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.terrier.structures.postings.IterablePosting;
+
+public class TestCompressedMemoryPostingList {
+
+	@Test public void testAppend() {
+		for (boolean offHeap : new boolean[]{false, true})
+		{
+			MemoryPostingSlabs slabs = new MemoryPostingSlabs(4096, offHeap);
+			CompressedMemoryPostingList pl1 = new CompressedMemoryPostingList(slabs, 0);
+			CompressedMemoryPostingList pl2 = new CompressedMemoryPostingList(slabs, 0);
+			Random r = new Random(42);
+			final int n = 20000;
+			int[] docids = new int[n];
+			int[] freqs = new int[n];
+			int docid = -1;
+			for (int i = 0; i < n; i++)
+			{
+				//gaps and frequencies of varying encoded lengths
+				docids[i] = docid += 1 + (i % 100 == 0 ? r.nextInt(1 << 20) : r.nextInt(5));
+				freqs[i] = i % 50 == 0 ? r.nextInt(100000) : 1 + r.nextInt(3);
+				//interleave the lists, so that their chunks are interleaved in the slabs
+				assertTrue(pl1.addOrUpdate(docids[i], freqs[i], null));
+				assertTrue(pl2.addOrUpdate(i, 1, null));
+			}
+			assertEquals(n, pl1.size());
+			assertTrue(slabs.getAllocatedBytes() > 4096);
+			CompressedMemoryPostingList.Cursor c = pl1.cursor();
+			assertEquals(n, c.size());
+			for (int i = 0; i < n; i++)
+			{
+				assertFalse(c.endOfPostings());
+				assertEquals(docids[i], c.next());
+				assertEquals(freqs[i], c.getFrequency());
+			}
+			assertTrue(c.endOfPostings());
+			assertEquals(IterablePosting.EOL, c.next());
+			c = pl2.cursor();
+			for (int i = 0; i < n; i++)
+				assertEquals(i, c.next());
+			assertEquals(IterablePosting.EOL, c.next());
+		}
+	}
+
+	@Test public void testUpdates() {
+		CompressedMemoryPostingList pl = new CompressedMemoryPostingList(new MemoryPostingSlabs(), 2);
+		assertTrue(pl.addOrUpdate(2, 1, new int[]{1,0}));
+		assertTrue(pl.addOrUpdate(5, 1, new int[]{0,1}));
+		//update of the most recent document
+		assertFalse(pl.addOrUpdate(5, 2, new int[]{2,0}));
+		CompressedMemoryPostingList.Cursor before = pl.cursor();
+		//update and insertion of earlier documents
+		assertFalse(pl.addOrUpdate(2, 1, new int[]{0,1}));
+		assertTrue(pl.addOrUpdate(0, 4, new int[]{4,0}));
+		assertTrue(pl.addOrUpdate(3, 1, null));
+		assertTrue(pl.addOrUpdate(9, 1, new int[]{1,0}));
+		assertEquals(5, pl.size());
+
+		CompressedMemoryPostingList.Cursor c = pl.cursor();
+		int[][] expected = new int[][]{{0,4,4,0}, {2,2,1,1}, {3,1,0,0}, {5,3,2,1}, {9,1,1,0}};
+		for (int[] e : expected)
+		{
+			assertEquals(e[0], c.next());
+			assertEquals(e[1], c.getFrequency());
+			assertArrayEquals(new int[]{e[2], e[3]}, c.getFields());
+		}
+		assertEquals(IterablePosting.EOL, c.next());
+
+		//a cursor is unaffected by later changes to the list
+		assertEquals(2, before.size());
+		assertEquals(2, before.next());
+		assertEquals(1, before.getFrequency());
+		assertEquals(5, before.next());
+		assertEquals(3, before.getFrequency());
+		assertEquals(IterablePosting.EOL, before.next());
+	}
+
+	@Test public void testLimit() {
+		CompressedMemoryPostingList pl = new CompressedMemoryPostingList(new MemoryPostingSlabs(), 0);
+		for (int docid : new int[]{1, 4, 6, 7})
+			pl.addOrUpdate(docid, 1, null);
+		CompressedMemoryPostingList.Cursor c = pl.cursor(6);
+		assertEquals(1, c.next());
+		assertEquals(4, c.next());
+		assertEquals(IterablePosting.EOL, c.next());
+		//the pending posting is excluded
+		c = pl.cursor(7);
+		assertEquals(3, c.size());
+		assertEquals(1, c.next());
+		assertEquals(4, c.next());
+		assertEquals(6, c.next());
+		assertTrue(c.endOfPostings());
+		assertEquals(IterablePosting.EOL, c.next());
+		assertEquals(IterablePosting.EOL, pl.cursor(0).next());
+	}
+
+	@Test public void testInvertedIndex() throws Exception {
+		MemoryLexicon lexicon = new MemoryLexicon();
+		MemoryLexiconEntry le = new MemoryLexiconEntry(0, 2, 3);
+		lexicon.term("t0", le);
+		MemoryDocumentIndex docindex = new MemoryDocumentIndex();
+		for (int i = 0; i < 3; i++)
+			docindex.addDocument(i + 1);
+		MemoryInvertedIndex inverted = new MemoryInvertedIndex(lexicon, docindex);
+		assertTrue(inverted.addOrUpdate(0, 0, 1));
+		assertTrue(inverted.addOrUpdate(0, 2, 1));
+		assertFalse(inverted.addOrUpdate(0, 2, 1));
+		IterablePosting ip = inverted.getPostings(le);
+		assertEquals(0, ip.next());
+		assertEquals(1, ip.getFrequency());
+		assertEquals(1, ip.getDocumentLength());
+		assertFalse(ip.endOfPostings());
+		assertEquals(2, ip.next());
+		assertEquals(2, ip.getFrequency());
+		assertEquals(3, ip.getDocumentLength());
+		assertTrue(ip.endOfPostings());
+		assertEquals(IterablePosting.EOL, ip.next());
+		assertTrue(inverted.getAllocatedBytes() > 0);
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestMemoryIndexConcurrency.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk>
+ */
+
+package org.terrier.realtime.memory;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.structures.DocumentIndex;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.MetaIndex;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+
+/** Checks that a MemoryIndex can be searched while many threads index documents. */
+public class TestMemoryIndexConcurrency extends ApplicationSetupBasedTest {
+
+	static final String[] WRITERS = new String[]{"alpha", "beta", "gamma", "delta"};
+	static final int DOCS_PER_WRITER = 250;
+
+	@Test public void testConcurrentIndexingAndSearch() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		final MemoryIndex index = new MemoryIndex();
+		final AtomicBoolean indexing = new AtomicBoolean(true);
+		ExecutorService pool = Executors.newFixedThreadPool(WRITERS.length + 2);
+		List<Future<?>> writers = new ArrayList<>();
+		for (final String w : WRITERS)
+		{
+			writers.add(pool.submit(() -> {
+				for (int i = 0; i < DOCS_PER_WRITER; i++)
+				{
+					Map<String,String> props = new HashMap<String,String>();
+					props.put("docno", w + i);
+					index.indexDocument(IndexTestUtils.makeDocumentFromText("common " + w + " common", props));
+				}
+				return null;
+			}));
+		}
+		List<Future<?>> readers = new ArrayList<>();
+		for (int r = 0; r < 2; r++)
+		{
+			readers.add(pool.submit(() -> {
+				int lastN = 0;
+				while (indexing.get())
+				{
+					LexiconEntry le = index.getLexicon().getLexiconEntry("common");
+					if (le == null)
+						continue;
+					int count = 0;
+					IterablePosting ip = index.getInvertedIndex().getPostings(le);
+					while (ip.next() != IterablePosting.EOL)
+					{
+						count++;
+						assertEquals(2, ip.getFrequency());
+						assertEquals(3, ip.getDocumentLength());
+					}
+					//documents are visible to postings only once the statistics include them
+					int n = index.getCollectionStatistics().getNumberOfDocuments();
+					assertTrue(count + " postings but " + n + " documents", count <= n);
+					assertTrue(n >= lastN);
+					lastN = n;
+				}
+				return null;
+			}));
+		}
+		for (Future<?> f : writers)
+			f.get();
+		indexing.set(false);
+		for (Future<?> f : readers)
+			f.get();
+		pool.shutdown();
+
+		final int N = WRITERS.length * DOCS_PER_WRITER;
+		assertEquals(N, index.getCollectionStatistics().getNumberOfDocuments());
+		assertEquals(3l * N, index.getCollectionStatistics().getNumberOfTokens());
+		assertEquals(WRITERS.length + 1, index.getCollectionStatistics().getNumberOfUniqueTerms());
+		assertEquals(N, index.getLexicon().getLexiconEntry("common").getDocumentFrequency());
+		for (String w : WRITERS)
+			assertEquals(DOCS_PER_WRITER, index.getLexicon().getLexiconEntry(w).getDocumentFrequency());
+		IterablePosting ip = index.getInvertedIndex().getPostings(index.getLexicon().getLexiconEntry("common"));
+		int count = 0;
+		int lastDocid = -1;
+		while (ip.next() != IterablePosting.EOL)
+		{
+			assertTrue(ip.getId() > lastDocid);
+			lastDocid = ip.getId();
+			count++;
+		}
+		assertEquals(N, count);
+	}
+
+	@Test public void testConcurrentIndexingAndDocumentLookups() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("indexer.meta.forward.keys", "docno");
+		ApplicationSetup.setProperty("indexer.meta.forward.keylens", "20");
+		final MemoryIndex index = new MemoryIndex();
+		final AtomicBoolean indexing = new AtomicBoolean(true);
+		ExecutorService pool = Executors.newFixedThreadPool(WRITERS.length + 2);
+		List<Future<?>> writers = new ArrayList<>();
+		for (final String w : WRITERS)
+		{
+			writers.add(pool.submit(() -> {
+				//enough documents for the document and meta indices to grow several times
+				for (int i = 0; i < 4 * DOCS_PER_WRITER; i++)
+				{
+					Map<String,String> props = new HashMap<String,String>();
+					props.put("docno", w + i);
+					index.indexDocument(IndexTestUtils.makeDocumentFromText("common " + w + " common", props));
+				}
+				return null;
+			}));
+		}
+		List<Future<?>> readers = new ArrayList<>();
+		for (int r = 0; r < 2; r++)
+		{
+			readers.add(pool.submit(() -> {
+				DocumentIndex doi = index.getDocumentIndex();
+				MetaIndex meta = index.getMetaIndex();
+				while (indexing.get())
+				{
+					//every document below the number of visible documents is complete
+					final int n = Math.min(doi.getNumberOfDocuments(), meta.size());
+					for (int docid = 0; docid < n; docid++)
+					{
+						assertEquals(3, doi.getDocumentLength(docid));
+						assertNotNull(meta.getAllItems(docid));
+						assertNotNull(meta.getItem("docno", docid));
+					}
+				}
+				return null;
+			}));
+		}
+		for (Future<?> f : writers)
+			f.get();
+		indexing.set(false);
+		for (Future<?> f : readers)
+			f.get();
+		pool.shutdown();
+
+		final int N = WRITERS.length * 4 * DOCS_PER_WRITER;
+		assertEquals(N, index.getDocumentIndex().getNumberOfDocuments());
+		assertEquals(N, index.getMetaIndex().size());
+		for (int docid = 0; docid < N; docid++)
+		{
+			assertEquals(3, index.getDocumentIndex().getDocumentLength(docid));
+			assertNotNull(index.getMetaIndex().getItem("docno", docid));
+		}
+	}
+}
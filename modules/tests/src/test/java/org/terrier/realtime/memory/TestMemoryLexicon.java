@@ -29,6 +29,7 @@ package org.terrier.realtime.memory;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 import java.util.Iterator;
 import java.util.Map.Entry;
@@ -213,6 +214,36 @@ public class TestMemoryLexicon {
 	Text[] terms;
 	LexiconEntry[] entries;
 
+	/*
+	 * publish()
+	 */
+	@Test
+	public void test_publish() throws Exception {
+		MemoryLexicon lexicon = new MemoryLexicon();
+		lexicon.term("t0", new MemoryLexiconEntry(1, 2));
+		LexiconEntry le = lexicon.getLexiconEntry("t0");
+		assertEquals(1, le.getDocumentFrequency());
+		lexicon.publish();
+
+		//once published, changes are not visible until the next publish
+		lexicon.term("t0", new MemoryLexiconEntry(1, 3));
+		lexicon.term("t1", new MemoryLexiconEntry(1, 1));
+		assertNull(lexicon.getLexiconEntry("t1"));
+		assertEquals(1, lexicon.getLexiconEntry("t0").getDocumentFrequency());
+		assertEquals(2, lexicon.getLexiconEntry("t0").getFrequency());
+		lexicon.publish();
+		assertEquals(2, lexicon.getLexiconEntry("t0").getDocumentFrequency());
+		assertEquals(5, lexicon.getLexiconEntry("t0").getFrequency());
+		assertEquals(1, lexicon.getLexiconEntry("t1").getDocumentFrequency());
+		lexicon.subtract(0, new MemoryLexiconEntry(1, 3));
+		lexicon.publish();
+		assertEquals(1, lexicon.getLexiconEntry("t0").getDocumentFrequency());
+
+		//statistics returned by earlier lookups are unchanged
+		assertEquals(1, le.getDocumentFrequency());
+		assertEquals(2, le.getFrequency());
+	}
+
 	@Before
 	public void setUp() {
 		terms = new Text[] { 
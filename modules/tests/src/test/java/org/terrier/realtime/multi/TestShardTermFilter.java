@@ -0,0 +1,108 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestShardTermFilter.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk>
+ */
+
+package org.terrier.realtime.multi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.Lexicon;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.Files;
+
+public class TestShardTermFilter extends ApplicationSetupBasedTest {
+
+	@Test public void testBuildWriteRead() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		IndexOnDisk index = (IndexOnDisk) IndexTestUtils.makeIndex(
+			new String[]{"A", "B"}, new String[]{"one two three", "three four five"});
+		ShardTermFilter filter = ShardTermFilter.build(index.getLexicon());
+		for (String t : new String[]{"one", "two", "three", "four", "five"})
+			assertTrue(filter.mightContain(t));
+		assertTrue(filter.approximateNumberOfTerms() > 0);
+
+		assertNull(ShardTermFilter.read(index.getPath(), index.getPrefix()));
+		filter.write(index.getPath(), index.getPrefix());
+		assertTrue(Files.exists(index.getPath() + ApplicationSetup.FILE_SEPARATOR + index.getPrefix() + ShardTermFilter.FILE_SUFFIX));
+		ShardTermFilter read = ShardTermFilter.read(index.getPath(), index.getPrefix());
+		assertNotNull(read);
+		for (String t : new String[]{"one", "two", "three", "four", "five"})
+			assertTrue(read.mightContain(t));
+		assertEquals(filter.approximateNumberOfTerms(), read.approximateNumberOfTerms());
+	}
+
+	@Test public void testMultiLexiconLookups() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		Index i1 = IndexTestUtils.makeIndex(new String[]{"0"},new String[]{"one two three"});
+		Index i2 = IndexTestUtils.makeIndex(new String[]{"1"},new String[]{"two three four"});
+		Index i3 = IndexTestUtils.makeIndex(new String[]{"2"},new String[]{"three four five"});
+		MultiIndex mindex = new MultiIndex(new Index[]{i1,i2,i3}, false, false);
+		assertNotNull(mindex.getTermFilter(i1));
+
+		Lexicon<String> lexicon = mindex.getLexicon();
+		String[] terms = new String[]{"one", "two", "three", "four", "five"};
+		int[] dfs = new int[]{1, 2, 3, 2, 1};
+		for (int i = 0; i < terms.length; i++)
+		{
+			LexiconEntry le = lexicon.getLexiconEntry(terms[i]);
+			assertNotNull(le);
+			assertEquals(dfs[i], le.getDocumentFrequency());
+			assertEquals(dfs[i], le.getFrequency());
+		}
+		assertNull(lexicon.getLexiconEntry("six"));
+	}
+
+	@Test public void testFilterSkipsShard() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		Index i1 = IndexTestUtils.makeIndex(new String[]{"0"},new String[]{"one two three"});
+		Index i2 = IndexTestUtils.makeIndex(new String[]{"1"},new String[]{"two three four"});
+		MultiIndex mindex = new MultiIndex(new Index[]{i1,i2}, false, false);
+		//a filter that claims i2 contains no terms shows that its lexicon is not probed
+		ApplicationSetup.setProperty("multiindex.termfilter.fpp", "0.000001");
+		ShardTermFilter empty = ShardTermFilter.build(IndexTestUtils.makeIndex(new String[]{"2"},new String[]{"zzz"}).getLexicon());
+		mindex.setTermFilter(i2, empty);
+		LexiconEntry le = mindex.getLexicon().getLexiconEntry("two");
+		assertNotNull(le);
+		assertEquals(1, le.getDocumentFrequency());
+		assertNull(mindex.getLexicon().getLexiconEntry("four"));
+	}
+
+	@Test public void testDisabled() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("multiindex.termfilter", "false");
+		Index i1 = IndexTestUtils.makeIndex(new String[]{"0"},new String[]{"one two three"});
+		Index i2 = IndexTestUtils.makeIndex(new String[]{"1"},new String[]{"two three four"});
+		MultiIndex mindex = new MultiIndex(new Index[]{i1,i2}, false, false);
+		ShardTermFilter empty = ShardTermFilter.build(IndexTestUtils.makeIndex(new String[]{"2"},new String[]{"zzz"}).getLexicon());
+		mindex.setTermFilter(i2, empty);
+		assertEquals(2, mindex.getLexicon().getLexiconEntry("two").getDocumentFrequency());
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestSearchExecutor.java.
+ *
+ * The Original Code is Copyright (C) 2017-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *  Craig Macdonald
+ */
+package org.terrier.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.junit.Test;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+
+public class TestSearchExecutor extends ApplicationSetupBasedTest {
+
+	@Test public void testAdmission() throws Exception
+	{
+		SearchExecutor executor = new SearchExecutor(1, 1, 0, false);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Runnable blocked = () -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {}
+		};
+		Future<?> running = executor.submit(blocked);
+		started.await();
+		Future<?> queued = executor.submit(() -> {});
+		assertEquals(2, executor.getAdmittedCount());
+		try{
+			executor.submit(() -> {});
+			fail("Expected query to be rejected");
+		} catch (RejectedExecutionException ree) {}
+		assertEquals(1, executor.getRejectedCount());
+
+		//cancelling a waiting query frees its place
+		queued.cancel(false);
+		assertEquals(1, executor.getAdmittedCount());
+		Future<?> another = executor.submit(() -> {});
+		release.countDown();
+		running.get();
+		another.get();
+		assertEquals(2, executor.getCompletedCount());
+		executor.shutdown();
+		assertEquals(0, executor.getAdmittedCount());
+	}
+
+	@Test public void testTimeout() throws Exception
+	{
+		SearchExecutor executor = new SearchExecutor(1, 0, 10, true);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		Future<?> running = executor.submit(() -> {
+			started.countDown();
+			try {
+				Thread.sleep(60000);
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+			}
+		});
+		started.await();
+		executor.timedOut(running);
+		interrupted.await();
+		assertTrue(running.isCancelled());
+		assertEquals(1, executor.getTimedOutCount());
+		executor.shutdown();
+	}
+
+	/** a query that times out but keeps running must keep its place until it stops */
+	@Test public void testTimedOutHoldsPlace() throws Exception
+	{
+		SearchExecutor executor = new SearchExecutor(1, 0, 10, false);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Future<?> running = executor.submit(() -> {
+			started.countDown();
+			//ignores interrupts, as matching may
+			while(true)
+			{
+				try {
+					release.await();
+					return;
+				} catch (InterruptedException e) {}
+			}
+		});
+		started.await();
+		executor.timedOut(running);
+		assertTrue(running.isCancelled());
+		assertEquals(1, executor.getAdmittedCount());
+		try{
+			executor.submit(() -> {});
+			fail("Expected query to be rejected");
+		} catch (RejectedExecutionException ree) {}
+		release.countDown();
+		//the place is released once the query returns
+		for(int i=0;i<1000 && executor.getAdmittedCount() > 0;i++)
+			Thread.sleep(10);
+		assertEquals(0, executor.getAdmittedCount());
+		executor.shutdown();
+	}
+
+	@Test public void testServerRejects() throws Exception
+	{
+		Index index = IndexTestUtils.makeIndex(new String[]{"doc1"}, new String[]{"token1 token2 token3"});
+		ApplicationSetup.TERRIER_INDEX_PATH = ((IndexOnDisk)index).getPath();
+		ApplicationSetup.TERRIER_INDEX_PREFIX = ((IndexOnDisk)index).getPrefix();
+		ApplicationSetup.setProperty("rest.max.inflight", "1");
+		ApplicationSetup.setProperty("rest.max.queued", "0");
+		int port = new Random().nextInt(65536-1024)+1024;
+		String uri = "http://127.0.0.1:"+port+"/";
+		HttpServer server = SingleIndexRestServer.startServer(uri);
+		SearchResource.reinit();
+		index.close();
+
+		HttpURLConnection conn = (HttpURLConnection) new URL(uri + "search/json?query=token1").openConnection();
+		assertEquals(200, conn.getResponseCode());
+		conn.disconnect();
+
+		//occupy the only place, such that the server rejects queries
+		final CountDownLatch release = new CountDownLatch(1);
+		Future<?> blocking = SearchResource.executor.submit(() -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {}
+		});
+		conn = (HttpURLConnection) new URL(uri + "search/trec?query=token1").openConnection();
+		assertEquals(503, conn.getResponseCode());
+		conn.disconnect();
+		release.countDown();
+		blocking.get();
+		server.shutdown().get();
+	}
+}
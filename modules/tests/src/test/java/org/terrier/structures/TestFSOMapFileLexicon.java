@@ -28,10 +28,18 @@ package org.terrier.structures;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.hadoop.io.Text;
 import org.junit.Test;
+import org.terrier.structures.seralization.FixedSizeWriteableFactory;
 import org.terrier.structures.indexing.LexiconBuilder;
 import org.terrier.tests.ApplicationSetupBasedTest;
 import org.terrier.utility.ApplicationSetup;
@@ -98,6 +106,93 @@ public class TestFSOMapFileLexicon extends ApplicationSetupBasedTest
 		assertEquals(1, lexicon.getLexiconEntry("b").getFrequency());
 	}
 	
+	static String randomTerm(Random r)
+	{
+		final String alphabet = "abc\u00e9\u4e2d";
+		final StringBuilder s = new StringBuilder();
+		final int length = 1 + r.nextInt(6);
+		for(int i=0;i<length;i++)
+			s.append(alphabet.charAt(r.nextInt(alphabet.length())));
+		return s.toString();
+	}
+	
+	@Test public void testFrontCodedDictionary() throws Exception
+	{
+		Random r = new Random(42);
+		for(int size : new int[]{1, 15, 16, 17, 500})
+		{
+			TreeSet<Text> sorted = new TreeSet<>();
+			while(sorted.size() < size)
+				sorted.add(new Text(randomTerm(r)));
+			List<Text> terms = new ArrayList<>(sorted);
+			FSOMapFileLexicon.FrontCodedBSearchShortcut dict = new FSOMapFileLexicon.FrontCodedBSearchShortcut(terms.iterator(), size);
+			for(int i=0;i<size;i++)
+			{
+				Text t = terms.get(i);
+				assertEquals(t.toString(), i, dict.indexOf(t.getBytes(), t.getLength()));
+			}
+			for(int i=0;i<1000;i++)
+			{
+				Text t = new Text(randomTerm(r));
+				assertEquals(t.toString(), Collections.binarySearch(terms, t), dict.indexOf(t.getBytes(), t.getLength()));
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test public void testMappedFrontCoded() throws Exception
+	{
+		Random r = new Random(7);
+		String[] tokens = new String[2000];
+		for(int i=0;i<tokens.length;i++)
+			tokens[i] = randomTerm(r);
+		IndexOnDisk index = (IndexOnDisk) createLexiconIndex(tokens);
+		final Lexicon<String> expected = index.getLexicon();
+		for(String[] config : new String[][]{{"default", "mmap"}, {"frontcoded", "file"}, {"frontcoded", "mmap"}})
+		{
+			final FSOMapFileLexicon lexicon = new FSOMapFileLexicon("lexicon", index.getPath(), index.getPrefix(),
+				(FixedSizeWriteableFactory<Text>) index.getIndexStructure("lexicon-keyfactory"),
+				(FixedSizeWriteableFactory<LexiconEntry>) index.getIndexStructure("lexicon-valuefactory"),
+				"aligned", config[0], config[1]);
+			assertEquals(expected.numberOfEntries(), lexicon.numberOfEntries());
+			for(int i=0;i<expected.numberOfEntries();i++)
+			{
+				Map.Entry<String,LexiconEntry> e = expected.getIthLexiconEntry(i);
+				LexiconEntry le = lexicon.getLexiconEntry(e.getKey());
+				assertNotNull(e.getKey(), le);
+				assertEquals(e.getValue().getTermId(), le.getTermId());
+				assertEquals(e.getValue().getFrequency(), le.getFrequency());
+				assertEquals(e.getKey(), lexicon.getIthLexiconEntry(i).getKey());
+			}
+			assertNull(lexicon.getLexiconEntry("zzz"));
+			assertNull(lexicon.getLexiconEntry("0"));
+			
+			//concurrent lookups
+			final AtomicInteger errors = new AtomicInteger();
+			Thread[] threads = new Thread[4];
+			for(int t=0;t<threads.length;t++)
+			{
+				final int seed = t;
+				threads[t] = new Thread(() -> {
+					Random tr = new Random(seed);
+					for(int i=0;i<2000;i++)
+					{
+						String term = randomTerm(tr);
+						LexiconEntry le1 = expected.getLexiconEntry(term);
+						LexiconEntry le2 = lexicon.getLexiconEntry(term);
+						if (le1 == null ? le2 != null : le2 == null || le1.getTermId() != le2.getTermId())
+							errors.incrementAndGet();
+					}
+				});
+				threads[t].start();
+			}
+			for(Thread t : threads)
+				t.join();
+			assertEquals(0, errors.get());
+			lexicon.close();
+		}
+	}
+	
 	@Test public void testSubset() throws Exception
 	{
 		Index index = createLexiconIndex(new String[]{"a", "b", "a", "c", "d", "e", "f", "z"});
@@ -0,0 +1,171 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestTermMaxScores.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ *
+ */
+package org.terrier.structures;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.matching.MatchingQueryTerms;
+import org.terrier.matching.PostingListManager;
+import org.terrier.matching.ResultSet;
+import org.terrier.matching.daat.Full;
+import org.terrier.matching.daat.WAND;
+import org.terrier.matching.models.BM25;
+import org.terrier.matching.models.DPH;
+import org.terrier.matching.models.TF_IDF;
+import org.terrier.matching.models.WeightingModel;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+
+public class TestTermMaxScores extends ApplicationSetupBasedTest {
+
+	static final String[] VOCAB = new String[]{
+		"alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel"};
+
+	IndexOnDisk makeIndex(Random r) throws Exception
+	{
+		ApplicationSetup.setProperty("termpipelines", "");
+		final int numDocs = 200;
+		String[] docnos = new String[numDocs];
+		String[] docs = new String[numDocs];
+		for(int d=0;d<numDocs;d++)
+		{
+			docnos[d] = "doc" + d;
+			StringBuilder s = new StringBuilder();
+			final int length = 1 + r.nextInt(30);
+			for(int j=0;j<length;j++)
+			{
+				s.append(VOCAB[(int) Math.min(VOCAB.length -1, Math.abs(r.nextGaussian()) * VOCAB.length / 3)]);
+				s.append(' ');
+			}
+			docs[d] = s.toString();
+		}
+		return (IndexOnDisk) IndexTestUtils.makeIndex(docnos, docs);
+	}
+
+	MatchingQueryTerms makeQuery(String[] terms, WeightingModel wm)
+	{
+		MatchingQueryTerms mqt = new MatchingQueryTerms("1");
+		for(String t : terms)
+			mqt.setTermProperty(t, 1.0d);
+		mqt.setDefaultTermWeightingModel(wm);
+		return mqt;
+	}
+
+	/** checks that the bound of each term is the score of its highest scored posting */
+	void checkExactBounds(Index index, WeightingModel wm) throws Exception
+	{
+		PostingListManager plm = new PostingListManager(index, index.getCollectionStatistics(), makeQuery(VOCAB, wm));
+		plm.prepare(true);
+		assertEquals(VOCAB.length, plm.size());
+		for(int i=0;i<plm.size();i++)
+		{
+			final double maxScore = plm.getMaxScore(i);
+			assertTrue(wm.getInfo(), maxScore < Double.POSITIVE_INFINITY);
+			double actualMax = Double.NEGATIVE_INFINITY;
+			IterablePosting ip = plm.getPosting(i);
+			do {
+				final double score = plm.score(i);
+				assertTrue(wm.getInfo(), score <= maxScore);
+				actualMax = Math.max(actualMax, score);
+			} while(ip.next() != IterablePosting.EOL);
+			assertEquals(wm.getInfo() + " " + plm.getTerm(i), actualMax, maxScore, 1e-9);
+		}
+		plm.close();
+	}
+
+	@Test public void testIndexing() throws Exception
+	{
+		ApplicationSetup.setProperty("indexing.maxscore.models", "BM25,DPH");
+		IndexOnDisk index = makeIndex(new Random(5));
+		assertTrue(index.hasIndexStructure(TermMaxScores.STRUCTURE_NAME));
+		assertEquals("BM25,DPH", index.getIndexProperty("index.maxscore.models", null));
+		TermMaxScores maxScores = (TermMaxScores) index.getIndexStructure(TermMaxScores.STRUCTURE_NAME);
+		assertEquals(index.getCollectionStatistics().getNumberOfUniqueTerms(), maxScores.getNumberOfTerms());
+		assertArrayEquals(new String[]{new BM25().getInfo(), new DPH().getInfo()}, maxScores.getModelNames());
+
+		for(String t : VOCAB)
+		{
+			LexiconEntry le = index.getLexicon().getLexiconEntry(t);
+			int maxtf = 0;
+			IterablePosting ip = index.getInvertedIndex().getPostings(le);
+			while(ip.next() != IterablePosting.EOL)
+				maxtf = Math.max(maxtf, ip.getFrequency());
+			ip.close();
+			assertEquals(t, maxtf, maxScores.getMaxFrequency(le.getTermId()));
+		}
+
+		checkExactBounds(index, new BM25());
+		checkExactBounds(index, new DPH());
+
+		//models that were not recorded get no bound from the structure
+		WeightingModel wm = new TF_IDF();
+		wm.setCollectionStatistics(index.getCollectionStatistics());
+		wm.setEntryStatistics(index.getLexicon().getLexiconEntry("alpha"));
+		wm.setKeyFrequency(1);
+		wm.prepare();
+		assertEquals(Double.POSITIVE_INFINITY, maxScores.getMaxScore(wm, 0), 0.0d);
+		index.close();
+	}
+
+	@Test public void testRetrofit() throws Exception
+	{
+		ApplicationSetup.setProperty("matching.retrieved_set_size", "10");
+		Random r = new Random(11);
+		IndexOnDisk index = makeIndex(r);
+		assertFalse(index.hasIndexStructure(TermMaxScores.STRUCTURE_NAME));
+
+		//without the structure, DPH has no bound
+		PostingListManager plm = new PostingListManager(index, index.getCollectionStatistics(), makeQuery(VOCAB, new DPH()));
+		assertEquals(Double.POSITIVE_INFINITY, plm.getMaxScore(0), 0.0d);
+		plm.close();
+
+		TermMaxScores.create(index, TermMaxScores.STRUCTURE_NAME, new String[]{"DPH"});
+		index.flush();
+		assertTrue(index.hasIndexStructure(TermMaxScores.STRUCTURE_NAME));
+		checkExactBounds(index, new DPH());
+
+		for(int q=0;q<30;q++)
+		{
+			final String[] terms = new String[1 + r.nextInt(4)];
+			for(int j=0;j<terms.length;j++)
+				terms[j] = VOCAB[r.nextInt(VOCAB.length)];
+			ResultSet expected = new Full(index).match("1", makeQuery(terms, new DPH()));
+			ResultSet actual = new WAND(index).match("1", makeQuery(terms, new DPH()));
+			assertArrayEquals(expected.getDocids(), actual.getDocids());
+			assertArrayEquals(expected.getScores(), actual.getScores(), 0.0d);
+		}
+		index.close();
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestBitPostingIndexCache.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ *
+ */
+package org.terrier.structures.bit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.ArrayOfIdsIterablePosting;
+import org.terrier.structures.postings.BlockPosting;
+import org.terrier.structures.postings.FieldPosting;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+
+public class TestBitPostingIndexCache extends ApplicationSetupBasedTest {
+
+	static final String[] DOCS = new String[]{
+		"<DOCNO>1</DOCNO> <TITLE> Simple fox example</TITLE> <BODY> The quick brown fox jumps over the lazy dog </BODY>",
+		"<DOCNO>2</DOCNO> <TITLE> Simple dog example</TITLE> <BODY> how much is that dog in the window dog </BODY>",
+		"<DOCNO>3</DOCNO> <TITLE> Another dog example</TITLE> <BODY> For example, what type of terrier is it? </BODY>",
+		"<DOCNO>4</DOCNO> <TITLE> Copyright Statement </TITLE> <BODY> Terrier.org fox </BODY>"};
+
+	static final String[] DOCNOS = new String[]{"1", "2", "3", "4"};
+
+	static void comparePostings(IterablePosting expected, IterablePosting actual) throws Exception
+	{
+		while(expected.next() != IterablePosting.EOL)
+		{
+			assertEquals(expected.getId(), actual.next());
+			assertEquals(expected.getFrequency(), actual.getFrequency());
+			assertEquals(expected.getDocumentLength(), actual.getDocumentLength());
+			if (expected instanceof FieldPosting)
+			{
+				assertArrayEquals(((FieldPosting)expected).getFieldFrequencies(), ((FieldPosting)actual).getFieldFrequencies());
+				assertArrayEquals(((FieldPosting)expected).getFieldLengths(), ((FieldPosting)actual).getFieldLengths());
+			}
+			if (expected instanceof BlockPosting)
+				assertArrayEquals(((BlockPosting)expected).getPositions(), ((BlockPosting)actual).getPositions());
+		}
+		assertEquals(IterablePosting.EOL, actual.next());
+		expected.close();
+		actual.close();
+	}
+
+	void checkIndex(Index index) throws Exception
+	{
+		BitPostingIndex inverted = (BitPostingIndex) ((IndexOnDisk)index).getInvertedIndex();
+		BitPostingIndexCache cache = inverted.getCache();
+		assertNotNull(cache);
+		for(int read=0;read<3;read++)
+		{
+			for(Map.Entry<String,LexiconEntry> lee : index.getLexicon())
+			{
+				inverted.setCache(cache);
+				IterablePosting actual = inverted.getPostings(lee.getValue());
+				//after the first read, posting lists are decoded into the cache
+				if (read > 0)
+					assertTrue(actual instanceof ArrayOfIdsIterablePosting);
+				inverted.setCache(null);
+				comparePostings(inverted.getPostings(lee.getValue()), actual);
+			}
+		}
+		inverted.setCache(cache);
+		final int numTerms = index.getCollectionStatistics().getNumberOfUniqueTerms();
+		assertEquals(numTerms, cache.size());
+		assertEquals(numTerms * 3, cache.getHitCount() + cache.getMissCount());
+		assertTrue(cache.getHitCount() >= numTerms);
+		assertTrue(cache.getHitRate() >= 1d/3d);
+		index.close();
+	}
+
+	@Test public void testBasic() throws Exception
+	{
+		ApplicationSetup.setProperty("postings.cache.bytes", "1000000");
+		checkIndex(IndexTestUtils.makeIndex(DOCNOS, DOCS));
+	}
+
+	@Test public void testBlocks() throws Exception
+	{
+		ApplicationSetup.setProperty("postings.cache.bytes", "1000000");
+		checkIndex(IndexTestUtils.makeIndexBlocks(DOCNOS, DOCS));
+	}
+
+	@Test public void testFieldsBlocks() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "TITLE,BODY");
+		ApplicationSetup.setProperty("TrecDocTags.process", "DOCNO,TITLE,BODY");
+		ApplicationSetup.setProperty("postings.cache.bytes", "1000000");
+		checkIndex(IndexTestUtils.makeIndexFieldsBlocks(DOCNOS, DOCS));
+	}
+
+	@Test public void testFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "TITLE,BODY");
+		ApplicationSetup.setProperty("TrecDocTags.process", "DOCNO,TITLE,BODY");
+		ApplicationSetup.setProperty("postings.cache.bytes", "1000000");
+		checkIndex(IndexTestUtils.makeIndexFields(DOCNOS, DOCS));
+	}
+
+	@Test public void testDisabled() throws Exception
+	{
+		Index index = IndexTestUtils.makeIndex(DOCNOS, DOCS);
+		assertNull(((BitPostingIndex) index.getInvertedIndex()).getCache());
+		index.close();
+	}
+
+	@Test public void testAdmissionAndEviction() throws Exception
+	{
+		ApplicationSetup.setProperty("termpipelines", "");
+		Index index = IndexTestUtils.makeIndex(DOCNOS, DOCS);
+		BitPostingIndex inverted = (BitPostingIndex) index.getInvertedIndex();
+		LexiconEntry dog = index.getLexicon().getLexiconEntry("dog");
+		LexiconEntry fox = index.getLexicon().getLexiconEntry("fox");
+		//room for only one of the posting lists
+		BitPostingIndexCache cache = new BitPostingIndexCache(BitPostingIndexCache.ENTRY_OVERHEAD + 12 * 3, 2);
+		inverted.setCache(cache);
+
+		//not admitted on the first read
+		assertFalse(inverted.getPostings(dog) instanceof ArrayOfIdsIterablePosting);
+		assertEquals(0, cache.size());
+		assertTrue(inverted.getPostings(dog) instanceof ArrayOfIdsIterablePosting);
+		assertEquals(1, cache.size());
+		assertTrue(inverted.getPostings(dog) instanceof ArrayOfIdsIterablePosting);
+
+		inverted.getPostings(fox);
+		inverted.getPostings(fox);
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertTrue(cache.getBytes() <= BitPostingIndexCache.ENTRY_OVERHEAD + 12 * 3);
+		assertNull(cache.getPostings((BitIndexPointer) dog));
+		assertNotNull(cache.getPostings((BitIndexPointer) fox));
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getBytes());
+		index.close();
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org 
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestBitPostingIndexSkips.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ *   
+ */
+package org.terrier.structures.bit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.PostingIndex;
+import org.terrier.structures.postings.BasicPostingImpl;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.Posting;
+import org.terrier.structures.postings.PostingTestUtils;
+import org.terrier.structures.postings.bit.BasicIterablePosting;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+
+public class TestBitPostingIndexSkips extends ApplicationSetupBasedTest {
+
+	static List<Posting> makePostings(Random r, int length)
+	{
+		List<Posting> postings = new ArrayList<Posting>();
+		int docid = -1;
+		for(int i=0;i<length;i++)
+		{
+			docid += 1 + r.nextInt(20);
+			postings.add(new BasicPostingImpl(docid, 1 + r.nextInt(10)));
+		}
+		return postings;
+	}
+	
+	static void checkNextTarget(List<Posting> postings, IterablePosting ip, int[] targets) throws Exception
+	{
+		int i = 0;
+		for(int target : targets)
+		{
+			while(i < postings.size() && postings.get(i).getId() < target)
+				i++;
+			final int rtr = ip.next(target);
+			if (i == postings.size())
+			{
+				assertEquals(IterablePosting.EOL, rtr);
+				return;
+			}
+			assertEquals(postings.get(i).getId(), rtr);
+			assertEquals(postings.get(i).getId(), ip.getId());
+			assertEquals(postings.get(i).getFrequency(), ip.getFrequency());
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test public void testSkipsSingleFile() throws Exception
+	{
+		final Random r = new Random(42);
+		final int[] lengths = new int[]{1000, 3, 8, 9, 17, 300};
+		final List<Posting>[] lists = new List[lengths.length];
+		final Iterator<Posting>[] iterators = new Iterator[lengths.length];
+		for(int i=0;i<lengths.length;i++)
+		{
+			lists[i] = makePostings(r, lengths[i]);
+			iterators[i] = lists[i].iterator();
+		}
+		List<BitIndexPointer> pointerList = new ArrayList<BitIndexPointer>();
+		String filename = PostingTestUtils.writePostingsToFile(iterators, pointerList);
+		String skipsFilename = filename + BitPostingIndexSkips.USUAL_EXTENSION;
+		BitPostingIndexSkips.write(
+			new BitPostingIndexInputStream(filename, (byte)1, pointerList.iterator(), BasicIterablePosting.class, 0),
+			(byte)1, skipsFilename, 8);
+		BitPostingIndexSkips skips = BitPostingIndexSkips.load(skipsFilename);
+		assertEquals(8, skips.getBlockSize());
+		//only posting lists longer than one block have skips
+		assertEquals(-1, skips.getListIndex(pointerList.get(1)));
+		assertEquals(-1, skips.getListIndex(pointerList.get(2)));
+		
+		BitPostingIndex structure = new BitPostingIndex(filename, (byte) 1, BasicIterablePosting.class, "file", 0);
+		structure.setSkips(skips);
+		for(int i=0;i<lengths.length;i++)
+		{
+			//full iteration is unaffected by skips
+			PostingTestUtils.comparePostings(lists[i], structure.getPostings(pointerList.get(i)));
+			
+			final int maxId = lists[i].get(lists[i].size() -1).getId();
+			for(int trial=0;trial<20;trial++)
+			{
+				int[] targets = new int[1 + r.nextInt(30)];
+				for(int j=0;j<targets.length;j++)
+					targets[j] = r.nextInt(maxId + 10);
+				Arrays.sort(targets);
+				checkNextTarget(lists[i], structure.getPostings(pointerList.get(i)), targets);
+			}
+			//mixing next() and next(target)
+			IterablePosting ip = structure.getPostings(pointerList.get(i));
+			ip.next();
+			checkNextTarget(lists[i], ip, new int[]{lists[i].get(0).getId(), maxId/2, maxId});
+			//beyond the end of the posting list
+			assertEquals(IterablePosting.EOL, structure.getPostings(pointerList.get(i)).next(maxId+1));
+		}
+		structure.close();
+	}
+	
+	@Test public void testNoSkipsByDefault() throws Exception
+	{
+		Index index = IndexTestUtils.makeIndex(
+				new String[]{"doc1", "doc2"}, 
+				new String[]{"hello there", "hello world"});
+		assertNull(BitPostingIndexSkips.load((IndexOnDisk)index, "inverted"));
+		index.close();
+	}
+	
+	@Test public void testIndexClassical() throws Exception
+	{
+		ApplicationSetup.setProperty("indexing.inverted.skip.block.size", "2");
+		checkIndex(makeIndex(0));
+	}
+	
+	@Test public void testIndexBlocks() throws Exception
+	{
+		ApplicationSetup.setProperty("indexing.inverted.skip.block.size", "2");
+		checkIndex(makeIndex(1));
+	}
+	
+	@Test public void testIndexSinglePass() throws Exception
+	{
+		ApplicationSetup.setProperty("indexing.inverted.skip.block.size", "2");
+		checkIndex(makeIndex(2));
+	}
+	
+	@Test public void testRetrofit() throws Exception
+	{
+		Index index = makeIndex(0);
+		assertNull(BitPostingIndexSkips.load((IndexOnDisk)index, "inverted"));
+		BitPostingIndexSkips.create((IndexOnDisk)index, "inverted", 3);
+		index.close();
+		index = Index.createIndex(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX + "-" + lastPrefix);
+		checkIndex(index);
+	}
+	
+	int lastPrefix;
+	
+	Index makeIndex(int type) throws Exception
+	{
+		final int docCount = 20;
+		String[] docnos = new String[docCount];
+		String[] docs = new String[docCount];
+		for(int i=0;i<docCount;i++)
+		{
+			docnos[i] = "doc" + i;
+			StringBuilder s = new StringBuilder();
+			s.append("alpha");
+			for(int j=0;j<i % 3;j++)
+				s.append(" alpha");
+			if (i % 2 == 0)
+				s.append(" beta");
+			if (i % 5 == 0)
+				s.append(" gamma");
+			docs[i] = s.toString();
+		}
+		Index index;
+		if (type == 0)
+			index = IndexTestUtils.makeIndex(docnos, docs);
+		else if (type == 1)
+			index = IndexTestUtils.makeIndexBlocks(docnos, docs);
+		else
+			index = IndexTestUtils.makeIndexSinglePass(docnos, docs);
+		lastPrefix = Integer.parseInt(((IndexOnDisk)index).getPrefix().substring(ApplicationSetup.TERRIER_INDEX_PREFIX.length() + 1));
+		return index;
+	}
+	
+	void checkIndex(Index index) throws Exception
+	{
+		assertNotNull(BitPostingIndexSkips.load((IndexOnDisk)index, "inverted"));
+		PostingIndex<?> inv = index.getInvertedIndex();
+		for(String term : new String[]{"alpha", "beta", "gamma"})
+		{
+			LexiconEntry le = index.getLexicon().getLexiconEntry(term);
+			assertNotNull(le);
+			List<Posting> postings = new ArrayList<Posting>();
+			IterablePosting ip = inv.getPostings(le);
+			while(ip.next() != IterablePosting.EOL)
+				postings.add(ip.asWritablePosting());
+			ip.close();
+			for(int start=0;start<20;start++)
+			{
+				checkNextTarget(postings, inv.getPostings(le), new int[]{start});
+				checkNextTarget(postings, inv.getPostings(le), new int[]{start, start+3, start+7});
+			}
+		}
+		index.close();
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestBoundedQueryResultCache.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original author)
+ *
+ */
+package org.terrier.structures.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.matching.QueryResultSet;
+import org.terrier.matching.ResultSet;
+import org.terrier.querying.LocalManager;
+import org.terrier.querying.Manager;
+import org.terrier.querying.Request;
+import org.terrier.querying.SearchRequest;
+import org.terrier.structures.Index;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+
+public class TestBoundedQueryResultCache extends ApplicationSetupBasedTest {
+
+	static class ClockedCache extends BoundedQueryResultCache
+	{
+		long time = 0;
+		ClockedCache(int maxEntries, long maxWeight, long ttlMillis)
+		{
+			super(maxEntries, maxWeight, ttlMillis);
+		}
+
+		@Override
+		protected long now() {
+			return time;
+		}
+	}
+
+	static Request makeRequest(String query, int numResults)
+	{
+		Request rq = new Request();
+		rq.setOriginalQuery(query);
+		rq.setControl("wmodel", "BM25");
+		rq.setResultSet(new QueryResultSet(numResults));
+		return rq;
+	}
+
+	/** looks up the query in the cache, adding it if not found */
+	static ResultSet lookup(QueryResultCache cache, String query, int numResults)
+	{
+		Request rq = makeRequest(query, numResults);
+		ResultSet rtr = cache.checkCache(rq);
+		if (rtr == null)
+			cache.add(rq);
+		return rtr;
+	}
+
+	@Test public void testKeys()
+	{
+		Request a = makeRequest("  hello   world ", 1);
+		Request b = makeRequest("hello world", 1);
+		b.setControl("runname", "_Something");
+		assertEquals(BoundedQueryResultCache.getKey(a), BoundedQueryResultCache.getKey(b));
+		b.setControl("wmodel", "DPH");
+		assertNotEquals(BoundedQueryResultCache.getKey(a), BoundedQueryResultCache.getKey(b));
+		assertNotEquals(BoundedQueryResultCache.getKey(a), BoundedQueryResultCache.getKey(makeRequest("Hello world", 1)));
+	}
+
+	@Test public void testHitAndMiss()
+	{
+		BoundedQueryResultCache cache = new BoundedQueryResultCache(10, 1000, 0);
+		Request rq = makeRequest("a b", 5);
+		assertNull(cache.checkCache(rq));
+		cache.add(rq);
+		ResultSet cached = cache.checkCache(makeRequest("a  b", 3));
+		assertSame(rq.getResultSet(), cached);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.size());
+		assertEquals(5, cache.getWeight());
+		cache.reset();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+	}
+
+	@Test public void testBounds()
+	{
+		BoundedQueryResultCache cache = new BoundedQueryResultCache(4, 100, 0);
+		for(int i=0;i<10;i++)
+		{
+			//each query is more frequent than those before, so that it is always admitted
+			Request rq = makeRequest("q" + i, 30);
+			for(int repeat=0;repeat<=i;repeat++)
+				assertNull(cache.checkCache(rq));
+			cache.add(rq);
+			assertTrue(cache.size() <= 4);
+			assertTrue(cache.getWeight() <= 100);
+		}
+		assertEquals(3, cache.size());
+		assertEquals(90, cache.getWeight());
+		//the most recently added queries are retained
+		assertNotNull(cache.checkCache(makeRequest("q9", 1)));
+		assertNull(cache.checkCache(makeRequest("q0", 1)));
+		assertTrue(cache.getEvictionCount() > 0);
+
+		//results larger than the cache are never admitted
+		cache.add(makeRequest("large", 101));
+		assertNull(cache.checkCache(makeRequest("large", 1)));
+	}
+
+	@Test public void testExpiry()
+	{
+		ClockedCache cache = new ClockedCache(10, 1000, 100);
+		assertNull(lookup(cache, "q", 1));
+		cache.time = 99;
+		assertNotNull(lookup(cache, "q", 1));
+		cache.time = 100;
+		assertNull(lookup(cache, "q", 1));
+		assertEquals(1, cache.getExpirationCount());
+		//re-added after expiry
+		assertNotNull(lookup(cache, "q", 1));
+	}
+
+	@Test public void testScanResistance()
+	{
+		BoundedQueryResultCache cache = new BoundedQueryResultCache(8, 1000, 0);
+		//popular queries, repeated several times
+		for(int repeat=0;repeat<5;repeat++)
+			for(int i=0;i<8;i++)
+				lookup(cache, "popular" + i, 1);
+		assertEquals(8, cache.size());
+		//a scan of queries that are each seen once should not flush the cache
+		for(int i=0;i<100;i++)
+			lookup(cache, "scan" + i, 1);
+		assertTrue(cache.getRejectionCount() > 0);
+		for(int i=0;i<8;i++)
+			assertNotNull(cache.checkCache(makeRequest("popular" + i, 1)));
+	}
+
+	@Test public void testConcurrent() throws Exception
+	{
+		final BoundedQueryResultCache cache = new BoundedQueryResultCache(300, 1000, 0);
+		Thread[] threads = new Thread[4];
+		for(int t=0;t<threads.length;t++)
+		{
+			final int offset = t;
+			threads[t] = new Thread(() -> {
+				for(int i=0;i<5000;i++)
+					lookup(cache, "q" + ((i * 7 + offset) % 500), 1 + (i % 5));
+			});
+			threads[t].start();
+		}
+		for(Thread t : threads)
+			t.join();
+		assertTrue(cache.size() <= 300);
+		assertTrue(cache.getWeight() <= 1000);
+		assertEquals(20000, cache.getHitCount() + cache.getMissCount());
+	}
+
+	@Test public void testLocalManager() throws Exception
+	{
+		ApplicationSetup.setProperty("querying.resultscache", "BoundedQueryResultCache");
+		Index index = IndexTestUtils.makeIndex(
+				new String[]{"doc1", "doc2"},
+				new String[]{"The quick brown fox jumps over the lazy dog", "the fox sleeps"});
+		Manager m = new LocalManager(index);
+		SearchRequest srq = m.newSearchRequest("1", "fox");
+		m.runSearchRequest(srq);
+		ResultSet first = ((Request) srq).getResultSet();
+		assertEquals(2, first.getResultSize());
+
+		srq = m.newSearchRequest("2", "fox");
+		m.runSearchRequest(srq);
+		assertSame(first, ((Request) srq).getResultSet());
+		//no processes were run for the cached query
+		assertNull(((Request) srq).getMatchingQueryTerms());
+
+		srq = m.newSearchRequest("3", "dog");
+		m.runSearchRequest(srq);
+		assertEquals(1, ((Request) srq).getResultSet().getResultSize());
+		index.close();
+	}
+}
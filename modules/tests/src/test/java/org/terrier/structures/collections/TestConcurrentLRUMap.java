@@ -0,0 +1,90 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestConcurrentLRUMap.java
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk> (original contributor)
+ */
+package org.terrier.structures.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestConcurrentLRUMap {
+
+	@Test public void testBounded()
+	{
+		ConcurrentLRUMap<Integer,String> map = new ConcurrentLRUMap<>(64);
+		for(int i=0;i<1000;i++)
+		{
+			map.put(i, "v" + i);
+			assertEquals("v" + i, map.get(i));
+		}
+		assertTrue(map.size() <= 64);
+		assertTrue(map.size() > 0);
+		assertEquals(map.size(), map.entrySet().size());
+		assertNull(map.get(0));
+		map.clear();
+		assertEquals(0, map.size());
+	}
+
+	@Test public void testSmall()
+	{
+		ConcurrentLRUMap<Integer,String> map = new ConcurrentLRUMap<>(1);
+		map.put(1, "a");
+		map.put(2, "b");
+		assertEquals(1, map.size());
+		assertEquals("b", map.get(2));
+		assertEquals("b", map.remove(2));
+		assertEquals(0, map.size());
+	}
+
+	@Test public void testConcurrent() throws Exception
+	{
+		final ConcurrentLRUMap<Integer,Integer> map = new ConcurrentLRUMap<>(100);
+		final AtomicInteger errors = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for(int t=0;t<threads.length;t++)
+		{
+			final int thread = t;
+			threads[t] = new Thread(() -> {
+				for(int i=0;i<10000;i++)
+				{
+					int key = (i * (thread + 1)) % 500;
+					Integer value = map.get(key);
+					if (value != null && value.intValue() != key * 2)
+						errors.incrementAndGet();
+					map.put(key, key * 2);
+				}
+			});
+			threads[t].start();
+		}
+		for(Thread t : threads)
+			t.join();
+		assertEquals(0, errors.get());
+		assertTrue(map.size() <= 100);
+	}
+}
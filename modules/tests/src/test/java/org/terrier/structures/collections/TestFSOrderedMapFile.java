@@ -545,6 +545,36 @@ public class TestFSOrderedMapFile {
 		checkKeys(keyFactory, mapfile);
 	}
 	
+	@Test public void testMapped() throws Exception
+	{
+		FixedSizeTextFactory keyFactory = new FixedSizeTextFactory(20);
+		FSOrderedMapFile<Text, IntWritable> mapfile = new MappedFSOrderedMapFile<Text, IntWritable>(file, false, keyFactory, new FixedSizeIntWritableFactory());
+		checkKeysGetEntry(keyFactory, mapfile);
+		checkKeys(keyFactory, mapfile);
+		mapfile.close();
+	}
+	
+	@Test public void testMappedIntKeys() throws Exception
+	{
+		String intFile = tf.newFile("testFSOMapfileInts" + FSOrderedMapFile.USUAL_EXTENSION).toString();
+		FixedSizeIntWritableFactory factory = new FixedSizeIntWritableFactory();
+		MapFileWriter w = FSOrderedMapFile.mapFileWrite(intFile);
+		for(int i=0;i<100;i++)
+			w.write(new IntWritable(i*2), new IntWritable(i));
+		w.close();
+		FSOrderedMapFile<IntWritable, IntWritable> mapfile = new MappedFSOrderedMapFile<IntWritable, IntWritable>(intFile, false, factory, factory);
+		assertEquals(100, mapfile.size());
+		for(int i=0;i<100;i++)
+		{
+			assertEquals(i, mapfile.get(new IntWritable(i*2)).get());
+			assertNull(mapfile.get(new IntWritable(i*2+1)));
+			assertEquals(-(i+1) -1, mapfile.getEntry(new IntWritable(i*2+1)).index);
+			assertEquals(i*2, mapfile.get(i).getKey().get());
+		}
+		assertEquals(-1, mapfile.getEntry(new IntWritable(-1)).index);
+		mapfile.close();
+	}
+	
 	@Test public void testInMemory() throws Exception
 	{
 		FixedSizeTextFactory keyFactory = new FixedSizeTextFactory(20);
@@ -0,0 +1,86 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestTermIdDocumentPostingList.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *  Craig Macdonald
+ */
+package org.terrier.structures.indexing;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import org.junit.Test;
+import org.terrier.structures.FieldDocumentIndexEntry;
+import org.terrier.utility.ConcurrentTermDictionary;
+
+public class TestTermIdDocumentPostingList {
+
+	@Test public void testWritableFields() throws Exception
+	{
+		TermIdFieldDocumentPostingList dpl = new TermIdFieldDocumentPostingList(new ConcurrentTermDictionary(), 2);
+		dpl.insert("a", new int[]{0});
+		dpl.insert("b", new int[]{0,1});
+		dpl.insert("a", new int[]{1});
+		dpl.insert("c", new int[0]);
+		
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		dpl.write(new DataOutputStream(buffer));
+		
+		//a different dictionary assigns different ids to the terms
+		ConcurrentTermDictionary other = new ConcurrentTermDictionary();
+		other.getId("c");
+		TermIdFieldDocumentPostingList read = new TermIdFieldDocumentPostingList(other, 2);
+		read.readFields(new DataInputStream(new ByteArrayInputStream(buffer.toByteArray())));
+		
+		assertEquals(dpl.getDocumentLength(), read.getDocumentLength());
+		assertEquals(3, read.getNumberOfPointers());
+		assertEquals(2, read.getFrequency("a"));
+		assertEquals(1, read.getFrequency("b"));
+		assertEquals(1, read.getFrequency("c"));
+		assertArrayEquals(new int[]{1,1}, read.getFieldFrequencies("a"));
+		assertArrayEquals(new int[]{1,1}, read.getFieldFrequencies("b"));
+		assertArrayEquals(new int[]{0,0}, read.getFieldFrequencies("c"));
+		assertArrayEquals(
+			((FieldDocumentIndexEntry)dpl.getDocumentStatistics()).getFieldLengths(), 
+			((FieldDocumentIndexEntry)read.getDocumentStatistics()).getFieldLengths());
+	}
+	
+	@Test public void testWritable() throws Exception
+	{
+		TermIdDocumentPostingList dpl = new TermIdDocumentPostingList(new ConcurrentTermDictionary());
+		dpl.insert("a");
+		dpl.insert("b");
+		dpl.insert("a");
+		
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		dpl.write(new DataOutputStream(buffer));
+		TermIdDocumentPostingList read = new TermIdDocumentPostingList(new ConcurrentTermDictionary());
+		read.readFields(new DataInputStream(new ByteArrayInputStream(buffer.toByteArray())));
+		assertEquals(2, read.getNumberOfPointers());
+		assertEquals(2, read.getFrequency("a"));
+		assertEquals(1, read.getFrequency("b"));
+	}
+}
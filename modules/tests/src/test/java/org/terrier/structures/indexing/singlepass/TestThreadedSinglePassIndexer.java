@@ -0,0 +1,144 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestThreadedSinglePassIndexer.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk>
+ */
+package org.terrier.structures.indexing.singlepass;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.terrier.indexing.Collection;
+import org.terrier.indexing.CollectionDocumentList;
+import org.terrier.indexing.Document;
+import org.terrier.indexing.FileDocument;
+import org.terrier.indexing.tokenisation.EnglishTokeniser;
+import org.terrier.structures.Index;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.MetaIndex;
+import org.terrier.structures.Pointer;
+import org.terrier.structures.PostingIndex;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+
+public class TestThreadedSinglePassIndexer extends ApplicationSetupBasedTest {
+
+	static final int COLLECTIONS = 3;
+	static final int DOCS = 60;
+
+	/** the text of document i has i%7+1 distinct terms, and "common" i%3+1 times */
+	static String text(int i)
+	{
+		StringBuilder s = new StringBuilder();
+		for(int j=0;j<=i%7;j++)
+			s.append("term").append(j).append(' ');
+		for(int j=0;j<=i%3;j++)
+			s.append("common ");
+		return s.toString();
+	}
+
+	static int docnum(MetaIndex meta, int docid) throws Exception
+	{
+		return Integer.parseInt(meta.getItem("filename", docid).substring(3));
+	}
+
+	/** the threads record the postings of documents by the ids of a dictionary they share */
+	@Test public void testRunsOfManyThreadsTermIds() throws Exception
+	{
+		ApplicationSetup.setProperty("indexer.termids", "true");
+		testRunsOfManyThreads();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test public void testRunsOfManyThreads() throws Exception
+	{
+		ApplicationSetup.setProperty("indexer.meta.forward.keys", "filename");
+		ApplicationSetup.setProperty("indexer.meta.forward.keylens", "20");
+		ApplicationSetup.setProperty("indexer.meta.reverse.keys", "");
+		ApplicationSetup.setProperty("termpipelines", "");
+		//flush each thread often, so that the runs of the threads interleave
+		ApplicationSetup.setProperty("indexing.singlepass.max.documents.flush", "5");
+		Collection[] collections = new Collection[COLLECTIONS];
+		for(int c=0;c<COLLECTIONS;c++)
+		{
+			Document[] docs = new Document[DOCS];
+			for(int d=0;d<DOCS;d++)
+			{
+				int i = c * DOCS + d;
+				docs[d] = new FileDocument("doc" + i, new ByteArrayInputStream(text(i).getBytes()), new EnglishTokeniser());
+			}
+			collections[c] = new CollectionDocumentList(docs);
+		}
+		final int N = COLLECTIONS * DOCS;
+		new ThreadedSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX, COLLECTIONS).index(collections);
+		Index index = Index.createIndex(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX);
+		assertNotNull(index);
+		assertEquals(N, index.getCollectionStatistics().getNumberOfDocuments());
+
+		MetaIndex meta = index.getMetaIndex();
+		Set<Integer> seen = new HashSet<>();
+		for(int docid=0;docid<N;docid++)
+		{
+			int i = docnum(meta, docid);
+			assertTrue(seen.add(i));
+			assertEquals(i%7 + 1 + i%3 + 1, index.getDocumentIndex().getDocumentLength(docid));
+		}
+
+		PostingIndex<Pointer> inverted = (PostingIndex<Pointer>) index.getInvertedIndex();
+		LexiconEntry le = index.getLexicon().getLexiconEntry("common");
+		assertEquals(N, le.getDocumentFrequency());
+		IterablePosting ip = inverted.getPostings(le);
+		int count = 0;
+		while(ip.next() != IterablePosting.EOL)
+		{
+			assertEquals(count++, ip.getId());
+			int i = docnum(meta, ip.getId());
+			assertEquals(i%3 + 1, ip.getFrequency());
+			assertEquals(i%7 + 1 + i%3 + 1, ip.getDocumentLength());
+		}
+		assertEquals(N, count);
+
+		le = index.getLexicon().getLexiconEntry("term6");
+		ip = inverted.getPostings(le);
+		int last = -1;
+		count = 0;
+		while(ip.next() != IterablePosting.EOL)
+		{
+			assertTrue(ip.getId() > last);
+			last = ip.getId();
+			assertEquals(6, docnum(meta, ip.getId()) % 7);
+			count++;
+		}
+		assertEquals(le.getDocumentFrequency(), count);
+		assertFalse(count == 0);
+		index.close();
+	}
+}
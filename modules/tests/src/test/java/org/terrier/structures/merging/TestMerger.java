@@ -1,12 +1,21 @@
 package org.terrier.structures.merging;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Random;
+import java.util.Set;
 
 import org.junit.Test;
 import org.terrier.indexing.IndexTestUtils;
+import org.terrier.structures.BitmapDeletedDocuments;
+import org.terrier.structures.DeletedDocuments;
+import org.terrier.structures.DocValues;
 import org.terrier.structures.Index;
 import org.terrier.structures.IndexOnDisk;
 import org.terrier.structures.LexiconEntry;
@@ -105,6 +114,39 @@ public class TestMerger extends ApplicationSetupBasedTest {
 	
 	}
 	
+	@Test public void testPurgeDeleted() throws Exception
+	{
+		ApplicationSetup.setProperty("termpipelines", "");
+		IndexOnDisk index1 = (IndexOnDisk) IndexTestUtils.makeIndex(new String[]{"doc1", "doc2"}, new String[]{"this is a sentence", "another unique sentence"});
+		IndexOnDisk index2 = (IndexOnDisk) IndexTestUtils.makeIndex(new String[]{"doc3", "doc4"}, new String[]{"this is also a sentence", "a third sentence"});
+		BitmapDeletedDocuments deleted1 = new BitmapDeletedDocuments();
+		assertTrue(deleted1.delete(1, 3));
+		deleted1.write(index1);
+		BitmapDeletedDocuments deleted2 = new BitmapDeletedDocuments();
+		assertTrue(deleted2.delete(0, 5));
+		deleted2.write(index2);
+
+		IndexOnDisk merged = IndexOnDisk.createNewIndex(ApplicationSetup.TERRIER_INDEX_PATH, ""+ new Random().nextInt(100) );
+		new StructureMerger(index1, index2, merged).mergeStructures();
+		merged = IndexOnDisk.createIndex(merged.getPath(), merged.getPrefix());
+
+		assertEquals(2, merged.getCollectionStatistics().getNumberOfDocuments());
+		assertEquals(7, merged.getCollectionStatistics().getNumberOfTokens());
+		assertFalse(merged.hasIndexStructure(DeletedDocuments.STRUCTURE_NAME));
+		checkTerm(merged, "sentence", 2, false, false);
+		assertNull(merged.getLexicon().getLexiconEntry("unique"));
+		assertNull(merged.getLexicon().getLexiconEntry("also"));
+		assertEquals(1, merged.getLexicon().getLexiconEntry("this").getDocumentFrequency());
+		assertEquals("doc1", merged.getMetaIndex().getItem("docno", 0));
+		assertEquals("doc4", merged.getMetaIndex().getItem("docno", 1));
+
+		Set<String> terms = new HashSet<>();
+		IterablePosting ip = merged.getDirectIndex().getPostings(merged.getDocumentIndex().getDocumentEntry(1));
+		while(ip.next() != IterablePosting.EOL)
+			terms.add(merged.getLexicon().getLexiconEntry(ip.getId()).getKey());
+		assertEquals(new HashSet<>(Arrays.asList("a", "third", "sentence")), terms);
+	}
+
 	@Test(expected=IllegalArgumentException.class) public void test10() throws Exception
 	{
 		ApplicationSetup.setProperty("termpipelines", "");
@@ -116,5 +158,27 @@ public class TestMerger extends ApplicationSetupBasedTest {
 		assertTrue(merged.hasIndexStructure("inverted"));
 		assertTrue(merged.hasIndexStructure("direct"));		
 	}
+
+	@Test public void testDocValues() throws Exception
+	{
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("indexer.docvalues.keys", "docno");
+		IndexOnDisk index1 = (IndexOnDisk) IndexTestUtils.makeIndex(new String[]{"doc2", "doc1"}, new String[]{"this is a sentence", "another sentence"});
+		IndexOnDisk index2 = (IndexOnDisk) IndexTestUtils.makeIndex(new String[]{"doc3"}, new String[]{"this is also a sentence"});
+		
+		//the doc values of the source indices are kept, even if not configured when merging
+		ApplicationSetup.setProperty("indexer.docvalues.keys", "");
+		IndexOnDisk merged = IndexOnDisk.createNewIndex(ApplicationSetup.TERRIER_INDEX_PATH, ""+ new Random().nextInt(100) );
+		new StructureMerger(index1, index2, merged).mergeStructures();
+		merged = IndexOnDisk.createIndex(merged.getPath(), merged.getPrefix());
+		assertTrue(merged.hasIndexStructure(DocValues.STRUCTURE_NAME));
+		DocValues dv = (DocValues) merged.getIndexStructure(DocValues.STRUCTURE_NAME);
+		assertEquals(3, dv.getNumberOfDocuments());
+		int docno = dv.getColumn("docno");
+		assertArrayEquals(new String[]{"doc1", "doc2", "doc3"}, dv.getDictionary(docno));
+		assertEquals(1, dv.getOrdinal(docno, 0));
+		assertEquals(0, dv.getOrdinal(docno, 1));
+		assertEquals(2, dv.getOrdinal(docno, 2));
+	}
 	
 }
@@ -75,4 +75,29 @@ public class TestPorterStemmer extends ApplicationSetupBasedTest {
 					targetWord, stemmer.stem(testWord));
 		}
 	}
+	
+	/** terms stemmed in a buffer must have the same stems as Strings */
+	@Test
+	public void testTermBuffer() throws Exception
+	{
+		final String[] stemmed = new String[1];
+		PorterStemmer bufferStemmer = new PorterStemmer(new TermPipeline() {
+			public void processTerm(String t) {
+				stemmed[0] = t;
+			}
+			public boolean reset() {
+				return true;
+			}
+		});
+		TermBuffer buffer = new TermBuffer(1);
+		BufferedReader brVocab = Files.openFileReader("../../share/tests/porterstemmer/voc.txt");
+		String testWord;
+		while((testWord = brVocab.readLine()) != null)
+		{
+			testWord = testWord.trim();
+			buffer.set(testWord);
+			bufferStemmer.processTerm(buffer);
+			assertEquals(stemmer.stem(testWord), stemmed[0]);
+		}
+	}
 }
@@ -0,0 +1,107 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestConcurrentTermDictionary.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk>
+ */
+package org.terrier.utility;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.terrier.terms.TermBuffer;
+
+public class TestConcurrentTermDictionary {
+
+	static final int TERMS = 5000;
+
+	@Test public void testCache()
+	{
+		ConcurrentTermDictionary dictionary = new ConcurrentTermDictionary(2);
+		ConcurrentTermDictionary.Cache cache = dictionary.newCache();
+		TermBuffer buffer = new TermBuffer();
+		for(int i=0;i<TERMS;i++)
+		{
+			String term = "term" + (i % 1000);
+			buffer.set(term);
+			int id = cache.getId(buffer);
+			assertEquals(i % 1000, id);
+			assertEquals(id, cache.getId(term));
+			assertEquals(id, dictionary.getId(term));
+			assertEquals(term, dictionary.getTerm(id));
+		}
+		assertEquals(1000, dictionary.size());
+		assertEquals(-1, dictionary.getIdIfPresent("absent"));
+	}
+
+	@Test public void testClear()
+	{
+		ConcurrentTermDictionary dictionary = new ConcurrentTermDictionary();
+		ConcurrentTermDictionary.Cache cache = dictionary.newCache();
+		assertEquals(0, cache.getId("first"));
+		assertEquals(1, cache.getId("second"));
+		dictionary.clear();
+		assertEquals(0, dictionary.size());
+		assertEquals(-1, dictionary.getIdIfPresent("first"));
+		//the cache must notice that the dictionary was cleared
+		assertEquals(0, cache.getId("second"));
+		assertEquals("second", dictionary.getTerm(0));
+	}
+
+	/** all threads must obtain the same id for each term */
+	@Test public void testThreads() throws Exception
+	{
+		final ConcurrentTermDictionary dictionary = new ConcurrentTermDictionary(16);
+		final int threads = 4;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<int[]>> results = new ArrayList<>();
+		for(int t=0;t<threads;t++)
+		{
+			final int offset = t * 17;
+			results.add(pool.submit(() -> {
+				ConcurrentTermDictionary.Cache cache = dictionary.newCache();
+				TermBuffer buffer = new TermBuffer();
+				int[] ids = new int[TERMS];
+				for(int i=0;i<TERMS;i++)
+				{
+					int term = (i + offset) % TERMS;
+					buffer.set("term" + term);
+					ids[term] = cache.getId(buffer);
+					assertEquals("term" + term, dictionary.getTerm(ids[term]));
+				}
+				return ids;
+			}));
+		}
+		int[] first = results.get(0).get();
+		for(Future<int[]> f : results)
+			assertArrayEquals(first, f.get());
+		pool.shutdown();
+		assertEquals(TERMS, dictionary.size());
+	}
+}
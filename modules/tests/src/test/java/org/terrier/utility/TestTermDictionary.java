@@ -0,0 +1,78 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestTermDictionary.java.
+ *
+ * The Original Code is Copyright (C) 2004-2020 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk>
+ */
+package org.terrier.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.terrier.terms.TermBuffer;
+
+public class TestTermDictionary {
+
+	@Test public void testIds()
+	{
+		TermDictionary dictionary = new TermDictionary(2);
+		TermBuffer buffer = new TermBuffer(1);
+		Map<String,Integer> ids = new HashMap<>();
+		//enough terms for the table to be resized several times
+		for(int i=0;i<5000;i++)
+		{
+			String term = "term" + (i % 1000);
+			buffer.set(term);
+			int id = dictionary.add(buffer);
+			if (ids.containsKey(term))
+				assertEquals(ids.get(term).intValue(), id);
+			else
+				assertEquals(ids.size(), id);
+			ids.put(term, id);
+			assertEquals(id, dictionary.getId(buffer));
+			assertEquals(id, dictionary.add(term));
+			assertEquals(term, dictionary.getTerm(id));
+		}
+		assertEquals(1000, dictionary.size());
+		buffer.set("absent");
+		assertEquals(-1, dictionary.getId(buffer));
+	}
+
+	@Test public void testIntern()
+	{
+		TermDictionary dictionary = new TermDictionary();
+		TermBuffer buffer = new TermBuffer();
+		buffer.set("hello");
+		String first = dictionary.intern(buffer);
+		assertEquals("hello", first);
+		buffer.set("hello");
+		assertSame(first, dictionary.intern(buffer));
+		dictionary.clear();
+		assertEquals(0, dictionary.size());
+		assertEquals(-1, dictionary.getId(buffer));
+		assertEquals(0, dictionary.add(buffer));
+	}
+}